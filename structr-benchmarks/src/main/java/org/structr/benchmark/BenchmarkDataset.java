@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.structr.benchmark.entity.BenchmarkNode;
+import org.structr.common.AccessMode;
+import org.structr.common.Permission;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.property.PropertyMap;
+import org.structr.web.entity.User;
+import org.structr.web.entity.dom.DOMElement;
+import org.structr.web.entity.dom.Page;
+import org.w3c.dom.DOMException;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Shared benchmark state: an embedded database in a temporary directory,
+ * filled with a generated dataset of <code>size</code> {@link BenchmarkNode}s.
+ *
+ * The dataset is deterministic so that results of different releases can
+ * be compared:
+ * <ul>
+ * <li>the category of a node is one of 10 values</li>
+ * <li>the description contains one of 100 distinct words</li>
+ * <li>the rank of a node is its sequence number</li>
+ * <li>every 4th node is visible to public users, every 2nd node is
+ * readable for the benchmark user</li>
+ * </ul>
+ *
+ * In addition, a page with {@link #PARAGRAPHS} paragraphs is created for the
+ * rendering benchmark.
+ *
+ * @author Christian Morgner
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDataset {
+
+	public static final int CATEGORIES = 10;
+	public static final int WORDS      = 100;
+	public static final int PARAGRAPHS = 100;
+
+	private static final int BATCH_SIZE = 1000;
+
+	@Param({ "1000", "10000" })
+	public int size;
+
+	private Map<String, String> context      = new ConcurrentHashMap<String, String>(20, 0.9f, 8);
+	private List<AbstractNode> nodes         = new ArrayList<AbstractNode>();
+	private SecurityContext securityContext  = null;
+	private SecurityContext userContext      = null;
+	private DOMElement documentElement       = null;
+	private String basePath                  = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws FrameworkException {
+
+		long timestamp = System.currentTimeMillis();
+
+		basePath = new File(System.getProperty("java.io.tmpdir"), "structr-benchmark-" + timestamp).getAbsolutePath();
+
+		context.put(Services.CONFIGURED_SERVICES, "ModuleService NodeService");
+		context.put(Services.APPLICATION_TITLE, "structr benchmark " + timestamp);
+		context.put(Services.TMP_PATH, System.getProperty("java.io.tmpdir"));
+		context.put(Services.BASE_PATH, basePath);
+		context.put(Services.DATABASE_PATH, basePath + "/db");
+		context.put(Services.FILES_PATH, basePath + "/files");
+		context.put(Services.LOG_DATABASE_PATH, basePath + "/logDb.dat");
+		context.put(Services.TCP_PORT, "13465");
+		context.put(Services.SERVER_IP, "127.0.0.1");
+		context.put(Services.UDP_PORT, "13466");
+		context.put(Services.SUPERUSER_USERNAME, "superadmin");
+		context.put(Services.SUPERUSER_PASSWORD, "sehrgeheim");
+
+		Services.initialize(context);
+
+		// wait for service layer to be initialized
+		do {
+			try { Thread.sleep(100); } catch(Throwable t) {}
+
+		} while(!Services.isInitialized());
+
+		securityContext = SecurityContext.getSuperUserInstance();
+
+		final User user = createUser();
+
+		for (int i = 0; i < size; i += BATCH_SIZE) {
+
+			nodes.addAll(createNodes(user, i, Math.min(size, i + BATCH_SIZE)));
+		}
+
+		userContext     = SecurityContext.getInstance(user, AccessMode.Frontend);
+		documentElement = createPage();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		Services.shutdown();
+
+		try {
+			FileUtils.deleteDirectory(new File(basePath));
+
+		} catch (Throwable t) {}
+	}
+
+	public List<AbstractNode> getNodes() {
+		return nodes;
+	}
+
+	public SecurityContext getSecurityContext() {
+		return securityContext;
+	}
+
+	public SecurityContext getUserContext() {
+		return userContext;
+	}
+
+	public DOMElement getDocumentElement() {
+		return documentElement;
+	}
+
+	// ----- private methods -----
+	private User createUser() throws FrameworkException {
+
+		final CreateNodeCommand createNode = Services.command(securityContext, CreateNodeCommand.class);
+		final PropertyMap properties       = new PropertyMap();
+
+		properties.put(AbstractNode.type, User.class.getSimpleName());
+		properties.put(AbstractNode.name, "benchmark");
+
+		return Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<User>() {
+
+			@Override
+			public User execute() throws FrameworkException {
+
+				return (User) createNode.execute(properties);
+			}
+		});
+	}
+
+	private List<AbstractNode> createNodes(final User user, final int from, final int to) throws FrameworkException {
+
+		final CreateNodeCommand createNode = Services.command(securityContext, CreateNodeCommand.class);
+
+		return Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<List<AbstractNode>>() {
+
+			@Override
+			public List<AbstractNode> execute() throws FrameworkException {
+
+				List<AbstractNode> batch = new ArrayList<AbstractNode>(to - from);
+
+				for (int i = from; i < to; i++) {
+
+					PropertyMap properties = new PropertyMap();
+
+					properties.put(AbstractNode.type, BenchmarkNode.class.getSimpleName());
+					properties.put(AbstractNode.name, "node" + i);
+					properties.put(AbstractNode.visibleToPublicUsers, i % 4 == 0);
+					properties.put(BenchmarkNode.category, "category" + (i % CATEGORIES));
+					properties.put(BenchmarkNode.description, "generated benchmark node with word" + (i % WORDS) + " in its description");
+					properties.put(BenchmarkNode.rank, i);
+
+					AbstractNode node = createNode.execute(properties);
+
+					if (i % 2 == 0) {
+						user.grant(Permission.read, node);
+					}
+
+					batch.add(node);
+				}
+
+				return batch;
+			}
+		});
+	}
+
+	private DOMElement createPage() throws FrameworkException {
+
+		Page page         = Page.createNewPage(securityContext, "benchmark");
+		DOMElement html   = (DOMElement) page.createElement("html");
+		DOMElement head   = (DOMElement) page.createElement("head");
+		DOMElement body   = (DOMElement) page.createElement("body");
+		DOMElement title  = (DOMElement) page.createElement("title");
+
+		try {
+
+			page.appendChild(html);
+			html.appendChild(head);
+			html.appendChild(body);
+			head.appendChild(title);
+			title.appendChild(page.createTextNode("Benchmark Page"));
+
+			for (int i = 0; i < PARAGRAPHS; i++) {
+
+				DOMElement p = (DOMElement) page.createElement("p");
+
+				body.appendChild(p);
+				p.appendChild(page.createTextNode("Paragraph " + i));
+			}
+
+		} catch (DOMException dex) {
+
+			throw new FrameworkException(422, dex.getMessage());
+		}
+
+		return html;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.benchmark.entity.BenchmarkNode;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.graph.search.RangeSearchAttribute;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.graph.search.SearchOperator;
+
+/**
+ * Measures SearchNodeCommand with keyword, fulltext and numeric range
+ * queries. Each query matches a fixed fraction of the dataset, so the
+ * result size grows with the dataset size.
+ *
+ * @author Christian Morgner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+	private static final String type = BenchmarkNode.class.getSimpleName();
+
+	private int counter = 0;
+
+	@Benchmark
+	public Result keyword(final BenchmarkDataset dataset) throws FrameworkException {
+
+		String category = "category" + (counter++ % BenchmarkDataset.CATEGORIES);
+
+		return searchCommand(dataset).execute(Search.andExactType(type), Search.andExactProperty(BenchmarkNode.category, category));
+	}
+
+	@Benchmark
+	public Result fulltext(final BenchmarkDataset dataset) throws FrameworkException {
+
+		String word = "word" + (counter++ % BenchmarkDataset.WORDS);
+
+		return searchCommand(dataset).execute(Search.andExactType(type), Search.andProperty(BenchmarkNode.description, word));
+	}
+
+	@Benchmark
+	public Result range(final BenchmarkDataset dataset) throws FrameworkException {
+
+		// a window of 10% of the dataset, moving through the rank space
+		int width = Math.max(1, dataset.size / 10);
+		int start = (counter++ * width) % dataset.size;
+
+		return searchCommand(dataset).execute(Search.andExactType(type), new RangeSearchAttribute(BenchmarkNode.rank, start, start + width - 1, SearchOperator.AND));
+	}
+
+	private SearchNodeCommand searchCommand(final BenchmarkDataset dataset) {
+		return Services.command(dataset.getSecurityContext(), SearchNodeCommand.class);
+	}
+}
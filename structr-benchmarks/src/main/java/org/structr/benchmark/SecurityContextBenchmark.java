@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.SecurityContext;
+import org.structr.core.entity.AbstractNode;
+
+/**
+ * Measures the visibility check of a non-admin user for all nodes of the
+ * dataset. A quarter of the nodes are public, half of them have a read
+ * grant for the user, the rest is not readable.
+ *
+ * @author Christian Morgner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SecurityContextBenchmark {
+
+	@Benchmark
+	public int isReadable(final BenchmarkDataset dataset) {
+
+		SecurityContext userContext = dataset.getUserContext();
+		int readable                = 0;
+
+		for (AbstractNode node : dataset.getNodes()) {
+
+			if (userContext.isReadable(node, false, false)) {
+				readable++;
+			}
+		}
+
+		return readable;
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.PropertyView;
+import org.structr.core.Result;
+import org.structr.core.StaticValue;
+import org.structr.rest.StreamingJsonWriter;
+
+/**
+ * Measures the serialization of the public view of all nodes of the
+ * dataset, writing to a writer that discards the output.
+ *
+ * @author Christian Morgner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StreamingJsonWriterBenchmark {
+
+	@Benchmark
+	public void stream(final BenchmarkDataset dataset) throws IOException {
+
+		StreamingJsonWriter writer = new StreamingJsonWriter(new StaticValue<String>(PropertyView.Public), false);
+		Result result              = new Result(dataset.getNodes(), dataset.getNodes().size(), true, false);
+
+		writer.stream(NullWriter.NULL_WRITER, result);
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.benchmark.entity.BenchmarkNode;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Measures the fixed cost of a TransactionCommand: an empty transaction,
+ * a transaction that modifies a single property and one that creates a
+ * single node, including indexing and the entity callbacks.
+ *
+ * @author Christian Morgner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionBenchmark {
+
+	private int counter = 0;
+
+	@Benchmark
+	public Object emptyTransaction(final BenchmarkDataset dataset) throws FrameworkException {
+
+		return transactionCommand(dataset).execute(new StructrTransaction<Object>() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+				return null;
+			}
+		});
+	}
+
+	@Benchmark
+	public Object modifyProperty(final BenchmarkDataset dataset) throws FrameworkException {
+
+		final AbstractNode node = dataset.getNodes().get(counter++ % dataset.getNodes().size());
+
+		return transactionCommand(dataset).execute(new StructrTransaction<Object>() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				node.setProperty(BenchmarkNode.description, "modified benchmark node " + counter);
+
+				return null;
+			}
+		});
+	}
+
+	@Benchmark
+	public AbstractNode createNode(final BenchmarkDataset dataset) throws FrameworkException {
+
+		final CreateNodeCommand createNode = Services.command(dataset.getSecurityContext(), CreateNodeCommand.class);
+		final PropertyMap properties       = new PropertyMap();
+
+		properties.put(AbstractNode.type, BenchmarkNode.class.getSimpleName());
+		properties.put(AbstractNode.name, "created" + counter++);
+
+		return transactionCommand(dataset).execute(new StructrTransaction<AbstractNode>() {
+
+			@Override
+			public AbstractNode execute() throws FrameworkException {
+				return createNode.execute(properties);
+			}
+		});
+	}
+
+	private TransactionCommand transactionCommand(final BenchmarkDataset dataset) {
+		return Services.command(dataset.getSecurityContext(), TransactionCommand.class);
+	}
+}
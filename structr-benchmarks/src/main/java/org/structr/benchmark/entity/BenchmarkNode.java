@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark.entity;
+
+import org.structr.common.PropertyView;
+import org.structr.common.View;
+import org.structr.core.EntityContext;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeService.NodeIndex;
+import org.structr.core.property.IntProperty;
+import org.structr.core.property.Property;
+import org.structr.core.property.StringProperty;
+
+/**
+ * The entity type of the generated benchmark dataset, with a keyword,
+ * a fulltext and a numeric property.
+ *
+ * @author Christian Morgner
+ */
+public class BenchmarkNode extends AbstractNode {
+
+	public static final Property<String>  category    = new StringProperty("category");
+	public static final Property<String>  description = new StringProperty("description");
+	public static final Property<Integer> rank        = new IntProperty("rank");
+
+	public static final View publicView = new View(BenchmarkNode.class, PropertyView.Public,
+		name, category, description, rank
+	);
+
+	static {
+
+		EntityContext.registerSearchablePropertySet(BenchmarkNode.class, NodeIndex.fulltext.name(), name, category, description, rank);
+		EntityContext.registerSearchablePropertySet(BenchmarkNode.class, NodeIndex.keyword.name(), name, category, description, rank);
+	}
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.SecurityRelationship;
+
+/**
+ * Caches resolved permissions so that {@link AbstractNode#isGranted} does not
+ * need to scan the SECURITY relationships of a node and the parents of a
+ * principal over and over again.
+ *
+ * Two things are cached:
+ * <ul>
+ * <li>for each principal, the ids of the principal itself and all of its
+ * (transitive) parents</li>
+ * <li>for each node, a permission bitmask per principal id, built from a
+ * single scan of its incoming SECURITY relationships</li>
+ * </ul>
+ *
+ * Node entries are invalidated by the securityModified/ownerModified callbacks
+ * and by modifications of security relationships, principal entries whenever
+ * a principal is modified. Every invalidation increments a generation number,
+ * and an entry that was computed while the generation changed is not kept, so
+ * a lookup that races with an invalidation cannot cache revoked permissions.
+ *
+ * @author Christian Morgner
+ */
+public class PermissionCache {
+
+	private static final int MAX_CACHED_NODES                            = 100000;
+	private static final int MAX_CACHED_PRINCIPALS                       = 10000;
+	private static final Map<Long, Set<Long>> principalClosures          = new ConcurrentHashMap<Long, Set<Long>>(100, 0.9f, 8);
+	private static final Map<Long, Map<Long, Integer>> permissionMasks   = new ConcurrentHashMap<Long, Map<Long, Integer>>(1000, 0.9f, 8);
+	private static final AtomicLong generation                           = new AtomicLong(0);
+	private static final AtomicLong hits                                 = new AtomicLong(0);
+	private static final AtomicLong misses                               = new AtomicLong(0);
+
+	public static boolean isGranted(final AbstractNode node, final Principal principal, final Permission permission) {
+		return isGranted(node.getId(), node.getNode(), principal, permission);
+	}
+
+	/**
+	 * Checks the given permission on a database node without instantiating
+	 * it, used to count search results that are not returned.
+	 *
+	 * @param dbNode
+	 * @param principal
+	 * @param permission
+	 * @return whether the permission is granted
+	 */
+	public static boolean isGranted(final Node dbNode, final Principal principal, final Permission permission) {
+		return isGranted(dbNode.getId(), dbNode, principal, permission);
+	}
+
+	private static boolean isGranted(final long nodeId, final Node dbNode, final Principal principal, final Permission permission) {
+
+		Set<Long> closure = getPrincipalClosure(principal);
+
+		// members have full control over their own principal nodes
+		if (closure.contains(nodeId)) {
+
+			return true;
+		}
+
+		Map<Long, Integer> masks = getPermissionMasks(nodeId, dbNode);
+		int bit                  = 1 << permission.ordinal();
+
+		for (Entry<Long, Integer> entry : masks.entrySet()) {
+
+			if ((entry.getValue() & bit) == bit && closure.contains(entry.getKey())) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	public static void invalidateNode(final long nodeId) {
+
+		generation.incrementAndGet();
+		permissionMasks.remove(nodeId);
+	}
+
+	public static void invalidatePrincipals() {
+
+		generation.incrementAndGet();
+		principalClosures.clear();
+	}
+
+	public static void clear() {
+
+		generation.incrementAndGet();
+		permissionMasks.clear();
+		principalClosures.clear();
+	}
+
+	public static long getGeneration() {
+		return generation.get();
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+		stats.put("nodes", permissionMasks.size());
+		stats.put("principals", principalClosures.size());
+		stats.put("hits", hits.get());
+		stats.put("misses", misses.get());
+
+		return stats;
+	}
+
+	// ----- package-private methods -----
+	static Set<Long> loadPrincipalClosure(final Principal principal) {
+
+		Set<Long> ids                 = new HashSet<Long>();
+		LinkedList<Principal> pending = new LinkedList<Principal>();
+
+		pending.add(principal);
+
+		while (!pending.isEmpty()) {
+
+			Principal current = pending.removeFirst();
+
+			// the visited check protects against cyclic group memberships
+			if (ids.add(current.getId())) {
+
+				pending.addAll(current.getParents());
+			}
+		}
+
+		return Collections.unmodifiableSet(ids);
+	}
+
+	static void putPrincipalClosure(final long principalId, final Set<Long> closure, final long lookupGeneration) {
+
+		if (principalClosures.size() > MAX_CACHED_PRINCIPALS) {
+			principalClosures.clear();
+		}
+
+		principalClosures.put(principalId, closure);
+
+		// an invalidation happened while the closure was computed,
+		// so the result may already be outdated
+		if (generation.get() != lookupGeneration) {
+			principalClosures.remove(principalId);
+		}
+	}
+
+	static Map<Long, Integer> loadPermissionMasks(final Node dbNode) {
+
+		Map<Long, Integer> masks = new HashMap<Long, Integer>();
+
+		if (dbNode != null) {
+
+			for (Relationship rel : dbNode.getRelationships(RelType.SECURITY, Direction.INCOMING)) {
+
+				long principalId = rel.getStartNode().getId();
+				Integer mask     = masks.get(principalId);
+				int newMask      = toMask(rel.getProperty(SecurityRelationship.allowed.dbName(), null));
+
+				masks.put(principalId, mask != null ? mask | newMask : newMask);
+			}
+		}
+
+		return Collections.unmodifiableMap(masks);
+	}
+
+	static void putPermissionMasks(final long nodeId, final Map<Long, Integer> masks, final long lookupGeneration) {
+
+		if (permissionMasks.size() > MAX_CACHED_NODES) {
+			permissionMasks.clear();
+		}
+
+		permissionMasks.put(nodeId, masks);
+
+		// an invalidation happened while the masks were computed,
+		// so the result may already be outdated
+		if (generation.get() != lookupGeneration) {
+			permissionMasks.remove(nodeId);
+		}
+	}
+
+	// ----- private methods -----
+	private static Set<Long> getPrincipalClosure(final Principal principal) {
+
+		Set<Long> closure = principalClosures.get(principal.getId());
+		if (closure == null) {
+
+			long lookupGeneration = generation.get();
+
+			closure = loadPrincipalClosure(principal);
+
+			putPrincipalClosure(principal.getId(), closure, lookupGeneration);
+		}
+
+		return closure;
+	}
+
+	private static Map<Long, Integer> getPermissionMasks(final long nodeId, final Node dbNode) {
+
+		Map<Long, Integer> masks = permissionMasks.get(nodeId);
+		if (masks == null) {
+
+			long lookupGeneration = generation.get();
+
+			misses.incrementAndGet();
+
+			masks = loadPermissionMasks(dbNode);
+
+			putPermissionMasks(nodeId, masks, lookupGeneration);
+
+		} else {
+
+			hits.incrementAndGet();
+		}
+
+		return masks;
+	}
+
+	private static int toMask(final Object allowed) {
+
+		int mask = 0;
+
+		if (allowed instanceof String[]) {
+
+			for (String name : (String[]) allowed) {
+
+				for (Permission permission : Permission.values()) {
+
+					if (permission.name().equals(name)) {
+
+						mask |= 1 << permission.ordinal();
+					}
+				}
+			}
+		}
+
+		return mask;
+	}
+}
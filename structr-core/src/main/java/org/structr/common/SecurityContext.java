@@ -31,6 +31,8 @@ import org.structr.core.auth.exception.AuthenticationException;
 import org.structr.core.entity.*;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
+import org.structr.core.graph.NodeCache;
+import org.structr.core.graph.NodeService;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -58,10 +60,11 @@ public class SecurityContext {
 
 	private static final Logger logger                   = Logger.getLogger(SecurityContext.class.getName());
 	private static final Map<String, Long> resourceFlags = new LinkedHashMap<String, Long>();
+	private static final int MAX_CACHED_NODES            = 10000;
 
 	//~--- fields ---------------------------------------------------------
 
-	private Map<Long, AbstractNode> cache = null;
+	private Map<Long, CachedNode> cache   = new ConcurrentHashMap<Long, CachedNode>();
 	private AccessMode accessMode         = AccessMode.Frontend;
 	private Map<String, Object> attrs     = null;
 	private Authenticator authenticator   = null;
@@ -78,8 +81,6 @@ public class SecurityContext {
 
 		this.cachedUser = user;
 		this.accessMode = accessMode;
-
-		cache = new ConcurrentHashMap<Long, AbstractNode>();
 	}
 
 	private SecurityContext(ServletConfig config, HttpServletRequest request, HttpServletResponse response, AccessMode accessMode) {
@@ -98,20 +99,6 @@ public class SecurityContext {
 
 			logger.log(Level.SEVERE, "Could not instantiate security context!");
 		}
-
-		// TEST: request-based caching
-		if (request != null && request.getServletContext() != null) {
-			cache = (Map<Long, AbstractNode>)request.getServletContext().getAttribute("NODE_CACHE");
-		}
-		
-		if (cache == null) {
-
-			cache = new ConcurrentHashMap<Long, AbstractNode>();
-			
-			if (request != null && request.getServletContext() != null) {
-				request.getServletContext().setAttribute("NODE_CACHE", cache);
-			}
-		}
 	}
 
 	//~--- methods --------------------------------------------------------
@@ -121,22 +108,54 @@ public class SecurityContext {
 	 * created for is finished and the resources can be freed.
 	 */
 	public void cleanUp() {
-		
-		if (cache != null) {
-			cache.clear();
-		}
+		cache.clear();
 	}
 	
+	/**
+	 * Returns the node instance that was created for the given database
+	 * node in this security context, if it is still up to date.
+	 *
+	 * @param node
+	 * @return the cached node instance, or null
+	 */
 	public AbstractNode lookup(Node node) {
-		return cache.get(node.getId());
+
+		long id           = node.getId();
+		CachedNode cached = cache.get(id);
+
+		if (NodeService.getNodeCache().isValid(id, cached != null ? cached.token : null)) {
+
+			return cached.node;
+		}
+
+		if (cached != null) {
+
+			cache.remove(id);
+		}
+
+		return null;
 	}
 	
-	public void store(AbstractNode node) {
+	/**
+	 * Caches the given node instance in this security context.
+	 *
+	 * @param node the node instance
+	 * @param lookupGeneration the generation of the node cache obtained before the instance was created
+	 */
+	public void store(AbstractNode node, long lookupGeneration) {
 		
 		Node dbNode = node.getNode();
 		if (dbNode != null) {
-			
-			cache.put(dbNode.getId(), node);
+
+			NodeCache.Token token = NodeService.getNodeCache().getToken(dbNode.getId(), lookupGeneration);
+			if (token != null) {
+
+				if (cache.size() > MAX_CACHED_NODES) {
+					cache.clear();
+				}
+
+				cache.put(dbNode.getId(), new CachedNode(node, token));
+			}
 		}
 	}
 	
@@ -592,6 +611,8 @@ public class SecurityContext {
 
 		this.cachedUser = user;
 
+		cache.clear();
+
 	}
 
 	public Authenticator getAuthenticator() {
@@ -601,6 +622,18 @@ public class SecurityContext {
 	//~--- inner classes --------------------------------------------------
 
 	// ----- nested classes -----
+	private static class CachedNode {
+
+		private AbstractNode node     = null;
+		private NodeCache.Token token = null;
+
+		public CachedNode(final AbstractNode node, final NodeCache.Token token) {
+
+			this.node  = node;
+			this.token = token;
+		}
+	}
+
 	private static class SuperUserSecurityContext extends SecurityContext {
 
 		public SuperUserSecurityContext(HttpServletRequest request, HttpServletResponse response) {
@@ -668,7 +701,7 @@ public class SecurityContext {
 		}
 		
 		@Override
-		public void store(AbstractNode node) {
+		public void store(AbstractNode node, long lookupGeneration) {
 		}
 
 	}
@@ -37,6 +37,7 @@ import org.structr.core.entity.RelationshipMapping;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.DynamicRelationshipType;
@@ -50,6 +51,12 @@ import org.structr.core.module.ModuleService;
  * A global context for functional mappings between nodes and relationships,
  * property views and property validators.
  *
+ * Registrations are collected in the global maps below, which are only
+ * accessed while holding the registration lock. Lookups are answered from
+ * an immutable {@link TypeMetadata} snapshot per type that is built on first
+ * access (or right after the module scan, see {@link #init()}) and dropped
+ * whenever a registration changes.
+ *
  * @author Axel Morgner
  * @author Christian Morgner
  */
@@ -57,6 +64,10 @@ public class EntityContext {
 
 	private static final String COMBINED_RELATIONSHIP_KEY_SEP                                     = " ";
 	private static final Logger logger                                                            = Logger.getLogger(EntityContext.class.getName());
+	private static final int MAX_CACHED_NAMES                                                     = 10000;
+
+	// guards the registration maps up to (and including) globalTransformationMap
+	private static final Object lock                                                              = new Object();
 
 	private static final Map<Class, Map<PropertyKey, Set<PropertyValidator>>> globalValidatorMap  = new LinkedHashMap<Class, Map<PropertyKey, Set<PropertyValidator>>>();
 	private static final Map<Class, Map<String, Set<PropertyKey>>> globalSearchablePropertyMap    = new LinkedHashMap<Class, Map<String, Set<PropertyKey>>>();
@@ -67,22 +78,26 @@ public class EntityContext {
 	private static final Map<Class, Map<String, PropertyKey>> globalClassJSNamePropertyMap        = new LinkedHashMap<Class, Map<String, PropertyKey>>();
 
 	// This map contains a mapping from (sourceType, propertyKey) -> Relation
-	private static final Map<Class, Map<String, PropertyGroup>> globalAggregatedPropertyGroupMap  = new LinkedHashMap<Class, Map<String, PropertyGroup>>();
 	private static final Map<Class, Map<String, PropertyGroup>> globalPropertyGroupMap            = new LinkedHashMap<Class, Map<String, PropertyGroup>>();
 
 	// This map contains view-dependent result set transformations
 	private static final Map<Class, Map<String, ViewTransformation>> viewTransformations          = new LinkedHashMap<Class, Map<String, ViewTransformation>>();
 	
-	// This set contains all known properties
-	private static final Set<PropertyKey> globalKnownPropertyKeys                                 = new LinkedHashSet<PropertyKey>();
 	private static final Map<Class, Set<Transformation<GraphObject>>> globalTransformationMap     = new LinkedHashMap<Class, Set<Transformation<GraphObject>>>();
-	private static final Map<String, String> normalizedEntityNameCache                            = new LinkedHashMap<String, String>();
-	private static final Map<String, RelationshipMapping> globalRelationshipNameMap               = new LinkedHashMap<String, RelationshipMapping>();
-	private static final Map<String, Class> globalRelationshipClassMap                            = new LinkedHashMap<String, Class>();
-	private static final Map<Class, Set<Method>> exportedMethodMap                               = new LinkedHashMap<Class, Set<Method>>();
-	private static final Map<Class, Set<Class>> interfaceMap                                      = new LinkedHashMap<Class, Set<Class>>();
-	private static final Map<String, Class> reverseInterfaceMap                                   = new LinkedHashMap<String, Class>();
-	private static Map<String, Class> cachedEntities                                              = new LinkedHashMap<String, Class>();
+
+	// immutable lookup snapshots, see metadataFor()
+	private static final Map<Class, TypeMetadata> typeMetadata                                    = new ConcurrentHashMap<Class, TypeMetadata>(100, 0.9f, 8);
+
+	// This set contains all known properties
+	private static final Set<PropertyKey> globalKnownPropertyKeys                                 = Collections.newSetFromMap(new ConcurrentHashMap<PropertyKey, Boolean>(100, 0.9f, 8));
+	private static final Map<String, String> normalizedEntityNameCache                            = new ConcurrentHashMap<String, String>(100, 0.9f, 8);
+	private static final Map<String, PropertyKey> genericPropertyCache                            = new ConcurrentHashMap<String, PropertyKey>(100, 0.9f, 8);
+	private static final Map<String, Class> globalRelationshipClassMap                            = new ConcurrentHashMap<String, Class>(100, 0.9f, 8);
+	private static final Map<Class, Set<Method>> exportedMethodMap                               = new ConcurrentHashMap<Class, Set<Method>>(100, 0.9f, 8);
+	private static final Map<Class, Set<Class>> interfaceMap                                      = new ConcurrentHashMap<Class, Set<Class>>(100, 0.9f, 8);
+	private static final Map<String, Class> reverseInterfaceMap                                   = new ConcurrentHashMap<String, Class>(100, 0.9f, 8);
+	private static volatile Map<String, RelationshipMapping> globalRelationshipNameMap            = Collections.emptyMap();
+	private static volatile Map<String, Class> cachedEntities                                     = new LinkedHashMap<String, Class>();
 
 	private static FactoryDefinition factoryDefinition                                            = new DefaultFactoryDefinition();
 
@@ -96,41 +111,48 @@ public class EntityContext {
 	 */
 	public static void init(Class type) {
 
-		// 1. Register searchable keys of superclasses
-		for (Enum index : NodeService.NodeIndex.values()) {
+		synchronized (lock) {
 
-			String indexName                                           = index.name();
-			Map<String, Set<PropertyKey>> searchablePropertyMapForType = getSearchablePropertyMapForType(type);
-			Set<PropertyKey> searchablePropertySet                     = searchablePropertyMapForType.get(indexName);
+			// 1. Register searchable keys of superclasses
+			for (Enum index : NodeService.NodeIndex.values()) {
 
-			if (searchablePropertySet == null) {
+				String indexName                                           = index.name();
+				Map<String, Set<PropertyKey>> searchablePropertyMapForType = getRegisteredSearchablePropertyMap(type);
+				Set<PropertyKey> searchablePropertySet                     = searchablePropertyMapForType.get(indexName);
 
-				searchablePropertySet = new LinkedHashSet<PropertyKey>();
+				if (searchablePropertySet == null) {
 
-				searchablePropertyMapForType.put(indexName, searchablePropertySet);
+					searchablePropertySet = new LinkedHashSet<PropertyKey>();
 
-			}
+					searchablePropertyMapForType.put(indexName, searchablePropertySet);
 
-			Class localType = type.getSuperclass();
+				}
 
-			while ((localType != null) &&!localType.equals(Object.class)) {
+				Class localType = type.getSuperclass();
 
-				Set<PropertyKey> superProperties = getSearchableProperties(localType, indexName);
-				searchablePropertySet.addAll(superProperties);
+				while ((localType != null) &&!localType.equals(Object.class)) {
 
-				// include property sets from interfaces
-				for(Class interfaceClass : getInterfacesForType(localType)) {
-					searchablePropertySet.addAll(getSearchableProperties(interfaceClass, indexName));
-				}
+					Set<PropertyKey> superProperties = getRegisteredSearchableProperties(localType, indexName);
+					searchablePropertySet.addAll(superProperties);
 
-				// one level up :)
-				localType = localType.getSuperclass();
+					// include property sets from interfaces
+					for(Class interfaceClass : getInterfacesForType(localType)) {
+						searchablePropertySet.addAll(getRegisteredSearchableProperties(interfaceClass, indexName));
+					}
 
+					// one level up :)
+					localType = localType.getSuperclass();
+
+				}
 			}
+
+			invalidateMetadata();
 		}
 		
 		// moved here from scanEntity, no reason to have this in a separate
-		// method requiring two different calls instead of one
+		// method requiring two different calls instead of one. The entity
+		// is instantiated without holding the lock because its static
+		// initializer registers properties itself.
 		int modifiers = type.getModifiers();
 		if (!Modifier.isAbstract(modifiers) && !Modifier.isInterface(modifiers)) {
 			
@@ -175,32 +197,46 @@ public class EntityContext {
 			}
 		}
 		
-		Set<Method> typeMethods = exportedMethodMap.get(type);
-		if (typeMethods == null) {
-			typeMethods = new LinkedHashSet<Method>();
-			exportedMethodMap.put(type, typeMethods);
+		Set<Method> typeMethods = new LinkedHashSet<Method>();
+		Set<Method> oldMethods  = exportedMethodMap.get(type);
+
+		if (oldMethods != null) {
+			typeMethods.addAll(oldMethods);
 		}
 		
 		typeMethods.addAll(getAnnotatedMethods(type, Export.class));
+
+		exportedMethodMap.put(type, Collections.unmodifiableSet(typeMethods));
 	}
 	
 	public static void registerProperty(Class type, PropertyKey propertyKey) {
-		
-		getClassDBNamePropertyMapForType(type).put(propertyKey.dbName(),   propertyKey);
-		getClassJSNamePropertyMapForType(type).put(propertyKey.jsonName(), propertyKey);
-		
-		registerPropertySet(type, PropertyView.All, propertyKey);
-		
-		// inform property key of its registration
-		propertyKey.registrationCallback(type);
+
+		synchronized (lock) {
+
+			getClassDBNamePropertyMapForType(type).put(propertyKey.dbName(),   propertyKey);
+			getClassJSNamePropertyMapForType(type).put(propertyKey.jsonName(), propertyKey);
+
+			registerPropertySet(type, PropertyView.All, propertyKey);
+
+			// inform property key of its registration
+			propertyKey.registrationCallback(type);
+
+			invalidateMetadata();
+		}
 	}
 	
 	/**
 	 * Initialize the entity context with all classes from the module service,
+	 * and build the metadata snapshots of all known entity types so that the
+	 * first requests don't have to.
 	 */
 	public static void init() {
 
 		cachedEntities = Services.getService(ModuleService.class).getCachedNodeEntities();
+
+		for (Class type : cachedEntities.values()) {
+			metadataFor(type);
+		}
 	}
 	
 	/**
@@ -210,7 +246,12 @@ public class EntityContext {
 	 * @param transformation the transformation to apply on every entity
 	 */
 	public static void registerEntityCreationTransformation(Class type, Transformation<GraphObject> transformation) {
-		getEntityCreationTransformationsForType(type).add(transformation);
+
+		synchronized (lock) {
+
+			getEntityCreationTransformationsForType(type).add(transformation);
+			invalidateMetadata();
+		}
 	}
 
 	/**
@@ -222,7 +263,12 @@ public class EntityContext {
 	 * @param propertyGroup the property group
 	 */
 	public static void registerPropertyGroup(Class type, PropertyKey key, PropertyGroup propertyGroup) {
-		getPropertyGroupMapForType(type).put(key.dbName(), propertyGroup);
+
+		synchronized (lock) {
+
+			getPropertyGroupMapForType(type).put(key.dbName(), propertyGroup);
+			invalidateMetadata();
+		}
 	}
 
 	// ----- named relations -----
@@ -240,8 +286,16 @@ public class EntityContext {
 	 */
 	public static void registerNamedRelation(String relationName, Class relationshipEntityType, Class sourceType, Class destType, RelationshipType relType) {
 
-		globalRelationshipNameMap.put(relationName, new RelationshipMapping(relationName, sourceType, destType, relType));
-		globalRelationshipClassMap.put(createCombinedRelationshipType(sourceType.getSimpleName(), relType.name(), destType.getSimpleName()), relationshipEntityType);
+		synchronized (lock) {
+
+			// copy on write, named relations are registered at startup only
+			Map<String, RelationshipMapping> relationshipNameMap = new LinkedHashMap<String, RelationshipMapping>(globalRelationshipNameMap);
+
+			relationshipNameMap.put(relationName, new RelationshipMapping(relationName, sourceType, destType, relType));
+
+			globalRelationshipNameMap = Collections.unmodifiableMap(relationshipNameMap);
+			globalRelationshipClassMap.put(createCombinedRelationshipType(sourceType.getSimpleName(), relType.name(), destType.getSimpleName()), relationshipEntityType);
+		}
 	}
 
 	// ----- property set methods -----
@@ -256,16 +310,21 @@ public class EntityContext {
 	 */
 	public static void registerPropertySet(Class type, String propertyView, PropertyKey... propertySet) {
 
-		Map<String, Set<PropertyKey>> propertyViewMap = getPropertyViewMapForType(type);
-		Set<PropertyKey> properties                   = propertyViewMap.get(propertyView);
-		
-		if (properties == null) {
-			properties = new LinkedHashSet<PropertyKey>();
-			propertyViewMap.put(propertyView, properties);
-		}
+		synchronized (lock) {
+
+			Map<String, Set<PropertyKey>> propertyViewMap = getPropertyViewMapForType(type);
+			Set<PropertyKey> properties                   = propertyViewMap.get(propertyView);
+
+			if (properties == null) {
+				properties = new LinkedHashSet<PropertyKey>();
+				propertyViewMap.put(propertyView, properties);
+			}
+
+			// add all properties from set
+			properties.addAll(Arrays.asList(propertySet));
 
-		// add all properties from set
-		properties.addAll(Arrays.asList(propertySet));
+			invalidateMetadata();
+		}
 	}
 
 	// ----- searchable property map -----
@@ -296,18 +355,23 @@ public class EntityContext {
 	 */
 	public static void registerSearchableProperty(Class type, String index, PropertyKey key) {
 
-		Map<String, Set<PropertyKey>> searchablePropertyMapForType = getSearchablePropertyMapForType(type);
-		Set<PropertyKey> searchablePropertySet                     = searchablePropertyMapForType.get(index);
+		synchronized (lock) {
 
-		if (searchablePropertySet == null) {
+			Map<String, Set<PropertyKey>> searchablePropertyMapForType = getRegisteredSearchablePropertyMap(type);
+			Set<PropertyKey> searchablePropertySet                     = searchablePropertyMapForType.get(index);
 
-			searchablePropertySet = new LinkedHashSet<PropertyKey>();
+			if (searchablePropertySet == null) {
 
-			searchablePropertyMapForType.put(index, searchablePropertySet);
+				searchablePropertySet = new LinkedHashSet<PropertyKey>();
 
-		}
+				searchablePropertyMapForType.put(index, searchablePropertySet);
 
-		key.registerSearchableProperties(searchablePropertySet);
+			}
+
+			key.registerSearchableProperties(searchablePropertySet);
+
+			invalidateMetadata();
+		}
 	}
 
 	// ----- private methods -----
@@ -332,76 +396,56 @@ public class EntityContext {
 			
 		}
 
-                StringBuilder result = new StringBuilder();
-                
-		if (possibleEntityString.contains("/")) {
-
-			String[] names           = StringUtils.split(possibleEntityString, "/");
-
-			for (String possibleEntityName : names) {
-
-				// CAUTION: this cache might grow to a very large size, as it
-				// contains all normalized mappings for every possible
-				// property key / entity name that is ever called.
-				String normalizedType = normalizedEntityNameCache.get(possibleEntityName);
-
-				if (normalizedType == null) {
-
-					normalizedType = StringUtils.capitalize(CaseHelper.toUpperCamelCase(possibleEntityName));
-
-					if (normalizedType.endsWith("ies")) {
-
-						normalizedType = normalizedType.substring(0, normalizedType.length() - 3).concat("y");
-
-					} else if (!normalizedType.endsWith("ss") && normalizedType.endsWith("s")) {
+		String normalizedType = normalizedEntityNameCache.get(possibleEntityString);
+		if (normalizedType == null) {
 
-						logger.log(Level.FINEST, "Removing trailing plural 's' from type {0}", normalizedType);
+			if (possibleEntityString.contains("/")) {
 
-						normalizedType = normalizedType.substring(0, normalizedType.length() - 1);
+				StringBuilder result = new StringBuilder();
+				String[] names       = StringUtils.split(possibleEntityString, "/");
 
-					}
+				for (String possibleEntityName : names) {
 
-					// logger.log(Level.INFO, "String {0} normalized to {1}", new Object[] { possibleEntityName, normalizedType });
-					normalizedEntityNameCache.put(possibleEntityName, normalizedType);
+					result.append(normalizeName(possibleEntityName)).append("/");
 
 				}
 
-				result.append(normalizedType).append("/");
-
-			}
-
-			return StringUtils.removeEnd(result.toString(), "/");
+				normalizedType = StringUtils.removeEnd(result.toString(), "/");
 
-		} else {
+			} else {
 
-//                      CAUTION: this cache might grow to a very large size, as it
-			// contains all normalized mappings for every possible
-			// property key / entity name that is ever called.
-			String normalizedType = normalizedEntityNameCache.get(possibleEntityString);
+				normalizedType = normalizeName(possibleEntityString);
+			}
 
-			if (normalizedType == null) {
+			// the cache contains every string that was ever normalized, so it
+			// is bounded and simply cleared when it grows too large
+			if (normalizedEntityNameCache.size() > MAX_CACHED_NAMES) {
+				normalizedEntityNameCache.clear();
+			}
 
-				normalizedType = StringUtils.capitalize(CaseHelper.toUpperCamelCase(possibleEntityString));
+			normalizedEntityNameCache.put(possibleEntityString, normalizedType);
+		}
 
-				if (normalizedType.endsWith("ies")) {
+		return normalizedType;
+	}
 
-					normalizedType = normalizedType.substring(0, normalizedType.length() - 3).concat("y");
+	private static String normalizeName(String possibleEntityName) {
 
-				} else if (!normalizedType.endsWith("ss") && normalizedType.endsWith("s")) {
+		String normalizedType = StringUtils.capitalize(CaseHelper.toUpperCamelCase(possibleEntityName));
 
-					logger.log(Level.FINEST, "Removing trailing plural 's' from type {0}", normalizedType);
+		if (normalizedType.endsWith("ies")) {
 
-					normalizedType = normalizedType.substring(0, normalizedType.length() - 1);
+			normalizedType = normalizedType.substring(0, normalizedType.length() - 3).concat("y");
 
-				}
+		} else if (!normalizedType.endsWith("ss") && normalizedType.endsWith("s")) {
 
-				// logger.log(Level.INFO, "String {0} normalized to {1}", new Object[] { possibleEntityName, normalizedType });
-				normalizedEntityNameCache.put(possibleEntityString, normalizedType);
+			logger.log(Level.FINEST, "Removing trailing plural 's' from type {0}", normalizedType);
 
-			}
+			normalizedType = normalizedType.substring(0, normalizedType.length() - 1);
 
-			return normalizedType;
 		}
+
+		return normalizedType;
 	}
 	
 	/**
@@ -564,20 +608,7 @@ public class EntityContext {
 	}
 
 	public static Set<Transformation<GraphObject>> getEntityCreationTransformations(Class type) {
-
-		Set<Transformation<GraphObject>> transformations = new TreeSet<Transformation<GraphObject>>();
-		Class localType                                  = type;
-
-		// collect for all superclasses
-		while (localType != null && !localType.equals(Object.class)) {
-
-			transformations.addAll(getEntityCreationTransformationsForType(localType));
-
-			localType = localType.getSuperclass();
-
-		}
-
-		return transformations;
+		return metadataFor(type).getEntityCreationTransformations();
 	}
 
 	// ----- property notions -----
@@ -586,44 +617,21 @@ public class EntityContext {
 	}
 
 	public static PropertyGroup getPropertyGroup(Class type, String key) {
-
-		PropertyGroup group = getAggregatedPropertyGroupMapForType(type).get(key);
-		if(group == null) {
-			
-			Class localType     = type;
-
-			while(group == null && localType != null && !localType.equals(Object.class)) {
-
-				group = getPropertyGroupMapForType(localType).get(key);
-
-				if(group == null) {
-
-					// try interfaces as well
-					for(Class interfaceClass : getInterfacesForType(localType)) {
-
-						group = getPropertyGroupMapForType(interfaceClass).get(key);
-						if(group != null) {
-							break;
-						}
-					}
-				}
-
-				localType = localType.getSuperclass();
-			}
-			
-			getAggregatedPropertyGroupMapForType(type).put(key, group);
-		}
-		
-		return group;
+		return metadataFor(type).getPropertyGroup(key);
 	}
 
 	// ----- view transformations -----
 	public static void registerViewTransformation(Class type, String view, ViewTransformation transformation) {
-		getViewTransformationMapForType(type).put(view, transformation);
+
+		synchronized (lock) {
+
+			getViewTransformationMapForType(type).put(view, transformation);
+			invalidateMetadata();
+		}
 	}
 	
 	public static ViewTransformation getViewTransformation(Class type, String view) {
-		return getViewTransformationMapForType(type).get(view);
+		return metadataFor(type).getViewTransformation(view);
 	}
 	
 	private static Map<String, ViewTransformation> getViewTransformationMapForType(Class type) {
@@ -642,26 +650,33 @@ public class EntityContext {
 	public static Set<String> getPropertyViews() {
 
 		Set<String> views = new LinkedHashSet<String>();
-		
-		// add all existing views
-		for (Map<String, Set<PropertyKey>> view : globalPropertyViewMap.values()) {
-			views.addAll(view.keySet());
+
+		synchronized (lock) {
+
+			// add all existing views
+			for (Map<String, Set<PropertyKey>> view : globalPropertyViewMap.values()) {
+				views.addAll(view.keySet());
+			}
 		}
 		
 		return Collections.unmodifiableSet(views);
 	}
 	
 	public static Set<PropertyKey> getPropertySet(Class type, String propertyView) {
+		return metadataFor(type).getPropertySet(propertyView);
+	}
 
-		Map<String, Set<PropertyKey>> propertyViewMap = getPropertyViewMapForType(type);
-		Set<PropertyKey> properties                   = propertyViewMap.get(propertyView);
-
-		if (properties == null) {
-			properties = new LinkedHashSet<PropertyKey>();
-		}
-		
-		// read-only
-		return Collections.unmodifiableSet(properties);
+	/**
+	 * Returns the keys of the given view as an array, for loops that run
+	 * once per rendered or serialized object. The returned array is shared
+	 * and must not be modified.
+	 *
+	 * @param type
+	 * @param propertyView
+	 * @return the property keys of the given view
+	 */
+	public static PropertyKey[] getPropertyArray(Class type, String propertyView) {
+		return metadataFor(type).getPropertyArray(propertyView);
 	}
 	
 	public static PropertyKey getPropertyKeyForDatabaseName(Class type, String dbName) {
@@ -670,8 +685,7 @@ public class EntityContext {
 	
 	public static PropertyKey getPropertyKeyForDatabaseName(Class type, String dbName, boolean createGeneric) {
 
-		Map<String, PropertyKey> classDBNamePropertyMap = getClassDBNamePropertyMapForType(type);
-		PropertyKey key                                 = classDBNamePropertyMap.get(dbName);
+		PropertyKey key = metadataFor(type).getPropertyKeyForDatabaseName(dbName);
 		
 		if (key == null) {
 			
@@ -681,7 +695,7 @@ public class EntityContext {
 			}
 
 			if (createGeneric) {
-				key = new GenericProperty(dbName);
+				key = getGenericProperty(dbName);
 			}
 		}
 		
@@ -698,8 +712,7 @@ public class EntityContext {
 			return null;
 		}
 
-		Map<String, PropertyKey> classJSNamePropertyMap = getClassJSNamePropertyMapForType(type);
-		PropertyKey key                                 = classJSNamePropertyMap.get(jsonName);
+		PropertyKey key = metadataFor(type).getPropertyKeyForJSONName(jsonName);
 		
 		if (key == null) {
 			
@@ -711,7 +724,7 @@ public class EntityContext {
 
 			if (createIfNotFound) {
 				
-				key = new GenericProperty(jsonName);
+				key = getGenericProperty(jsonName);
 			}
 		}
 		
@@ -719,41 +732,144 @@ public class EntityContext {
 	}
 
 	public static Set<PropertyValidator> getPropertyValidators(final SecurityContext securityContext, Class type, PropertyKey propertyKey) {
+		return metadataFor(type).getPropertyValidators(propertyKey);
+	}
 
-		Set<PropertyValidator> validators                     = new LinkedHashSet<PropertyValidator>();
-		Map<PropertyKey, Set<PropertyValidator>> validatorMap = null;
-		Class localType                                       = type;
+	public static Set<PropertyKey> getSearchableProperties(Class type, String index) {
+		return metadataFor(type).getSearchableProperties(index);
+	}
 
-		// try all superclasses
-		while (localType != null && !localType.equals(Object.class)) {
+	public static Map<String, Set<PropertyKey>> getSearchablePropertyMapForType(Class type) {
+		return metadataFor(type).getSearchablePropertyMap();
+	}
 
-			validatorMap = getPropertyValidatorMapForType(localType);
-			
-			Set<PropertyValidator> classValidators = validatorMap.get(propertyKey);
-			if(classValidators != null) {
-				validators.addAll(validatorMap.get(propertyKey));
+	// ----- private methods -----
+	/**
+	 * Returns the metadata snapshot for the given type, building it if
+	 * necessary. Snapshots are immutable, so the returned object can be
+	 * used without locking even if a registration replaces it later.
+	 */
+	private static TypeMetadata metadataFor(final Class type) {
+
+		if (type == null) {
+
+			// the concurrent map does not support null keys, and
+			// nothing is ever registered for a null type anyway
+			synchronized (lock) {
+				return buildMetadata(type);
 			}
+		}
+
+		TypeMetadata metadata = typeMetadata.get(type);
+		if (metadata == null) {
+
+			synchronized (lock) {
 
-			// try converters from interfaces as well
-			for(Class interfaceClass : getInterfacesForType(localType)) {
-				Set<PropertyValidator> interfaceValidators = getPropertyValidatorMapForType(interfaceClass).get(propertyKey);
-				if(interfaceValidators != null) {
-					validators.addAll(interfaceValidators);
+				metadata = typeMetadata.get(type);
+				if (metadata == null) {
+
+					metadata = buildMetadata(type);
+					typeMetadata.put(type, metadata);
 				}
 			}
-			
-//                      logger.log(Level.INFO, "Validator class {0} found for type {1}", new Object[] { clazz != null ? clazz.getSimpleName() : "null", localType } );
+		}
+
+		return metadata;
+	}
+
+	/**
+	 * Must be called while holding the registration lock.
+	 */
+	private static TypeMetadata buildMetadata(final Class type) {
+
+		Map<PropertyKey, Set<PropertyValidator>> validators = new LinkedHashMap<PropertyKey, Set<PropertyValidator>>();
+		Map<String, PropertyGroup> propertyGroups           = new LinkedHashMap<String, PropertyGroup>();
+		Set<Transformation<GraphObject>> transformations    = new TreeSet<Transformation<GraphObject>>();
+		Class localType                                     = type;
+
+		// collect validators, groups and transformations of all superclasses,
+		// for groups the most specific registration wins
+		while (localType != null && !localType.equals(Object.class)) {
+
+			collectValidators(getPropertyValidatorMapForType(localType), validators);
+			collectPropertyGroups(getPropertyGroupMapForType(localType), propertyGroups);
+
+			// try interfaces as well
+			for (Class interfaceClass : getInterfacesForType(localType)) {
+
+				collectValidators(getPropertyValidatorMapForType(interfaceClass), validators);
+				collectPropertyGroups(getPropertyGroupMapForType(interfaceClass), propertyGroups);
+			}
+
+			transformations.addAll(getEntityCreationTransformationsForType(localType));
+
 			// one level up :)
 			localType = localType.getSuperclass();
+		}
 
+		for (Entry<PropertyKey, Set<PropertyValidator>> entry : validators.entrySet()) {
+			entry.setValue(Collections.unmodifiableSet(entry.getValue()));
 		}
 
-		return validators;
+		return new TypeMetadata(getPropertyViewMapForType(type), getClassDBNamePropertyMapForType(type), getClassJSNamePropertyMapForType(type),
+			getRegisteredSearchablePropertyMap(type), validators, propertyGroups, getViewTransformationMapForType(type), transformations);
 	}
 
-	public static Set<PropertyKey> getSearchableProperties(Class type, String index) {
+	private static void collectValidators(final Map<PropertyKey, Set<PropertyValidator>> source, final Map<PropertyKey, Set<PropertyValidator>> target) {
+
+		for (Entry<PropertyKey, Set<PropertyValidator>> entry : source.entrySet()) {
+
+			Set<PropertyValidator> validators = target.get(entry.getKey());
+			if (validators == null) {
+
+				validators = new LinkedHashSet<PropertyValidator>();
+				target.put(entry.getKey(), validators);
+			}
+
+			validators.addAll(entry.getValue());
+		}
+	}
+
+	private static void collectPropertyGroups(final Map<String, PropertyGroup> source, final Map<String, PropertyGroup> target) {
+
+		for (Entry<String, PropertyGroup> entry : source.entrySet()) {
+
+			if (!target.containsKey(entry.getKey())) {
+
+				target.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding the registration lock.
+	 */
+	private static void invalidateMetadata() {
+		typeMetadata.clear();
+	}
+
+	private static PropertyKey getGenericProperty(final String name) {
+
+		// generic properties have no state apart from their name,
+		// so there is no need to create a new one for each lookup
+		PropertyKey key = genericPropertyCache.get(name);
+		if (key == null) {
+
+			key = new GenericProperty(name);
 
-		Set<PropertyKey> searchablePropertyMap = getSearchablePropertyMapForType(type).get(index);
+			if (genericPropertyCache.size() > MAX_CACHED_NAMES) {
+				genericPropertyCache.clear();
+			}
+
+			genericPropertyCache.put(name, key);
+		}
+
+		return key;
+	}
+
+	private static Set<PropertyKey> getRegisteredSearchableProperties(Class type, String index) {
+
+		Set<PropertyKey> searchablePropertyMap = getRegisteredSearchablePropertyMap(type).get(index);
 		if (searchablePropertyMap == null) {
 
 			searchablePropertyMap = new HashSet<PropertyKey>();
@@ -822,7 +938,7 @@ public class EntityContext {
 		return validatorMap;
 	}
 
-	public static Map<String, Set<PropertyKey>> getSearchablePropertyMapForType(Class type) {
+	private static Map<String, Set<PropertyKey>> getRegisteredSearchablePropertyMap(Class type) {
 
 		Map<String, Set<PropertyKey>> searchablePropertyMap = globalSearchablePropertyMap.get(type);
 
@@ -837,21 +953,6 @@ public class EntityContext {
 		return searchablePropertyMap;
 	}
 
-	private static Map<String, PropertyGroup> getAggregatedPropertyGroupMapForType(Class type) {
-
-		Map<String, PropertyGroup> groupMap = globalAggregatedPropertyGroupMap.get(type);
-
-		if (groupMap == null) {
-
-			groupMap = new LinkedHashMap<String, PropertyGroup>();
-
-			globalAggregatedPropertyGroupMap.put(type, groupMap);
-
-		}
-
-		return groupMap;
-	}
-
 	private static Map<String, PropertyGroup> getPropertyGroupMapForType(Class type) {
 
 		Map<String, PropertyGroup> groupMap = globalPropertyGroupMap.get(type);
@@ -888,13 +989,15 @@ public class EntityContext {
 		if(interfaces == null) {
 			
 			interfaces = new LinkedHashSet<Class>();
-			interfaceMap.put(type, interfaces);
 			
 			for(Class iface : type.getInterfaces()) {
 
 				reverseInterfaceMap.put(iface.getSimpleName(), iface);
 				interfaces.add(iface);
 			}
+
+			interfaces = Collections.unmodifiableSet(interfaces);
+			interfaceMap.put(type, interfaces);
 		}
 		
 		return interfaces;
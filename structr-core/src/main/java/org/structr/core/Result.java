@@ -18,18 +18,25 @@
  */
 package org.structr.core;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Encapsulates the result of a query operation.
  *
+ * A result can either wrap a list of objects, or a {@link ResultStream}
+ * that produces the objects while they are being consumed. A lazy result
+ * can be iterated exactly once using {@link #getIterable()}, all other
+ * accessors materialize the stream into a list first.
+ *
  * @author Christian Morgner
  * @author Axel Morgner
  */
 public class Result<T extends GraphObject> {
 
 	private List<T> results = null;
+	private ResultStream<T> stream = null;
 	private boolean isCollection = false;
 	private boolean isPrimitiveArray = false;
 	private boolean hasPartialContent = false;
@@ -54,16 +61,60 @@ public class Result<T extends GraphObject> {
 		this.resultCount = (rawResultCount != null ? rawResultCount : (results != null ? results.size() : 0));
 	}
 	
+	public Result(ResultStream<T> stream, boolean isCollection, boolean isPrimitiveArray) {
+		this.isCollection = isCollection;
+		this.isPrimitiveArray = isPrimitiveArray;
+		this.stream = stream;
+	}
+
+	public boolean isLazy() {
+		return stream != null;
+	}
+
+	/**
+	 * Returns the objects of this result without materializing a lazy
+	 * result. Note that lazy results can only be iterated once.
+	 *
+	 * @return the result objects
+	 */
+	public Iterable<T> getIterable() {
+
+		if (stream != null) {
+			return stream;
+		}
 
+		if (results != null) {
+			return results;
+		}
+
+		return Collections.EMPTY_LIST;
+	}
+
+	/**
+	 * Releases the resources of a lazy result that was not consumed
+	 * completely.
+	 */
+	public void close() {
+
+		if (stream != null) {
+			stream.close();
+		}
+	}
+	
 	public T get(final int i) {
-		return results.get(i);
+		return getResults().get(i);
 	}
 	
 	public boolean isEmpty() {
-		return results == null || results.isEmpty();
+		return getResults() == null || results.isEmpty();
 	}
 	
 	public List<T> getResults() {
+
+		if (stream != null) {
+			materialize();
+		}
+
 		return results;
 	}
 
@@ -92,6 +143,16 @@ public class Result<T extends GraphObject> {
 	}
 
 	public Integer getRawResultCount() {
+
+		if (stream != null) {
+
+			// the count of a lazy result is known after it was consumed
+			if (stream.getResultCount() != null) {
+				return stream.getResultCount();
+			}
+
+			materialize();
+		}
 		
 		if (resultCount != null) {
 			return resultCount;
@@ -171,4 +232,23 @@ public class Result<T extends GraphObject> {
 	public boolean hasPartialContent() {
 		return hasPartialContent;
 	}
+
+	// ----- private methods -----
+	private void materialize() {
+
+		List<T> list = new ArrayList<T>();
+
+		for (T obj : stream) {
+			list.add(obj);
+		}
+
+		stream.close();
+
+		if (resultCount == null) {
+			resultCount = stream.getResultCount();
+		}
+
+		results = list;
+		stream  = null;
+	}
 }
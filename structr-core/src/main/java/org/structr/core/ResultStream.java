@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core;
+
+/**
+ * A single-pass source of result objects that are produced while they
+ * are being consumed, see {@link Result#Result(ResultStream, boolean, boolean)}.
+ *
+ * @author Christian Morgner
+ */
+public interface ResultStream<T extends GraphObject> extends Iterable<T> {
+
+	/**
+	 * Returns the overall number of results, or null if the stream has
+	 * not been consumed completely yet.
+	 *
+	 * @return the overall result count or null
+	 */
+	public Integer getResultCount();
+
+	/**
+	 * Releases the resources held by this stream. Streams close themselves
+	 * when they are exhausted, so this is only needed if a consumer stops
+	 * early.
+	 */
+	public void close();
+}
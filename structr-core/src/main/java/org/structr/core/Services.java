@@ -79,6 +79,18 @@ public class Services {
 	public static final String FILES_PATH        = "files.path";
 	public static final String LOG_DATABASE_PATH = "log.database.path";
 	public static final String FOREIGN_TYPE      = "foreign.type.key";
+	public static final String INDEX_CONCURRENT_READS = "index.concurrent.reads";
+	public static final String INDEX_DELTA_UPDATES    = "index.delta.updates";
+	public static final String NODE_CACHE_SIZE   = "node.cache.size";
+	public static final String INDEX_REBUILD_THREADS = "index.rebuild.threads";
+	public static final String AGENT_THREADS         = "agent.threads";
+	public static final String AGENT_CONCURRENCY     = "agent.concurrency";
+	public static final String AGENT_RETRIES         = "agent.retries";
+	public static final String AGENT_RETRY_DELAY     = "agent.retry.delay";
+	public static final String TRANSACTION_RETRIES       = "transaction.retries";
+	public static final String TRANSACTION_BACKOFF       = "transaction.backoff";
+	public static final String TRANSACTION_BACKOFF_MAX   = "transaction.backoff.max";
+	public static final String TRANSACTION_BACKOFF_TOTAL = "transaction.backoff.total";
 	
 	// LogService-related constants
 	public static final String LOG_SERVICE_INTERVAL  = "structr.logging.interval";
@@ -97,6 +109,8 @@ public class Services {
 	// Security-related constants
 	public static final String SUPERUSER_USERNAME = "superuser.username";
 	public static final String SUPERUSER_PASSWORD = "superuser.password";
+	public static final String SESSION_CACHE_SIZE    = "session.cache.size";
+	public static final String SESSION_CACHE_TIMEOUT = "session.cache.timeout";
 
 	public static final String TCP_PORT           = "tcp.port";
 	public static final String TMP_PATH           = "tmp.path";
@@ -104,6 +118,7 @@ public class Services {
 	
 	public static final String JSON_OUTPUT_DEPTH  = "json.depth";
 	public static final String JSON_INDENTATION   = "json.indentation";
+	public static final String REST_BATCH_SIZE    = "rest.batch.size";
 	
 	// geocoding
 	public static final String GEOCODING_PROVIDER = "geocoding.provider";
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * An immutable snapshot of the metadata that is registered for a single
+ * entity type in {@link EntityContext}, with the inherited registrations
+ * of superclasses and interfaces already merged in.
+ *
+ * Snapshots are built on first access and replaced as a whole when a
+ * registration changes, so lookups are plain reads on maps and arrays
+ * that are never modified after construction.
+ *
+ * @author Christian Morgner
+ */
+class TypeMetadata {
+
+	private static final PropertyKey[] EMPTY_PROPERTY_ARRAY = new PropertyKey[0];
+
+	private final Map<String, Set<PropertyKey>> views                     = new LinkedHashMap<String, Set<PropertyKey>>();
+	private final Map<String, PropertyKey[]> viewArrays                   = new LinkedHashMap<String, PropertyKey[]>();
+	private final Map<String, Set<PropertyKey>> searchableProperties      = new LinkedHashMap<String, Set<PropertyKey>>();
+	private Map<String, Set<PropertyKey>> searchablePropertyMap           = null;
+	private Map<String, PropertyKey> dbNameMap                            = null;
+	private Map<String, PropertyKey> jsonNameMap                          = null;
+	private Map<PropertyKey, Set<PropertyValidator>> validators           = null;
+	private Map<String, PropertyGroup> propertyGroups                     = null;
+	private Map<String, ViewTransformation> viewTransformations           = null;
+	private Set<Transformation<GraphObject>> creationTransformations      = null;
+
+	TypeMetadata(final Map<String, Set<PropertyKey>> views, final Map<String, PropertyKey> dbNameMap, final Map<String, PropertyKey> jsonNameMap,
+		     final Map<String, Set<PropertyKey>> searchableProperties, final Map<PropertyKey, Set<PropertyValidator>> validators,
+		     final Map<String, PropertyGroup> propertyGroups, final Map<String, ViewTransformation> viewTransformations,
+		     final Set<Transformation<GraphObject>> creationTransformations) {
+
+		for (Entry<String, Set<PropertyKey>> entry : views.entrySet()) {
+
+			Set<PropertyKey> keys = entry.getValue();
+
+			this.views.put(entry.getKey(), Collections.unmodifiableSet(new LinkedHashSet<PropertyKey>(keys)));
+			this.viewArrays.put(entry.getKey(), keys.toArray(new PropertyKey[keys.size()]));
+		}
+
+		for (Entry<String, Set<PropertyKey>> entry : searchableProperties.entrySet()) {
+
+			this.searchableProperties.put(entry.getKey(), Collections.unmodifiableSet(new LinkedHashSet<PropertyKey>(entry.getValue())));
+		}
+
+		this.searchablePropertyMap   = Collections.unmodifiableMap(this.searchableProperties);
+		this.dbNameMap               = Collections.unmodifiableMap(new LinkedHashMap<String, PropertyKey>(dbNameMap));
+		this.jsonNameMap             = Collections.unmodifiableMap(new LinkedHashMap<String, PropertyKey>(jsonNameMap));
+		this.validators              = Collections.unmodifiableMap(new LinkedHashMap<PropertyKey, Set<PropertyValidator>>(validators));
+		this.propertyGroups          = Collections.unmodifiableMap(propertyGroups);
+		this.viewTransformations     = Collections.unmodifiableMap(new LinkedHashMap<String, ViewTransformation>(viewTransformations));
+		this.creationTransformations = Collections.unmodifiableSet(creationTransformations);
+	}
+
+	public Set<PropertyKey> getPropertySet(final String propertyView) {
+
+		Set<PropertyKey> keys = views.get(propertyView);
+		if (keys != null) {
+
+			return keys;
+		}
+
+		return Collections.emptySet();
+	}
+
+	public PropertyKey[] getPropertyArray(final String propertyView) {
+
+		PropertyKey[] keys = viewArrays.get(propertyView);
+		if (keys != null) {
+
+			return keys;
+		}
+
+		return EMPTY_PROPERTY_ARRAY;
+	}
+
+	public PropertyKey getPropertyKeyForDatabaseName(final String dbName) {
+		return dbNameMap.get(dbName);
+	}
+
+	public PropertyKey getPropertyKeyForJSONName(final String jsonName) {
+		return jsonNameMap.get(jsonName);
+	}
+
+	public Set<PropertyKey> getSearchableProperties(final String index) {
+
+		Set<PropertyKey> keys = searchableProperties.get(index);
+		if (keys != null) {
+
+			return keys;
+		}
+
+		return Collections.emptySet();
+	}
+
+	public Map<String, Set<PropertyKey>> getSearchablePropertyMap() {
+		return searchablePropertyMap;
+	}
+
+	public Set<PropertyValidator> getPropertyValidators(final PropertyKey key) {
+
+		Set<PropertyValidator> keyValidators = validators.get(key);
+		if (keyValidators != null) {
+
+			return keyValidators;
+		}
+
+		return Collections.emptySet();
+	}
+
+	public PropertyGroup getPropertyGroup(final String key) {
+		return propertyGroups.get(key);
+	}
+
+	public ViewTransformation getViewTransformation(final String view) {
+		return viewTransformations.get(view);
+	}
+
+	public Set<Transformation<GraphObject>> getEntityCreationTransformations() {
+		return creationTransformations;
+	}
+}
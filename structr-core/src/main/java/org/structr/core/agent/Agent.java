@@ -16,18 +16,11 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with structr.  If not, see <http://www.gnu.org/licenses/>.
  */
-
-
 package org.structr.core.agent;
 
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,199 +29,71 @@ import java.util.logging.Logger;
 /**
  * Abstract base class for all agents.
  *
+ * Agents don't own a thread. The {@link AgentService} keeps a small pool
+ * of instances per agent type and hands each instance one task at a time
+ * on one of its worker threads, so an agent instance is never used by two
+ * threads at once.
+ *
  * @author Christian Morgner
  */
-public abstract class Agent extends Thread implements StatusInfo {
+public abstract class Agent implements StatusInfo {
 
 	public static final String AVERAGE_EXECUTION_TIME = "average_execution_time";
 	public static final String EXECUTION_STATUS       = "execution_status";
-	public static final String MAX_QUEUE_SIZE         = "max_queue_size";
 	private static final Logger logger                = Logger.getLogger(Agent.class.getName());
 
 	//~--- fields ---------------------------------------------------------
 
-	private final AtomicBoolean acceptingTasks = new AtomicBoolean(true);
-	private AgentService agentService          = null;
-	private long averageExecutionTime          = 0;
-	private Task currentTask                   = null;
-	private long lastStartTime                 = 0;
-	private int maxAgents                      = 4;
-	private int maxQueueSize                   = 10;
-	private final AtomicBoolean suspended      = new AtomicBoolean(false);
-	private final Queue<Task> taskQueue        = new ConcurrentLinkedQueue<Task>();
+	private AgentService agentService   = null;
+	private long averageExecutionTime   = 0;
+	private volatile Task currentTask   = null;
+	private String name                 = getClass().getSimpleName();
 
 	//~--- methods --------------------------------------------------------
 
-	@Override
-	public final void run() {
-
-		agentService.notifyAgentStart(this);
-
-		do {
-
-			while (suspended.get()) {
-
-				Thread.yield();
-
-			}
-
-			synchronized (taskQueue) {
-
-				currentTask = taskQueue.poll();
-
-			}
-
-			if (currentTask != null) {
-
-				lastStartTime = System.nanoTime();
-
-				ReturnValue ret = null;
-
-				try {
-					ret = processTask(currentTask);
-				} catch (Throwable t) {
-
-					// someone killed us or the task processing failed..
-					// Log this!!
-					logger.log(Level.SEVERE, "Processing task {0} failed. Maybe someone killed us?", currentTask.getType());
-					t.printStackTrace();
-				}
-
-				if (ret != null) {
-
-					// handle return value
-					switch (ret) {
-
-						case Success :
-						case Abort :
-
-							// task finished, nothing to do in these cases
-							break;
-
-						case Retry :
-
-							// TODO: schedule task for re-execution
-							break;
-
-					}
-				}
-
-				long endTime = System.nanoTime();
-
-				// calc. average execution time
-				averageExecutionTime += endTime;
-				averageExecutionTime /= 2;
-
-			} else {
-
-				// queue is empty, quit.
-				acceptingTasks.set(false);
-			}
-
-		} while (acceptingTasks.get());
-
-		// call beforeShutdown to allow agents to clean up
-		beforeShutdown();
-		agentService.notifyAgentStop(this);
-	}
-
-	public final boolean assignTask(Task task) {
+	/**
+	 * Processes the given task, called by the worker threads of the
+	 * {@link AgentService}.
+	 *
+	 * @param task
+	 * @return the return value of {@link #processTask}, or null if the
+	 * task processing failed
+	 */
+	final ReturnValue execute(final Task task) {
 
-		// TODO: do type check here
-		if (canHandleMore() && acceptingTasks.get()) {
+		ReturnValue ret = null;
+		long startTime  = System.nanoTime();
 
-			synchronized (taskQueue) {
+		currentTask = task;
 
-				taskQueue.add(task);
+		try {
+			ret = processTask(task);
+		} catch (Throwable t) {
 
-			}
+			logger.log(Level.SEVERE, "Processing task " + task.getType() + " failed", t);
 
-			return (true);
+		} finally {
 
+			currentTask = null;
 		}
 
-		return (false);
-	}
-
-	public final void killAgent() {
-
-		// stop accepting tasks
-		acceptingTasks.set(false);
-
-		// clear queue
-		taskQueue.clear();
-
-		// interrupt running process..
-		// not sure if this works... see Thread.interrupt()'s description!
-		// may not work if the processTask method itself catches the interrupt..
-		this.interrupt();
-	}
+		long executionTime = System.nanoTime() - startTime;
 
-	public final void suspendAgent() {
+		// running average over the tasks processed by this instance
+		averageExecutionTime = averageExecutionTime == 0 ? executionTime : (averageExecutionTime + executionTime) / 2;
 
-		acceptingTasks.set(false);
-		suspended.set(true);
-	}
-
-	public final void resumeAgent() {
-
-		acceptingTasks.set(true);
-		suspended.set(false);
+		return ret;
 	}
 
+	/**
+	 * Called when the agent service shuts down, to allow agents to clean
+	 * up.
+	 */
 	protected void beforeShutdown() {
 
 		// override me
 	}
 
-	// </editor-fold>
-
-	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private boolean canHandleMore() {
-
-//              return (taskQueue.isEmpty());
-		int size = 0;
-
-		synchronized (taskQueue) {
-
-			// FIXME: size may not be a constant time operation! slow?
-			size = taskQueue.size();
-		}
-
-		// queue is empty, assume new agent
-		if (size == 0) {
-
-			return (true);
-
-		}
-
-		long actualExecutionTime = System.nanoTime() - lastStartTime;
-
-		// calculate thresholds for queue size adaption
-		long upperThreshold = averageExecutionTime + (averageExecutionTime / 2);
-		long lowerThreshold = averageExecutionTime - (averageExecutionTime / 2);
-
-		if ((actualExecutionTime > upperThreshold) && (maxQueueSize > 2)) {
-
-			// FIXME
-			maxQueueSize -= 2;
-
-			// do not take the next task
-			return (false);
-		} else if ((actualExecutionTime < lowerThreshold) && (maxQueueSize < 200)) {
-
-			// FIXME
-			maxQueueSize += 2;
-
-			// can take the next task
-			return (true);
-		}
-
-		return (size < maxQueueSize);
-	}
-
-	// </editor-fold>
-
 	/**
 	 * This method will be called by the AgentService
 	 * @param task
@@ -241,25 +106,12 @@ public abstract class Agent extends Thread implements StatusInfo {
 		return (currentTask);
 	}
 
-	public final List<Task> getTaskQueue() {
-
-		List<Task> ret = new LinkedList<Task>();
-
-		ret.addAll(taskQueue);
-
-		return (ret);
-	}
-
-	public final int getMaxQueueSize() {
-		return (maxQueueSize);
-	}
-
 	public final long getAverageExecutionTime() {
 		return (averageExecutionTime);
 	}
 
-	public int getMaxAgents() {
-		return (maxAgents);
+	public String getName() {
+		return (name);
 	}
 
 	// ----- interface StatusInfo -----
@@ -270,50 +122,33 @@ public abstract class Agent extends Thread implements StatusInfo {
 
 			return (getAverageExecutionTime());
 
-		} else if (key.equals(MAX_QUEUE_SIZE)) {
-
-			return (getMaxQueueSize());
-
 		} else if (key.equals(EXECUTION_STATUS)) {
 
-			// TODO.
+			return (currentTask != null ? "running" : "idle");
 		}
 
 		return (null);
 	}
 
-	// </editor-fold>
-
 	// <editor-fold defaultstate="collapsed" desc="protected methods">
 	protected AgentService getBlackboardService() {
 		return (agentService);
 	}
 
+	// </editor-fold>
+
 	// <editor-fold defaultstate="collapsed" desc="abstract methods">
 	public abstract Class getSupportedTaskType();
 
-	public final boolean isSuspended() {
-		return (suspended.get());
-	}
-
-	public final boolean isAcceptingTasks() {
-		return (acceptingTasks.get());
-	}
+	// </editor-fold>
 
 	//~--- set methods ----------------------------------------------------
 
-	// <editor-fold defaultstate="expanded" desc="public methods">
 	public final void setAgentService(AgentService service) {
-
-		// NOTE: this is important! We do not want running tasks to die when the
-		// server is going down!
-		this.setDaemon(false);
-
 		this.agentService = service;
-
-		// initialize lastStartTime
-		lastStartTime = System.nanoTime();
 	}
 
-	// </editor-fold>
+	public void setName(final String name) {
+		this.name = name;
+	}
 }
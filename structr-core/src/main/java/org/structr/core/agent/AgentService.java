@@ -16,10 +16,9 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with structr.  If not, see <http://www.gnu.org/licenses/>.
  */
-
-
 package org.structr.core.agent;
 
+import org.structr.common.SecurityContext;
 import org.structr.core.Command;
 import org.structr.core.RunnableService;
 import org.structr.core.Services;
@@ -29,25 +28,53 @@ import org.structr.core.module.GetAgentsCommand;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.structr.common.SecurityContext;
-import org.structr.common.error.FrameworkException;
 
 //~--- classes ----------------------------------------------------------------
 
 /**
  * The agent service main class.
- * 
+ *
+ * Tasks are queued per task type, ordered by {@link Task#priority()}
+ * (higher values first) and submission order. The service thread blocks
+ * until a task can be dispatched and hands it to a fixed pool of worker
+ * threads, the size of which is set by <code>agent.threads</code> in
+ * structr.conf (default: number of processors).
+ *
+ * The number of tasks of one type that may run at the same time is limited
+ * by <code>agent.concurrency</code> (default: half of the worker threads),
+ * or <code>agent.concurrency.&lt;AgentName&gt;</code> for a single agent
+ * type, so a burst of one task type cannot starve the others.
+ *
+ * A task that is equal to a task which is still waiting in the queue is
+ * ignored, see {@link Task}.
+ *
+ * A task for which the agent returns {@link ReturnValue#Retry} is queued
+ * again after <code>agent.retry.delay</code> milliseconds (default: 1000),
+ * doubling the delay on each attempt, until it has been retried
+ * <code>agent.retries</code> times (default: 3). After that, it counts as
+ * failed. A task that waits for a retry is considered pending.
+ *
  * @author Christian Morgner
  */
 public class AgentService extends Thread implements RunnableService {
@@ -56,19 +83,39 @@ public class AgentService extends Thread implements RunnableService {
 
 	//~--- fields ---------------------------------------------------------
 
-	private int maxAgents                               = 4;    // TODO: make configurable
-	private final Map<Class, List<Agent>> runningAgents = new ConcurrentHashMap<Class, List<Agent>>(10, 0.9f, 8);
-	private final Map<Class, Class> agentClassCache     = new ConcurrentHashMap<Class, Class>(10, 0.9f, 8);
-	private Set<Class> supportedCommands                = null;
-	private final Queue<Task> taskQueue                 = new ConcurrentLinkedQueue<Task>();
-	private boolean run                                 = false;
+	private final ConcurrentMap<Class, TaskQueue> taskQueues      = new ConcurrentHashMap<Class, TaskQueue>(10, 0.9f, 8);
+	private final ConcurrentMap<Class, List<Agent>> runningAgents = new ConcurrentHashMap<Class, List<Agent>>(10, 0.9f, 8);
+	private final Map<Class, Class> agentClassCache               = new ConcurrentHashMap<Class, Class>(10, 0.9f, 8);
+	private final ReentrantLock lock                              = new ReentrantLock();
+	private final Condition dispatchable                          = lock.newCondition();
+
+	// guarded by lock
+	private final Set<Task> pendingTasks = new HashSet<Task>();
+	private long sequence                = 0;
+	private int activeWorkers            = 0;
+	private long submitted               = 0;
+	private long deduplicated            = 0;
+	private long rejected                = 0;
+	private long completed               = 0;
+	private long failed                  = 0;
+	private long retried                 = 0;
+
+	private Set<Class> supportedCommands = null;
+	private ExecutorService workers      = null;
+	private int threads                  = 0;
+	private int defaultConcurrency       = 0;
+	private volatile boolean run         = false;
+
+	private ScheduledExecutorService retryTimer = null;
+	private int maxRetries                      = 0;
+	private long retryDelay                     = 0;
 
 	//~--- constructors ---------------------------------------------------
 
 	public AgentService() {
 
 		super("AgentService");
-		supportedCommands = new LinkedHashSet<Class>();
+		supportedCommands = new HashSet<Class>();
 		supportedCommands.add(ProcessTaskCommand.class);
 	}
 
@@ -76,11 +123,40 @@ public class AgentService extends Thread implements RunnableService {
 
 	public void processTask(Task task) {
 
-		synchronized (taskQueue) {
+		TaskQueue taskQueue = getTaskQueue(task.getClass());
+
+		lock.lock();
+
+		try {
+
+			if (taskQueue == null) {
+
+				rejected++;
+				logger.log(Level.WARNING, "No agent found for task {0}, ignoring it", task.getType());
+
+				return;
+			}
+
+			if (!pendingTasks.add(task)) {
+
+				deduplicated++;
+				logger.log(Level.FINE, "Task {0} is already queued, ignoring it", task);
 
-			taskQueue.add(task);
-			logger.log(Level.FINE, "Task {0} added to task queue", task);
+				return;
+			}
+
+			taskQueue.queue.add(new QueuedTask(taskQueue, task, sequence++, 0));
+			taskQueue.submitted++;
+			submitted++;
+
+			dispatchable.signal();
+
+		} finally {
+
+			lock.unlock();
 		}
+
+		logger.log(Level.FINE, "Task {0} added to task queue", task);
 	}
 
 	public Agent findAgentForTask(Task task) {
@@ -91,7 +167,7 @@ public class AgentService extends Thread implements RunnableService {
 
 			for (Agent agent : agents) {
 
-				if (agent.getTaskQueue().contains(task)) {
+				if (task.equals(agent.getCurrentTask())) {
 					return (agent);
 				}
 			}
@@ -100,40 +176,72 @@ public class AgentService extends Thread implements RunnableService {
 		return (null);
 	}
 
-	@Override
-	public void run() {
+	/**
+	 * Returns true if the given task is waiting in the queue or being
+	 * processed right now.
+	 *
+	 * @param task
+	 * @return whether the task is queued or running
+	 */
+	public boolean isActive(Task task) {
 
-		logger.log(Level.INFO, "AgentService started");
+		lock.lock();
 
-		while (run) {
+		try {
 
-			Task nextTask = taskQueue.poll();
-			if (nextTask != null) {
-				
-				assignNextAgentForTask(nextTask);
+			if (pendingTasks.contains(task)) {
+
+				return true;
 			}
 
-			// let others act
-			try { Thread.sleep(10); } catch(Throwable ignore) {}
+		} finally {
+
+			lock.unlock();
 		}
+
+		return findAgentForTask(task) != null;
 	}
 
-	public void notifyAgentStart(Agent agent) {
+	@Override
+	public void run() {
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+		logger.log(Level.INFO, "AgentService started with {0} worker threads", threads);
 
-		synchronized (agents) {
-			agents.add(agent);
-		}
-	}
+		while (run) {
 
-	public void notifyAgentStop(Agent agent) {
+			QueuedTask nextTask = null;
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+			lock.lock();
 
-		synchronized (agents) {
-			agents.remove(agent);
+			try {
+
+				while (run && (nextTask = pollNextTask()) == null) {
+					dispatchable.await();
+				}
+
+			} catch (InterruptedException iex) {
+
+				break;
+
+			} finally {
+
+				lock.unlock();
+			}
+
+			if (nextTask != null) {
+
+				try {
+					workers.execute(new Worker(nextTask));
+
+				} catch (RejectedExecutionException rex) {
+
+					// service was stopped in the meantime
+					finished(nextTask, null, 0, 0, null);
+				}
+			}
 		}
+
+		logger.log(Level.INFO, "AgentService stopped");
 	}
 
 	// <editor-fold defaultstate="collapsed" desc="interface RunnableService">
@@ -143,21 +251,101 @@ public class AgentService extends Thread implements RunnableService {
 	}
 
 	@Override
-	public void initialize(Map<String, String> context) {}
+	public void initialize(Map<String, String> context) {
+
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		threads            = Math.max(1, parseInt(Services.AGENT_THREADS, processors));
+		defaultConcurrency = Math.max(1, parseInt(Services.AGENT_CONCURRENCY, Math.max(1, threads / 2)));
+		maxRetries         = Math.max(0, parseInt(Services.AGENT_RETRIES, 3));
+		retryDelay         = Math.max(0, parseInt(Services.AGENT_RETRY_DELAY, 1000));
+	}
 
 	@Override
-	public void shutdown() {}
+	public void shutdown() {
+
+		if (workers != null) {
+
+			try {
+
+				// let running tasks finish
+				if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+
+					logger.log(Level.WARNING, "Agent tasks still running after 30 seconds");
+				}
+
+			} catch (InterruptedException iex) {}
+		}
+
+		for (TaskQueue taskQueue : taskQueues.values()) {
+
+			List<Agent> agents = null;
+
+			lock.lock();
+
+			try {
+
+				agents = new LinkedList<Agent>(taskQueue.idleAgents);
+				taskQueue.idleAgents.clear();
+
+			} finally {
+
+				lock.unlock();
+			}
+
+			for (Agent agent : agents) {
+				agent.beforeShutdown();
+			}
+		}
+	}
 
 	@Override
 	public void startService() {
 
-		run = true;
+		// NOTE: worker threads are no daemon threads, we do not want running
+		// tasks to die when the server is going down!
+		workers    = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+		retryTimer = Executors.newSingleThreadScheduledExecutor(new RetryThreadFactory());
+		run        = true;
+
 		this.start();
 	}
 
 	@Override
 	public void stopService() {
-		run = false;
+
+		lock.lock();
+
+		try {
+
+			run = false;
+
+			if (!pendingTasks.isEmpty()) {
+
+				logger.log(Level.INFO, "Discarding {0} queued tasks", pendingTasks.size());
+			}
+
+			// discarded tasks must not block equal tasks after a restart
+			for (TaskQueue taskQueue : taskQueues.values()) {
+				taskQueue.queue.clear();
+			}
+
+			pendingTasks.clear();
+
+			dispatchable.signalAll();
+
+		} finally {
+
+			lock.unlock();
+		}
+
+		if (retryTimer != null) {
+			retryTimer.shutdownNow();
+		}
+
+		if (workers != null) {
+			workers.shutdown();
+		}
 	}
 
 	@Override
@@ -168,100 +356,244 @@ public class AgentService extends Thread implements RunnableService {
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private void assignNextAgentForTask(Task nextTask) {
+	/**
+	 * Removes and returns the next task that can be dispatched, or null if
+	 * all workers are busy or no task type is below its concurrency limit.
+	 * The caller must hold the lock.
+	 */
+	private QueuedTask pollNextTask() {
 
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+		if (activeWorkers >= threads) {
 
-		// need to synchronize on agents
-		synchronized (agents) {
+			return null;
+		}
 
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+		TaskQueue next = null;
 
-				if (agent.assignTask(nextTask)) {
+		for (TaskQueue taskQueue : taskQueues.values()) {
 
-					// ok, task is assigned
-					logger.log(Level.FINE, "Task assigned to agent {0}", agent.getName());
+			if (taskQueue.running < taskQueue.concurrency && !taskQueue.queue.isEmpty()) {
 
-					return;
+				if (next == null || taskQueue.queue.peek().compareTo(next.queue.peek()) < 0) {
+					next = taskQueue;
 				}
 			}
 		}
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+		if (next == null) {
+
+			return null;
+		}
+
+		QueuedTask queuedTask = next.queue.poll();
+
+		pendingTasks.remove(queuedTask.task);
+
+		next.running++;
+		activeWorkers++;
+
+		return queuedTask;
+	}
+
+	/**
+	 * Called by the workers after a task has finished. A null result means
+	 * that the task could not be processed.
+	 */
+	private void finished(final QueuedTask queuedTask, final Agent agent, final long waitTime, final long executionTime, final ReturnValue result) {
+
+		TaskQueue taskQueue = queuedTask.taskQueue;
+
+		lock.lock();
+
+		try {
+
+			taskQueue.running--;
+			activeWorkers--;
+
+			taskQueue.totalWaitTime      += waitTime;
+			taskQueue.maxWaitTime         = Math.max(taskQueue.maxWaitTime, waitTime);
+			taskQueue.totalExecutionTime += executionTime;
+
+			if (ReturnValue.Retry.equals(result) && scheduleRetry(queuedTask)) {
+
+				taskQueue.retried++;
+				retried++;
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+			} else if (result != null && !ReturnValue.Retry.equals(result)) {
+
+				taskQueue.completed++;
+				completed++;
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
 			} else {
 
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
-				}
+				taskQueue.failed++;
+				failed++;
 			}
-		} else {
 
-			logger.log(Level.FINE, "Overall agents limit reached, re-queueing task");
-
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
+			if (agent != null) {
+				taskQueue.idleAgents.add(agent);
 			}
+
+			dispatchable.signal();
+
+		} finally {
+
+			lock.unlock();
 		}
 	}
 
 	/**
-	 * Creates a new agent for the given Task. Note that the agent must be
-	 * started manually after creation.
+	 * Schedules the given task for another attempt, if it has retries
+	 * left. The task is registered as pending right away, so that equal
+	 * tasks are ignored in the meantime. The caller must hold the lock.
 	 *
-	 * @param forTask
-	 * @return a new agent for the given task
+	 * @return whether the task will be retried
 	 */
-	private Agent createAgent(Task forTask) {
+	private boolean scheduleRetry(final QueuedTask queuedTask) {
+
+		if (!run) {
 
-		Agent agent = null;
+			return false;
+		}
+
+		if (queuedTask.attempt >= maxRetries) {
+
+			logger.log(Level.WARNING, "Task {0} failed after {1} retries", new Object[] { queuedTask.task, queuedTask.attempt });
+
+			return false;
+		}
+
+		// an equal task has been submitted while this one was running
+		if (!pendingTasks.add(queuedTask.task)) {
+
+			return true;
+		}
+
+		final QueuedTask retry = new QueuedTask(queuedTask.taskQueue, queuedTask.task, sequence++, queuedTask.attempt + 1);
+		long delay             = retryDelay << Math.min(queuedTask.attempt, 16);
 
 		try {
 
-			agent = lookupAgent(forTask);
+			retryTimer.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					requeue(retry);
+				}
+
+			}, delay, TimeUnit.MILLISECONDS);
+
+		} catch (RejectedExecutionException rex) {
+
+			// service was stopped in the meantime
+			pendingTasks.remove(queuedTask.task);
+
+			return false;
+		}
+
+		logger.log(Level.FINE, "Retrying task {0} in {1} ms", new Object[] { queuedTask.task, delay });
+
+		return true;
+	}
+
+	/**
+	 * Puts a task whose retry delay has expired back into its queue.
+	 */
+	private void requeue(final QueuedTask queuedTask) {
 
+		lock.lock();
+
+		try {
+
+			// the queued tasks have been discarded if the service was stopped
+			if (run && pendingTasks.contains(queuedTask.task)) {
+
+				queuedTask.taskQueue.queue.add(queuedTask);
+
+				dispatchable.signal();
+			}
+
+		} finally {
+
+			lock.unlock();
+		}
+	}
+
+	private Agent acquireAgent(final TaskQueue taskQueue) {
+
+		lock.lock();
+
+		try {
+
+			Agent agent = taskQueue.idleAgents.poll();
 			if (agent != null) {
 
-				// register us in agent..
-				agent.setAgentService(this);
+				return agent;
 			}
 
-		} catch (Exception ex) {
+		} finally {
 
-			// TODO: handle exception etc..
+			lock.unlock();
 		}
 
-		return (agent);
+		try {
+
+			Agent agent = (Agent) taskQueue.agentClass.newInstance();
+
+			// register us in agent..
+			agent.setAgentService(this);
+
+			return agent;
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to create agent {0}: {1}", new Object[] { taskQueue.agentClass.getName(), t.getMessage() });
+		}
+
+		return null;
+	}
+
+	private TaskQueue getTaskQueue(final Class taskClass) {
+
+		TaskQueue taskQueue = taskQueues.get(taskClass);
+		if (taskQueue == null) {
+
+			Class agentClass = lookupAgentClass(taskClass);
+			if (agentClass == null) {
+
+				return null;
+			}
+
+			String agentName   = agentClass.getSimpleName();
+			int concurrency    = Math.min(threads, Math.max(1, parseInt(Services.AGENT_CONCURRENCY + "." + agentName, defaultConcurrency)));
+			TaskQueue newQueue = new TaskQueue(agentClass, concurrency);
+
+			taskQueue = taskQueues.putIfAbsent(taskClass, newQueue);
+			if (taskQueue == null) {
+
+				logger.log(Level.FINE, "Running at most {0} tasks of type {1} at the same time", new Object[] { concurrency, taskClass.getSimpleName() });
+
+				taskQueue = newQueue;
+			}
+		}
+
+		return taskQueue;
 	}
 
-	private Agent lookupAgent(Task task) {
+	private Class lookupAgentClass(final Class taskClass) {
 
-		// FIXME: superuser security context
-		final SecurityContext securityContext = SecurityContext.getSuperUserInstance();
-		Class taskClass  = task.getClass();
-		Agent agent      = null;
 		Class agentClass = agentClassCache.get(taskClass);
 
 		// cache miss
 		if (agentClass == null) {
 
+			// FIXME: superuser security context
+			final SecurityContext securityContext               = SecurityContext.getSuperUserInstance();
 			Map<String, Class<? extends Agent>> agentClassesMap = Services.command(securityContext, GetAgentsCommand.class).execute();
 
 			for (Entry<String, Class<? extends Agent>> classEntry : agentClassesMap.entrySet()) {
 
-				Class<? extends Agent> supportedAgentClass = agentClassesMap.get(classEntry.getKey());
+				Class<? extends Agent> supportedAgentClass = classEntry.getValue();
 
 				try {
 
@@ -279,15 +611,17 @@ public class AgentService extends Thread implements RunnableService {
 			}
 		}
 
-		if (agentClass != null) {
+		return agentClass;
+	}
 
-			try {
-				agent = (Agent) agentClass.newInstance();
-			} catch (IllegalAccessException iaex) {}
-			catch (InstantiationException itex) {}
+	private int parseInt(final String key, final int defaultValue) {
+
+		try { return Integer.parseInt(Services.getConfigurationValue(key, Integer.toString(defaultValue))); } catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default {1}", new Object[] { key, defaultValue });
 		}
 
-		return (agent);
+		return defaultValue;
 	}
 
 	// </editor-fold>
@@ -295,31 +629,100 @@ public class AgentService extends Thread implements RunnableService {
 	//~--- get methods ----------------------------------------------------
 
 	/**
-	 * Returns the current queue of remaining tasks.
+	 * Returns a snapshot of the current queue of remaining tasks.
 	 * @return
 	 */
 	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
+
+		lock.lock();
+
+		try {
+
+			return new LinkedList<Task>(pendingTasks);
+
+		} finally {
+
+			lock.unlock();
+		}
 	}
 
 	/**
-	 * Returns the current collection of running agents.
+	 * Returns the agents that are currently processing a task.
 	 * @return
 	 */
 	public Map<Class, List<Agent>> getRunningAgents() {
 		return (runningAgents);
 	}
 
+	/**
+	 * Returns queue depth, throughput and latency figures, overall and
+	 * per task type. Wait time is the time between submission and start
+	 * of a task.
+	 *
+	 * @return the statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		Map<String, Object> types = new LinkedHashMap<String, Object>();
+
+		lock.lock();
+
+		try {
+
+			stats.put("threads", threads);
+			stats.put("activeWorkers", activeWorkers);
+			stats.put("queued", pendingTasks.size());
+			stats.put("submitted", submitted);
+			stats.put("deduplicated", deduplicated);
+			stats.put("rejected", rejected);
+			stats.put("completed", completed);
+			stats.put("failed", failed);
+			stats.put("retried", retried);
+
+			for (Entry<Class, TaskQueue> entry : taskQueues.entrySet()) {
+
+				TaskQueue taskQueue           = entry.getValue();
+				Map<String, Object> typeStats = new LinkedHashMap<String, Object>();
+				long finished                 = taskQueue.completed + taskQueue.failed + taskQueue.retried;
+
+				typeStats.put("agent", taskQueue.agentClass.getSimpleName());
+				typeStats.put("concurrency", taskQueue.concurrency);
+				typeStats.put("queued", taskQueue.queue.size());
+				typeStats.put("running", taskQueue.running);
+				typeStats.put("submitted", taskQueue.submitted);
+				typeStats.put("completed", taskQueue.completed);
+				typeStats.put("failed", taskQueue.failed);
+				typeStats.put("retried", taskQueue.retried);
+				typeStats.put("averageWaitMillis", finished > 0 ? TimeUnit.NANOSECONDS.toMillis(taskQueue.totalWaitTime / finished) : 0);
+				typeStats.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(taskQueue.maxWaitTime));
+				typeStats.put("averageExecutionMillis", finished > 0 ? TimeUnit.NANOSECONDS.toMillis(taskQueue.totalExecutionTime / finished) : 0);
+
+				types.put(entry.getKey().getSimpleName(), typeStats);
+			}
+
+		} finally {
+
+			lock.unlock();
+		}
+
+		stats.put("types", types);
+
+		return stats;
+	}
+
 	private List<Agent> getRunningAgentsForTask(Class taskClass) {
 
 		List<Agent> agents = runningAgents.get(taskClass);
 
 		if (agents == null) {
 
-			agents = Collections.synchronizedList(new LinkedList<Agent>());
+			List<Agent> newAgents = Collections.synchronizedList(new LinkedList<Agent>());
 
-			// Hashtable is synchronized
-			runningAgents.put(taskClass, agents);
+			agents = runningAgents.putIfAbsent(taskClass, newAgents);
+			if (agents == null) {
+				agents = newAgents;
+			}
 		}
 
 		return (agents);
@@ -329,4 +732,135 @@ public class AgentService extends Thread implements RunnableService {
 	public boolean isRunning() {
 		return (this.run);
 	}
+
+	//~--- inner classes --------------------------------------------------
+
+	/**
+	 * The queued tasks of one task type, together with the running count
+	 * and statistics. All fields are guarded by the service lock.
+	 */
+	private static class TaskQueue {
+
+		private final PriorityQueue<QueuedTask> queue = new PriorityQueue<QueuedTask>();
+		private final LinkedList<Agent> idleAgents    = new LinkedList<Agent>();
+		private Class agentClass                      = null;
+		private int concurrency                       = 0;
+		private int running                           = 0;
+		private long submitted                        = 0;
+		private long completed                        = 0;
+		private long failed                           = 0;
+		private long retried                          = 0;
+		private long totalWaitTime                    = 0;
+		private long maxWaitTime                      = 0;
+		private long totalExecutionTime               = 0;
+
+		public TaskQueue(final Class agentClass, final int concurrency) {
+
+			this.agentClass  = agentClass;
+			this.concurrency = concurrency;
+		}
+	}
+
+	private static class QueuedTask implements Comparable<QueuedTask> {
+
+		private TaskQueue taskQueue = null;
+		private Task task           = null;
+		private long sequence       = 0;
+		private int priority        = 0;
+		private long queuedTime     = 0;
+		private int attempt         = 0;
+
+		public QueuedTask(final TaskQueue taskQueue, final Task task, final long sequence, final int attempt) {
+
+			this.taskQueue  = taskQueue;
+			this.task       = task;
+			this.sequence   = sequence;
+			this.attempt    = attempt;
+			this.priority   = task.priority();
+			this.queuedTime = System.nanoTime();
+		}
+
+		@Override
+		public int compareTo(final QueuedTask other) {
+
+			// higher priority first, then first come, first served
+			if (priority != other.priority) {
+
+				return priority > other.priority ? -1 : 1;
+			}
+
+			return sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0);
+		}
+	}
+
+	private class Worker implements Runnable {
+
+		private QueuedTask queuedTask = null;
+
+		public Worker(final QueuedTask queuedTask) {
+			this.queuedTask = queuedTask;
+		}
+
+		@Override
+		public void run() {
+
+			long startTime  = System.nanoTime();
+			Task task       = queuedTask.task;
+			Agent agent     = null;
+			ReturnValue ret = null;
+
+			try {
+
+				agent = acquireAgent(queuedTask.taskQueue);
+				if (agent != null) {
+
+					List<Agent> agents = getRunningAgentsForTask(task.getClass());
+
+					agents.add(agent);
+
+					try {
+
+						ret = agent.execute(task);
+
+					} finally {
+
+						agents.remove(agent);
+					}
+				}
+
+			} finally {
+
+				finished(queuedTask, agent, startTime - queuedTask.queuedTime, System.nanoTime() - startTime, ret);
+			}
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+
+			Thread thread = new Thread(runnable, "AgentWorker-" + count.incrementAndGet());
+
+			thread.setDaemon(false);
+
+			return thread;
+		}
+	}
+
+	private static class RetryThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+
+			Thread thread = new Thread(runnable, "AgentRetry");
+
+			// pending retries are discarded on shutdown anyway
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
 }
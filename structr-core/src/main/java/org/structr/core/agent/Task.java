@@ -26,7 +26,11 @@ import org.structr.core.entity.Principal;
 
 /**
  * A task that an {@link Agent} can operate on.
-
+ *
+ * Tasks that implement equals() and hashCode() are deduplicated by the
+ * {@link AgentService}: a task that is equal to a task which is still
+ * waiting in the queue is ignored.
+ *
  * @author Christian Morgner
  */
 public interface Task extends Delayed, StatusInfo {
@@ -48,7 +52,8 @@ public interface Task extends Delayed, StatusInfo {
     public Set<AbstractNode> getNodes();
 
     /**
-     * Returns the priority of this task.
+     * Returns the priority of this task. Tasks with higher values are
+     * processed first.
      *
      * @return the priority of this task
      */
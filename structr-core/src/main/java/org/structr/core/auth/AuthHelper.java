@@ -28,6 +28,7 @@ import org.structr.core.Services;
 import org.structr.core.auth.exception.AuthenticationException;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
+import org.structr.core.graph.FindNodeCommand;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
 import org.structr.core.graph.search.SearchNodeCommand;
@@ -69,6 +70,19 @@ public class AuthHelper {
 	 */
 	public static Principal getPrincipalForEmail(final String email) {
 		
+		String cacheKey           = SessionCache.EMAIL_KEY_PREFIX.concat(String.valueOf(email));
+		SessionCache.Entry cached = SessionCache.get(cacheKey);
+
+		if (cached != null) {
+
+			Principal principal = getCachedPrincipal(cacheKey, cached);
+			if (principal != null) {
+
+				return principal;
+			}
+		}
+
+		long generation     = SessionCache.getGeneration();
 		Principal principal = null;
 		
 		Result result = Result.EMPTY_RESULT;
@@ -88,6 +102,9 @@ public class AuthHelper {
 
 			principal = (Principal) result.get(0);
 
+			// unknown addresses are not cached, the principal might be created right away
+			SessionCache.put(cacheKey, principal.getId(), generation);
+
 		}
 
 		return principal;
@@ -118,19 +135,35 @@ public class AuthHelper {
 
 			try {
 
-				SearchNodeCommand searchNode = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class);
-				List<SearchAttribute> attrs  = new LinkedList<SearchAttribute>();
+				String cacheKey           = SessionCache.LOGIN_KEY_PREFIX.concat(key.dbName()).concat(":").concat(String.valueOf(value));
+				SessionCache.Entry cached = SessionCache.get(cacheKey);
 
-				attrs.add(Search.andExactTypeAndSubtypes(Principal.class.getSimpleName()));
-				SearchAttributeGroup group = new SearchAttributeGroup(SearchOperator.AND);
-				group.add(Search.orExactProperty(key, value));
-				group.add(Search.orExactProperty(AbstractNode.name, value));
-				attrs.add(group);
+				if (cached != null) {
 
-				Result userList = searchNode.execute(attrs);
-				
-				if (!userList.isEmpty()) {
-					principal = (Principal) userList.get(0);
+					principal = getCachedPrincipal(cacheKey, cached);
+				}
+
+				if (principal == null) {
+
+					long generation              = SessionCache.getGeneration();
+					SearchNodeCommand searchNode = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class);
+					List<SearchAttribute> attrs  = new LinkedList<SearchAttribute>();
+
+					attrs.add(Search.andExactTypeAndSubtypes(Principal.class.getSimpleName()));
+					SearchAttributeGroup group = new SearchAttributeGroup(SearchOperator.AND);
+					group.add(Search.orExactProperty(key, value));
+					group.add(Search.orExactProperty(AbstractNode.name, value));
+					attrs.add(group);
+
+					Result userList = searchNode.execute(attrs);
+
+					if (!userList.isEmpty()) {
+
+						principal = (Principal) userList.get(0);
+
+						// the password is checked below on every call, only the lookup is cached
+						SessionCache.put(cacheKey, principal.getId(), generation);
+					}
 				}
 
 				if (principal == null) {
@@ -197,6 +230,22 @@ public class AuthHelper {
 	 */
 	public static Principal getPrincipalForSessionId(final String sessionId) {
 
+		String cacheKey           = SessionCache.SESSION_KEY_PREFIX.concat(sessionId);
+		SessionCache.Entry cached = SessionCache.get(cacheKey);
+
+		if (cached != null) {
+
+			Principal cachedUser = getCachedPrincipal(cacheKey, cached);
+			if (cachedUser != null && sessionId.equals(cachedUser.getProperty(Principal.sessionId))) {
+
+				return cachedUser;
+			}
+
+			// the session id of the principal has changed
+			SessionCache.invalidate(cacheKey);
+		}
+
+		long generation             = SessionCache.getGeneration();
 		Principal user              = null;
 		List<SearchAttribute> attrs = new LinkedList<SearchAttribute>();
 
@@ -214,6 +263,10 @@ public class AuthHelper {
 
 				if ((user != null) && sessionId.equals(user.getProperty(Principal.sessionId))) {
 
+					// only successful lookups are cached, random
+					// session cookies would flood the cache otherwise
+					SessionCache.put(cacheKey, user.getId(), generation);
+
 					return user;
 				}
 
@@ -224,7 +277,38 @@ public class AuthHelper {
 
 		}
 
-		return user;
+		return null;
+
+	}
+
+	/**
+	 * Creates a new instance of the principal of a cache entry, so that
+	 * each request gets its own instance. Removes the entry if the
+	 * principal does not exist any more.
+	 *
+	 * @param cacheKey
+	 * @param cached
+	 * @return the principal, or null
+	 */
+	private static Principal getCachedPrincipal(final String cacheKey, final SessionCache.Entry cached) {
+
+		try {
+
+			AbstractNode node = Services.command(SecurityContext.getSuperUserInstance(), FindNodeCommand.class).execute(cached.getPrincipalId());
+			if (node instanceof Principal) {
+
+				return (Principal) node;
+			}
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.FINE, "Cached principal {0} not found", cached.getPrincipalId());
+
+		}
+
+		SessionCache.invalidate(cacheKey);
+
+		return null;
 
 	}
 
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.auth;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.core.Services;
+
+/**
+ * Caches the results of the principal lookups in {@link AuthHelper}, so that
+ * authenticating a request with a known session id (or repeated basic auth
+ * with the same credentials) does not need an index query.
+ *
+ * Entries expire after <code>session.cache.timeout</code> seconds and the
+ * cache is cleared when it grows beyond <code>session.cache.size</code>
+ * entries. All entries of a principal are removed whenever the principal is
+ * modified or deleted, see {@link #invalidatePrincipal}, and session entries
+ * are removed on logout.
+ *
+ * Only the node id of a principal is cached, callers create a new instance
+ * for every lookup, so that no entity is shared between requests. Failed
+ * lookups are not cached, otherwise requests with random session cookies
+ * could fill the cache and force it to be cleared. To avoid caching a
+ * result that was obsoleted by a concurrent modification, callers obtain a
+ * generation number before the lookup and pass it to {@link #put}.
+ *
+ * @author Christian Morgner
+ */
+public class SessionCache {
+
+	public static final String SESSION_KEY_PREFIX     = "session:";
+	public static final String EMAIL_KEY_PREFIX       = "email:";
+	public static final String LOGIN_KEY_PREFIX       = "login:";
+
+	private static final Logger logger                = Logger.getLogger(SessionCache.class.getName());
+
+	private static final int DEFAULT_MAX_SIZE         = 10000;
+	private static final int DEFAULT_TIMEOUT          = 300;
+	private static final Map<String, Entry> entries   = new ConcurrentHashMap<String, Entry>(100, 0.9f, 8);
+	private static final AtomicLong generation        = new AtomicLong(0);
+	private static final AtomicLong hits              = new AtomicLong(0);
+	private static final AtomicLong misses            = new AtomicLong(0);
+	private static final AtomicLong expirations       = new AtomicLong(0);
+	private static final AtomicLong invalidations     = new AtomicLong(0);
+	private static Integer maxSize                    = null;
+	private static Long timeout                       = null;
+
+	public static Entry get(final String key) {
+
+		Entry entry = entries.get(key);
+		if (entry != null) {
+
+			if (entry.expires > System.currentTimeMillis()) {
+
+				hits.incrementAndGet();
+
+				return entry;
+			}
+
+			entries.remove(key);
+			expirations.incrementAndGet();
+		}
+
+		misses.incrementAndGet();
+
+		return null;
+	}
+
+	public static void put(final String key, final long principalId, final long lookupGeneration) {
+
+		if (entries.size() >= getMaxSize()) {
+			entries.clear();
+		}
+
+		entries.put(key, new Entry(principalId, System.currentTimeMillis() + getTimeout()));
+
+		// an invalidation happened while the principal was looked up,
+		// so the result may already be outdated
+		if (generation.get() != lookupGeneration) {
+			entries.remove(key);
+		}
+	}
+
+	public static long getGeneration() {
+		return generation.get();
+	}
+
+	public static void invalidateSession(final String sessionId) {
+
+		if (sessionId != null) {
+			invalidate(SESSION_KEY_PREFIX.concat(sessionId));
+		}
+	}
+
+	public static void invalidate(final String key) {
+
+		generation.incrementAndGet();
+
+		if (entries.remove(key) != null) {
+			invalidations.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes all entries that resolve to the given principal.
+	 *
+	 * @param principalId
+	 */
+	public static void invalidatePrincipal(final long principalId) {
+
+		generation.incrementAndGet();
+
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+
+			if (it.next().principalId == principalId) {
+
+				it.remove();
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	public static void clear() {
+
+		generation.incrementAndGet();
+		entries.clear();
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+		stats.put("size", entries.size());
+		stats.put("maxSize", getMaxSize());
+		stats.put("hits", hits.get());
+		stats.put("misses", misses.get());
+		stats.put("expirations", expirations.get());
+		stats.put("invalidations", invalidations.get());
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private static int getMaxSize() {
+
+		if (maxSize == null) {
+
+			try {
+				maxSize = Integer.parseInt(Services.getConfigurationValue(Services.SESSION_CACHE_SIZE, Integer.toString(DEFAULT_MAX_SIZE)));
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Invalid value for {0}, using default session cache size {1}", new Object[] { Services.SESSION_CACHE_SIZE, DEFAULT_MAX_SIZE });
+
+				maxSize = DEFAULT_MAX_SIZE;
+			}
+		}
+
+		return maxSize;
+	}
+
+	private static long getTimeout() {
+
+		if (timeout == null) {
+
+			int seconds = DEFAULT_TIMEOUT;
+
+			try {
+				seconds = Integer.parseInt(Services.getConfigurationValue(Services.SESSION_CACHE_TIMEOUT, Integer.toString(DEFAULT_TIMEOUT)));
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Invalid value for {0}, using default session cache timeout {1}", new Object[] { Services.SESSION_CACHE_TIMEOUT, DEFAULT_TIMEOUT });
+			}
+
+			timeout = seconds * 1000L;
+		}
+
+		return timeout;
+	}
+
+	// ----- nested classes -----
+	public static class Entry {
+
+		private long principalId = -1L;
+		private long expires     = 0L;
+
+		private Entry(final long principalId, final long expires) {
+
+			this.principalId = principalId;
+			this.expires     = expires;
+		}
+
+		/**
+		 * @return the node id of the cached principal
+		 */
+		public long getPrincipalId() {
+			return principalId;
+		}
+	}
+}
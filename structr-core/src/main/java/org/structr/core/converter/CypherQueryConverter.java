@@ -23,15 +23,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.neo4j.cypher.javacompat.ExecutionEngine;
-import org.neo4j.graphdb.GraphDatabaseService;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
 import org.structr.core.cypher.CypherQueryHandler;
 import org.structr.core.entity.AbstractNode;
-import org.structr.core.graph.GraphDatabaseCommand;
+import org.structr.core.graph.CypherQueryCommand;
 
 /**
  * Executes the given {@link CypherQueryConverter} on the current node and
@@ -43,8 +41,6 @@ public class CypherQueryConverter extends PropertyConverter {
 
 	private static final Logger logger = Logger.getLogger(CypherQueryConverter.class.getName());
 	
-	private GraphDatabaseService graphDb    = null;
-	private ExecutionEngine engine          = null;
 	private CypherQueryHandler handler      = null;
 
 	public CypherQueryConverter(SecurityContext securityContext, GraphObject entity, CypherQueryHandler handler) {
@@ -52,15 +48,6 @@ public class CypherQueryConverter extends PropertyConverter {
 		super(securityContext, entity);
 		
 		this.handler = handler;
-		
-		try {
-			graphDb = (GraphDatabaseService)Services.command(SecurityContext.getSuperUserInstance(), GraphDatabaseCommand.class).execute();
-			engine  = new ExecutionEngine(graphDb);
-
-		} catch(Throwable t) {
-			
-			logger.log(Level.WARNING, "Unable to create cypher execution engine.");
-		}
 	}
 	
 	@Override
@@ -88,7 +75,9 @@ public class CypherQueryConverter extends PropertyConverter {
 
 			try {
 
-				List<AbstractNode> nodes = (List<AbstractNode>)handler.handleQueryResults(engine.execute(query, parameters));
+				// use the shared execution engine, it caches the execution plans
+				CypherQueryCommand cypherQueryCommand = Services.command(SecurityContext.getSuperUserInstance(), CypherQueryCommand.class);
+				List<AbstractNode> nodes              = (List<AbstractNode>)handler.handleQueryResults(cypherQueryCommand.executeRaw(query, parameters));
 
 				return nodes;
 
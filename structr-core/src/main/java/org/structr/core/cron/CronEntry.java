@@ -298,77 +298,98 @@ public class CronEntry implements Delayed {
 
 	public long getDelayToNextExecutionInMillis() {
 
+		long now = System.currentTimeMillis();
+
+		return getNextExecutionTime(now) - now;
+	}
+
+	/**
+	 * Returns the first full second at or after the given time that matches
+	 * this entry. When a field doesn't match, the next larger unit is started
+	 * at its beginning, so "0 30 * * * *" matches at hh:30:00 exactly.
+	 *
+	 * @param time the time in milliseconds
+	 * @return the next execution time in milliseconds
+	 */
+	public long getNextExecutionTime(final long time) {
+
 		Calendar now       = GregorianCalendar.getInstance();
-		int nowSeconds     = now.get(Calendar.SECOND);
-		int nowMinutes     = now.get(Calendar.MINUTE);
-		int nowHours       = now.get(Calendar.HOUR_OF_DAY);
-		int nowDays        = now.get(Calendar.DAY_OF_MONTH);		// DAY_OF_MONTH starts with 1
-		int nowDow         = now.get(Calendar.DAY_OF_WEEK) - 1;		// DAY_OF_WEEK starts with 1 (sunday)
-		int nowMonths      = now.get(Calendar.MONTH) + 1;		// MONTH starts with 0 (why???)
 		boolean modified   = true;
 		int maxTries       = 10000;
 		int numTries       = 0;
 
+		// round up to full seconds
+		now.setTimeInMillis(time + 999);
+		now.set(Calendar.MILLISECOND, 0);
+
 		while(modified && numTries++ < maxTries) {
-			
+
+			int nowSeconds = now.get(Calendar.SECOND);
+			int nowMinutes = now.get(Calendar.MINUTE);
+			int nowHours   = now.get(Calendar.HOUR_OF_DAY);
+			int nowDays    = now.get(Calendar.DAY_OF_MONTH);	// DAY_OF_MONTH starts with 1
+			int nowDow     = now.get(Calendar.DAY_OF_WEEK) - 1;	// DAY_OF_WEEK starts with 1 (sunday)
+			int nowMonths  = now.get(Calendar.MONTH) + 1;		// MONTH starts with 0 (why???)
+			boolean dayOk  = true;
+
 			modified = false;
-			
-			if(!modified && !seconds.isInside(nowSeconds)) {
-				now.add(Calendar.SECOND, 1);
-				modified = true;
-			}
-			
-			if(!modified && !minutes.isInside(nowMinutes)) {
-				now.add(Calendar.MINUTE, 1);
-				modified = true;
-			}
-			
-			if(!modified && !hours.isInside(nowHours)) {
-				now.add(Calendar.HOUR_OF_DAY, 1);
-				modified = true;
-			}
 
 			// exclude day of week and day from each other (both can match)
 			if(!dow.isIsWildcard() && !days.isIsWildcard()) {
-				
-				if(!modified && !(dow.isInside(nowDow) || days.isInside(nowDays))) {
-					now.add(Calendar.DAY_OF_MONTH, 1);
-					modified = true;
-				}
-				
+
+				dayOk = dow.isInside(nowDow) || days.isInside(nowDays);
+
 			} else if(!dow.isIsWildcard()) {
-				
-				if(!modified && !dow.isInside(nowDow)) {
-					now.add(Calendar.DAY_OF_MONTH, 1);
-					modified = true;
-				}
-				
+
+				dayOk = dow.isInside(nowDow);
+
 			} else if(!days.isIsWildcard()) {
-				
-				if(!modified && !days.isInside(nowDays)) {
-					now.add(Calendar.DAY_OF_MONTH, 1);
-					modified = true;
-				}
+
+				dayOk = days.isInside(nowDays);
 			}
-			
-			if(!modified && !months.isInside(nowMonths)) {
+
+			if(!months.isInside(nowMonths)) {
+
 				now.add(Calendar.MONTH, 1);
+				now.set(Calendar.DAY_OF_MONTH, 1);
+				now.set(Calendar.HOUR_OF_DAY, 0);
+				now.set(Calendar.MINUTE, 0);
+				now.set(Calendar.SECOND, 0);
+				modified = true;
+
+			} else if(!dayOk) {
+
+				now.add(Calendar.DAY_OF_MONTH, 1);
+				now.set(Calendar.HOUR_OF_DAY, 0);
+				now.set(Calendar.MINUTE, 0);
+				now.set(Calendar.SECOND, 0);
+				modified = true;
+
+			} else if(!hours.isInside(nowHours)) {
+
+				now.add(Calendar.HOUR_OF_DAY, 1);
+				now.set(Calendar.MINUTE, 0);
+				now.set(Calendar.SECOND, 0);
+				modified = true;
+
+			} else if(!minutes.isInside(nowMinutes)) {
+
+				now.add(Calendar.MINUTE, 1);
+				now.set(Calendar.SECOND, 0);
+				modified = true;
+
+			} else if(!seconds.isInside(nowSeconds)) {
+
+				now.add(Calendar.SECOND, 1);
 				modified = true;
 			}
-			
-			nowSeconds     = now.get(Calendar.SECOND);
-			nowMinutes     = now.get(Calendar.MINUTE);
-			nowHours       = now.get(Calendar.HOUR_OF_DAY);
-			nowDays        = now.get(Calendar.DAY_OF_MONTH);	// DAY_OF_MONTH starts with 1
-			nowDow         = now.get(Calendar.DAY_OF_WEEK) - 1;	// DAY_OF_WEEK starts with 1 (sunday)
-			nowMonths      = now.get(Calendar.MONTH) + 1;		// MONTH starts with 0 (why???)
 		}
-		
-		if(numTries == maxTries) {
+
+		if(modified) {
 			throw new IllegalArgumentException("Unable to determine next cron date for task " + name + ", aborting.");
 		}
-		
-		return now.getTimeInMillis() - System.currentTimeMillis();
+
+		return now.getTimeInMillis();
 	}
 
 	public CronField getSeconds() {
@@ -403,11 +424,7 @@ public class CronEntry implements Delayed {
 	@Override
 	public long getDelay(TimeUnit unit) {
 
-		long next = TimeUnit.MILLISECONDS.convert(getDelayToNextExecutionInMillis(), unit);
-
-		logger.log(Level.INFO, "{0} ms until start of task {1}", new Object[] { next, name });
-
-		return next;
+		return unit.convert(getDelayToNextExecutionInMillis(), TimeUnit.MILLISECONDS);
 	}
 
 	//~--- set methods ----------------------------------------------------
@@ -18,9 +18,14 @@
  */
 package org.structr.core.cron;
 
-import java.text.SimpleDateFormat;
+import java.lang.reflect.Constructor;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,6 +33,7 @@ import org.structr.common.SecurityContext;
 import org.structr.core.Command;
 import org.structr.core.RunnableService;
 import org.structr.core.Services;
+import org.structr.core.agent.AgentService;
 import org.structr.core.agent.ProcessTaskCommand;
 import org.structr.core.agent.Task;
 
@@ -35,6 +41,17 @@ import org.structr.core.agent.Task;
  * A service that keeps track of registered tasks and runs
  * them at their scheduled time.
  *
+ * The next execution time of each entry is computed in advance and the
+ * service thread sleeps on a {@link DelayQueue} until the earliest entry
+ * is due, so tasks start at the exact second and the service does not
+ * wake up when nothing is due.
+ *
+ * If the service could not run an entry in time (e.g. after the system
+ * was suspended), the execution is done once and the occurrences in
+ * between are counted as missed. If the previous run of an entry is
+ * still queued or running in the {@link AgentService}, the execution is
+ * skipped and counted as overrun.
+ *
  * @author Christian Morgner
  */
 public class CronService extends Thread implements RunnableService {
@@ -47,51 +64,95 @@ public class CronService extends Thread implements RunnableService {
 	public static final long     GRANULARITY       = 1;
 	public static final int      NUM_FIELDS        = 6;
 
-	private SecurityContext securityContext   = SecurityContext.getSuperUserInstance();
-	private LinkedList<CronEntry> cronEntries = new LinkedList<CronEntry>();
-	private boolean doRun = false;
+	private static final int MAX_MISSED_RUNS       = 1000;
+
+	/**
+	 * The time source of the service, can be replaced for testing.
+	 */
+	public interface Clock {
+
+		public long currentTimeMillis();
+	}
+
+	public static final Clock SYSTEM_CLOCK = new Clock() {
+
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+
+	private SecurityContext securityContext       = SecurityContext.getSuperUserInstance();
+	private DelayQueue<ScheduledEntry> queue      = new DelayQueue<ScheduledEntry>();
+	private List<ScheduledEntry> scheduledEntries = new LinkedList<ScheduledEntry>();
+	private Clock clock                           = null;
+	private volatile boolean doRun                = false;
 
 	public CronService() {
+		this(SYSTEM_CLOCK);
+	}
+
+	public CronService(final Clock clock) {
+
 		super("CronService");
+
+		this.clock = clock;
 	}
 
 	@Override
 	public void run() {
 
 		// wait for service layer to be initialized
-		while(!Services.isInitialized()) {
+		while(doRun && !Services.isInitialized()) {
 			try { Thread.sleep(1000); } catch(InterruptedException iex) { }
 		}
 
-		// sleep 5 seconds more
-		try { Thread.sleep(5000); } catch(InterruptedException iex) { }
-
 		while(doRun) {
 
-			// sleep for some time
-			try { Thread.sleep(GRANULARITY_UNIT.toMillis(GRANULARITY)); } catch(InterruptedException iex) { }
+			try {
 
-			for(CronEntry entry : cronEntries) {
+				ScheduledEntry entry = queue.take();
 
-				if(entry.getDelayToNextExecutionInMillis() < GRANULARITY_UNIT.toMillis(GRANULARITY)) {
-					
-					String taskClassName = entry.getName();
+				execute(entry);
 
-					try {
-						Class taskClass = Class.forName(taskClassName);
-						Task task = (Task)taskClass.newInstance();
+			} catch(InterruptedException iex) {
 
-						logger.log(Level.FINE, "Starting task {0}", taskClassName);
-						Services.command(securityContext, ProcessTaskCommand.class).execute(task);
-
-					} catch(Throwable t) {
-						logger.log(Level.WARNING, "Could not start task {0}: {1}", new Object[] { taskClassName, t.getMessage() } );
-					}
-				}
+				// stopService() interrupts us
 			}
 		}
 	}
-	
+
+	/**
+	 * Executes all entries that are due, without waiting.
+	 *
+	 * @return the number of entries that were due
+	 */
+	public int runDueTasks() {
+
+		ScheduledEntry entry = null;
+		int count            = 0;
+
+		while((entry = queue.poll()) != null) {
+
+			execute(entry);
+			count++;
+		}
+
+		return count;
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+		for(ScheduledEntry entry : scheduledEntries) {
+
+			stats.put(entry.cronEntry.getName(), entry.getStatistics());
+		}
+
+		return stats;
+	}
+
 	// ----- interface RunnableService -----
 	@Override
 	public void startService() {
@@ -101,7 +162,9 @@ public class CronService extends Thread implements RunnableService {
 
 	@Override
 	public void stopService() {
+
 		this.doRun = false;
+		this.interrupt();
 	}
 
 	@Override
@@ -126,15 +189,32 @@ public class CronService extends Thread implements RunnableService {
 			
 			for(String task : taskList.split("[ \\t]+")) {
 
+				if (task.isEmpty()) {
+					continue;
+				}
+
 				String expression = (String)context.get(task.concat(EXPRESSION_SUFFIX));
 				if(expression != null) {
 
 					CronEntry entry = CronEntry.parse(task, expression);
 					if(entry != null) {
 
-						logger.log(Level.INFO, "Adding cron entry {0} for {1}", new Object[]{ entry, task });
+						try {
+
+							Class<? extends Task> taskClass         = Class.forName(task).asSubclass(Task.class);
+							Constructor<? extends Task> constructor = taskClass.getConstructor();
+							ScheduledEntry scheduledEntry           = new ScheduledEntry(entry, constructor);
+
+							scheduledEntry.nextExecutionTime = entry.getNextExecutionTime(clock.currentTimeMillis());
 
-						cronEntries.add(entry);
+							logger.log(Level.INFO, "Adding cron entry {0} for {1}, next execution at {2}", new Object[]{ entry, task, new Date(scheduledEntry.nextExecutionTime) });
+
+							scheduledEntries.add(scheduledEntry);
+							queue.add(scheduledEntry);
+
+						} catch(Throwable t) {
+							logger.log(Level.WARNING, "Unable to schedule task {0}, ignoring: {1}", new Object[] { task, t.getMessage() });
+						}
 
 					} else {
 						logger.log(Level.WARNING, "Unable to parse cron expression for taks {0}, ignoring.", task);
@@ -151,4 +231,115 @@ public class CronService extends Thread implements RunnableService {
 	public void shutdown() {
 		this.doRun = false;
 	}
+
+	// ----- private methods -----
+	private void execute(final ScheduledEntry entry) {
+
+		long now           = clock.currentTimeMillis();
+		long scheduledTime = entry.nextExecutionTime;
+		String taskName    = entry.cronEntry.getName();
+
+		entry.lateness = Math.max(0, now - scheduledTime);
+
+		try {
+
+			// skip occurrences that have already passed
+			long next = entry.cronEntry.getNextExecutionTime(scheduledTime + 1000);
+			int count = 0;
+
+			while(next <= now && count++ < MAX_MISSED_RUNS) {
+
+				entry.missed++;
+				next = entry.cronEntry.getNextExecutionTime(next + 1000);
+			}
+
+			if(next <= now) {
+				next = entry.cronEntry.getNextExecutionTime(now + 1);
+			}
+
+			entry.nextExecutionTime = next;
+
+		} catch(Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to determine next execution of task {0}, removing it: {1}", new Object[] { taskName, t.getMessage() });
+			entry.nextExecutionTime = -1;
+		}
+
+		AgentService agentService = Services.getService(AgentService.class);
+		if(entry.lastTask != null && agentService != null && agentService.isActive(entry.lastTask)) {
+
+			logger.log(Level.WARNING, "Previous run of task {0} has not finished yet, skipping execution", taskName);
+			entry.overruns++;
+
+		} else {
+
+			try {
+
+				Task task = entry.constructor.newInstance();
+
+				logger.log(Level.FINE, "Starting task {0}", taskName);
+				Services.command(securityContext, ProcessTaskCommand.class).execute(task);
+
+				entry.lastTask = task;
+				entry.executions++;
+
+			} catch(Throwable t) {
+
+				logger.log(Level.WARNING, "Could not start task {0}: {1}", new Object[] { taskName, t.getMessage() } );
+				entry.failures++;
+			}
+		}
+
+		if(entry.nextExecutionTime >= 0) {
+			queue.add(entry);
+		}
+	}
+
+	// ----- nested classes -----
+	private class ScheduledEntry implements Delayed {
+
+		private CronEntry cronEntry                     = null;
+		private Constructor<? extends Task> constructor = null;
+		private Task lastTask                           = null;
+		private volatile long nextExecutionTime         = 0;
+		private volatile long lateness                  = 0;
+		private volatile long executions                = 0;
+		private volatile long missed                    = 0;
+		private volatile long overruns                  = 0;
+		private volatile long failures                  = 0;
+
+		public ScheduledEntry(final CronEntry cronEntry, final Constructor<? extends Task> constructor) {
+
+			this.cronEntry   = cronEntry;
+			this.constructor = constructor;
+		}
+
+		@Override
+		public long getDelay(final TimeUnit unit) {
+			return unit.convert(nextExecutionTime - clock.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(final Delayed other) {
+
+			long d1 = getDelay(TimeUnit.MILLISECONDS);
+			long d2 = other.getDelay(TimeUnit.MILLISECONDS);
+
+			return d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
+		}
+
+		public Map<String, Object> getStatistics() {
+
+			Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+			stats.put("nextExecution", nextExecutionTime >= 0 ? new Date(nextExecutionTime) : null);
+			stats.put("executions", executions);
+			stats.put("missed", missed);
+			stats.put("overruns", overruns);
+			stats.put("failures", failures);
+			stats.put("lastLatenessMillis", lateness);
+
+			return stats;
+		}
+	}
 }
@@ -883,24 +883,8 @@ public abstract class AbstractNode implements GraphObject, Comparable<AbstractNo
 			return true;
 		}
 
-		SecurityRelationship r = getSecurityRelationship(principal);
-
-		if ((r != null) && r.isAllowed(permission)) {
-
-			return true;
-		}
-
-		// Now check possible parent principals
-		for (Principal parent : principal.getParents()) {
-
-			if (isGranted(permission, parent)) {
-
-				return true;
-			}
-
-		}
-
-		return false;
+		// check security relationships of the principal and its parents
+		return PermissionCache.isGranted(this, principal, permission);
 
 	}
 
@@ -933,10 +917,12 @@ public abstract class AbstractNode implements GraphObject, Comparable<AbstractNo
 
 	@Override
 	public void ownerModified(SecurityContext securityContext) {
+		PermissionCache.invalidateNode(getId());
 	}
 	
 	@Override
 	public void securityModified(SecurityContext securityContext) {
+		PermissionCache.invalidateNode(getId());
 	}
 	
 	@Override
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.Permission;
+import org.structr.common.PermissionCache;
 import org.structr.core.property.Property;
 import org.structr.common.RelType;
 import org.structr.common.SecurityContext;
@@ -547,6 +548,14 @@ public class Person extends AbstractNode implements Principal {
 
 	}
 
+	@Override
+	public void propagatedModification(SecurityContext securityContext) {
+
+		// group memberships may have changed
+		PermissionCache.invalidatePrincipals();
+
+	}
+
 	private SecurityRelationship createSecurityRelationshipTo(final AbstractNode obj) throws FrameworkException {
 
 		return (SecurityRelationship) Services.command(SecurityContext.getSuperUserInstance(), CreateRelationshipCommand.class).execute(this, obj, RelType.SECURITY);
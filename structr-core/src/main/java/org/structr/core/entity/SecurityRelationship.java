@@ -33,6 +33,7 @@ import org.apache.commons.lang.ArrayUtils;
 import org.neo4j.graphdb.Relationship;
 import org.structr.common.AccessControllable;
 import org.structr.common.Permission;
+import org.structr.common.PermissionCache;
 import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
@@ -46,6 +47,7 @@ import org.structr.core.property.StringProperty;
 import org.structr.core.EntityContext;
 import org.structr.core.Services;
 import org.structr.core.graph.DeleteRelationshipCommand;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.ArrayProperty;
 
 //~--- classes ----------------------------------------------------------------
@@ -131,6 +133,14 @@ public class SecurityRelationship extends AbstractRelationship {
 		return true;
 	}
 
+	@Override
+	public void afterModification(SecurityContext securityContext) {
+
+		if (dbRelationship != null) {
+			PermissionCache.invalidateNode(dbRelationship.getEndNode().getId());
+		}
+	}
+
 	public boolean isAllowed(final Permission permission) {
 
 		if (dbRelationship.hasProperty(allowed.dbName())) {
@@ -179,8 +189,13 @@ public class SecurityRelationship extends AbstractRelationship {
 
 	public void setAllowed(final String[] allowed) {
 
+		Object previousValue = dbRelationship.getProperty(SecurityRelationship.allowed.dbName(), null);
+
 		dbRelationship.setProperty(SecurityRelationship.allowed.dbName(), allowed);
 
+		// notify transaction so that cached permissions are invalidated after commit
+		TransactionCommand.relationshipModified(this, SecurityRelationship.allowed, previousValue);
+
 	}
 	
 	public String[] getPermissions() {
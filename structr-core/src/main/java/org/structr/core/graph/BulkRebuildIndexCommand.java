@@ -16,26 +16,33 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with structr.  If not, see <http://www.gnu.org/licenses/>.
  */
-
-
 package org.structr.core.graph;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.GraphDatabaseAPI;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.EntityContext;
-import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.ArrayList;
-import java.util.List;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,11 +53,19 @@ import java.util.logging.Logger;
  *
  * Use 'type' argument for node type, and 'relType' for relationship type.
  *
+ * The database is scanned once, matching objects are collected into batches
+ * of 'batchSize' ids (default 1000) which are indexed in their own transaction
+ * by a pool of worker threads (see {@link Services#INDEX_REBUILD_THREADS}).
+ * Progress, throughput and the estimated remaining time are available via
+ * GET on the maintenance resource.
+ *
  * @author Axel Morgner
  */
-public class BulkRebuildIndexCommand extends NodeServiceCommand implements MaintenanceCommand {
+public class BulkRebuildIndexCommand extends NodeServiceCommand implements MaintenanceCommand, MaintenanceStatus {
 
-	private static final Logger logger = Logger.getLogger(BulkRebuildIndexCommand.class.getName());
+	private static final Logger logger               = Logger.getLogger(BulkRebuildIndexCommand.class.getName());
+	private static final Map<String, Object> status  = new LinkedHashMap<String, Object>();
+	private static final int DEFAULT_BATCH_SIZE      = 1000;
 
 	//~--- methods --------------------------------------------------------
 
@@ -60,9 +75,7 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 		final String entityType                = (String) attributes.get("type");
 		final String relType                   = (String) attributes.get("relType");
 		final GraphDatabaseService graphDb     = (GraphDatabaseService) arguments.get("graphDb");
-		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
-		final NodeFactory nodeFactory          = new NodeFactory(superUserContext);
-		final RelationshipFactory relFactory   = new RelationshipFactory(superUserContext);
+		final int batchSize                    = parseInt(attributes.get("batchSize"), DEFAULT_BATCH_SIZE);
 
 		if (entityType != null) {
 
@@ -70,110 +83,316 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 			if (type != null) {
 
-				final NewIndexNodeCommand indexNode = Services.command(securityContext, NewIndexNodeCommand.class);
+				logger.log(Level.INFO, "Start (re-)indexing all nodes of type {0}", new Object[] { type.getSimpleName() });
 
-				// final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-				final Result<AbstractNode> result = nodeFactory.instantiateAllNodes(GlobalGraphOperations.at(graphDb).getAllNodes());
-				final List<AbstractNode> nodes    = new ArrayList<AbstractNode>();
+				long count = rebuild(graphDb, type, null, batchSize);
 
-				for (AbstractNode node : result.getResults()) {
+				logger.log(Level.INFO, "Done with (re-)indexing {0} nodes", count);
 
-					if (node.getClass().equals(type)) {
+				return;
 
-						nodes.add(node);
-					}
+			}
 
-				}
+		} else if (relType != null) {
 
-				logger.log(Level.INFO, "Start (re-)indexing all nodes of type {0}", new Object[] { type.getSimpleName() });
+			logger.log(Level.INFO, "Start (re-)indexing all rels of type {0}", new Object[] { relType });
 
-				long count = bulkGraphOperation(securityContext, nodes, 1000, "RebuildIndex", new BulkGraphOperation<AbstractNode>() {
+			long count = rebuild(graphDb, null, relType, batchSize);
 
-					@Override
-					public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
+			logger.log(Level.INFO, "Done with (re-)indexing {0} relationships", count);
+
+			return;
+
+		}
+
+		logger.log(Level.INFO, "Unable to determine entity type to re-index.");
+
+	}
+
+	@Override
+	public Map<String, Object> getStatus() {
+
+		synchronized (status) {
+			return new LinkedHashMap<String, Object>(status);
+		}
+	}
+
+	// ----- private methods -----
+	private long rebuild(final GraphDatabaseService graphDb, final Class type, final String relType, final int batchSize) throws FrameworkException {
+
+		final boolean nodes         = (type != null);
+		final String typeName       = nodes ? type.getSimpleName() : relType;
+		final int threads           = getNumberOfThreads();
+		final Progress progress     = new Progress(typeName, nodes ? countNodes(graphDb) : -1);
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+		long[] batch = new long[batchSize];
+		int size     = 0;
+
+		try {
+
+			// only the ids of matching objects are kept, in batches of batchSize
+			if (nodes) {
 
-						indexNode.updateNode(node);
+				for (Node dbNode : GlobalGraphOperations.at(graphDb).getAllNodes()) {
 
+					if (typeName.equals(dbNode.getProperty(AbstractNode.type.dbName(), null))) {
+
+						batch[size++] = dbNode.getId();
 					}
-					@Override
-					public void handleThrowable(SecurityContext securityContext, Throwable t, AbstractNode node) {
 
-						logger.log(Level.WARNING, "Unable to index node {0}: {1}", new Object[] { node, t.getMessage() });
+					if (size == batchSize) {
 
+						executor.execute(new IndexBatch(graphDb, Arrays.copyOf(batch, size), type, null, progress));
+						size = 0;
 					}
-					@Override
-					public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 
-						logger.log(Level.WARNING, "Unable to index node: {0}", t.getMessage());
+					progress.scanned();
+				}
+
+			} else {
+
+				for (Relationship dbRel : GlobalGraphOperations.at(graphDb).getAllRelationships()) {
 
+					if (typeName.equals(dbRel.getType().name())) {
+
+						batch[size++] = dbRel.getId();
 					}
 
-				});
+					if (size == batchSize) {
 
-				logger.log(Level.INFO, "Done with (re-)indexing {0} nodes", count);
+						executor.execute(new IndexBatch(graphDb, Arrays.copyOf(batch, size), null, relType, progress));
+						size = 0;
+					}
 
-				return;
+					progress.scanned();
+				}
+			}
+
+			if (size > 0) {
 
+				executor.execute(new IndexBatch(graphDb, Arrays.copyOf(batch, size), type, relType, progress));
 			}
 
-		} else if (relType != null) {
+			executor.shutdown();
 
-			final IndexRelationshipCommand indexRel = Services.command(securityContext, IndexRelationshipCommand.class);
+			while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
 
-			// final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-			final List<AbstractRelationship> unfilteredRels = relFactory.instantiateRelationships(superUserContext, GlobalGraphOperations.at(graphDb).getAllRelationships());
-			final List<AbstractRelationship> rels           = new ArrayList<AbstractRelationship>();
+				progress.log();
+			}
 
-			for (AbstractRelationship rel : unfilteredRels) {
+		} catch (InterruptedException iex) {
 
-				if (!rel.getType().equals(relType)) {
+			executor.shutdownNow();
 
-					rels.add(rel);
-				}
+			throw new FrameworkException(500, "Index rebuild was interrupted.");
+
+		} finally {
+
+			// release the worker threads even if the scan failed
+			executor.shutdown();
+
+			progress.finish();
+		}
+
+		return progress.indexed.get();
+	}
+
+	private int getNumberOfThreads() {
+
+		int defaultValue = Runtime.getRuntime().availableProcessors();
+
+		return Math.max(1, parseInt(Services.getConfigurationValue(Services.INDEX_REBUILD_THREADS, Integer.toString(defaultValue)), defaultValue));
+	}
+
+	private long countNodes(final GraphDatabaseService graphDb) {
+
+		try {
+			return ((GraphDatabaseAPI) graphDb).getNodeManager().getNumberOfIdsInUse(Node.class);
+
+		} catch (Throwable t) {
 
+			// no estimation possible
+			return -1;
+		}
+	}
+
+	private int parseInt(final Object source, final int defaultValue) {
+
+		if (source != null) {
+
+			try {
+				return Double.valueOf(source.toString()).intValue();
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Unable to parse {0}, using default value {1}", new Object[] { source, defaultValue } );
 			}
+		}
 
-			logger.log(Level.INFO, "Start setting UUID on all rels of type {0}", new Object[] { relType });
+		return defaultValue;
+	}
+
+	private static void setStatus(final Map<String, Object> newStatus) {
+
+		synchronized (status) {
+
+			status.clear();
+			status.putAll(newStatus);
+		}
+	}
 
-			long count = bulkGraphOperation(securityContext, rels, 1000, "SetRelationshipUuid", new BulkGraphOperation<AbstractRelationship>() {
+	// ----- nested classes -----
+	/**
+	 * Indexes a batch of nodes or relationships in a single transaction.
+	 */
+	private static class IndexBatch implements Runnable {
+
+		private GraphDatabaseService graphDb = null;
+		private Progress progress            = null;
+		private String relType               = null;
+		private Class type                   = null;
+		private long[] ids                   = null;
+
+		public IndexBatch(final GraphDatabaseService graphDb, final long[] ids, final Class type, final String relType, final Progress progress) {
+
+			this.graphDb  = graphDb;
+			this.ids      = ids;
+			this.type     = type;
+			this.relType  = relType;
+			this.progress = progress;
+		}
 
-				@Override
-				public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
+		@Override
+		public void run() {
 
-					try {
+			final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
 
-						indexRel.execute(rel);
+			try {
 
-					} catch (FrameworkException fex) {
+				Services.command(superUserContext, TransactionCommand.class).execute(new StructrTransaction() {
 
-						logger.log(Level.WARNING, "Unable to index relationship {0}: {1}", new Object[] { rel, fex.getMessage() });
+					@Override
+					public Object execute() throws FrameworkException {
 
+						if (type != null) {
+
+							NewIndexNodeCommand indexNode = Services.command(superUserContext, NewIndexNodeCommand.class);
+							NodeFactory nodeFactory       = new NodeFactory(superUserContext);
+
+							for (long id : ids) {
+
+								AbstractNode node = nodeFactory.instantiateNode(graphDb.getNodeById(id));
+
+								if (node != null && node.getClass().equals(type)) {
+
+									indexNode.updateNode(node);
+								}
+							}
+
+						} else {
+
+							IndexRelationshipCommand indexRel = Services.command(superUserContext, IndexRelationshipCommand.class);
+							RelationshipFactory relFactory    = new RelationshipFactory(superUserContext);
+
+							for (long id : ids) {
+
+								AbstractRelationship rel = relFactory.instantiateRelationship(superUserContext, graphDb.getRelationshipById(id));
+
+								if (rel != null) {
+
+									indexRel.execute(rel);
+								}
+							}
+						}
+
+						return null;
 					}
+				});
 
-				}
-				@Override
-				public void handleThrowable(SecurityContext securityContext, Throwable t, AbstractRelationship rel) {
+				progress.indexed(ids.length);
 
-					logger.log(Level.WARNING, "Unable to index relationship {0}: {1}", new Object[] { rel, t.getMessage() });
+			} catch (Throwable t) {
 
-				}
-				@Override
-				public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
+				logger.log(Level.WARNING, "Unable to index batch of {0} {1}: {2}", new Object[] { ids.length, type != null ? "nodes" : "relationships", t.getMessage() });
 
-					logger.log(Level.WARNING, "Unable to index relationship: {0}", t.getMessage());
+				progress.failed(ids.length);
+			}
+		}
+	}
 
-				}
+	/**
+	 * Keeps track of the progress of an index rebuild and publishes it
+	 * in the status map.
+	 */
+	private static class Progress {
 
-			});
+		private final DecimalFormat decimalFormat = new DecimalFormat("0.00", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		private final AtomicLong indexed          = new AtomicLong(0);
+		private final AtomicLong failed           = new AtomicLong(0);
+		private final long startTime              = System.currentTimeMillis();
+		private String type                       = null;
+		private long scanned                      = 0;
+		private long total                        = 0;
 
-			logger.log(Level.INFO, "Done with (re-)indexing {0} relationships", count);
+		public Progress(final String type, final long total) {
 
-			return;
+			this.type  = type;
+			this.total = total;
 
+			publish("running");
 		}
 
-		logger.log(Level.INFO, "Unable to determine entity type to re-index.");
+		public void scanned() {
 
-	}
+			if (++scanned % 10000 == 0) {
+				publish("running");
+			}
+		}
+
+		public void indexed(final int count) {
+			indexed.addAndGet(count);
+		}
+
+		public void failed(final int count) {
+			failed.addAndGet(count);
+		}
+
+		public void log() {
 
+			publish("running");
+
+			logger.log(Level.INFO, "RebuildIndex: {0} objects indexed, {1} failed", new Object[] { indexed.get(), failed.get() } );
+		}
+
+		public void finish() {
+			publish("done");
+		}
+
+		private void publish(final String phase) {
+
+			Map<String, Object> newStatus = new LinkedHashMap<String, Object>();
+			double seconds                = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+
+			newStatus.put("type", type);
+			newStatus.put("phase", phase);
+			newStatus.put("scanned", scanned);
+			newStatus.put("indexed", indexed.get());
+			newStatus.put("failed", failed.get());
+			newStatus.put("throughput", decimalFormat.format(indexed.get() / seconds));
+
+			if (total > 0) {
+
+				newStatus.put("total", total);
+
+				// the remaining time is estimated from the scan rate
+				if (scanned > 0 && scanned < total) {
+					newStatus.put("eta", decimalFormat.format(seconds * (total - scanned) / scanned));
+				}
+			}
+
+			setStatus(newStatus);
+		}
+	}
 }
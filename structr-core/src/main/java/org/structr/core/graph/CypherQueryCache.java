@@ -0,0 +1,502 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces the literals of Cypher queries with parameters, so that queries
+ * which only differ in their literal values (e.g. queries with replaced
+ * template variables) have the same query text. Neo4j's execution engine
+ * caches execution plans by query text, so these queries are parsed and
+ * planned only once.
+ *
+ * The following literals are replaced:
+ * <ul>
+ * <li>string literals in single or double quotes</li>
+ * <li>regular expressions in slashes, e.g. =~ /.*foo.*&#47;</li>
+ * <li>numbers after a comparison operator, SKIP or LIMIT</li>
+ * <li>single node or relationship ids in START clauses, e.g. node(123)</li>
+ * </ul>
+ *
+ * Literals in the projections of RETURN and WITH clauses are kept, because
+ * Cypher derives the column names from the expression text, e.g. for
+ * <code>RETURN 'x'</code> or <code>coalesce(n.name?, 'none')</code>.
+ *
+ * The normalized form of each query is cached, and the normalized query
+ * texts are counted to report a plan cache hit rate. This rate is an
+ * approximation, it is based on a table of at most 1000 query texts that
+ * is cleared when it is full, not on the plan cache of the execution
+ * engine. That cache is sized independently and not visible through its
+ * API, so a query counted as a hit may still have been planned again, and
+ * vice versa.
+ *
+ * @author Christian Morgner
+ */
+public class CypherQueryCache {
+
+	private static final String PARAMETER_PREFIX                       = "literal";
+	private static final int MAX_CACHED_QUERIES                        = 1000;
+	private static final Pattern PARAMETER_PATTERN                     = Pattern.compile("\\{\\s*" + PARAMETER_PREFIX);
+	private static final Set<String> CLAUSES                           = new HashSet<String>(Arrays.asList(new String[] {
+		"START", "MATCH", "WHERE", "CREATE", "SET", "DELETE", "REMOVE", "FOREACH", "MERGE", "UNION", "ORDER", "SKIP", "LIMIT"
+	}));
+	private static final Map<String, NormalizedQuery> normalizedQueries = new ConcurrentHashMap<String, NormalizedQuery>(100, 0.9f, 8);
+	private static final Map<String, AtomicLong> plans                 = new ConcurrentHashMap<String, AtomicLong>(100, 0.9f, 8);
+	private static final AtomicLong hits                               = new AtomicLong(0);
+	private static final AtomicLong misses                             = new AtomicLong(0);
+	private static final AtomicLong hitTime                            = new AtomicLong(0);
+	private static final AtomicLong missTime                           = new AtomicLong(0);
+
+	/**
+	 * Returns the normalized form of the given query.
+	 *
+	 * @param query
+	 * @return the normalized query
+	 */
+	public static NormalizedQuery normalize(final String query) {
+
+		NormalizedQuery normalizedQuery = normalizedQueries.get(query);
+		if (normalizedQuery == null) {
+
+			normalizedQuery = parse(query);
+
+			if (normalizedQueries.size() > MAX_CACHED_QUERIES) {
+				normalizedQueries.clear();
+			}
+
+			normalizedQueries.put(query, normalizedQuery);
+		}
+
+		return normalizedQuery;
+	}
+
+	/**
+	 * Records the execution of the given normalized query. The first
+	 * execution of a query text counts as a plan cache miss, see the
+	 * class comment for the accuracy of this count.
+	 *
+	 * @param query the normalized query text
+	 * @param nanos the time spent in the execution engine before the
+	 * first row was read, which is mostly parsing and planning time for
+	 * a miss
+	 */
+	public static void executed(final String query, final long nanos) {
+
+		AtomicLong count = plans.get(query);
+		if (count == null) {
+
+			misses.incrementAndGet();
+			missTime.addAndGet(nanos);
+
+			if (plans.size() > MAX_CACHED_QUERIES) {
+				plans.clear();
+			}
+
+			plans.put(query, new AtomicLong(1));
+
+		} else {
+
+			count.incrementAndGet();
+
+			hits.incrementAndGet();
+			hitTime.addAndGet(nanos);
+		}
+	}
+
+	public static void clear() {
+
+		normalizedQueries.clear();
+		plans.clear();
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		long hitCount             = hits.get();
+		long missCount            = misses.get();
+
+		stats.put("queries", normalizedQueries.size());
+		stats.put("plans", plans.size());
+		stats.put("hits", hitCount);
+		stats.put("misses", missCount);
+		stats.put("hitRate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+		stats.put("averageMissMillis", missCount > 0 ? TimeUnit.NANOSECONDS.toMicros(missTime.get() / missCount) / 1000.0 : 0.0);
+		stats.put("averageHitMillis", hitCount > 0 ? TimeUnit.NANOSECONDS.toMicros(hitTime.get() / hitCount) / 1000.0 : 0.0);
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private static NormalizedQuery parse(final String query) {
+
+		Map<String, Object> literals = new LinkedHashMap<String, Object>();
+		StringBuilder buf            = new StringBuilder(query.length());
+		int length                   = query.length();
+		int i                        = 0;
+		boolean projection           = false;
+
+		// don't touch queries that could clash with our parameter names
+		if (PARAMETER_PATTERN.matcher(query).find()) {
+
+			return new NormalizedQuery(query, literals);
+		}
+
+		while (i < length) {
+
+			char c = query.charAt(i);
+
+			if (c == '"' || c == '\'') {
+
+				// string literal
+				StringBuilder value = new StringBuilder();
+				int end             = i + 1;
+				boolean closed      = false;
+
+				while (end < length) {
+
+					char d = query.charAt(end++);
+
+					if (d == '\\' && end < length) {
+
+						char escaped = query.charAt(end++);
+
+						switch (escaped) {
+
+							case 'n': value.append('\n'); break;
+							case 't': value.append('\t'); break;
+							case 'r': value.append('\r'); break;
+							default:  value.append(escaped); break;
+						}
+
+					} else if (d == c) {
+
+						closed = true;
+						break;
+
+					} else {
+
+						value.append(d);
+					}
+				}
+
+				if (!closed) {
+
+					// unterminated string, let the Cypher parser report it
+					return new NormalizedQuery(query, Collections.<String, Object>emptyMap());
+				}
+
+				if (projection) {
+
+					buf.append(query, i, end);
+
+				} else {
+
+					appendParameter(buf, literals, value.toString());
+				}
+
+				i = end;
+
+			} else if (c == '`') {
+
+				// quoted identifier, copy verbatim
+				int end = query.indexOf('`', i + 1);
+
+				end = end < 0 ? length : end + 1;
+
+				buf.append(query, i, end);
+
+				i = end;
+
+			} else if (isIdentifierStart(c)) {
+
+				int end = i + 1;
+
+				while (end < length && isIdentifierPart(query.charAt(end))) {
+					end++;
+				}
+
+				String word       = query.substring(i, end);
+				boolean isKeyword = i == 0 || query.charAt(i - 1) != '.';
+				String upper      = word.toUpperCase();
+
+				buf.append(word);
+
+				i = end;
+
+				if (isKeyword && ("RETURN".equals(upper) || "WITH".equals(upper))) {
+
+					projection = true;
+
+				} else if (isKeyword && CLAUSES.contains(upper)) {
+
+					projection = false;
+				}
+
+				if (projection) {
+
+					// literals of projections are kept, see above
+
+				} else if ("SKIP".equals(upper) || "LIMIT".equals(upper)) {
+
+					i = replaceNumber(query, i, buf, literals, true, false);
+
+				} else if (end < length && query.charAt(end) == '(' && ("node".equalsIgnoreCase(word) || "rel".equalsIgnoreCase(word) || "relationship".equalsIgnoreCase(word))) {
+
+					buf.append('(');
+
+					i = replaceNumber(query, end + 1, buf, literals, false, true);
+				}
+
+			} else if (c == '=' || c == '<' || c == '>' || c == '!') {
+
+				int end = i + 1;
+
+				// two-character operators: <=, >=, <>, !=, =~
+				if (end < length && "=>~".indexOf(query.charAt(end)) >= 0 && !(c == '=' && query.charAt(end) == '>')) {
+					end++;
+				}
+
+				buf.append(query, i, end);
+
+				if (projection) {
+
+					i = end;
+
+				} else if (c == '=' && query.charAt(end - 1) == '~') {
+
+					i = replaceRegex(query, end, buf, literals);
+
+				} else {
+
+					i = replaceNumber(query, end, buf, literals, true, false);
+				}
+
+			} else {
+
+				buf.append(c);
+				i++;
+			}
+		}
+
+		return new NormalizedQuery(buf.toString(), literals);
+	}
+
+	/**
+	 * Replaces the number starting at the given position (after optional
+	 * whitespace) with a parameter.
+	 *
+	 * @return the position after the replaced number, or the given position
+	 * if there was no number to replace
+	 */
+	private static int replaceNumber(final String query, final int start, final StringBuilder buf, final Map<String, Object> literals, final boolean allowSign, final boolean mustBeClosed) {
+
+		int length = query.length();
+		int pos    = start;
+
+		while (pos < length && Character.isWhitespace(query.charAt(pos))) {
+			pos++;
+		}
+
+		int numberStart = pos;
+
+		if (allowSign && pos < length && query.charAt(pos) == '-') {
+			pos++;
+		}
+
+		int digitsStart = pos;
+		boolean decimal = false;
+
+		while (pos < length && (Character.isDigit(query.charAt(pos)) || (query.charAt(pos) == '.' && !decimal && pos + 1 < length && Character.isDigit(query.charAt(pos + 1))))) {
+
+			if (query.charAt(pos) == '.') {
+				decimal = true;
+			}
+
+			pos++;
+		}
+
+		// no digits, or the number is part of an identifier or a range (e.g. 1..3)
+		if (pos == digitsStart || (pos < length && (isIdentifierPart(query.charAt(pos)) || query.charAt(pos) == '.'))) {
+
+			return start;
+		}
+
+		if (mustBeClosed) {
+
+			int end = pos;
+
+			while (end < length && Character.isWhitespace(query.charAt(end))) {
+				end++;
+			}
+
+			if (end >= length || query.charAt(end) != ')') {
+
+				return start;
+			}
+		}
+
+		String number = query.substring(numberStart, pos);
+
+		try {
+
+			buf.append(query, start, numberStart);
+
+			appendParameter(buf, literals, decimal ? (Object) Double.valueOf(number) : (Object) Long.valueOf(number));
+
+			return pos;
+
+		} catch (NumberFormatException nfex) {
+
+			// too large, keep the literal
+			buf.setLength(buf.length() - (numberStart - start));
+
+			return start;
+		}
+	}
+
+	/**
+	 * Replaces the regular expression literal starting at the given position
+	 * (after optional whitespace) with a parameter.
+	 *
+	 * @return the position after the replaced regular expression, or the
+	 * given position if there was no regular expression to replace
+	 */
+	private static int replaceRegex(final String query, final int start, final StringBuilder buf, final Map<String, Object> literals) {
+
+		int length = query.length();
+		int pos    = start;
+
+		while (pos < length && Character.isWhitespace(query.charAt(pos))) {
+			pos++;
+		}
+
+		if (pos >= length || query.charAt(pos) != '/') {
+
+			return start;
+		}
+
+		StringBuilder value = new StringBuilder();
+		int end             = pos + 1;
+
+		while (end < length) {
+
+			char c = query.charAt(end++);
+
+			if (c == '\\' && end < length && query.charAt(end) == '/') {
+
+				value.append('/');
+				end++;
+
+			} else if (c == '/') {
+
+				buf.append(query, start, pos);
+				appendParameter(buf, literals, value.toString());
+
+				return end;
+
+			} else {
+
+				value.append(c);
+			}
+		}
+
+		// unterminated, let the Cypher parser report it
+		return start;
+	}
+
+	private static void appendParameter(final StringBuilder buf, final Map<String, Object> literals, final Object value) {
+
+		String name = PARAMETER_PREFIX + literals.size();
+
+		literals.put(name, value);
+
+		buf.append('{');
+		buf.append(name);
+		buf.append('}');
+	}
+
+	private static boolean isIdentifierStart(final char c) {
+		return Character.isLetter(c) || c == '_';
+	}
+
+	private static boolean isIdentifierPart(final char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	//~--- inner classes --------------------------------------------------
+
+	/**
+	 * A query with all literals replaced by parameters.
+	 */
+	public static class NormalizedQuery {
+
+		private Map<String, Object> literals = null;
+		private String query                 = null;
+
+		public NormalizedQuery(final String query, final Map<String, Object> literals) {
+
+			this.query    = query;
+			this.literals = Collections.unmodifiableMap(literals);
+		}
+
+		public String getQuery() {
+			return query;
+		}
+
+		/**
+		 * Returns the extracted literals together with the given
+		 * parameters. Queries that refer to a parameter with the prefix
+		 * of the extracted literals are not normalized, so a parameter
+		 * with the same name as a literal is not used by the query and
+		 * the literal takes precedence.
+		 *
+		 * @param parameters the parameters of the original query, can be
+		 * null
+		 * @return the parameters for the normalized query
+		 */
+		public Map<String, Object> getParameters(final Map<String, Object> parameters) {
+
+			if (literals.isEmpty()) {
+
+				return parameters != null ? parameters : Collections.<String, Object>emptyMap();
+			}
+
+			Map<String, Object> merged = new LinkedHashMap<String, Object>();
+
+			if (parameters != null) {
+				merged.putAll(parameters);
+			}
+
+			// literals last, they must not be overwritten
+			merged.putAll(literals);
+
+			return merged;
+		}
+	}
+}
@@ -22,23 +22,16 @@ package org.structr.core.graph;
 
 import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.cypher.javacompat.ExecutionResult;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
 
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
-import org.structr.core.entity.AbstractNode;
-import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.graph.CypherQueryCache.NormalizedQuery;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Logger;
-import org.structr.core.GraphObjectMap;
-import org.structr.core.property.GenericProperty;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -46,6 +39,9 @@ import org.structr.core.property.GenericProperty;
  * Executes the given Cypher query and tries to convert the result in a List
  * of {@link GraphObject}s.
  *
+ * Literals are replaced by parameters before the query is executed, see
+ * {@link CypherQueryCache}.
+ *
  * @author Christian Morgner
  */
 public class CypherQueryCommand extends NodeServiceCommand {
@@ -69,67 +65,47 @@ public class CypherQueryCommand extends NodeServiceCommand {
 	}
 	
 	public List<GraphObject> execute(String query, Map<String, Object> parameters, boolean includeHiddenAndDeleted, boolean publicOnly) throws FrameworkException {
+		return iterate(query, parameters, includeHiddenAndDeleted, publicOnly).toList();
+	}
 
-		RelationshipFactory relFactory  = (RelationshipFactory) arguments.get("relationshipFactory");
-		ExecutionEngine     engine      = (ExecutionEngine) arguments.get("cypherExecutionEngine");
-		//GraphDatabaseService graphDb    = (GraphDatabaseService) arguments.get("graphDb");
-		NodeFactory nodeFactory         = new NodeFactory(securityContext);
-
-		List<GraphObject> resultList = new LinkedList<GraphObject>();
-		ExecutionResult result       = null;
-
-		if (parameters != null) {
-
-			result = engine.execute(query, parameters);
-			
-		} else {
-			
-			result = engine.execute(query);
-		}
-
-		for (Map<String, Object> row : result) {
-
-			GraphObjectMap dummyObject = null;
-			
-			for (Entry<String, Object> entry : row.entrySet()) {
-				
-				String key   = entry.getKey();
-				Object value = entry.getValue();
-			
-				if (value instanceof Node) {
-
-					AbstractNode node = nodeFactory.instantiateNode((Node) value, includeHiddenAndDeleted, publicOnly);
-
-					if (node != null) {
-
-						resultList.add(node);
-					}
-
-				} else if (value instanceof Relationship) {
-
-					AbstractRelationship rel = relFactory.instantiateRelationship(securityContext, (Relationship) value);
-
-					if (rel != null) {
-
-						resultList.add(rel);
-					}
+	/**
+	 * Executes the given query and returns a result that converts the rows
+	 * while they are consumed, use {@link CypherResult#getPage} to read
+	 * only a part of the result.
+	 *
+	 * @param query
+	 * @param parameters
+	 * @param includeHiddenAndDeleted
+	 * @param publicOnly
+	 * @return the lazy result
+	 * @throws FrameworkException
+	 */
+	public CypherResult iterate(String query, Map<String, Object> parameters, boolean includeHiddenAndDeleted, boolean publicOnly) throws FrameworkException {
+
+		RelationshipFactory relFactory = (RelationshipFactory) arguments.get("relationshipFactory");
+		ExecutionResult result         = executeRaw(query, parameters);
+
+		return new CypherResult(securityContext, relFactory, result.iterator(), includeHiddenAndDeleted, publicOnly);
+	}
 
-				} else {
-					
-					if (dummyObject == null) {
-						
-						dummyObject = new GraphObjectMap();
-						resultList.add(dummyObject);
-					}
-						
-					dummyObject.setProperty(new GenericProperty(key), value);
-				}
+	/**
+	 * Executes the given query and returns the unconverted result.
+	 *
+	 * @param query
+	 * @param parameters
+	 * @return the result
+	 */
+	public ExecutionResult executeRaw(String query, Map<String, Object> parameters) {
 
-			}
+		ExecutionEngine engine          = (ExecutionEngine) arguments.get("cypherExecutionEngine");
+		NormalizedQuery normalizedQuery = CypherQueryCache.normalize(query);
+		String normalizedText           = normalizedQuery.getQuery();
+		long t0                         = System.nanoTime();
+		ExecutionResult result          = engine.execute(normalizedText, normalizedQuery.getParameters(parameters));
 
-		}
+		CypherQueryCache.executed(normalizedText, System.nanoTime() - t0);
 
-		return resultList;
+		return result;
 	}
 
 }
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectMap;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.property.GenericProperty;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Lazily converts the rows of a Cypher query result into {@link GraphObject}s
+ * while they are consumed. Nodes and relationships are returned as entities,
+ * all other values of a row are collected in a {@link GraphObjectMap}.
+ *
+ * The result can only be iterated once. Rows that can not be converted are
+ * skipped when the result is used as an {@link Iterator}, {@link #getPage}
+ * and {@link #toList} throw the exception instead.
+ *
+ * @author Christian Morgner
+ */
+public class CypherResult implements Iterable<GraphObject>, Iterator<GraphObject> {
+
+	private static final Logger logger = Logger.getLogger(CypherResult.class.getName());
+
+	//~--- fields ---------------------------------------------------------
+
+	private final LinkedList<GraphObject> buffer = new LinkedList<GraphObject>();
+	private RelationshipFactory relFactory       = null;
+	private Iterator<Map<String, Object>> rows   = null;
+	private SecurityContext securityContext      = null;
+	private NodeFactory nodeFactory              = null;
+	private boolean includeHiddenAndDeleted      = false;
+	private boolean publicOnly                   = false;
+
+	//~--- constructors ---------------------------------------------------
+
+	public CypherResult(final SecurityContext securityContext, final RelationshipFactory relFactory, final Iterator<Map<String, Object>> rows, final boolean includeHiddenAndDeleted, final boolean publicOnly) {
+
+		this.securityContext         = securityContext;
+		this.relFactory              = relFactory;
+		this.rows                    = rows;
+		this.includeHiddenAndDeleted = includeHiddenAndDeleted;
+		this.publicOnly              = publicOnly;
+		this.nodeFactory             = new NodeFactory(securityContext);
+	}
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public Iterator<GraphObject> iterator() {
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+
+		while (true) {
+
+			try {
+				return fill();
+
+			} catch (FrameworkException fex) {
+
+				logger.log(Level.WARNING, "Unable to convert result row: {0}", fex.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public GraphObject next() {
+
+		if (!hasNext()) {
+
+			throw new NoSuchElementException();
+		}
+
+		return buffer.removeFirst();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Removal not supported.");
+	}
+
+	/**
+	 * Returns the given page of the remaining results. Only the rows up to
+	 * the end of the page are read.
+	 *
+	 * @param pageSize the page size
+	 * @param page the page number, starting with 1
+	 * @return the objects on the given page
+	 * @throws FrameworkException
+	 */
+	public List<GraphObject> getPage(final int pageSize, final int page) throws FrameworkException {
+
+		List<GraphObject> result = new LinkedList<GraphObject>();
+
+		if (pageSize <= 0 || page <= 0) {
+
+			return result;
+		}
+
+		long skip = (long) (page - 1) * pageSize;
+
+		for (long i = 0; i < skip && fill(); i++) {
+			buffer.removeFirst();
+		}
+
+		for (int i = 0; i < pageSize && fill(); i++) {
+			result.add(buffer.removeFirst());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns all remaining results.
+	 *
+	 * @return the results
+	 * @throws FrameworkException
+	 */
+	public List<GraphObject> toList() throws FrameworkException {
+
+		List<GraphObject> result = new LinkedList<GraphObject>();
+
+		while (fill()) {
+			result.add(buffer.removeFirst());
+		}
+
+		return result;
+	}
+
+	// ----- private methods -----
+	private boolean fill() throws FrameworkException {
+
+		while (buffer.isEmpty() && rows.hasNext()) {
+
+			convert(rows.next());
+		}
+
+		return !buffer.isEmpty();
+	}
+
+	private void convert(final Map<String, Object> row) throws FrameworkException {
+
+		GraphObjectMap dummyObject = null;
+
+		for (Entry<String, Object> entry : row.entrySet()) {
+
+			String key   = entry.getKey();
+			Object value = entry.getValue();
+
+			if (value instanceof Node) {
+
+				AbstractNode node = nodeFactory.instantiateNode((Node) value, includeHiddenAndDeleted, publicOnly);
+
+				if (node != null) {
+
+					buffer.add(node);
+				}
+
+			} else if (value instanceof Relationship) {
+
+				AbstractRelationship rel = relFactory.instantiateRelationship(securityContext, (Relationship) value);
+
+				if (rel != null) {
+
+					buffer.add(rel);
+				}
+
+			} else {
+
+				if (dummyObject == null) {
+
+					dummyObject = new GraphObjectMap();
+					buffer.add(dummyObject);
+				}
+
+				dummyObject.setProperty(new GenericProperty(key), value);
+			}
+		}
+	}
+}
@@ -33,6 +33,7 @@ public class GraphObjectModificationState {
 	
 	private PropertyMap removedProperties = new PropertyMap();
 	private boolean modified              = false;
+	private boolean unknownModification   = false;
 	private GraphObject object            = null;
 	private int status                    = 0;
 
@@ -108,7 +109,13 @@ public class GraphObjectModificationState {
 
 		// store previous value
 		if (key != null) {
+
 			removedProperties.put(key, previousValue);
+
+		} else {
+
+			// modification of relationships etc., we don't know which keys are affected
+			unknownModification = true;
 		}
 		
 		if (status != statusBefore) {
@@ -389,7 +396,16 @@ public class GraphObjectModificationState {
 
 		if (object instanceof AbstractNode) {
 
-			Services.command(SecurityContext.getSuperUserInstance(), NewIndexNodeCommand.class).updateNode((AbstractNode)object);
+			NewIndexNodeCommand indexNodeCommand = Services.command(SecurityContext.getSuperUserInstance(), NewIndexNodeCommand.class);
+
+			if (!unknownModification && NewIndexNodeCommand.isDeltaUpdates()) {
+
+				indexNodeCommand.updateNode((AbstractNode)object, removedProperties.keySet());
+
+			} else {
+
+				indexNodeCommand.updateNode((AbstractNode)object);
+			}
 
 		} else if (object instanceof AbstractRelationship) {
 
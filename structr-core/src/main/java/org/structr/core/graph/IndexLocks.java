@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.neo4j.graphdb.index.Index;
+import org.structr.core.Services;
+
+/**
+ * Provides one read/write lock per index. Queries acquire the read lock
+ * and can run in parallel, index mutations acquire the write lock and are
+ * serialized.
+ *
+ * Setting <code>index.concurrent.reads = false</code> in structr.conf
+ * restores the old behaviour where all access to an index is exclusive.
+ *
+ * @author Christian Morgner
+ */
+public class IndexLocks {
+
+	private static final ConcurrentMap<Index, ReentrantReadWriteLock> locks = new ConcurrentHashMap<Index, ReentrantReadWriteLock>(10, 0.9f, 8);
+	private static Boolean concurrentReads                                 = null;
+
+	public static Lock readLock(final Index index) {
+
+		ReentrantReadWriteLock lock = getLock(index);
+
+		if (isConcurrentReads()) {
+			return lock.readLock();
+		}
+
+		return lock.writeLock();
+	}
+
+	public static Lock writeLock(final Index index) {
+		return getLock(index).writeLock();
+	}
+
+	public static boolean isConcurrentReads() {
+
+		if (concurrentReads == null) {
+			concurrentReads = !"false".equals(Services.getConfigurationValue(Services.INDEX_CONCURRENT_READS, "true"));
+		}
+
+		return concurrentReads;
+	}
+
+	/**
+	 * Switches the concurrency mode at runtime, used for benchmarking.
+	 *
+	 * @param value
+	 */
+	public static void setConcurrentReads(final boolean value) {
+		concurrentReads = value;
+	}
+
+	private static ReentrantReadWriteLock getLock(final Index index) {
+
+		ReentrantReadWriteLock lock = locks.get(index);
+		if (lock == null) {
+
+			ReentrantReadWriteLock newLock = new ReentrantReadWriteLock();
+
+			lock = locks.putIfAbsent(index, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+
+		return lock;
+	}
+}
@@ -40,6 +40,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.NotFoundException;
@@ -194,9 +195,14 @@ public class IndexNodeCommand extends NodeServiceCommand {
 
 				try {
 
-					synchronized (layerIndex) {
-					
+					Lock lock = IndexLocks.writeLock(layerIndex);
+					lock.lock();
+
+					try {
 						layerIndex.add(dbNode, "", "");
+
+					} finally {
+						lock.unlock();
 					}
 
 					// If an exception is thrown here, the index was deleted
@@ -268,9 +274,14 @@ public class IndexNodeCommand extends NodeServiceCommand {
 
 				try {
 
-					synchronized (layerIndex) {
-					
+					Lock lock = IndexLocks.writeLock(layerIndex);
+					lock.lock();
+
+					try {
 						layerIndex.add(dbNode, "", "");
+
+					} finally {
+						lock.unlock();
 					}
 
 					// If an exception is thrown here, the index was deleted
@@ -342,9 +353,14 @@ public class IndexNodeCommand extends NodeServiceCommand {
 
 				try {
 
-					synchronized (layerIndex) {
-					
+					Lock lock = IndexLocks.writeLock(layerIndex);
+					lock.lock();
+
+					try {
 						layerIndex.remove(dbNode, "", "");
+
+					} finally {
+						lock.unlock();
 					}
 
 					// If an exception is thrown here, the index was deleted
@@ -578,11 +594,17 @@ public class IndexNodeCommand extends NodeServiceCommand {
 	
 	private void removeNodePropertyFromIndex(final Node node, final PropertyKey key, final String indexName) {
 		Index<Node> index = indices.get(indexName);
-		synchronized(index) {
+		Lock lock = IndexLocks.writeLock(index);
+		lock.lock();
+
+		try {
 //			long t0 = System.nanoTime();
 			index.remove(node, key.dbName());
 //			long t1 = System.nanoTime();
 //			System.out.println("removing  " + key.dbName() + " of node " + node + " from index " + indexName + " took " + (t1-t0) + " ns");
+
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -591,7 +613,10 @@ public class IndexNodeCommand extends NodeServiceCommand {
 			return;
 		}
 		Index<Node> index = indices.get(indexName);
-		synchronized(index) {
+		Lock lock = IndexLocks.writeLock(index);
+		lock.lock();
+
+		try {
 //			long t0 = System.nanoTime();
 			if (value instanceof Number) {
 				index.add(node, key.dbName(), ValueContext.numeric((Number) value));
@@ -600,6 +625,9 @@ public class IndexNodeCommand extends NodeServiceCommand {
 			}
 //			long t1 = System.nanoTime();
 //			System.out.println("adding " + key.dbName() + " of " + node + " to index " + indexName + " took " + (t1-t0) + " ns");
+
+		} finally {
+			lock.unlock();
 		}
 	}
 }
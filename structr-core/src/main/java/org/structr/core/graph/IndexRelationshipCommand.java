@@ -36,6 +36,7 @@ import org.structr.core.graph.search.Search;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.core.property.PropertyKey;
@@ -220,22 +221,40 @@ public class IndexRelationshipCommand extends NodeServiceCommand {
 
 	private void addRelationshipPropertyToFulltextIndex(final Relationship rel, final PropertyKey key, final Object value) {
 		Index<Relationship> index = indices.get(RelationshipIndex.rel_fulltext.name());
-		synchronized(index) {
+		Lock lock = IndexLocks.writeLock(index);
+		lock.lock();
+
+		try {
 			index.add(rel, key.dbName(), value);
+
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	private void addRelationshipPropertyToUuidIndex(final Relationship rel, final PropertyKey key, final Object value) {
 		Index<Relationship> index = indices.get(RelationshipIndex.rel_uuid.name());
-		synchronized(index) {
+		Lock lock = IndexLocks.writeLock(index);
+		lock.lock();
+
+		try {
 			index.add(rel, key.dbName(), value);
+
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	private void addRelationshipPropertyToKeywordIndex(final Relationship rel, final PropertyKey key, final Object value) {
 		Index<Relationship> index = indices.get(RelationshipIndex.rel_keyword.name());
-		synchronized(index) {
+		Lock lock = IndexLocks.writeLock(index);
+		lock.lock();
+
+		try {
 			index.add(rel, key.dbName(), value);
+
+		} finally {
+			lock.unlock();
 		}
 	}
 }
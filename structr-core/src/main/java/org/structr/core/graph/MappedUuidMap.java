@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A map from UUIDs to database ids that lives in a memory-mapped file
+ * instead of the heap, used by {@link SyncCommand} to resolve relationship
+ * endpoints during large imports.
+ *
+ * The map is an open addressing hash table with fixed-size slots of three
+ * longs (the 128 bits of the UUID and the id + 1, 0 meaning empty). UUIDs
+ * that are not 32 hex characters are hashed with MD5. The file survives
+ * the JVM, so an import can be resumed with the map it left behind.
+ *
+ * The mapping of a replaced file is released explicitly, because some
+ * platforms refuse to delete or rename a file that is still mapped.
+ *
+ * @author Christian Morgner
+ */
+public class MappedUuidMap {
+
+	private static final int HEADER_SIZE      = 16;
+	private static final int SLOT_SIZE        = 24;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	private static final int MAX_CAPACITY     = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+
+	private static final Logger logger        = Logger.getLogger(MappedUuidMap.class.getName());
+
+	private RandomAccessFile file    = null;
+	private MappedByteBuffer buffer  = null;
+	private File path                = null;
+	private int capacity             = 0;
+	private long size                = 0;
+
+	public MappedUuidMap(final File path) throws IOException {
+
+		this.path = path;
+
+		open(path.exists() && path.length() > HEADER_SIZE ? 0 : INITIAL_CAPACITY);
+	}
+
+	public void put(final String uuid, final long id) throws IOException {
+
+		if ((size + 1) * 4 > (long) capacity * 3) {
+			resize();
+		}
+
+		long[] key = toKey(uuid);
+
+		if (insert(buffer, capacity, key[0], key[1], id)) {
+			size++;
+		}
+	}
+
+	/**
+	 * Returns the id that is stored for the given UUID, or -1.
+	 *
+	 * @param uuid
+	 * @return
+	 */
+	public long get(final String uuid) {
+
+		long[] key = toKey(uuid);
+		int slot   = indexFor(key[0], key[1], capacity);
+
+		while (true) {
+
+			int offset = HEADER_SIZE + slot * SLOT_SIZE;
+			long value = buffer.getLong(offset + 16);
+
+			if (value == 0) {
+				return -1;
+			}
+
+			if (buffer.getLong(offset) == key[0] && buffer.getLong(offset + 8) == key[1]) {
+				return value - 1;
+			}
+
+			slot = (slot + 1) % capacity;
+		}
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Writes the contents of this map to disk.
+	 */
+	public void flush() {
+
+		buffer.putLong(0, size);
+		buffer.force();
+	}
+
+	public void close() throws IOException {
+
+		flush();
+		unmap(buffer);
+
+		buffer = null;
+
+		file.close();
+	}
+
+	// ----- private methods -----
+	private void open(final int newCapacity) throws IOException {
+
+		file = new RandomAccessFile(path, "rw");
+
+		if (newCapacity > 0) {
+
+			file.setLength(0);
+			file.setLength(HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+		}
+
+		buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+
+		if (newCapacity > 0) {
+
+			buffer.putLong(0, 0);
+			buffer.putInt(8, newCapacity);
+		}
+
+		size     = buffer.getLong(0);
+		capacity = buffer.getInt(8);
+	}
+
+	private void resize() throws IOException {
+
+		if (capacity >= MAX_CAPACITY) {
+			throw new IOException("UUID map is full, unable to store more than " + size + " entries.");
+		}
+
+		int newCapacity         = (int) Math.min((long) capacity * 2, MAX_CAPACITY);
+		File tmp                = new File(path.getPath() + ".tmp");
+		RandomAccessFile target = new RandomAccessFile(tmp, "rw");
+
+		target.setLength(HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+
+		MappedByteBuffer newBuffer = target.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, target.length());
+
+		newBuffer.putInt(8, newCapacity);
+
+		for (int slot = 0; slot < capacity; slot++) {
+
+			int offset = HEADER_SIZE + slot * SLOT_SIZE;
+			long value = buffer.getLong(offset + 16);
+
+			if (value != 0) {
+				insert(newBuffer, newCapacity, buffer.getLong(offset), buffer.getLong(offset + 8), value - 1);
+			}
+		}
+
+		newBuffer.putLong(0, size);
+		newBuffer.force();
+
+		// release both mappings before the files are closed and replaced
+		unmap(newBuffer);
+		unmap(buffer);
+
+		buffer = null;
+
+		target.close();
+		file.close();
+
+		if (!path.delete() || !tmp.renameTo(path)) {
+			throw new IOException("Unable to replace UUID map file " + path);
+		}
+
+		open(0);
+	}
+
+	/**
+	 * Releases the mapping of the given buffer immediately instead of
+	 * waiting for the garbage collector. The buffer must not be used
+	 * afterwards. If the JVM does not expose the cleaner of its direct
+	 * buffers, the mapping is released when the buffer is collected.
+	 *
+	 * @param mappedBuffer
+	 */
+	private static void unmap(final MappedByteBuffer mappedBuffer) {
+
+		if (mappedBuffer == null) {
+			return;
+		}
+
+		try {
+
+			Method cleanerMethod = mappedBuffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+
+			Object cleaner = cleanerMethod.invoke(mappedBuffer);
+			if (cleaner != null) {
+
+				Method cleanMethod = cleaner.getClass().getMethod("clean");
+				cleanMethod.setAccessible(true);
+				cleanMethod.invoke(cleaner);
+			}
+
+		} catch (Throwable t) {
+
+			logger.log(Level.FINE, "Unable to unmap UUID map buffer: {0}", t.getMessage());
+		}
+	}
+
+	private static boolean insert(final MappedByteBuffer buffer, final int capacity, final long hi, final long lo, final long id) {
+
+		int slot = indexFor(hi, lo, capacity);
+
+		while (true) {
+
+			int offset = HEADER_SIZE + slot * SLOT_SIZE;
+			long value = buffer.getLong(offset + 16);
+
+			if (value == 0 || (buffer.getLong(offset) == hi && buffer.getLong(offset + 8) == lo)) {
+
+				buffer.putLong(offset, hi);
+				buffer.putLong(offset + 8, lo);
+				buffer.putLong(offset + 16, id + 1);
+
+				return value == 0;
+			}
+
+			slot = (slot + 1) % capacity;
+		}
+	}
+
+	private static int indexFor(final long hi, final long lo, final int capacity) {
+
+		long hash = hi * 31 + lo;
+
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+
+		return (int) ((hash & Long.MAX_VALUE) % capacity);
+	}
+
+	private static long[] toKey(final String uuid) {
+
+		if (uuid.length() == 32) {
+
+			try {
+				return new long[] { parseHex(uuid, 0), parseHex(uuid, 16) };
+
+			} catch (NumberFormatException nfex) {
+				// not a hex string, use digest below
+			}
+		}
+
+		try {
+
+			byte[] digest = MessageDigest.getInstance("MD5").digest(uuid.getBytes("UTF-8"));
+			long hi       = 0;
+			long lo       = 0;
+
+			for (int i = 0; i < 8; i++) {
+
+				hi = (hi << 8) | (digest[i] & 0xff);
+				lo = (lo << 8) | (digest[i + 8] & 0xff);
+			}
+
+			return new long[] { hi, lo };
+
+		} catch (NoSuchAlgorithmException nsaex) {
+
+			throw new IllegalStateException(nsaex);
+
+		} catch (UnsupportedEncodingException ueex) {
+
+			throw new IllegalStateException(ueex);
+		}
+	}
+
+	private static long parseHex(final String src, final int start) {
+
+		long value = 0;
+
+		for (int i = start; i < start + 16; i++) {
+
+			int digit = Character.digit(src.charAt(i), 16);
+			if (digit < 0) {
+				throw new NumberFormatException(src);
+			}
+
+			value = (value << 4) | digit;
+		}
+
+		return value;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import org.structr.common.PermissionCache;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.agent.AgentService;
+import org.structr.core.auth.SessionCache;
+import org.structr.core.cron.CronService;
+import org.structr.core.log.LogService;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Collects the runtime statistics of transactions, caches and background
+ * services. Available via GET on <code>/maintenance/metrics</code>, a POST
+ * resets the transaction statistics.
+ *
+ * @author Christian Morgner
+ */
+public class MetricsCommand extends NodeServiceCommand implements MaintenanceCommand, MaintenanceStatus {
+
+	@Override
+	public void execute(Map<String, Object> attributes) throws FrameworkException {
+		TransactionStatistics.clear();
+	}
+
+	@Override
+	public Map<String, Object> getStatus() {
+
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		AgentService agentService  = Services.getService(AgentService.class);
+		CronService cronService    = Services.getService(CronService.class);
+		LogService logService      = Services.getService(LogService.class);
+
+		status.put("transactions", TransactionStatistics.getStatistics());
+		status.put("nodeCache", NodeService.getNodeCache().getStatistics());
+		status.put("permissionCache", PermissionCache.getStatistics());
+		status.put("sessionCache", SessionCache.getStatistics());
+		status.put("cypherQueryCache", CypherQueryCache.getStatistics());
+
+		if (agentService != null) {
+			status.put("agents", agentService.getStatistics());
+		}
+
+		if (cronService != null) {
+			status.put("cron", cronService.getStatistics());
+		}
+
+		if (logService != null) {
+			status.put("log", logService.getStatistics());
+		}
+
+		return status;
+	}
+}
@@ -8,12 +8,16 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.RelationshipType;
+import org.structr.common.PermissionCache;
 import org.structr.common.RelType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.auth.SessionCache;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.entity.Principal;
 import org.structr.core.property.PropertyKey;
 
 /**
@@ -111,6 +115,30 @@ public class ModificationQueue {
 		modifications.clear();
 	}
 
+	/**
+	 * Removes all nodes touched in this queue from the node, permission
+	 * and session caches. This must be called after every top-level
+	 * transaction, regardless of its outcome.
+	 */
+	public void invalidateCaches() {
+
+		for (GraphObjectModificationState state : modifications.values()) {
+
+			GraphObject object = state.getObject();
+			if (object instanceof AbstractNode) {
+
+				NodeService.removeNodeFromCache(object.getId());
+				PermissionCache.invalidateNode(object.getId());
+			}
+
+			if (object instanceof Principal) {
+
+				PermissionCache.invalidatePrincipals();
+				SessionCache.invalidatePrincipal(object.getId());
+			}
+		}
+	}
+
 	public void create(AbstractNode node) {
 		getState(node).create();
 		
@@ -1,29 +1,70 @@
 package org.structr.core.graph;
 
-import java.util.LinkedHashSet;
-import java.util.Map;
+import java.util.LinkedList;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
+ * A set of fair binary semaphores, one per synchronization key. Keys are
+ * always acquired in their natural order so that two transactions with
+ * overlapping key sets cannot deadlock. They still block each other: the
+ * second one waits until the first has released the shared keys. Every
+ * acquisition is
+ * reported to {@link TransactionStatistics}, including the time spent
+ * waiting if the semaphore was not available immediately.
+ *
  * @author Christian Morgner
  */
 public class MultiSemaphore {
 
 	private static final Logger logger = Logger.getLogger(MultiSemaphore.class.getName());
-	
-	private Map<String, Semaphore> semaphoreMap = new ConcurrentHashMap<String, Semaphore>();
-	
+
+	private ConcurrentMap<String, Semaphore> semaphoreMap = new ConcurrentHashMap<String, Semaphore>();
+
 	public void acquire(final Set<String> types) throws InterruptedException {
 	
 		if (types != null && !types.isEmpty()) {
 			
 //			logger.log(Level.INFO, "Acquiring permit(s) for {0}", types);
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.acquire();
+			LinkedList<Semaphore> acquired = new LinkedList<Semaphore>();
+
+			try {
+
+				for (String type : sortedKeys(types)) {
+
+					Semaphore semaphore = getSemaphore(type);
+
+					// try without waiting first so that only contended acquisitions are timed
+					if (semaphore.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+
+						TransactionStatistics.acquired(type, -1);
+
+					} else {
+
+						long t0 = System.nanoTime();
+
+						semaphore.acquire();
+
+						TransactionStatistics.acquired(type, System.nanoTime() - t0);
+					}
+
+					acquired.add(semaphore);
+				}
+
+			} catch (InterruptedException iex) {
+
+				// give back what we already hold, the caller will not release anything
+				for (Semaphore semaphore : acquired) {
+					semaphore.release();
+				}
+
+				throw iex;
 			}
 		}
 	}
@@ -34,34 +75,39 @@ public class MultiSemaphore {
 			
 //			logger.log(Level.INFO, "Releasing permit(s) for {0}", types);
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.release();
+			for (String type : sortedKeys(types)) {
+				getSemaphore(type).release();
 			}
 		}
 	}
-	
-	private Set<Semaphore> getSemaphores(final Set<String> types) {
-		
-		Set<Semaphore> semaphores = new LinkedHashSet<Semaphore>();
-		
-		if (types != null) {
-			
-			for (String type : types) {
 
-				if (type != null) {
-					
-					Semaphore semaphore = semaphoreMap.get(type);
-					if (semaphore == null) {
+	private Set<String> sortedKeys(final Set<String> types) {
 
-						semaphore = new Semaphore(1, true);
-						semaphoreMap.put(type, semaphore);
-					}
+		Set<String> keys = new TreeSet<String>();
 
-					semaphores.add(semaphore);
-				}
+		for (String type : types) {
+
+			if (type != null) {
+				keys.add(type);
 			}
 		}
-		
-		return semaphores;
+
+		return keys;
+	}
+
+	private Semaphore getSemaphore(final String type) {
+
+		Semaphore semaphore = semaphoreMap.get(type);
+		if (semaphore == null) {
+
+			Semaphore newSemaphore = new Semaphore(1, true);
+
+			semaphore = semaphoreMap.putIfAbsent(type, newSemaphore);
+			if (semaphore == null) {
+				semaphore = newSemaphore;
+			}
+		}
+
+		return semaphore;
 	}
 }
@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang.StringUtils;
@@ -30,6 +31,7 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.index.Index;
 import org.structr.core.EntityContext;
+import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Location;
 import org.structr.core.graph.search.SearchNodeCommand;
@@ -44,6 +46,8 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 
 	private static final Logger logger = Logger.getLogger(NewIndexNodeCommand.class.getName());
 	
+	private static volatile Boolean deltaUpdates = null;
+
 	private Map<String, Index> indices = new HashMap<String, Index>();
 	private boolean initialized        = false;
 	
@@ -62,6 +66,103 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 		addNode(node);
 		
 	}
+
+	/**
+	 * Updates only the index entries of the given properties, leaving all
+	 * other entries of the node untouched.
+	 *
+	 * @param node
+	 * @param modifiedKeys the keys of the modified properties
+	 */
+	public void updateNode(AbstractNode node, Set<PropertyKey> modifiedKeys) {
+
+		init();
+
+		try {
+
+			String uuid = node.getProperty(AbstractNode.uuid);
+			Node dbNode = node.getNode();
+
+			// Don't touch non-structr node
+			if (uuid == null) {
+
+				return;
+			}
+
+			Map<String, Set<PropertyKey>> searchablePropertyIndexMap = EntityContext.getSearchablePropertyMapForType(node.getClass());
+			for (Entry<String, Set<PropertyKey>> entry : searchablePropertyIndexMap.entrySet()) {
+
+				Set<PropertyKey> searchableProperties = entry.getValue();
+				Index<Node> index                     = indices.get(entry.getKey());
+				Lock lock                             = null;
+
+				try {
+
+					for (PropertyKey key : modifiedKeys) {
+
+						if (!searchableProperties.contains(key) || StringUtils.isEmpty(key.dbName())) {
+							continue;
+						}
+
+						// lock each index only once for all modified keys
+						if (lock == null) {
+
+							lock = IndexLocks.writeLock(index);
+							lock.lock();
+						}
+
+						Object valueForIndexing = getValueForIndexing(node, key);
+
+						index.remove(dbNode, key.dbName());
+
+						if (valueForIndexing != null) {
+							index.add(dbNode, key.dbName(), valueForIndexing);
+						}
+					}
+
+				} finally {
+
+					if (lock != null) {
+						lock.unlock();
+					}
+				}
+			}
+
+			if (modifiedKeys.contains(Location.latitude) || modifiedKeys.contains(Location.longitude)) {
+
+				addToLayerIndex(dbNode);
+			}
+
+		} catch(Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to index node " + node, t);
+		}
+	}
+
+	/**
+	 * Returns whether modified nodes are reindexed incrementally. Setting
+	 * <code>index.delta.updates = false</code> in structr.conf restores the
+	 * old behaviour where all index entries of a node are rewritten.
+	 *
+	 * @return whether delta updates are enabled
+	 */
+	public static boolean isDeltaUpdates() {
+
+		if (deltaUpdates == null) {
+			deltaUpdates = !"false".equals(Services.getConfigurationValue(Services.INDEX_DELTA_UPDATES, "true"));
+		}
+
+		return deltaUpdates;
+	}
+
+	/**
+	 * Switches the update mode at runtime, used for benchmarking.
+	 *
+	 * @param value
+	 */
+	public static void setDeltaUpdates(final boolean value) {
+		deltaUpdates = value;
+	}
 	
 	public void addNode(AbstractNode node) {
 		
@@ -97,12 +198,7 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 						return;
 					}
 
-					Object valueForIndexing = node.getPropertyForIndexing(key);
-					Object value            = node.getProperty(key);
-
-					if ((value == null && key.databaseConverter(securityContext, null) == null) || (value instanceof String && StringUtils.isEmpty((String) value))) {
-						valueForIndexing = SearchNodeCommand.IMPROBABLE_SEARCH_VALUE;
-					}
+					Object valueForIndexing = getValueForIndexing(node, key);
 
 					if (valueForIndexing != null) {
 
@@ -121,38 +217,8 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 				}
 			}
 			
-			if ((dbNode.hasProperty(Location.latitude.dbName())) && (dbNode.hasProperty(Location.longitude.dbName()))) {
-				
-				// Before indexing, check properties for correct type
-				Object lat = dbNode.getProperty(Location.latitude.dbName());
-				Object lon = dbNode.getProperty(Location.longitude.dbName());
-				
-				if (lat instanceof Double && lon instanceof Double && !((Double) lat).isNaN() && !((Double) lon).isNaN()) {
-
-					LayerNodeIndex layerIndex = (LayerNodeIndex) indices.get(NodeService.NodeIndex.layer.name());
-
-					try {
-
-						synchronized (layerIndex) {
-
-							layerIndex.add(dbNode, "", "");
-						}
-
-						// If an exception is thrown here, the index was deleted
-						// and has to be recreated.
-					} catch (NotFoundException nfe) {
-
-						logger.log(Level.SEVERE, "Could not add node to layer index because the db could not find the node", nfe);
-
-					} catch (Throwable t) {
-
-						logger.log(Level.SEVERE, "Could not add node to layer index", t);
-					}
-				
-				}
+			addToLayerIndex(dbNode);
 
-			}
-			
 		} catch(Throwable t) {
 			
 			t.printStackTrace();
@@ -179,9 +245,14 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 		for (String indexName : searchablePropertyIndexMap.keySet()) {
 			
 			Index<Node> index = indices.get(indexName);
-			synchronized(index) {
-				
+			Lock lock = IndexLocks.writeLock(index);
+			lock.lock();
+
+			try {
 				index.remove(node.getNode());
+
+			} finally {
+				lock.unlock();
 			}
 		}
 	}
@@ -199,6 +270,58 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 		}
 	}
 	
+	private Object getValueForIndexing(final AbstractNode node, final PropertyKey key) {
+
+		Object valueForIndexing = node.getPropertyForIndexing(key);
+		Object value            = node.getProperty(key);
+
+		if ((value == null && key.databaseConverter(securityContext, null) == null) || (value instanceof String && StringUtils.isEmpty((String) value))) {
+			valueForIndexing = SearchNodeCommand.IMPROBABLE_SEARCH_VALUE;
+		}
+
+		return valueForIndexing;
+	}
+
+	private void addToLayerIndex(final Node dbNode) {
+
+		if ((dbNode.hasProperty(Location.latitude.dbName())) && (dbNode.hasProperty(Location.longitude.dbName()))) {
+			
+			// Before indexing, check properties for correct type
+			Object lat = dbNode.getProperty(Location.latitude.dbName());
+			Object lon = dbNode.getProperty(Location.longitude.dbName());
+			
+			if (lat instanceof Double && lon instanceof Double && !((Double) lat).isNaN() && !((Double) lon).isNaN()) {
+
+				LayerNodeIndex layerIndex = (LayerNodeIndex) indices.get(NodeService.NodeIndex.layer.name());
+
+				try {
+
+					Lock lock = IndexLocks.writeLock(layerIndex);
+					lock.lock();
+
+					try {
+						layerIndex.add(dbNode, "", "");
+
+					} finally {
+						lock.unlock();
+					}
+
+					// If an exception is thrown here, the index was deleted
+					// and has to be recreated.
+				} catch (NotFoundException nfe) {
+
+					logger.log(Level.SEVERE, "Could not add node to layer index because the db could not find the node", nfe);
+
+				} catch (Throwable t) {
+
+					logger.log(Level.SEVERE, "Could not add node to layer index", t);
+				}
+			
+			}
+
+		}
+	}
+
 	private void addNodePropertyToIndex(final Node node, final PropertyKey key, final Object value, final String indexName) {
 		
 		if (value == null) {
@@ -206,9 +329,14 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 		}
 
 		Index<Node> index = indices.get(indexName);
-		synchronized(index) {
-				
+		Lock lock = IndexLocks.writeLock(index);
+		lock.lock();
+
+		try {
 			index.add(node, key.dbName(), value);
+
+		} finally {
+			lock.unlock();
 		}
 	}
 }
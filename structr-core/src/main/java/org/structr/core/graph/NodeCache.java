@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of which node instances are still up to date. Node instances
+ * carry the security context they were created for, so they are never
+ * shared between security contexts. Instead, every security context keeps
+ * its own instances together with the token this cache handed out for the
+ * node, see {@link org.structr.common.SecurityContext#lookup}. Removing the
+ * token of a node invalidates its instances in all security contexts.
+ *
+ * The cache is keyed by node id, bounded and split into a number of segments
+ * with their own LRU order and lock, so threads accessing different nodes
+ * don't contend on a single monitor.
+ *
+ * Tokens are removed when a transaction that touched the node finishes,
+ * see {@link ModificationQueue#invalidateCaches()}. To avoid handing out a
+ * token for an instance that was created before a concurrent invalidation,
+ * callers obtain a generation number before creating the instance and pass
+ * it to {@link #getToken}.
+ *
+ * @author Christian Morgner
+ */
+public class NodeCache {
+
+	private final AtomicLong generation = new AtomicLong(0);
+	private final AtomicLong hits       = new AtomicLong(0);
+	private final AtomicLong misses     = new AtomicLong(0);
+	private final AtomicLong evictions  = new AtomicLong(0);
+	private Segment[] segments          = null;
+	private int maxSize                 = 0;
+
+	public NodeCache(final int maxSize, final int concurrencyLevel) {
+
+		int numSegments = Math.max(1, concurrencyLevel);
+		int segmentSize = Math.max(1, maxSize / numSegments);
+
+		this.segments = new Segment[numSegments];
+		this.maxSize  = segmentSize * numSegments;
+
+		for (int i = 0; i < numSegments; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * Indicates whether an instance that was cached together with the
+	 * given token is still up to date.
+	 *
+	 * @param id the node id
+	 * @param token the token of the cached instance, or null
+	 * @return whether the cached instance can be used
+	 */
+	public boolean isValid(final long id, final Token token) {
+
+		boolean valid = false;
+
+		if (token != null) {
+
+			Segment segment = segmentFor(id);
+
+			synchronized (segment) {
+				valid = (segment.get(id) == token);
+			}
+		}
+
+		if (valid) {
+
+			hits.incrementAndGet();
+
+		} else {
+
+			misses.incrementAndGet();
+		}
+
+		return valid;
+	}
+
+	/**
+	 * Returns the current token for the given node, creating it if
+	 * necessary. Returns null if an invalidation happened since the given
+	 * generation was obtained, in which case the instance must not be
+	 * cached.
+	 *
+	 * @param id the node id
+	 * @param lookupGeneration the generation obtained before the instance was created
+	 * @return the token, or null
+	 */
+	public Token getToken(final long id, final long lookupGeneration) {
+
+		Segment segment = segmentFor(id);
+		Token token     = null;
+
+		synchronized (segment) {
+
+			token = segment.get(id);
+			if (token == null) {
+
+				token = new Token();
+				segment.put(id, token);
+			}
+		}
+
+		// the node was invalidated while the instance was created
+		if (generation.get() != lookupGeneration) {
+			return null;
+		}
+
+		return token;
+	}
+
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	public void remove(final long id) {
+
+		Segment segment = segmentFor(id);
+
+		generation.incrementAndGet();
+
+		synchronized (segment) {
+			segment.remove(id);
+		}
+	}
+
+	public void clear() {
+
+		generation.incrementAndGet();
+
+		for (Segment segment : segments) {
+
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int size() {
+
+		int size = 0;
+
+		for (Segment segment : segments) {
+
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+		stats.put("size", size());
+		stats.put("maxSize", maxSize);
+		stats.put("hits", hits.get());
+		stats.put("misses", misses.get());
+		stats.put("evictions", evictions.get());
+
+		return stats;
+	}
+
+	private Segment segmentFor(final long id) {
+
+		// spread the bits of the id so that sequential ids are distributed evenly
+		int hash = (int) (id ^ (id >>> 32));
+
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+
+		return segments[(hash & 0x7fffffff) % segments.length];
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Identifies the state of a node between two invalidations, only
+	 * compared by identity.
+	 */
+	public static final class Token {
+
+		private Token() {}
+	}
+
+	private class Segment extends LinkedHashMap<Long, Token> {
+
+		private int capacity = 0;
+
+		public Segment(final int capacity) {
+
+			super(16, 0.75f, true);
+
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Long, Token> eldest) {
+
+			if (size() > capacity) {
+
+				evictions.incrementAndGet();
+
+				return true;
+			}
+
+			return false;
+		}
+	}
+}
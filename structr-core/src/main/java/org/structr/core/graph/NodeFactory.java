@@ -23,13 +23,17 @@ package org.structr.core.graph;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.IndexHits;
 
+import org.structr.common.Permission;
+import org.structr.common.PermissionCache;
 import org.structr.common.RelType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.IdNotFoundToken;
 import org.structr.core.Result;
+import org.structr.core.ResultStream;
 import org.structr.core.Services;
 import org.structr.core.entity.*;
 import org.structr.core.entity.AbstractNode;
@@ -43,6 +47,7 @@ import java.util.logging.Logger;
 import org.structr.common.FactoryDefinition;
 import org.structr.core.EntityContext;
 import org.structr.core.module.ModuleService;
+import org.structr.core.property.PropertyKey;
 import org.neo4j.gis.spatial.indexprovider.SpatialRecordHits;
 
 //~--- classes ----------------------------------------------------------------
@@ -112,7 +117,8 @@ public class NodeFactory<T extends AbstractNode> {
 	public T instantiateNodeWithType(final Node node, final String nodeType, boolean isCreation) {
 
 		SecurityContext securityContext = factoryProfile.getSecurityContext();
-		T newNode = (T)securityContext.lookup(node);
+		long generation                 = NodeService.getNodeCache().getGeneration();
+		T newNode                       = (T)securityContext.lookup(node);
 		
 		if (newNode == null) {
 
@@ -164,8 +170,8 @@ public class NodeFactory<T extends AbstractNode> {
 				}
 			}
 			
-			// cache node for this request
-			securityContext.store(newNode);
+			// cache node for this security context
+			securityContext.store(newNode, generation);
 		}
 		
 		// check access
@@ -221,6 +227,44 @@ public class NodeFactory<T extends AbstractNode> {
 
 	}
 
+	/**
+	 * Create a lazy result from the underlying database nodes. The nodes
+	 * are instantiated and checked against the security context one at a
+	 * time while the result is being consumed, and the index hits are
+	 * closed as soon as the result is exhausted.
+	 *
+	 * Spatial hits and paging with an offsetId or from the end are not
+	 * supported lazily, so in these cases, the nodes are instantiated
+	 * immediately.
+	 *
+	 * @param input
+	 * @return
+	 */
+	public Result instantiateNodesLazily(final IndexHits<Node> input) throws FrameworkException {
+
+		final int pageSize = factoryProfile.getPageSize();
+		final int page     = factoryProfile.getPage();
+
+		if (input != null && !(input instanceof SpatialRecordHits) && factoryProfile.getOffsetId() == null && page > 0) {
+
+			int offset = pageSize == Integer.MAX_VALUE ? 0 : (page - 1) * pageSize;
+
+			return new Result(new LazyPage(input, offset, pageSize), true, false);
+		}
+
+		try {
+
+			return instantiateNodes(input);
+
+		} finally {
+
+			if (input != null) {
+				input.close();
+			}
+		}
+
+	}
+
 	/**
 	 * Create structr nodes from all given underlying database nodes
 	 * No paging, but security check
@@ -326,16 +370,9 @@ public class NodeFactory<T extends AbstractNode> {
 	}
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private List<Node> read(final Iterable<Node> it) {
-
-		List<Node> nodes = new LinkedList();
+	private boolean isTrue(final Node node, final PropertyKey<Boolean> key) {
 
-		while (it.iterator().hasNext()) {
-
-			nodes.add(it.iterator().next());
-		}
-
-		return nodes;
+		return Boolean.TRUE.equals(node.getProperty(key.dbName(), null));
 
 	}
 
@@ -446,75 +483,117 @@ public class NodeFactory<T extends AbstractNode> {
 
 		final int pageSize = factoryProfile.getPageSize();
 		final int page     = factoryProfile.getPage();
-		int fromIndex;
 
 		if (page < 0) {
 
-			List<Node> rawNodes = read(input);
-			int size            = rawNodes.size();
+			return pageFromEnd(input, -page, pageSize);
 
-			fromIndex = Math.max(0, size + (page * pageSize));
+		} else {
 
-			final List<AbstractNode> nodes = new LinkedList<AbstractNode>();
-			int toIndex                    = Math.min(size, fromIndex + pageSize);
+			int offset = pageSize == Integer.MAX_VALUE ? 0 : (page - 1) * pageSize;
 
-			for (Node n : rawNodes.subList(fromIndex, toIndex)) {
+			return page(input, offset, pageSize);
+		}
 
-				nodes.add(instantiateNode(n));
-			}
+	}
+
+	/**
+	 * Returns the requested page of the given index hits. Only the nodes
+	 * on the requested page are instantiated, all other hits are counted
+	 * using the cheapest possible readability check, so the overall count
+	 * is accurate.
+	 *
+	 * @param input
+	 * @param offset
+	 * @param pageSize
+	 * @return
+	 * @throws FrameworkException
+	 */
+	private Result page(final IndexHits<Node> input, final int offset, final int pageSize) throws FrameworkException {
 
-			// We've run completely through the iterator,
-			// so the overall count from here is accurate.
-			return new Result(nodes, size, true, false);
+		final List<AbstractNode> nodes = new LinkedList<AbstractNode>();
+		final ReadableFilter filter    = new ReadableFilter();
+		int position                   = 0;
+		int count                      = 0;
 
-		} else {
+		for (Node node : input) {
+
+			if (position >= offset && count < pageSize) {
+
+				AbstractNode n = instantiateNode(node);
+
+				if (n != null) {
+
+					nodes.add(n);
+
+					position++;
+					count++;
+				}
 
-			// FIXME: IndexHits#size() may be inaccurate!
-			int size = input.size();
+			} else if (filter.isReadable(node)) {
 
-			fromIndex = pageSize == Integer.MAX_VALUE ? 0 : (page - 1) * pageSize;
-			//fromIndex = (page - 1) * pageSize;
+				position++;
+			}
 
-			// The overall count may be inaccurate
-			return page(input, size, fromIndex, pageSize);
 		}
 
+		// We've run completely through the iterator,
+		// so the overall count from here is accurate.
+		return new Result(nodes, position, true, false);
+
 	}
 
-	private Result page(final IndexHits<Node> input, final int overallResultCount, final int offset, final int pageSize) throws FrameworkException {
+	/**
+	 * Returns a page counted from the end of the given index hits. Only
+	 * the last <code>pagesFromEnd * pageSize</code> candidate nodes are
+	 * kept while iterating, and only the nodes on the requested page are
+	 * instantiated.
+	 *
+	 * @param input
+	 * @param pagesFromEnd
+	 * @param pageSize
+	 * @return
+	 * @throws FrameworkException
+	 */
+	private Result pageFromEnd(final IndexHits<Node> input, final int pagesFromEnd, final int pageSize) throws FrameworkException {
 
+		final int windowSize           = (int) Math.min((long) pagesFromEnd * pageSize, Integer.MAX_VALUE);
+		final ArrayDeque<Node> window  = new ArrayDeque<Node>();
 		final List<AbstractNode> nodes = new LinkedList<AbstractNode>();
-		int position                   = 0;
-		int count                      = 0;
-		int overallCount               = 0;
+		final ReadableFilter filter    = new ReadableFilter();
+		int size                       = 0;
 
 		for (Node node : input) {
 
-			AbstractNode n = instantiateNode(node);
+			if (filter.isReadable(node)) {
 
-			overallCount++;
+				window.addLast(node);
+				size++;
 
-			if (n != null) {
+				if (window.size() > windowSize) {
+					window.removeFirst();
+				}
+			}
+		}
 
-				if (++position > offset) {
+		// the window starts at max(0, size - windowSize), which is exactly the
+		// first index of the requested page, so we take pageSize nodes from the front
+		Iterator<Node> it = window.iterator();
+		int count         = 0;
 
-					// stop if we got enough nodes
-					if (++count > pageSize) {
+		while (it.hasNext() && count++ < pageSize) {
 
-						// The overall count may be inaccurate
-						return new Result(nodes, overallResultCount, true, false);
-					}
+			AbstractNode n = instantiateNode(it.next());
 
-					nodes.add(n);
-				}
+			if (n != null) {
 
+				nodes.add(n);
 			}
-
 		}
 
 		// We've run completely through the iterator,
 		// so the overall count from here is accurate.
-		return new Result(nodes, overallCount, true, false);
+		return new Result(nodes, size, true, false);
 
 	}
 
@@ -606,6 +685,212 @@ public class NodeFactory<T extends AbstractNode> {
 
 	//~--- inner classes --------------------------------------------------
 
+	/**
+	 * A single page of index hits that is instantiated while it is being
+	 * iterated. Hits outside of the page are counted using the cheapest
+	 * possible readability check, so the result count is accurate once the
+	 * page has been consumed.
+	 */
+	private class LazyPage implements ResultStream<AbstractNode> {
+
+		private IndexHits<Node> hits  = null;
+		private AbstractNode next     = null;
+		private Integer resultCount   = null;
+		private ReadableFilter filter = null;
+		private boolean closed        = false;
+		private int position          = 0;
+		private int count             = 0;
+		private int offset            = 0;
+		private int pageSize          = 0;
+
+		public LazyPage(final IndexHits<Node> hits, final int offset, final int pageSize) {
+
+			this.hits     = hits;
+			this.offset   = offset;
+			this.pageSize = pageSize;
+			this.filter   = new ReadableFilter();
+
+		}
+
+		@Override
+		public Iterator<AbstractNode> iterator() {
+
+			return new Iterator<AbstractNode>() {
+
+				@Override
+				public boolean hasNext() {
+
+					if (next == null) {
+						next = fetch();
+					}
+
+					return next != null;
+				}
+
+				@Override
+				public AbstractNode next() {
+
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+
+					AbstractNode node = next;
+					next              = null;
+
+					return node;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Removal is not supported.");
+				}
+			};
+
+		}
+
+		@Override
+		public Integer getResultCount() {
+			return resultCount;
+		}
+
+		@Override
+		public void close() {
+
+			if (!closed) {
+
+				hits.close();
+				closed = true;
+			}
+
+		}
+
+		private AbstractNode fetch() {
+
+			if (closed) {
+				return null;
+			}
+
+			while (count < pageSize && hits.hasNext()) {
+
+				Node node = hits.next();
+
+				if (position >= offset) {
+
+					AbstractNode n = instantiateNode(node);
+
+					if (n != null) {
+
+						position++;
+						count++;
+
+						return n;
+					}
+
+				} else if (filter.isReadable(node)) {
+
+					position++;
+				}
+			}
+
+			// the page is complete, count the remaining hits
+			while (hits.hasNext()) {
+
+				if (filter.isReadable(hits.next())) {
+
+					position++;
+				}
+			}
+
+			resultCount = position;
+			close();
+
+			return null;
+
+		}
+	}
+
+	/**
+	 * Decides whether a database node will be visible in a result without
+	 * instantiating it. Applies the rules of {@link SecurityContext#isReadable}
+	 * to the raw properties and relationships of the node, so the hits
+	 * outside of the requested page can be counted cheaply.
+	 */
+	private class ReadableFilter {
+
+		private Set<Long> ownerIds = new HashSet<Long>();
+		private Principal user     = null;
+		private boolean superUser  = false;
+
+		public ReadableFilter() {
+
+			SecurityContext securityContext = factoryProfile.getSecurityContext();
+
+			this.superUser = securityContext.isSuperUser();
+			this.user      = securityContext.getUser(false);
+
+			if (user != null && !superUser) {
+
+				// a node is readable if it is owned by the user or one of its groups
+				ownerIds.add(user.getId());
+
+				for (Principal parent : user.getParents()) {
+
+					ownerIds.add(parent.getId());
+				}
+			}
+
+		}
+
+		public boolean isReadable(final Node node) {
+
+			if (superUser) {
+				return true;
+			}
+
+			// deleted and hidden nodes will only be returned if we are told to do so
+			if (!factoryProfile.includeDeletedAndHidden() && (isTrue(node, AbstractNode.deleted) || isTrue(node, AbstractNode.hidden))) {
+
+				return false;
+			}
+
+			// visibleToPublic overrides anything else
+			if (isTrue(node, AbstractNode.visibleToPublicUsers)) {
+
+				return true;
+			}
+
+			if (factoryProfile.publicOnly() || user == null) {
+
+				return false;
+			}
+
+			if (isTrue(node, AbstractNode.visibleToAuthenticatedUsers)) {
+
+				return true;
+			}
+
+			// users have full control over their own principal node
+			if (node.getId() == user.getId()) {
+
+				return true;
+			}
+
+			// the owner is the start node of the first OWNS relationship, see AbstractNode#getOwnerNode
+			for (Relationship owns : node.getRelationships(RelType.OWNS, Direction.INCOMING)) {
+
+				if (ownerIds.contains(owns.getStartNode().getId())) {
+
+					return true;
+				}
+
+				break;
+			}
+
+			return PermissionCache.isGranted(node, user, Permission.read);
+
+		}
+	}
+
 	private class FactoryProfile {
 
 		private boolean includeDeletedAndHidden = true;
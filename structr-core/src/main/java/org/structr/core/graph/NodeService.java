@@ -20,8 +20,6 @@
 
 package org.structr.core.graph;
 
-import org.apache.commons.collections.map.LRUMap;
-
 import org.neo4j.gis.spatial.indexprovider.LayerNodeIndex;
 import org.neo4j.gis.spatial.indexprovider.SpatialIndexProvider;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -38,7 +36,6 @@ import org.structr.core.EntityContext;
 import org.structr.core.RunnableService;
 import org.structr.core.Services;
 import org.structr.core.SingletonService;
-import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Location;
 
 //~--- JDK imports ------------------------------------------------------------
@@ -60,8 +57,10 @@ import org.neo4j.cypher.javacompat.ExecutionEngine;
  */
 public class NodeService implements SingletonService {
 
-	private static final Logger logger                       = Logger.getLogger(NodeService.class.getName());
-	private static final Map<String, AbstractNode> nodeCache = (Map<String, AbstractNode>) Collections.synchronizedMap(new LRUMap(100000));
+	private static final Logger logger               = Logger.getLogger(NodeService.class.getName());
+	private static final int DEFAULT_NODE_CACHE_SIZE = 100000;
+	private static final int NODE_CACHE_CONCURRENCY  = 16;
+	private static NodeCache nodeCache               = new NodeCache(DEFAULT_NODE_CACHE_SIZE, NODE_CACHE_CONCURRENCY);
 
 	//~--- fields ---------------------------------------------------------
 
@@ -160,6 +159,15 @@ public class NodeService implements SingletonService {
 
 		}
 
+		int nodeCacheSize = DEFAULT_NODE_CACHE_SIZE;
+
+		try { nodeCacheSize = Integer.parseInt(Services.getConfigurationValue(Services.NODE_CACHE_SIZE, Integer.toString(DEFAULT_NODE_CACHE_SIZE))); } catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default node cache size {1}", new Object[] { Services.NODE_CACHE_SIZE, DEFAULT_NODE_CACHE_SIZE });
+		}
+
+		nodeCache = new NodeCache(nodeCacheSize, NODE_CACHE_CONCURRENCY);
+
 		String filesPath = Services.getFilesPath();
 
 		// check existence of files path
@@ -286,15 +294,9 @@ public class NodeService implements SingletonService {
 
 	}
 
-	public static void addNodeToCache(String uuid, AbstractNode node) {
-
-		nodeCache.put(uuid, node);
-
-	}
-
-	public static void removeNodeFromCache(String uuid) {
+	public static void removeNodeFromCache(final long nodeId) {
 
-		nodeCache.remove(uuid);
+		nodeCache.remove(nodeId);
 
 	}
 
@@ -307,9 +309,9 @@ public class NodeService implements SingletonService {
 
 	}
 
-	public static AbstractNode getNodeFromCache(String uuid) {
+	public static NodeCache getNodeCache() {
 
-		return nodeCache.get(uuid);
+		return nodeCache;
 
 	}
 
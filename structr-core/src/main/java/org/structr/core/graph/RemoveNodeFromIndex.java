@@ -32,6 +32,7 @@ import org.structr.core.graph.NodeService.NodeIndex;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -96,8 +97,14 @@ public class RemoveNodeFromIndex extends NodeServiceCommand {
 		for (Enum indexName : (NodeIndex[]) arguments.get("indices")) {
 
 			Index<Node> index = indices.get(indexName);
-			synchronized(index) {
+			Lock lock = IndexLocks.writeLock(index);
+			lock.lock();
+
+			try {
 				index.remove(node.getNode());
+
+			} finally {
+				lock.unlock();
 			}
 
 		}
@@ -31,6 +31,7 @@ import org.structr.core.entity.AbstractRelationship;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -92,8 +93,14 @@ public class RemoveRelationshipFromIndex extends NodeServiceCommand {
 		for (Enum indexName : indices.keySet()) {
 
 			Index<Relationship> index = indices.get(indexName);
-			synchronized(index) {
+			Lock lock = IndexLocks.writeLock(index);
+			lock.lock();
+
+			try {
 				index.remove(rel.getRelationship());
+
+			} finally {
+				lock.unlock();
 			}
 		}
 	}
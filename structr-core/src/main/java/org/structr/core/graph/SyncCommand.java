@@ -20,8 +20,12 @@
 
 package org.structr.core.graph;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,23 +34,27 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -60,16 +68,33 @@ import org.structr.core.GraphObject;
 import org.structr.core.Services;
 import org.structr.core.StaticValue;
 import org.structr.core.Value;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
 
 /**
+ * Exports the database and the files directory into a ZIP file, or imports
+ * such a file.
+ *
+ * Imports run in a single transaction by default. If the batchSize parameter
+ * is given, the import is committed in batches instead, see
+ * {@link #importDatabaseChunked}. A chunked import that failed can be
+ * continued with resume=true, its progress is available via GET on the
+ * maintenance resource.
  *
  * @author Christian Morgner
  */
-public class SyncCommand extends NodeServiceCommand implements MaintenanceCommand, Serializable {
+public class SyncCommand extends NodeServiceCommand implements MaintenanceCommand, MaintenanceStatus, Serializable {
 
 	private static final Logger logger                 = Logger.getLogger(SyncCommand.class.getName());
 	private static final String STRUCTR_ZIP_DB_NAME    = "db";
+	private static final String IMPORT_STATE_SUFFIX    = ".import";
+
+	private static final String PHASE_IMPORT           = "import";
+	private static final String PHASE_INDEX            = "index";
+	private static final String PHASE_DONE             = "done";
+	private static final String PHASE_FAILED           = "failed";
 	
+	private static final Map<String, Object> status    = new LinkedHashMap<String, Object>();
 	private static final Map<Class, String> typeMap    = new LinkedHashMap<Class, String>();
 	private static final Map<Class, Method> methodMap  = new LinkedHashMap<Class, Method>();
 	private static final Map<String, Class> classMap   = new LinkedHashMap<String, Class>();
@@ -111,7 +136,10 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		String mode          = (String)attributes.get("mode");
 		String fileName      = (String)attributes.get("file");
 		String validate      = (String)attributes.get("validate");
+		Object batchSize     = attributes.get("batchSize");
+		boolean resume       = "true".equals(String.valueOf(attributes.get("resume")));
 		boolean doValidation = true;
+		int chunkSize        = 0;
 
 		// should we validate imported nodes?
 		if (validate != null) {
@@ -126,6 +154,19 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			}
 		}
 		
+		// should we import in batches?
+		if (batchSize != null) {
+
+			try {
+
+				chunkSize = Double.valueOf(batchSize.toString()).intValue();
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Unable to parse value for batch size: {0}", t.getMessage());
+			}
+		}
+		
 		if (fileName == null) {
 			
 			throw new FrameworkException(400, "Please specify sync file.");
@@ -137,7 +178,7 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			
 		} else if ("import".equals(mode)) {
 			
-			importFile(fileName, doValidation);
+			importFile(fileName, doValidation, chunkSize, resume);
 			
 		} else {
 			
@@ -145,6 +186,14 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		}
 	}
 	
+	@Override
+	public Map<String, Object> getStatus() {
+
+		synchronized (status) {
+			return new LinkedHashMap<String, Object>(status);
+		}
+	}
+	
 	/**
 	 * Serializes the given object into the given writer. The following format will
 	 * be used to serialize objects. The first two characters are the type index, see
@@ -319,7 +368,7 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		}
 	}
 	
-	private void importFile(final String fileName, boolean doValidation) throws FrameworkException {
+	private void importFile(final String fileName, boolean doValidation, int batchSize, boolean resume) throws FrameworkException {
 
 		// open file for import
 		
@@ -331,7 +380,21 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 				if (STRUCTR_ZIP_DB_NAME.equals(entry.getName())) {
 
-					importDatabase(zis, doValidation);
+					if (batchSize > 0) {
+
+						synchronized (status) {
+
+							status.clear();
+							status.put("file", fileName);
+							status.put("batchSize", batchSize);
+						}
+
+						importDatabaseChunked(zis, new File(fileName + IMPORT_STATE_SUFFIX), batchSize, resume);
+
+					} else {
+
+						importDatabase(zis, doValidation);
+					}
 
 				} else {
 					
@@ -513,98 +576,52 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 				Map<String, Node> uuidMap       = new LinkedHashMap<String, Node>();
 				List<Relationship> rels         = new LinkedList<Relationship>();
 				List<Node> nodes                = new LinkedList<Node>();
-				PropertyContainer currentObject = null;
 				BufferedReader reader           = null;
-				String currentKey               = null;
-				boolean finished                = false;
 				long nodeCount                  = 0;
 				long relCount                   = 0;
 					
 				try {
-					reader = new BufferedReader(new InputStreamReader(zis));
+					reader        = new BufferedReader(new InputStreamReader(zis));
+					Record record = readRecord(reader);
 
-					do {
+					while (record != null) {
 
-						try {
+						if ("N".equals(record.type)) {
 
-							// store current position
-							reader.mark(4);
+							Node node = graphDb.createNode();
+							nodeCount++;
 
-							// read one byte
-							String objectType = read(reader, 1);
+							setProperties(node, record.properties);
 
-							// skip newlines
-							if ("\n".equals(objectType)) {
-								continue;
+							String uuid = (String)record.properties.get(GraphObject.uuid.dbName());
+							if (uuid != null) {
+								uuidMap.put(uuid, node);
 							}
 
-							if ("N".equals(objectType)) {
-
-								currentObject = graphDb.createNode();
-								nodeCount++;
-
-								// store for later use
-								nodes.add((Node)currentObject);
-
-							} else if ("R".equals(objectType)) {
+							// store for later use
+							nodes.add(node);
 
-								String startId     = (String)deserialize(reader);
-								String endId       = (String)deserialize(reader);
-								String relTypeName = (String)deserialize(reader);
-
-								Node endNode   = uuidMap.get(endId);
-								Node startNode = uuidMap.get(startId);
-
-								if (startNode != null && endNode != null) {
-
-									RelationshipType relType = DynamicRelationshipType.withName(relTypeName);
-									currentObject = startNode.createRelationshipTo(endNode, relType);
-
-									// store for later use
-									rels.add((Relationship)currentObject);
-								}
-
-								relCount++;
-
-							} else {
+						} else if ("R".equals(record.type)) {
 
-								// reset if not at the beginning of a line
-								reader.reset();
+							Node endNode   = uuidMap.get(record.endId);
+							Node startNode = uuidMap.get(record.startId);
 
-								if (currentKey == null) {
+							if (startNode != null && endNode != null) {
 
-									currentKey = (String)deserialize(reader);
+								RelationshipType relType = DynamicRelationshipType.withName(record.relType);
+								Relationship rel         = startNode.createRelationshipTo(endNode, relType);
 
-								} else {
+								setProperties(rel, record.properties);
 
-									if (currentObject != null) {
-
-										Object obj = deserialize(reader);
-
-										if ("uuid".equals(currentKey) && currentObject instanceof Node) {
-
-											String uuid = (String)obj;
-											uuidMap.put(uuid, (Node)currentObject);
-										}
-
-										// store object in DB
-										currentObject.setProperty(currentKey, obj);
-
-										currentKey = null;
-
-									} else {
-
-										logger.log(Level.WARNING, "No current object to store property in.");
-									}
-								}
+								// store for later use
+								rels.add(rel);
 							}
 
-						} catch (EOFException eofex) {
-
-							finished = true;
+							relCount++;
 						}
 
-					} while (!finished);
+						record = readRecord(reader);
+					}
 					
 				} catch (IOException ioex) {
 				}
@@ -636,4 +653,505 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 		logger.log(Level.INFO, "Import done in {0} s", decimalFormat.format(time));
 	}
+
+	/**
+	 * Imports the database in transactions of batchSize objects each. The
+	 * UUID mapping and the ids of all created objects are kept in files in
+	 * the given state directory instead of the heap, and the imported objects
+	 * are indexed in a separate pass afterwards. Validation and creation
+	 * callbacks are not executed in this mode.
+	 *
+	 * The progress is stored in the state directory after each committed
+	 * batch, so a failed import can be resumed from the last committed batch.
+	 *
+	 * @param zis
+	 * @param stateDir
+	 * @param batchSize
+	 * @param resume
+	 * @throws FrameworkException
+	 */
+	private void importDatabaseChunked(final ZipInputStream zis, final File stateDir, final int batchSize, final boolean resume) throws FrameworkException {
+
+		double t0 = System.nanoTime();
+
+		MappedUuidMap uuidMap = null;
+
+		try {
+
+			if (!resume) {
+				FileUtils.deleteDirectory(stateDir);
+			}
+
+			stateDir.mkdirs();
+
+			ImportProgress progress = new ImportProgress(new File(stateDir, "progress"));
+			File nodeIdFile         = new File(stateDir, "nodes");
+			File relIdFile          = new File(stateDir, "rels");
+
+			if (progress.records > 0) {
+
+				logger.log(Level.INFO, "Resuming import after {0} records, phase {1}", new Object[] { progress.records, progress.phase } );
+			}
+
+			if (!PHASE_INDEX.equals(progress.phase)) {
+
+				uuidMap = new MappedUuidMap(new File(stateDir, "uuids"));
+
+				importRecords(zis, progress, uuidMap, nodeIdFile, relIdFile, batchSize);
+
+				uuidMap.close();
+				uuidMap = null;
+
+				progress.phase = PHASE_INDEX;
+				progress.store();
+			}
+
+			// dedicated indexing pass
+			progress.indexedNodes = indexImportedObjects(nodeIdFile, progress, progress.indexedNodes, true, batchSize);
+			progress.indexedRels  = indexImportedObjects(relIdFile, progress, progress.indexedRels, false, batchSize);
+
+			FileUtils.deleteDirectory(stateDir);
+
+			setStatus("phase", PHASE_DONE);
+
+		} catch (IOException ioex) {
+
+			setStatus("phase", PHASE_FAILED);
+
+			throw new FrameworkException(500, ioex.getMessage());
+
+		} catch (FrameworkException fex) {
+
+			setStatus("phase", PHASE_FAILED);
+
+			throw fex;
+
+		} finally {
+
+			if (uuidMap != null) {
+
+				try {
+					uuidMap.close();
+
+				} catch (IOException ioex) {
+
+					logger.log(Level.WARNING, "Unable to close UUID map: {0}", ioex.getMessage());
+				}
+			}
+		}
+
+		double t1   = System.nanoTime();
+		double time = ((t1 - t0) / 1000000000.0);
+
+		logger.log(Level.INFO, "Chunked import done in {0} s", decimalFormat.format(time));
+	}
+
+	private void importRecords(final ZipInputStream zis, final ImportProgress progress, final MappedUuidMap uuidMap, final File nodeIdFile, final File relIdFile, final int batchSize) throws IOException, FrameworkException {
+
+		final BufferedReader reader     = new BufferedReader(new InputStreamReader(zis));
+		final DataOutputStream nodeIds  = openIdFile(nodeIdFile, progress.nodeIdsLength);
+		final DataOutputStream relIds   = openIdFile(relIdFile, progress.relIdsLength);
+		final List<Record> records      = new ArrayList<Record>(batchSize);
+		final Map<String, Long> uuids   = new LinkedHashMap<String, Long>();
+		final List<Long> createdNodes   = new ArrayList<Long>();
+		final List<Long> createdRels    = new ArrayList<Long>();
+		boolean endOfStream             = false;
+
+		setStatus("phase", PHASE_IMPORT);
+		setStatus("records", progress.records);
+		setStatus("nodes", progress.nodes);
+		setStatus("rels", progress.rels);
+
+		try {
+
+			// skip records that were committed in a previous run
+			for (long i = 0; i < progress.records; i++) {
+
+				if (readRecord(reader) == null) {
+					break;
+				}
+			}
+
+			while (!endOfStream) {
+
+				// read the whole batch before the transaction starts, so that
+				// a retried transaction sees the same records again
+				records.clear();
+
+				while (records.size() < batchSize) {
+
+					Record record = readRecord(reader);
+					if (record == null) {
+
+						endOfStream = true;
+						break;
+					}
+
+					records.add(record);
+				}
+
+				if (records.isEmpty()) {
+					break;
+				}
+
+				Object result = Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction(false) {
+
+					@Override
+					public Object execute() throws FrameworkException {
+
+						// results of a failed attempt are discarded
+						uuids.clear();
+						createdNodes.clear();
+						createdRels.clear();
+
+						for (Record record : records) {
+
+							if ("N".equals(record.type)) {
+
+								Node node = graphDb.createNode();
+
+								setProperties(node, record.properties);
+
+								String uuid = (String)record.properties.get(GraphObject.uuid.dbName());
+								if (uuid != null) {
+									uuids.put(uuid, node.getId());
+								}
+
+								createdNodes.add(node.getId());
+
+							} else if ("R".equals(record.type)) {
+
+								long startId = resolve(record.startId, uuids, uuidMap);
+								long endId   = resolve(record.endId, uuids, uuidMap);
+
+								if (startId >= 0 && endId >= 0) {
+
+									RelationshipType relType = DynamicRelationshipType.withName(record.relType);
+									Relationship rel         = graphDb.getNodeById(startId).createRelationshipTo(graphDb.getNodeById(endId), relType);
+
+									setProperties(rel, record.properties);
+
+									createdRels.add(rel.getId());
+								}
+							}
+						}
+
+						return Boolean.TRUE;
+					}
+				});
+
+				if (result == null) {
+					throw new FrameworkException(500, "Unable to commit import batch after " + progress.records + " records.");
+				}
+
+				// batch is committed, store its ids and progress
+				for (Entry<String, Long> entry : uuids.entrySet()) {
+					uuidMap.put(entry.getKey(), entry.getValue());
+				}
+
+				for (Long id : createdNodes) {
+					nodeIds.writeLong(id);
+				}
+
+				for (Long id : createdRels) {
+					relIds.writeLong(id);
+				}
+
+				nodeIds.flush();
+				relIds.flush();
+				uuidMap.flush();
+
+				for (Record record : records) {
+
+					if ("N".equals(record.type)) {
+						progress.nodes++;
+					} else if ("R".equals(record.type)) {
+						progress.rels++;
+					}
+				}
+
+				progress.records      += records.size();
+				progress.nodeIdsLength = nodeIdFile.length();
+				progress.relIdsLength  = relIdFile.length();
+				progress.store();
+
+				setStatus("records", progress.records);
+				setStatus("nodes", progress.nodes);
+				setStatus("rels", progress.rels);
+
+				logger.log(Level.INFO, "Imported {0} nodes and {1} rels", new Object[] { progress.nodes, progress.rels } );
+			}
+
+		} finally {
+
+			nodeIds.close();
+			relIds.close();
+		}
+	}
+
+	private long resolve(final String uuid, final Map<String, Long> batchUuids, final MappedUuidMap uuidMap) {
+
+		Long id = batchUuids.get(uuid);
+		if (id != null) {
+			return id;
+		}
+
+		return uuidMap.get(uuid);
+	}
+
+	private long indexImportedObjects(final File idFile, final ImportProgress progress, final long alreadyIndexed, final boolean nodes, final int batchSize) throws IOException, FrameworkException {
+
+		final NewIndexNodeCommand indexNode        = Services.command(securityContext, NewIndexNodeCommand.class);
+		final IndexRelationshipCommand indexRel    = Services.command(securityContext, IndexRelationshipCommand.class);
+		final NodeFactory nodeFactory              = new NodeFactory(securityContext);
+		final RelationshipFactory relFactory       = new RelationshipFactory(securityContext);
+		final long total                           = idFile.length() / 8;
+		final long[] ids                           = new long[batchSize];
+		final DataInputStream in                   = new DataInputStream(new BufferedInputStream(new FileInputStream(idFile)));
+		long indexed                               = alreadyIndexed;
+
+		setStatus("phase", PHASE_INDEX);
+
+		try {
+
+			IOUtils.skipFully(in, alreadyIndexed * 8);
+
+			while (indexed < total) {
+
+				final int count = (int) Math.min(batchSize, total - indexed);
+
+				// read the ids before the transaction starts, so that a
+				// retried transaction indexes the same objects again
+				for (int i = 0; i < count; i++) {
+					ids[i] = in.readLong();
+				}
+
+				Object result = Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction(false) {
+
+					@Override
+					public Object execute() throws FrameworkException {
+
+						for (int i = 0; i < count; i++) {
+
+							if (nodes) {
+
+								AbstractNode node = nodeFactory.instantiateNode(graphDb.getNodeById(ids[i]));
+								if (node != null) {
+									indexNode.updateNode(node);
+								}
+
+							} else {
+
+								AbstractRelationship rel = relFactory.instantiateRelationship(securityContext, graphDb.getRelationshipById(ids[i]));
+								if (rel != null) {
+									indexRel.execute(rel);
+								}
+							}
+						}
+
+						return Boolean.TRUE;
+					}
+				});
+
+				if (result == null) {
+					throw new FrameworkException(500, "Unable to commit index batch after " + indexed + " " + (nodes ? "nodes" : "rels") + ".");
+				}
+
+				indexed += count;
+
+				if (nodes) {
+					progress.indexedNodes = indexed;
+				} else {
+					progress.indexedRels = indexed;
+				}
+
+				progress.store();
+
+				setStatus(nodes ? "indexedNodes" : "indexedRels", indexed);
+
+				logger.log(Level.INFO, "Indexed {0} of {1} {2}", new Object[] { indexed, total, nodes ? "nodes" : "rels" } );
+			}
+
+		} finally {
+
+			in.close();
+		}
+
+		return indexed;
+	}
+
+	private DataOutputStream openIdFile(final File file, final long committedLength) throws IOException {
+
+		// discard ids that were written by an uncommitted transaction
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(committedLength);
+		raf.close();
+
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+	}
+
+	/**
+	 * Reads the next node or relationship from the given reader.
+	 *
+	 * @param reader
+	 * @return the record, or null at the end of the stream
+	 * @throws IOException
+	 */
+	private Record readRecord(final BufferedReader reader) throws IOException {
+
+		Record record = null;
+
+		try {
+
+			String objectType = read(reader, 1);
+
+			// skip newlines
+			while ("\n".equals(objectType)) {
+				objectType = read(reader, 1);
+			}
+
+			record = new Record(objectType);
+
+			if ("R".equals(objectType)) {
+
+				record.startId = (String)deserialize(reader);
+				record.endId   = (String)deserialize(reader);
+				record.relType = (String)deserialize(reader);
+			}
+
+			while (true) {
+
+				// store current position
+				reader.mark(4);
+
+				// a record ends at the end of the line
+				if ("\n".equals(read(reader, 1))) {
+					break;
+				}
+
+				reader.reset();
+
+				String key   = (String)deserialize(reader);
+				Object value = deserialize(reader);
+
+				if (key != null) {
+					record.properties.put(key, value);
+				}
+			}
+
+		} catch (EOFException eofex) {
+
+			// end of stream, return what we have
+
+		} catch (NumberFormatException nfex) {
+
+			throw new IOException("Malformed record in input: " + nfex.getMessage());
+		}
+
+		return record;
+	}
+
+	private void setProperties(final PropertyContainer container, final Map<String, Object> properties) {
+
+		for (Entry<String, Object> entry : properties.entrySet()) {
+
+			if (entry.getValue() != null) {
+				container.setProperty(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private static void setStatus(final String key, final Object value) {
+
+		synchronized (status) {
+			status.put(key, value);
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Record {
+
+		private Map<String, Object> properties = new LinkedHashMap<String, Object>();
+		private String startId                 = null;
+		private String endId                   = null;
+		private String relType                 = null;
+		private String type                    = null;
+
+		public Record(final String type) {
+			this.type = type;
+		}
+	}
+
+	/**
+	 * The progress of a chunked import, stored in a properties file.
+	 */
+	private static class ImportProgress {
+
+		private File file          = null;
+		private String phase       = PHASE_IMPORT;
+		private long records       = 0;
+		private long nodes         = 0;
+		private long rels          = 0;
+		private long nodeIdsLength = 0;
+		private long relIdsLength  = 0;
+		private long indexedNodes  = 0;
+		private long indexedRels   = 0;
+
+		public ImportProgress(final File file) throws IOException {
+
+			this.file = file;
+
+			if (file.exists()) {
+
+				Properties properties = new Properties();
+				FileInputStream fis   = new FileInputStream(file);
+
+				try {
+					properties.load(fis);
+
+				} finally {
+					fis.close();
+				}
+
+				phase         = properties.getProperty("phase", PHASE_IMPORT);
+				records       = Long.parseLong(properties.getProperty("records", "0"));
+				nodes         = Long.parseLong(properties.getProperty("nodes", "0"));
+				rels          = Long.parseLong(properties.getProperty("rels", "0"));
+				nodeIdsLength = Long.parseLong(properties.getProperty("nodeIdsLength", "0"));
+				relIdsLength  = Long.parseLong(properties.getProperty("relIdsLength", "0"));
+				indexedNodes  = Long.parseLong(properties.getProperty("indexedNodes", "0"));
+				indexedRels   = Long.parseLong(properties.getProperty("indexedRels", "0"));
+			}
+		}
+
+		public void store() throws IOException {
+
+			Properties properties = new Properties();
+
+			properties.setProperty("phase", phase);
+			properties.setProperty("records", Long.toString(records));
+			properties.setProperty("nodes", Long.toString(nodes));
+			properties.setProperty("rels", Long.toString(rels));
+			properties.setProperty("nodeIdsLength", Long.toString(nodeIdsLength));
+			properties.setProperty("relIdsLength", Long.toString(relIdsLength));
+			properties.setProperty("indexedNodes", Long.toString(indexedNodes));
+			properties.setProperty("indexedRels", Long.toString(indexedRels));
+
+			// write to a temporary file first so a crash can't leave a broken file
+			File tmp             = new File(file.getPath() + ".tmp");
+			FileOutputStream fos = new FileOutputStream(tmp);
+
+			try {
+				properties.store(fos, "structr import progress");
+				fos.getFD().sync();
+
+			} finally {
+				fos.close();
+			}
+
+			if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("Unable to store import progress in " + file);
+			}
+		}
+	}
 }
@@ -21,7 +21,9 @@
 package org.structr.core.graph;
 
 
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
@@ -33,8 +35,10 @@ import org.neo4j.kernel.DeadlockDetectedException;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.RetryException;
+import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.graph.TransactionStatistics.Phase;
 import org.structr.core.property.PropertyKey;
 
 //~--- classes ----------------------------------------------------------------
@@ -53,6 +57,19 @@ import org.structr.core.property.PropertyKey;
  * });
  * </pre>
  * 
+ * A top-level transaction that fails with a deadlock is retried up to
+ * <code>transaction.retries</code> times (default: 10). Before each retry,
+ * the thread sleeps for a random time between half and all of an
+ * exponentially growing delay, starting at <code>transaction.backoff</code>
+ * and capped at <code>transaction.backoff.max</code> milliseconds, so that
+ * colliding transactions don't collide again right away. The transaction is
+ * given up early when the next sleep would exceed a total of
+ * <code>transaction.backoff.total</code> milliseconds (default: 5000).
+ * 
+ * Only the final outcome of a transaction is counted in the
+ * {@link TransactionStatistics}, a deadlocked attempt that is retried is
+ * counted as a retry, not as a failure.
+ * 
  * @author Christian Morgner
  */
 public class TransactionCommand extends NodeServiceCommand {
@@ -61,6 +78,12 @@ public class TransactionCommand extends NodeServiceCommand {
 	private static final ThreadLocal<TransactionCommand> currentCommand = new ThreadLocal<TransactionCommand>();
 	private static final ThreadLocal<Transaction>        transactions   = new ThreadLocal<Transaction>();
 	private static final MultiSemaphore                  semaphore      = new MultiSemaphore();
+	private static final Random                          random         = new Random();
+
+	private static final int DEFAULT_RETRIES       = 10;
+	private static final int DEFAULT_BACKOFF       = 5;
+	private static final int DEFAULT_BACKOFF_MAX   = 1000;
+	private static final int DEFAULT_BACKOFF_TOTAL = 5000;
 	
 	private ModificationQueue modificationQueue = null;
 	private ErrorBuffer errorBuffer             = null;
@@ -68,30 +91,49 @@ public class TransactionCommand extends NodeServiceCommand {
 	public <T> T execute(StructrTransaction<T> transaction) throws FrameworkException {
 		
 		boolean topLevel = (transactions.get() == null);
-		boolean retry    = true;
 		int retryCount   = 0;
+		long waited      = 0;
 		
 		if (topLevel) {
 			
-			T result = null;
-			
-			while (retry && retryCount++ < 100) {
-
-				// assume success
-				retry = false;
+			while (true) {
 
 				try {
-					result = executeInternal(transaction);
+					return executeInternal(transaction);
 
 				} catch (RetryException rex) {
 
-					logger.log(Level.INFO, "Deadlock encountered, retrying transaction, count {0}", retryCount);
+					int maxRetries = getConfigurationValue(Services.TRANSACTION_RETRIES, DEFAULT_RETRIES);
+					int maxWait    = getConfigurationValue(Services.TRANSACTION_BACKOFF_TOTAL, DEFAULT_BACKOFF_TOTAL);
+					long backoff   = getBackoffMillis(++retryCount);
+
+					if (retryCount > maxRetries || waited + backoff > maxWait) {
+
+						logger.log(Level.WARNING, "Deadlock encountered, giving up after {0} retries and {1} ms", new Object[] { retryCount - 1, waited });
+						TransactionStatistics.retriesExhausted();
+						TransactionStatistics.transactionFinished(false);
+
+						return null;
+					}
+
+					waited += backoff;
+
+					logger.log(Level.FINE, "Deadlock encountered, retrying transaction in {0} ms, count {1}", new Object[] { backoff, retryCount });
+					TransactionStatistics.retry(backoff);
+
+					try {
+
+						Thread.sleep(backoff);
 
-					retry = true;
+					} catch (InterruptedException iex) {
+
+						Thread.currentThread().interrupt();
+						TransactionStatistics.transactionFinished(false);
+
+						return null;
+					}
 				}
 			}
-			
-			return result;
 			 
 		} else {
 			
@@ -109,6 +151,7 @@ public class TransactionCommand extends NodeServiceCommand {
 		Set<String> synchronizationKeys = null;
 		FrameworkException exception    = null;
 		T result                        = null;
+		long t0                         = System.nanoTime();
 		
 		if (topLevel) {
 		
@@ -128,8 +171,14 @@ public class TransactionCommand extends NodeServiceCommand {
 			
 			if (topLevel) {
 
+				t0 = record(Phase.execute, t0);
+
 				// 1. do inner callbacks (may cause transaction to fail)
-				if (!modificationQueue.doInnerCallbacks(securityContext, errorBuffer)) {
+				boolean valid = modificationQueue.doInnerCallbacks(securityContext, errorBuffer);
+
+				t0 = record(Phase.callbacks, t0);
+
+				if (!valid) {
 
 					// create error
 					if (transaction.doValidation) {
@@ -138,15 +187,22 @@ public class TransactionCommand extends NodeServiceCommand {
 				}
 				
 				// 2. fetch all types of entities modified in this tx
-				synchronizationKeys = modificationQueue.getSynchronizationKeys();
+				Set<String> keys = new TreeSet<String>(modificationQueue.getSynchronizationKeys());
 
 				// we need to protect the validation and indexing part of every transaction
 				// from being entered multiple times in the presence of validators
-				// 3. acquire semaphores for each modified type
-				try { semaphore.acquire(synchronizationKeys); } catch (InterruptedException iex) { return null; }
+				// 3. acquire semaphores for each modified type, only release them if we got them all
+				try { semaphore.acquire(keys); } catch (InterruptedException iex) { return null; }
+
+				synchronizationKeys = keys;
+				t0                  = record(Phase.semaphore, t0);
 
 				// finally, do validation under the protection of the semaphores for each type
-				if (!modificationQueue.doValidation(securityContext, errorBuffer, transaction.doValidation)) {
+				valid = modificationQueue.doValidation(securityContext, errorBuffer, transaction.doValidation);
+
+				t0 = record(Phase.validation, t0);
+
+				if (!valid) {
 
 					// create error
 					throw new FrameworkException(422, errorBuffer);
@@ -156,6 +212,8 @@ public class TransactionCommand extends NodeServiceCommand {
 		} catch (DeadlockDetectedException ddex) {
 			
 			tx.failure();
+
+			TransactionStatistics.deadlockDetected();
 			
 			// this block is entered when we first
 			// encounter a DeadlockDetectedException
@@ -196,14 +254,24 @@ public class TransactionCommand extends NodeServiceCommand {
 			if (topLevel) {
 
 				try {
+					t0 = System.nanoTime();
+
 					tx.success();
 					tx.finish();
+
+					// rolled back attempts would distort the commit time
+					if (!error) {
+						t0 = record(Phase.commit, t0);
+					}
 					
 				} finally {
 
 					// release semaphores as the transaction is now finished
 					semaphore.release(synchronizationKeys);	// careful: this can be null
 
+					// cached instances and permissions of modified nodes may be stale now
+					modificationQueue.invalidateCaches();
+
 					// cleanup
 					currentCommand.remove();
 					transactions.remove();
@@ -211,7 +279,17 @@ public class TransactionCommand extends NodeServiceCommand {
 
 				// no error, notify entities
 				if (!error) {
+
+					t0 = System.nanoTime();
+
 					modificationQueue.doOuterCallbacksAndCleanup(securityContext);
+
+					record(Phase.outerCallbacks, t0);
+				}
+
+				// a deadlocked attempt is retried, the outcome is counted in execute()
+				if (!deadlock) {
+					TransactionStatistics.transactionFinished(!error);
 				}
 			}
 		}
@@ -354,6 +432,24 @@ public class TransactionCommand extends NodeServiceCommand {
 		}
 	}
 	
+	/**
+	 * Returns the time to wait before the given retry of a deadlocked
+	 * transaction, a random value between half and all of the exponential
+	 * backoff for this retry.
+	 * 
+	 * @param retryCount the number of the upcoming retry, starting at 1
+	 * @return the backoff in milliseconds
+	 */
+	public static long getBackoffMillis(final int retryCount) {
+
+		long base    = getConfigurationValue(Services.TRANSACTION_BACKOFF, DEFAULT_BACKOFF);
+		long max     = getConfigurationValue(Services.TRANSACTION_BACKOFF_MAX, DEFAULT_BACKOFF_MAX);
+		long ceiling = Math.min(max, base << Math.min(Math.max(retryCount - 1, 0), 20));
+		long half    = ceiling / 2;
+
+		return ceiling - half + (half > 0 ? (long) random.nextInt((int) Math.min(half + 1, Integer.MAX_VALUE)) : 0);
+	}
+
 	public static boolean inTransaction() {
 		return currentCommand.get() != null;
 	}
@@ -361,4 +457,26 @@ public class TransactionCommand extends NodeServiceCommand {
 	private ModificationQueue getModificationQueue() {
 		return modificationQueue;
 	}
+
+	private static long record(final Phase phase, final long start) {
+
+		long now = System.nanoTime();
+
+		TransactionStatistics.record(phase, now - start);
+
+		return now;
+	}
+
+	private static int getConfigurationValue(final String key, final int defaultValue) {
+
+		try {
+			return Math.max(0, Integer.parseInt(Services.getConfigurationValue(key, Integer.toString(defaultValue))));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default of {1}", new Object[] { key, defaultValue });
+		}
+
+		return defaultValue;
+	}
 }
@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects timing and contention statistics of top-level transactions.
+ *
+ * For every transaction, the time spent in each {@link Phase} is recorded,
+ * along with the number of deadlocks and retries. {@link MultiSemaphore}
+ * reports how often each synchronization key had to be waited for and for
+ * how long, so that the hottest keys can be identified.
+ *
+ * @author Christian Morgner
+ */
+public class TransactionStatistics {
+
+	public enum Phase {
+		execute, callbacks, semaphore, validation, commit, outerCallbacks
+	}
+
+	private static final int MAX_TRACKED_KEYS                      = 10000;
+	private static final int HOTTEST_KEYS                          = 10;
+	private static final ConcurrentMap<String, KeyStatistics> keys = new ConcurrentHashMap<String, KeyStatistics>(100, 0.9f, 8);
+	private static final Timer[] phases                            = new Timer[Phase.values().length];
+	private static final AtomicLong transactions                   = new AtomicLong(0);
+	private static final AtomicLong failures                       = new AtomicLong(0);
+	private static final AtomicLong deadlocks                      = new AtomicLong(0);
+	private static final AtomicLong retries                        = new AtomicLong(0);
+	private static final AtomicLong exhausted                      = new AtomicLong(0);
+	private static final AtomicLong backoffMillis                  = new AtomicLong(0);
+
+	static {
+
+		for (Phase phase : Phase.values()) {
+			phases[phase.ordinal()] = new Timer();
+		}
+	}
+
+	public static void transactionFinished(final boolean success) {
+
+		transactions.incrementAndGet();
+
+		if (!success) {
+			failures.incrementAndGet();
+		}
+	}
+
+	public static void deadlockDetected() {
+		deadlocks.incrementAndGet();
+	}
+
+	public static void retry(final long backoff) {
+
+		retries.incrementAndGet();
+		backoffMillis.addAndGet(backoff);
+	}
+
+	public static void retriesExhausted() {
+		exhausted.incrementAndGet();
+	}
+
+	public static void record(final Phase phase, final long nanos) {
+		phases[phase.ordinal()].add(nanos);
+	}
+
+	/**
+	 * Records the acquisition of the semaphore for the given key. A wait
+	 * time of -1 means that the semaphore was available immediately.
+	 *
+	 * @param key
+	 * @param waitNanos
+	 */
+	public static void acquired(final String key, final long waitNanos) {
+
+		KeyStatistics stats = keys.get(key);
+		if (stats == null) {
+
+			if (keys.size() > MAX_TRACKED_KEYS) {
+				keys.clear();
+			}
+
+			KeyStatistics newStats = new KeyStatistics();
+
+			stats = keys.putIfAbsent(key, newStats);
+			if (stats == null) {
+				stats = newStats;
+			}
+		}
+
+		stats.acquisitions.incrementAndGet();
+
+		if (waitNanos >= 0) {
+
+			stats.contentions.incrementAndGet();
+			stats.wait.add(waitNanos);
+		}
+	}
+
+	public static void clear() {
+
+		for (Timer timer : phases) {
+			timer.clear();
+		}
+
+		keys.clear();
+		transactions.set(0);
+		failures.set(0);
+		deadlocks.set(0);
+		retries.set(0);
+		exhausted.set(0);
+		backoffMillis.set(0);
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats         = new LinkedHashMap<String, Object>();
+		Map<String, Object> phaseStats    = new LinkedHashMap<String, Object>();
+		List<Map<String, Object>> hottest = new ArrayList<Map<String, Object>>();
+
+		stats.put("transactions", transactions.get());
+		stats.put("failures", failures.get());
+		stats.put("deadlocks", deadlocks.get());
+		stats.put("retries", retries.get());
+		stats.put("exhausted", exhausted.get());
+		stats.put("backoffMillis", backoffMillis.get());
+
+		for (Phase phase : Phase.values()) {
+			phaseStats.put(phase.name(), phases[phase.ordinal()].getStatistics());
+		}
+
+		stats.put("phases", phaseStats);
+
+		for (Entry<String, KeyStatistics> entry : getHottestKeys(HOTTEST_KEYS)) {
+
+			Map<String, Object> keyStats = new LinkedHashMap<String, Object>();
+			KeyStatistics value          = entry.getValue();
+
+			keyStats.put("key", entry.getKey());
+			keyStats.put("acquisitions", value.acquisitions.get());
+			keyStats.put("contentions", value.contentions.get());
+			keyStats.putAll(value.wait.getStatistics());
+			keyStats.remove("count");
+
+			hottest.add(keyStats);
+		}
+
+		stats.put("hottestKeys", hottest);
+
+		return stats;
+	}
+
+	/**
+	 * Returns the keys that were waited for the longest in total, in
+	 * descending order. Keys that were never contended are omitted.
+	 *
+	 * @param count the maximum number of keys to return
+	 * @return the hottest keys
+	 */
+	public static List<Entry<String, KeyStatistics>> getHottestKeys(final int count) {
+
+		List<Entry<String, KeyStatistics>> entries = new ArrayList<Entry<String, KeyStatistics>>();
+
+		for (Entry<String, KeyStatistics> entry : keys.entrySet()) {
+
+			if (entry.getValue().contentions.get() > 0) {
+				entries.add(entry);
+			}
+		}
+
+		Collections.sort(entries, new Comparator<Entry<String, KeyStatistics>>() {
+
+			@Override
+			public int compare(final Entry<String, KeyStatistics> o1, final Entry<String, KeyStatistics> o2) {
+
+				long w1 = o1.getValue().wait.total.get();
+				long w2 = o2.getValue().wait.total.get();
+
+				return w1 > w2 ? -1 : w1 < w2 ? 1 : 0;
+			}
+		});
+
+		return entries.size() > count ? entries.subList(0, count) : entries;
+	}
+
+	// ----- nested classes -----
+	public static class KeyStatistics {
+
+		private final AtomicLong acquisitions = new AtomicLong(0);
+		private final AtomicLong contentions  = new AtomicLong(0);
+		private final Timer wait              = new Timer();
+
+		public long getAcquisitions() {
+			return acquisitions.get();
+		}
+
+		public long getContentions() {
+			return contentions.get();
+		}
+
+		public long getTotalWaitNanos() {
+			return wait.total.get();
+		}
+	}
+
+	private static class Timer {
+
+		private final AtomicLong count = new AtomicLong(0);
+		private final AtomicLong total = new AtomicLong(0);
+		private final AtomicLong max   = new AtomicLong(0);
+
+		public void add(final long nanos) {
+
+			count.incrementAndGet();
+			total.addAndGet(nanos);
+
+			long current = max.get();
+			while (nanos > current && !max.compareAndSet(current, nanos)) {
+				current = max.get();
+			}
+		}
+
+		public void clear() {
+
+			count.set(0);
+			total.set(0);
+			max.set(0);
+		}
+
+		public Map<String, Object> getStatistics() {
+
+			Map<String, Object> stats = new LinkedHashMap<String, Object>();
+			long num                  = count.get();
+			long sum                  = total.get();
+
+			stats.put("count", num);
+			stats.put("totalMillis", sum / 1000000.0);
+			stats.put("averageMillis", num > 0 ? (sum / num) / 1000000.0 : 0.0);
+			stats.put("maxMillis", max.get() / 1000000.0);
+
+			return stats;
+		}
+	}
+}
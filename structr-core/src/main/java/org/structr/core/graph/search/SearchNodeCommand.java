@@ -38,6 +38,7 @@ import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.UnsupportedArgumentError;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.IndexLocks;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeService.NodeIndex;
 import org.structr.core.graph.NodeServiceCommand;
@@ -45,6 +46,7 @@ import org.structr.core.graph.NodeServiceCommand;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.geo.GeoCodingResult;
@@ -131,7 +133,19 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 	public Result<T> execute(final boolean includeDeletedAndHidden, final boolean publicOnly,
 			      final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final int page, final String offsetId) throws FrameworkException {
 
-		return search(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, pageSize, page, offsetId);
+		return execute(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, pageSize, page, offsetId, false);
+	}
+
+	/**
+	 * Like the other execute methods, but if lazy is true, the nodes are
+	 * instantiated while the result is being consumed, see
+	 * {@link Result#getIterable()}. Searches with filter or distance
+	 * attributes always return a materialized result.
+	 */
+	public Result<T> execute(final boolean includeDeletedAndHidden, final boolean publicOnly,
+			      final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final int page, final String offsetId, final boolean lazy) throws FrameworkException {
+
+		return search(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, pageSize, page, offsetId, lazy);
 	}
 	
 	/**
@@ -148,9 +162,10 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 	 * @param page                          Return the page of the result set with this page size
 	 * @param offsetId                      If given, start pagination at the object with this UUID
 	 * @param sortType                      The entity type to sort the results (needed for lucene)
+	 * @param lazy                          If true, instantiate the nodes while the result is being consumed
 	 * @return
 	 */
-	private Result<T> search(final boolean includeDeletedAndHidden, final boolean publicOnly, final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final int page, final String offsetId) throws FrameworkException {
+	private Result<T> search(final boolean includeDeletedAndHidden, final boolean publicOnly, final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final int page, final String offsetId, final boolean lazy) throws FrameworkException {
 
 		if (page == 0 || pageSize <= 0) {
 
@@ -251,9 +266,14 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 
 						index = (LayerNodeIndex) arguments.get(NodeIndex.layer.name());
 
-						synchronized (index) {
+						Lock lock = IndexLocks.readLock(index);
+						lock.lock();
 
+						try {
 							hits = index.query(LayerNodeIndex.WITHIN_DISTANCE_QUERY, params);
+
+						} finally {
+							lock.unlock();
 						}
 
 					}
@@ -263,41 +283,59 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 					// Search for uuid only: Use UUID index
 					index = (Index<Node>) arguments.get(NodeIndex.uuid.name());
 
-					synchronized (index) {
+					Lock lock = IndexLocks.readLock(index);
+					lock.lock();
 
+					try {
 						hits = index.get(AbstractNode.uuid.dbName(), decodeExactMatch(textualAttributes.get(0).getValue()));
+
+					} finally {
+						lock.unlock();
 					}
 					
 				} else if (allExactMatch) {
 
 					index = (Index<Node>) arguments.get(NodeIndex.keyword.name());
 
-					synchronized (index) {
+					Lock lock = IndexLocks.readLock(index);
+					lock.lock();
 
-						try {
-							hits = index.query(queryContext);
-							
-						} catch (NumberFormatException nfe) {
-							
-							logger.log(Level.SEVERE, "Could not sort results", nfe);
-							
-							// retry without sorting
-							queryContext.sort(null);
-							hits = index.query(queryContext);
-							
-						}
+					try {
+						hits = index.query(queryContext);
+
+					} catch (NumberFormatException nfe) {
+
+						logger.log(Level.SEVERE, "Could not sort results", nfe);
+
+						// retry without sorting
+						queryContext.sort(null);
+						hits = index.query(queryContext);
+
+					} finally {
+						lock.unlock();
 					}
 				} else {
 
 					// Default: Mixed or fulltext-only search: Use fulltext index
 					index = (Index<Node>) arguments.get(NodeIndex.fulltext.name());
 
-					synchronized (index) {
+					Lock lock = IndexLocks.readLock(index);
+					lock.lock();
 
+					try {
 						hits = index.query(queryContext);
+
+					} finally {
+						lock.unlock();
 					}
 				}
 
+				if (lazy && filters.isEmpty() && distanceSearch == null) {
+
+					// hits are closed by the result when it is exhausted
+					return nodeFactory.instantiateNodesLazily(hits);
+				}
+
 				intermediateResult = nodeFactory.instantiateNodes(hits);
 
 				if (hits != null) {
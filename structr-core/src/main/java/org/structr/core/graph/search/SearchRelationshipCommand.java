@@ -39,6 +39,7 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.graph.IndexLocks;
 import org.structr.core.graph.NodeService.RelationshipIndex;
 import org.structr.core.graph.NodeServiceCommand;
 import org.structr.core.graph.RelationshipFactory;
@@ -48,6 +49,7 @@ import org.structr.core.graph.RelationshipFactory;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.core.property.PropertyKey;
@@ -171,22 +173,40 @@ public class SearchRelationshipCommand extends NodeServiceCommand {
 
 					// Search for uuid only: Use UUID index
 					index = (Index<Relationship>) arguments.get(RelationshipIndex.rel_uuid.name());
-					synchronized(index) {
-						hits  = index.get(AbstractNode.uuid.dbName(), decodeExactMatch(textualAttributes.get(0).getValue()));
+					Lock lock = IndexLocks.readLock(index);
+					lock.lock();
+
+					try {
+						hits = index.get(AbstractNode.uuid.dbName(), decodeExactMatch(textualAttributes.get(0).getValue()));
+
+					} finally {
+						lock.unlock();
 					}
 				} else if ((textualAttributes.size() > 1) && allExactMatch) {
 
 					// Only exact machtes: Use keyword index
 					index = (Index<Relationship>) arguments.get(RelationshipIndex.rel_keyword.name());
-					synchronized(index) {
-						hits  = index.query(queryContext);
+					Lock lock = IndexLocks.readLock(index);
+					lock.lock();
+
+					try {
+						hits = index.query(queryContext);
+
+					} finally {
+						lock.unlock();
 					}
 				} else {
 
 					// Default: Mixed or fulltext-only search: Use fulltext index
 					index = (Index<Relationship>) arguments.get(RelationshipIndex.rel_fulltext.name());
-					synchronized(index) {
-						hits  = index.query(queryContext);
+					Lock lock = IndexLocks.readLock(index);
+					lock.lock();
+
+					try {
+						hits = index.query(queryContext);
+
+					} finally {
+						lock.unlock();
 					}
 				}
 
@@ -21,12 +21,14 @@
 package org.structr.core.graph.search;
 
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.IndexLocks;
 import org.structr.core.graph.NodeService.NodeIndex;
 import org.structr.core.graph.NodeServiceCommand;
 import org.structr.common.error.FrameworkException;
@@ -79,11 +81,16 @@ public class SearchUserCommand extends NodeServiceCommand {
 				final Index<Node> index = getIndexFromArguments(idx, arguments);
 				IndexHits<Node> indexHits = null;
 
-				synchronized (index) {
+				Lock lock = IndexLocks.readLock(index);
+				lock.lock();
+
+				try {
 
 					// see: http://docs.neo4j.org/chunked/milestone/indexing-create-advanced.html
 					indexHits = index.query( key.dbName(), "\"" + userNickName + "\"" );
-					
+
+				} finally {
+					lock.unlock();
 				}
 				
 				try {
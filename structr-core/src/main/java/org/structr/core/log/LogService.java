@@ -39,17 +39,26 @@ import java.util.logging.Logger;
 
 /**
  * The log service main class.
+ *
+ * Log entries are written asynchronously by a {@link LogWriter}. The size of
+ * its buffer can be set with <code>structr.logging.threshold</code> in
+ * structr.conf (default: 10000 entries), the maximum time between two flushes
+ * of the log database with <code>structr.logging.interval</code> (default:
+ * 1000 ms). Entries that were not flushed yet are lost if the server crashes.
  * 
  * @author Axel Morgner
  */
 public class LogService implements SingletonService {
 
-	private static final Logger logger                       = Logger.getLogger(LogService.class.getName());
+	private static final Logger logger           = Logger.getLogger(LogService.class.getName());
+	private static final int DEFAULT_THRESHOLD   = 10000;
+	private static final long DEFAULT_INTERVAL   = 1000;
 
 	//~--- fields ---------------------------------------------------------
 
 	private TxPageFileFactory logDbFactory	= null;
 	private TxPageFile logDb		= null;
+	private LogWriter logWriter		= null;
 
 	/** Dependent services */
 	private Set<RunnableService> registeredServices = new HashSet<RunnableService>();
@@ -64,6 +73,7 @@ public class LogService implements SingletonService {
 		if (command != null) {
 
 			command.setArgument("logDb", logDb);
+			command.setArgument("logWriter", logWriter);
 		}
 
 	}
@@ -95,6 +105,22 @@ public class LogService implements SingletonService {
 
 				logDb = logDbFactory.getTxPageFile();
 
+				int threshold = DEFAULT_THRESHOLD;
+				long interval = DEFAULT_INTERVAL;
+
+				try { threshold = Integer.parseInt(Services.getConfigurationValue(Services.LOG_SERVICE_THRESHOLD, Integer.toString(DEFAULT_THRESHOLD))); } catch (NumberFormatException nfex) {
+
+					logger.log(Level.WARNING, "Invalid value for {0}, using default {1}", new Object[] { Services.LOG_SERVICE_THRESHOLD, DEFAULT_THRESHOLD });
+				}
+
+				try { interval = Long.parseLong(Services.getConfigurationValue(Services.LOG_SERVICE_INTERVAL, Long.toString(DEFAULT_INTERVAL))); } catch (NumberFormatException nfex) {
+
+					logger.log(Level.WARNING, "Invalid value for {0}, using default {1}", new Object[] { Services.LOG_SERVICE_INTERVAL, DEFAULT_INTERVAL });
+				}
+
+				logWriter = new LogWriter(logDb, Math.max(1, threshold), Math.max(1, interval));
+				logWriter.start();
+
 			} catch (Throwable t) {
 
 				logger.log(Level.INFO, "Log Database could not be started", logDbPath);
@@ -126,6 +152,14 @@ public class LogService implements SingletonService {
 			// Wait for all registered services to end
 			waitFor(registeredServices.isEmpty());
 
+			if (logWriter != null) {
+
+				// write remaining log entries
+				logWriter.shutdown();
+
+				logWriter = null;
+			}
+
 			try {
 
 				logDbFactory.close();
@@ -171,6 +205,16 @@ public class LogService implements SingletonService {
 
 	//~--- get methods ----------------------------------------------------
 
+	public Map<String, Object> getStatistics() {
+
+		if (logWriter != null) {
+
+			return logWriter.getStatistics();
+		}
+
+		return Collections.emptyMap();
+	}
+
 	@Override
 	public String getName() {
 
@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.log;
+
+import org.fusesource.hawtdb.api.BTreeIndexFactory;
+import org.fusesource.hawtdb.api.IndexFactory;
+import org.fusesource.hawtdb.api.MultiIndexFactory;
+import org.fusesource.hawtdb.api.SortedIndex;
+import org.fusesource.hawtdb.api.Transaction;
+import org.fusesource.hawtdb.api.TxPageFile;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Writes log entries to the log database in the background. Entries are
+ * queued in a bounded buffer and committed in batches, the log database
+ * is flushed to disk at most once per interval.
+ *
+ * Log entries are stored in one index per key, the entry keys consist of
+ * the hex encoded timestamp and a sequence number, so the entries of an
+ * index are sorted by time.
+ *
+ * @author Axel Morgner
+ */
+class LogWriter extends Thread {
+
+	private static final Logger logger = Logger.getLogger(LogWriter.class.getName());
+	public static final int KEY_LENGTH = 24;
+
+	//~--- fields ---------------------------------------------------------
+
+	private final AtomicLong sequence     = new AtomicLong(0);
+	private final AtomicLong enqueued     = new AtomicLong(0);
+	private final AtomicLong commits      = new AtomicLong(0);
+	private final AtomicLong flushes      = new AtomicLong(0);
+	private final Object commitLock       = new Object();
+	private BlockingQueue<LogEntry> queue = null;
+	private TxPageFile logDb              = null;
+	private volatile boolean running      = true;
+	private long committed                = 0;
+	private long interval                 = 0;
+	private int capacity                  = 0;
+
+	//~--- constructors ---------------------------------------------------
+
+	public LogWriter(final TxPageFile logDb, final int capacity, final long interval) {
+
+		super("LogWriter");
+
+		this.logDb    = logDb;
+		this.capacity = capacity;
+		this.interval = interval;
+		this.queue    = new ArrayBlockingQueue<LogEntry>(capacity);
+
+		setDaemon(true);
+	}
+
+	//~--- methods --------------------------------------------------------
+
+	/**
+	 * Queues the given data for the given key. Blocks if the buffer is
+	 * full.
+	 *
+	 * @param key
+	 * @param data
+	 */
+	public void write(final String key, final String[] data) {
+
+		LogEntry entry = new LogEntry(key, createKey(System.currentTimeMillis(), sequence.incrementAndGet()), data);
+
+		enqueued.incrementAndGet();
+
+		try {
+
+			queue.put(entry);
+
+		} catch (InterruptedException iex) {
+
+			logger.log(Level.WARNING, "Interrupted while writing log entry for key {0}", key);
+			committed(1);
+		}
+	}
+
+	/**
+	 * Waits until all entries that were queued before this call are
+	 * committed, so they can be read.
+	 */
+	public void waitForCommit() {
+
+		long target = enqueued.get();
+
+		synchronized (commitLock) {
+
+			while (committed < target && isAlive()) {
+
+				try {
+
+					commitLock.wait(interval);
+
+				} catch (InterruptedException iex) {
+
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes all remaining entries and stops the writer.
+	 */
+	public void shutdown() {
+
+		// no interrupt here, that would close the file channel of
+		// the log database if the writer is just committing
+		running = false;
+
+		try {
+
+			this.join();
+
+		} catch (InterruptedException iex) {}
+	}
+
+	@Override
+	public void run() {
+
+		List<LogEntry> batch = new ArrayList<LogEntry>();
+		long lastFlush       = System.currentTimeMillis();
+		boolean dirty        = false;
+
+		while (running || !queue.isEmpty()) {
+
+			try {
+
+				LogEntry first = queue.poll(interval, TimeUnit.MILLISECONDS);
+				if (first != null) {
+
+					batch.add(first);
+					queue.drainTo(batch, capacity);
+				}
+
+			} catch (InterruptedException iex) {}
+
+			if (!batch.isEmpty()) {
+
+				commit(batch);
+				dirty = true;
+			}
+
+			long now = System.currentTimeMillis();
+
+			if (dirty && (now - lastFlush >= interval || !running)) {
+
+				flush();
+
+				lastFlush = now;
+				dirty     = false;
+			}
+
+			committed(batch.size());
+			batch.clear();
+		}
+	}
+
+	// ----- private methods -----
+	private void commit(final List<LogEntry> batch) {
+
+		Transaction tx                                   = logDb.tx();
+		MultiIndexFactory multiIndexFactory              = new MultiIndexFactory(tx);
+		IndexFactory<String, Object> indexFactory        = new BTreeIndexFactory<String, Object>();
+		Map<String, SortedIndex<String, Object>> indexes = new LinkedHashMap<String, SortedIndex<String, Object>>();
+
+		try {
+
+			for (LogEntry entry : batch) {
+
+				SortedIndex<String, Object> index = indexes.get(entry.key);
+				if (index == null) {
+
+					try {
+
+						index = (SortedIndex<String, Object>) multiIndexFactory.openOrCreate(entry.key, indexFactory);
+
+					} catch (org.fusesource.hawtdb.api.IndexException e) {
+
+						logger.log(Level.WARNING, "Could not open or create log db page for key {0}", entry.key);
+
+						index = (SortedIndex<String, Object>) multiIndexFactory.create(entry.key, indexFactory);
+					}
+
+					indexes.put(entry.key, index);
+				}
+
+				index.put(entry.entryKey, entry.data);
+			}
+
+			tx.commit();
+			commits.incrementAndGet();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, "Unable to write " + batch.size() + " log entries", t);
+			tx.rollback();
+		}
+	}
+
+	private void flush() {
+
+		try {
+
+			logDb.flush();
+			flushes.incrementAndGet();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, "Unable to flush log database", t);
+		}
+	}
+
+	private void committed(final int count) {
+
+		synchronized (commitLock) {
+
+			committed += count;
+			commitLock.notifyAll();
+		}
+	}
+
+	//~--- get methods ----------------------------------------------------
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+		stats.put("queued", queue.size());
+		stats.put("capacity", capacity);
+		stats.put("written", enqueued.get());
+		stats.put("commits", commits.get());
+		stats.put("flushes", flushes.get());
+
+		return stats;
+	}
+
+	/**
+	 * Creates an entry key that sorts by the given timestamp.
+	 */
+	public static String createKey(final long timestamp, final long sequence) {
+
+		StringBuilder buf = new StringBuilder(KEY_LENGTH);
+
+		appendHex(buf, timestamp, 16);
+		appendHex(buf, sequence & 0xffffffffL, 8);
+
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the timestamp of the given entry key, or -1 if the entry was
+	 * written with an older version that used random keys.
+	 */
+	public static long getTimestamp(final String entryKey) {
+
+		if (entryKey.length() == KEY_LENGTH) {
+
+			try {
+				return Long.parseLong(entryKey.substring(0, 16), 16);
+
+			} catch (NumberFormatException nfex) {}
+		}
+
+		return -1;
+	}
+
+	private static void appendHex(final StringBuilder buf, final long value, final int length) {
+
+		String hex = Long.toHexString(value);
+
+		for (int i = hex.length(); i < length; i++) {
+			buf.append('0');
+		}
+
+		buf.append(hex);
+	}
+
+	//~--- inner classes --------------------------------------------------
+
+	private static class LogEntry {
+
+		private String entryKey = null;
+		private String[] data   = null;
+		private String key      = null;
+
+		public LogEntry(final String key, final String entryKey, final String[] data) {
+
+			this.key      = key;
+			this.entryKey = entryKey;
+			this.data     = data;
+		}
+	}
+}
@@ -20,7 +20,6 @@
 
 package org.structr.core.log;
 
-import java.util.HashMap;
 import org.fusesource.hawtdb.api.BTreeIndexFactory;
 import org.fusesource.hawtdb.api.IndexFactory;
 import org.fusesource.hawtdb.api.MultiIndexFactory;
@@ -33,6 +32,7 @@ import org.structr.common.error.FrameworkException;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
@@ -42,7 +42,10 @@ import java.util.logging.Logger;
 
 /**
  * Returns the values previously stored under the given key with the
- * {@link WriteLogCommand}.
+ * {@link WriteLogCommand}, in the order they were written.
+ *
+ * The entries of a key are indexed by time, so reading a time range does
+ * not need to scan all entries of the key.
  *
  * @author Axel Morgner
  */
@@ -54,24 +57,63 @@ public class ReadLogCommand extends LogServiceCommand {
 
 	public Map<String, Object> execute(String key) throws FrameworkException {
 
+		return execute(key, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the values stored under the given key between the given
+	 * points in time.
+	 *
+	 * @param key the key
+	 * @param from the start time in milliseconds, inclusive
+	 * @param to the end time in milliseconds, exclusive
+	 * @return the values, ordered by time
+	 * @throws FrameworkException
+	 */
+	public Map<String, Object> execute(String key, long from, long to) throws FrameworkException {
+
 		TxPageFile logDb           = (TxPageFile) arguments.get("logDb");
-		Map<String, Object> result = new HashMap<String, Object>();
+		LogWriter logWriter        = (LogWriter) arguments.get("logWriter");
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+
+		if (logWriter != null) {
+
+			// make sure we can read our own writes
+			logWriter.waitForCommit();
+		}
 
 		if (logDb != null) {
 
 			Transaction tx                            = logDb.tx();
 			MultiIndexFactory multiIndexFactory       = new MultiIndexFactory(tx);
 			IndexFactory<String, Object> indexFactory = new BTreeIndexFactory<String, Object>();
+			boolean all                               = from <= 0 && to == Long.MAX_VALUE;
 
 			try {
 
 				SortedIndex<String, Object> index  = (SortedIndex<String, Object>) multiIndexFactory.openOrCreate(key, indexFactory);
-				Iterator<Entry<String, Object>> it = index.iterator();
+				Iterator<Entry<String, Object>> it = all ? index.iterator() : index.iterator(LogWriter.createKey(Math.max(0, from), 0));
 
 				while (it.hasNext()) {
 
 					Entry<String, Object> entry = it.next();
 
+					if (!all) {
+
+						long timestamp = LogWriter.getTimestamp(entry.getKey());
+
+						if (timestamp >= to) {
+
+							break;
+						}
+
+						// skip entries with random keys from older versions
+						if (timestamp < from) {
+
+							continue;
+						}
+					}
+
 					result.put(entry.getKey(), entry.getValue());
 
 				}
@@ -80,6 +122,10 @@ public class ReadLogCommand extends LogServiceCommand {
 
 				logger.log(Level.WARNING, "Could not read log db page for key {0}", key);
 
+			} finally {
+
+				// read-only, discard the index page if we just created it
+				tx.rollback();
 			}
 		}
 
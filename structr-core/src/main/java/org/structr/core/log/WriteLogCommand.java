@@ -18,76 +18,37 @@
  */
 package org.structr.core.log;
 
-import org.fusesource.hawtdb.api.BTreeIndexFactory;
-import org.fusesource.hawtdb.api.IndexFactory;
-import org.fusesource.hawtdb.api.MultiIndexFactory;
-import org.fusesource.hawtdb.api.SortedIndex;
-import org.fusesource.hawtdb.api.Transaction;
-import org.fusesource.hawtdb.api.TxPageFile;
-
 import org.structr.common.error.FrameworkException;
 
-//~--- JDK imports ------------------------------------------------------------
-
-import java.util.UUID;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 //~--- classes ----------------------------------------------------------------
 
 /**
  * Simple and fast key/value logger.
  * 
  * The execute method takes two parameters: A key (String) and a String[] with arbitrary data.
- * Each log entry gets a unique id (UUID).
+ * Each log entry gets a unique id that starts with the (hex encoded) time of the log entry.
+ *
+ * The entries are queued and written to the log database in the background, see
+ * {@link LogService}.
  * 
  * @author Axel Morgner
  */
 public class WriteLogCommand extends LogServiceCommand {
 
-	private static final Logger logger = Logger.getLogger(WriteLogCommand.class.getName());
-
 	//~--- methods --------------------------------------------------------
 
 	public void execute(String key, String... obj) throws FrameworkException {
 
-		TxPageFile logDb = (TxPageFile) arguments.get("logDb");
+		LogWriter logWriter = (LogWriter) arguments.get("logWriter");
 
-		if (logDb != null) {
+		if (logWriter != null) {
 
 			if (key != null) {
 
-				synchronized (logDb) {
-
-					Transaction tx                            = logDb.tx();
-					MultiIndexFactory multiIndexFactory       = new MultiIndexFactory(tx);
-					IndexFactory<String, Object> indexFactory = new BTreeIndexFactory<String, Object>();
-					SortedIndex<String, Object> index         = null;
-
-					try {
-
-						index = (SortedIndex<String, Object>) multiIndexFactory.openOrCreate(key, indexFactory);
-
-					} catch (org.fusesource.hawtdb.api.IndexException e) {
-
-						logger.log(Level.WARNING, "Could not open or create log db page for key {0}", key);
-
-						index = (SortedIndex<String, Object>) multiIndexFactory.create(key, indexFactory);
-
-					}
-
-					String uuid  = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
-
-					index.put(uuid, obj);
-
-					// disabled to avoid parameter evaluation 
-					// logger.log(Level.FINE, "Logged for key {0}: {1}", new Object[] { key, StringUtils.join((String[]) obj, ",") });
-					
-					tx.commit();
-					logDb.flush();
-
-				}
+				logWriter.write(key, obj);
 
+				// disabled to avoid parameter evaluation 
+				// logger.log(Level.FINE, "Logged for key {0}: {1}", new Object[] { key, StringUtils.join((String[]) obj, ",") });
 			}
 		}
 	}
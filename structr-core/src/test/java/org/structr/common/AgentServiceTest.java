@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.structr.core.Services;
+import org.structr.core.agent.AgentService;
+import org.structr.core.agent.TestAgent;
+import org.structr.core.agent.TestTask;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Arrays;
+import java.util.Map;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test priority ordering, task deduplication, per-type concurrency
+ * limits and retries of the {@link AgentService}.
+ *
+ * @author Christian Morgner
+ */
+public class AgentServiceTest extends StructrTest {
+
+	private AgentService agentService = null;
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01PriorityAndDeduplication() throws Exception {
+
+		// the blocking task occupies the only slot of TestTask, all others
+		// have to wait in the queue
+		agentService.processTask(new TestTask(0, 0, true));
+		waitFor("running", 1);
+
+		agentService.processTask(new TestTask(1, 0, false));
+		agentService.processTask(new TestTask(2, 5, false));
+		agentService.processTask(new TestTask(1, 0, false));
+
+		assertEquals(2, agentService.getTaskQueue().size());
+
+		TestAgent.release.countDown();
+		waitFor("completed", 3);
+
+		Map<String, Object> stats = agentService.getStatistics();
+
+		assertEquals(Arrays.asList(0, 2, 1), TestAgent.processed);
+		assertEquals(1L, stats.get("deduplicated"));
+		assertEquals(0L, stats.get("failed"));
+		assertEquals(1, TestAgent.maxRunning.get());
+		assertEquals(0, agentService.getTaskQueue().size());
+	}
+
+	public void test02ConcurrencyLimit() throws Exception {
+
+		for (int i = 0; i < 20; i++) {
+			agentService.processTask(new TestTask(i, 0, false));
+		}
+
+		waitFor("completed", 20);
+
+		assertEquals(20, TestAgent.processed.size());
+		assertEquals(1, TestAgent.maxRunning.get());
+	}
+
+	public void test03Retry() throws Exception {
+
+		// succeeds on the third attempt
+		agentService.processTask(new TestTask(1, 0, false, 2));
+
+		// fails on every attempt
+		agentService.processTask(new TestTask(2, 0, false, 5));
+
+		waitFor("completed", 1);
+		waitFor("failed", 1);
+
+		Map<String, Object> stats = agentService.getStatistics();
+
+		assertEquals(Arrays.asList(1), TestAgent.processed);
+		assertEquals(3, TestAgent.attempts.get(1).get());
+		assertEquals(3, TestAgent.attempts.get(2).get());
+		assertEquals(4L, stats.get("retried"));
+		assertEquals(1L, stats.get("completed"));
+		assertEquals(1L, stats.get("failed"));
+		assertEquals(0, agentService.getTaskQueue().size());
+	}
+
+	private void waitFor(final String key, final long value) throws InterruptedException {
+
+		for (int i = 0; i < 1000; i++) {
+
+			Object current = "running".equals(key) ? Long.valueOf(TestAgent.running.get()) : agentService.getStatistics().get(key);
+
+			if (current instanceof Number && ((Number) current).longValue() >= value) {
+				return;
+			}
+
+			Thread.sleep(10);
+		}
+
+		fail("Timeout waiting for " + key + " to reach " + value);
+	}
+
+	//~--- set methods ----------------------------------------------------
+
+	@Override
+	protected void setUp() throws Exception {
+
+		super.setUp();
+
+		context.put(Services.AGENT_THREADS, "4");
+		context.put(Services.AGENT_CONCURRENCY + ".TestAgent", "1");
+		context.put(Services.AGENT_RETRIES, "2");
+		context.put(Services.AGENT_RETRY_DELAY, "10");
+
+		TestAgent.reset();
+
+		agentService = new AgentService();
+		agentService.initialize(context);
+		agentService.startService();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+
+		TestAgent.release.countDown();
+
+		agentService.stopService();
+		agentService.shutdown();
+
+		super.tearDown();
+	}
+}
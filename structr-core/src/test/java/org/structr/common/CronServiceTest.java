@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.structr.core.cron.CronService;
+import org.structr.core.cron.CronTestTask;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Map;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test scheduling of the {@link CronService} with a manually advanced
+ * clock.
+ *
+ * @author Christian Morgner
+ */
+public class CronServiceTest extends StructrTest {
+
+	private ManualClock clock       = null;
+	private CronService cronService = null;
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01ExactExecutionTimes() {
+
+		// every full minute
+		initialize("0 * * * * *", time(12, 0, 30, 0));
+
+		assertEquals(new Date(time(12, 1, 0, 0)), getStatistics().get("nextExecution"));
+
+		clock.set(time(12, 0, 59, 999));
+		assertEquals(0, cronService.runDueTasks());
+
+		clock.set(time(12, 1, 0, 0));
+		assertEquals(1, cronService.runDueTasks());
+		assertEquals(0, cronService.runDueTasks());
+
+		Map<String, Object> stats = getStatistics();
+
+		assertEquals(new Date(time(12, 2, 0, 0)), stats.get("nextExecution"));
+		assertEquals(1L, stats.get("executions"));
+		assertEquals(0L, stats.get("missed"));
+		assertEquals(0L, stats.get("lastLatenessMillis"));
+	}
+
+	public void test02MissedRuns() {
+
+		initialize("0 * * * * *", time(12, 0, 30, 0));
+
+		// the service was not able to run for more than four minutes
+		clock.set(time(12, 4, 10, 0));
+		assertEquals(1, cronService.runDueTasks());
+
+		Map<String, Object> stats = getStatistics();
+
+		assertEquals(new Date(time(12, 5, 0, 0)), stats.get("nextExecution"));
+		assertEquals(1L, stats.get("executions"));
+		assertEquals(3L, stats.get("missed"));
+		assertEquals(190000L, stats.get("lastLatenessMillis"));
+	}
+
+	public void test03NextLargerUnitStartsAtBeginning() {
+
+		// every second of minute 30
+		initialize("* 30 * * * *", time(12, 40, 15, 500));
+
+		assertEquals(new Date(time(13, 30, 0, 0)), getStatistics().get("nextExecution"));
+
+		clock.set(time(13, 30, 0, 0));
+		assertEquals(1, cronService.runDueTasks());
+		assertEquals(new Date(time(13, 30, 1, 0)), getStatistics().get("nextExecution"));
+	}
+
+	private void initialize(final String expression, final long now) {
+
+		context.put(CronService.TASKS, CronTestTask.class.getName());
+		context.put(CronTestTask.class.getName() + CronService.EXPRESSION_SUFFIX, expression);
+
+		clock       = new ManualClock(now);
+		cronService = new CronService(clock);
+
+		cronService.initialize(context);
+	}
+
+	private Map<String, Object> getStatistics() {
+		return (Map<String, Object>) cronService.getStatistics().get(CronTestTask.class.getName());
+	}
+
+	private long time(final int hours, final int minutes, final int seconds, final int millis) {
+
+		Calendar calendar = new GregorianCalendar(2013, Calendar.MARCH, 12, hours, minutes, seconds);
+
+		calendar.set(Calendar.MILLISECOND, millis);
+
+		return calendar.getTimeInMillis();
+	}
+
+	//~--- inner classes --------------------------------------------------
+
+	private static class ManualClock implements CronService.Clock {
+
+		private long time = 0;
+
+		public ManualClock(final long time) {
+			this.time = time;
+		}
+
+		public void set(final long time) {
+			this.time = time;
+		}
+
+		@Override
+		public long currentTimeMillis() {
+			return time;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.CypherQueryCache;
+import org.structr.core.graph.CypherQueryCache.NormalizedQuery;
+import org.structr.core.graph.CypherQueryCommand;
+import org.structr.core.graph.CypherResult;
+import org.structr.core.property.PropertyMap;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test the literal extraction of the {@link CypherQueryCache} and the lazy
+ * results of the {@link CypherQueryCommand}.
+ *
+ * All tests are executed in superuser context
+ *
+ * @author Christian Morgner
+ */
+public class CypherQueryCacheTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(CypherQueryCacheTest.class.getName());
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01Normalize() {
+
+		NormalizedQuery query = CypherQueryCache.normalize("START n=node:keywordAllNodes(type=\"TestOne\") WHERE n.name = 'it\\'s' AND n.age >= 30 AND n.weight < 2.5 RETURN n SKIP 5 LIMIT 10");
+
+		assertEquals("START n=node:keywordAllNodes(type={literal0}) WHERE n.name = {literal1} AND n.age >= {literal2} AND n.weight < {literal3} RETURN n SKIP {literal4} LIMIT {literal5}", query.getQuery());
+
+		Map<String, Object> parameters = query.getParameters(null);
+
+		assertEquals("TestOne", parameters.get("literal0"));
+		assertEquals("it's", parameters.get("literal1"));
+		assertEquals(30L, parameters.get("literal2"));
+		assertEquals(2.5, parameters.get("literal3"));
+		assertEquals(5L, parameters.get("literal4"));
+		assertEquals(10L, parameters.get("literal5"));
+
+		// ids, negative numbers and regular expressions, but no ranges or identifiers
+		query = CypherQueryCache.normalize("START n=node(42) MATCH n-[:KNOWS*1..3]->m2 WHERE m2.x<-1 AND m2.name =~ /a\\/b.*/ RETURN m2");
+
+		assertEquals("START n=node({literal0}) MATCH n-[:KNOWS*1..3]->m2 WHERE m2.x<{literal1} AND m2.name =~ {literal2} RETURN m2", query.getQuery());
+		assertEquals(42L, query.getParameters(null).get("literal0"));
+		assertEquals(-1L, query.getParameters(null).get("literal1"));
+		assertEquals("a/b.*", query.getParameters(null).get("literal2"));
+
+		// queries that differ only in their literals share the normalized text
+		assertEquals(CypherQueryCache.normalize("START n=node(1) WHERE n.name = 'a' RETURN n").getQuery(), CypherQueryCache.normalize("START n=node(2) WHERE n.name = 'b' RETURN n").getQuery());
+	}
+
+	public void test02PlanCacheAndPaging() {
+
+		try {
+
+			for (int i = 0; i < 10; i++) {
+
+				PropertyMap props = new PropertyMap();
+
+				props.put(AbstractNode.name, "node" + i);
+
+				createTestNode(TestOne.class.getSimpleName(), props);
+			}
+
+			CypherQueryCache.clear();
+
+			CypherQueryCommand cypherQueryCommand = Services.command(securityContext, CypherQueryCommand.class);
+			long misses                           = (Long) CypherQueryCache.getStatistics().get("misses");
+			long hits                             = (Long) CypherQueryCache.getStatistics().get("hits");
+
+			for (int i = 0; i < 10; i++) {
+
+				List<GraphObject> result = cypherQueryCommand.execute("START n=node:keywordAllNodes(type='TestOne') WHERE n.name = 'node" + i + "' RETURN n");
+
+				assertEquals(1, result.size());
+				assertEquals("node" + i, result.get(0).getProperty(AbstractNode.name));
+			}
+
+			// only the first query needed a new plan
+			assertEquals(misses + 1, CypherQueryCache.getStatistics().get("misses"));
+			assertEquals(hits + 9, CypherQueryCache.getStatistics().get("hits"));
+
+			CypherResult result     = cypherQueryCommand.iterate("START n=node:keywordAllNodes(type='TestOne') RETURN n ORDER BY n.name", null, false, false);
+			List<GraphObject> page2 = result.getPage(3, 2);
+
+			assertEquals(3, page2.size());
+			assertEquals("node3", page2.get(0).getProperty(AbstractNode.name));
+			assertEquals("node5", page2.get(2).getProperty(AbstractNode.name));
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03ProjectionsAndParameters() {
+
+		// literals in projections determine the column names and are kept
+		NormalizedQuery query = CypherQueryCache.normalize("START n=node(1) WITH n WHERE n.name = 'a' RETURN 'x', coalesce(n.name?, 'none'), n.age > 3 ORDER BY n.name SKIP 1 LIMIT 2");
+
+		assertEquals("START n=node({literal0}) WITH n WHERE n.name = {literal1} RETURN 'x', coalesce(n.name?, 'none'), n.age > 3 ORDER BY n.name SKIP {literal2} LIMIT {literal3}", query.getQuery());
+
+		// property names are no clauses
+		query = CypherQueryCache.normalize("START n=node(1) RETURN n.name, n.set = 'a'");
+
+		assertEquals("START n=node({literal0}) RETURN n.name, n.set = 'a'", query.getQuery());
+
+		// caller parameters must not overwrite extracted literals
+		Map<String, Object> callerParameters = new HashMap<String, Object>();
+
+		callerParameters.put("literal0", 99L);
+		callerParameters.put("name", "b");
+
+		Map<String, Object> parameters = CypherQueryCache.normalize("START n=node(1) WHERE n.name = {name} RETURN n").getParameters(callerParameters);
+
+		assertEquals(1L, parameters.get("literal0"));
+		assertEquals("b", parameters.get("name"));
+
+		// queries that use our parameter names are not normalized
+		assertEquals("START n=node({ literal0 }) RETURN n", CypherQueryCache.normalize("START n=node({ literal0 }) RETURN n").getQuery());
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.structr.core.EntityContext;
+import org.structr.core.entity.TestNine;
+import org.structr.core.property.PropertyKey;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test the type metadata lookups of {@link EntityContext}. The tests
+ * register views on {@link TestNine} only, which no other test uses.
+ *
+ * All tests are executed in superuser context
+ *
+ * @author Christian Morgner
+ */
+public class EntityContextTest extends StructrTest {
+
+	private static final int NUMBER_OF_THREADS = 8;
+	private static final int LOOKUPS_PER_THREAD = 10000;
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01PropertySetIsSharedAndReadOnly() {
+
+		Set<PropertyKey> first  = EntityContext.getPropertySet(TestNine.class, PropertyView.Public);
+		Set<PropertyKey> second = EntityContext.getPropertySet(TestNine.class, PropertyView.Public);
+
+		assertSame(first, second);
+		assertTrue(first.contains(TestNine.anInt));
+		assertEquals(first.size(), EntityContext.getPropertyArray(TestNine.class, PropertyView.Public).length);
+
+		try {
+
+			first.add(TestNine.aString);
+			fail("Property set should be read-only");
+
+		} catch (UnsupportedOperationException uoex) {}
+
+		assertTrue(EntityContext.getPropertySet(TestNine.class, "nonexistingView").isEmpty());
+	}
+
+	public void test02GenericPropertiesAreReused() {
+
+		PropertyKey first  = EntityContext.getPropertyKeyForJSONName(TestNine.class, "unknownProperty");
+		PropertyKey second = EntityContext.getPropertyKeyForDatabaseName(TestNine.class, "unknownProperty");
+
+		assertNotNull(first);
+		assertSame(first, second);
+		assertSame(TestNine.anInt, EntityContext.getPropertyKeyForJSONName(TestNine.class, "anInt"));
+		assertNull(EntityContext.getPropertyKeyForJSONName(TestNine.class, "unknownProperty", false));
+	}
+
+	public void test03RegistrationReplacesSnapshot() {
+
+		Set<PropertyKey> before = EntityContext.getPropertySet(TestNine.class, "entityContextTestView");
+
+		assertTrue(before.isEmpty());
+
+		EntityContext.registerPropertySet(TestNine.class, "entityContextTestView", TestNine.aString);
+
+		Set<PropertyKey> after = EntityContext.getPropertySet(TestNine.class, "entityContextTestView");
+
+		assertTrue(before.isEmpty());
+		assertEquals(1, after.size());
+		assertTrue(after.contains(TestNine.aString));
+	}
+
+	public void test04NormalizeEntityName() {
+
+		assertEquals("TestOne", EntityContext.normalizeEntityName("test_ones"));
+		assertEquals("TestOne", EntityContext.normalizeEntityName("test_ones"));
+		assertEquals("TestOne/TestTwo", EntityContext.normalizeEntityName("test_ones/test_twos"));
+		assertEquals("Property", EntityContext.normalizeEntityName("properties"));
+		assertEquals("Address", EntityContext.normalizeEntityName("address"));
+	}
+
+	public void test05ConcurrentLookupsAndRegistrations() {
+
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final CountDownLatch doneSignal  = new CountDownLatch(NUMBER_OF_THREADS);
+		final AtomicInteger errors       = new AtomicInteger(0);
+
+		for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+
+			final int threadNumber = i;
+
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+
+					try {
+
+						startSignal.await();
+
+						for (int j = 0; j < LOOKUPS_PER_THREAD; j++) {
+
+							// one thread keeps registering while the others read
+							if (threadNumber == 0 && j % 100 == 0) {
+
+								EntityContext.registerPropertySet(TestNine.class, "concurrentView" + j, TestNine.aLong);
+							}
+
+							if (!EntityContext.getPropertySet(TestNine.class, PropertyView.Public).contains(TestNine.aString)) {
+								errors.incrementAndGet();
+							}
+
+							if (EntityContext.getPropertyKeyForJSONName(TestNine.class, "aDate") != TestNine.aDate) {
+								errors.incrementAndGet();
+							}
+						}
+
+					} catch (Throwable t) {
+
+						errors.incrementAndGet();
+
+					} finally {
+
+						doneSignal.countDown();
+					}
+				}
+
+			}).start();
+		}
+
+		startSignal.countDown();
+
+		try {
+			doneSignal.await();
+
+		} catch (InterruptedException iex) {
+
+			fail("Unexpected exception");
+		}
+
+		assertEquals(0, errors.get());
+		assertTrue(EntityContext.getPropertySet(TestNine.class, "concurrentView0").contains(TestNine.aLong));
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.NewIndexNodeCommand;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.property.PropertyMap;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests incremental index updates and compares the write throughput
+ * of delta updates with full reindexing.
+ *
+ * All tests are executed in superuser context
+ *
+ * @author Christian Morgner
+ */
+public class IndexUpdateTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(IndexUpdateTest.class.getName());
+
+	private static final int NUMBER_OF_NODES   = 200;
+	private static final int NUMBER_OF_UPDATES = 5;
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01DeltaUpdate() {
+
+		try {
+
+			PropertyMap props = new PropertyMap();
+
+			props.put(TestOne.aString, "before");
+			props.put(TestOne.anInt, 1);
+
+			final AbstractNode node = createTestNode(TestOne.class.getSimpleName(), props);
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					node.setProperty(TestOne.aString, "after");
+					return null;
+				}
+			});
+
+			SearchNodeCommand searchCommand = Services.command(securityContext, SearchNodeCommand.class);
+
+			// the modified property must be found with its new value only
+			assertEquals(0, searchCommand.execute(Search.andExactType(TestOne.class.getSimpleName()), Search.andExactProperty(TestOne.aString, "before")).size());
+			assertEquals(1, searchCommand.execute(Search.andExactType(TestOne.class.getSimpleName()), Search.andExactProperty(TestOne.aString, "after")).size());
+
+			// the other index entries must not be touched
+			assertEquals(1, searchCommand.execute(Search.andExactType(TestOne.class.getSimpleName()), Search.andExactProperty(TestOne.anInt, 1)).size());
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.SEVERE, fex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test02UpdateThroughput() {
+
+		try {
+
+			final List<AbstractNode> nodes = createTestNodes(TestOne.class.getSimpleName(), NUMBER_OF_NODES);
+
+			// warm up
+			runUpdates(nodes, true, 0);
+
+			double fullRate  = runUpdates(nodes, false, 1);
+			double deltaRate = runUpdates(nodes, true, 2);
+
+			DecimalFormat decimalFormat = new DecimalFormat("0.00", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+
+			logger.log(Level.INFO, "Index update throughput: full {0} updates/s, delta {1} updates/s",
+				new Object[] { decimalFormat.format(fullRate), decimalFormat.format(deltaRate) });
+
+			Result result = Services.command(securityContext, SearchNodeCommand.class).execute(Search.andExactType(TestOne.class.getSimpleName()), Search.andExactProperty(TestOne.anInt, 2 * NUMBER_OF_UPDATES + NUMBER_OF_UPDATES - 1));
+
+			assertEquals(NUMBER_OF_NODES, result.size());
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.SEVERE, fex.toString());
+			fail("Unexpected exception");
+
+		} finally {
+
+			NewIndexNodeCommand.setDeltaUpdates(true);
+		}
+
+	}
+
+	private double runUpdates(final List<AbstractNode> nodes, final boolean deltaUpdates, final int run) throws FrameworkException {
+
+		NewIndexNodeCommand.setDeltaUpdates(deltaUpdates);
+
+		long t0 = System.nanoTime();
+
+		for (int i = 0; i < NUMBER_OF_UPDATES; i++) {
+
+			final int value = run * NUMBER_OF_UPDATES + i;
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					for (AbstractNode node : nodes) {
+						node.setProperty(TestOne.anInt, value);
+					}
+
+					return null;
+				}
+			});
+		}
+
+		long t1 = System.nanoTime();
+
+		return (nodes.size() * NUMBER_OF_UPDATES) / ((t1 - t0) / 1000000000.0);
+	}
+
+}
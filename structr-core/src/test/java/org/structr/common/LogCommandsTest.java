@@ -151,4 +151,50 @@ public class LogCommandsTest extends StructrTest {
 
 	}
 
+	public void test03TestTimeRange() {
+
+		try {
+
+			String logPageKey = "test3";
+
+			for (int i = 0; i < 10; i++) {
+
+				writeLogCommand.execute(logPageKey, new String[] { "before" + i });
+			}
+
+			Thread.sleep(20);
+
+			long t1 = System.currentTimeMillis();
+
+			for (int i = 0; i < 5; i++) {
+
+				writeLogCommand.execute(logPageKey, new String[] { "after" + i });
+			}
+
+			Map<String, Object> before = readLogCommand.execute(logPageKey, 0, t1);
+			Map<String, Object> after  = readLogCommand.execute(logPageKey, t1, Long.MAX_VALUE);
+			Map<String, Object> all    = readLogCommand.execute(logPageKey);
+
+			assertEquals(10, before.size());
+			assertEquals(5, after.size());
+			assertEquals(15, all.size());
+
+			// entries are returned in the order they were written
+			int i = 0;
+
+			for (Object value : all.values()) {
+
+				assertEquals(i < 10 ? "before" + i : "after" + (i - 10), ((String[]) value)[0]);
+				i++;
+			}
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 }
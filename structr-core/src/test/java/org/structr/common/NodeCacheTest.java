@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.neo4j.graphdb.Node;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Person;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.StructrTransaction;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test that node instances are cached per security context, so users with
+ * different rights never get each other's instances.
+ *
+ * @author Christian Morgner
+ */
+public class NodeCacheTest extends StructrTest {
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01InstancesPerSecurityContext() throws Exception {
+
+		Person alice        = createTestNode(Person.class);
+		Person bob          = createTestNode(Person.class);
+		final TestOne test  = createTestNode(TestOne.class);
+		Node dbNode         = test.getNode();
+
+		grant(alice, test, Permission.read);
+
+		SecurityContext aliceContext = SecurityContext.getInstance(alice, AccessMode.Backend);
+		SecurityContext bobContext   = SecurityContext.getInstance(bob, AccessMode.Backend);
+
+		// alice reads the node first, so it is cached for her
+		AbstractNode aliceNode = instantiate(aliceContext, dbNode);
+
+		assertNotNull(aliceNode);
+		assertSame(aliceContext, aliceNode.getSecurityContext());
+		assertSame(aliceNode, instantiate(aliceContext, dbNode));
+
+		// bob has no rights, so he must not get alice's instance
+		assertNull(instantiate(bobContext, dbNode));
+
+		grant(bob, test, Permission.read);
+
+		AbstractNode bobNode = instantiate(bobContext, dbNode);
+
+		assertNotNull(bobNode);
+		assertNotSame(aliceNode, bobNode);
+		assertSame(bobContext, bobNode.getSecurityContext());
+
+		// a transaction that modifies the node invalidates the instances of all contexts
+		transactionCommand.execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				test.setProperty(AbstractNode.name, "modified");
+
+				return null;
+			}
+		});
+
+		AbstractNode modifiedNode = instantiate(aliceContext, dbNode);
+
+		assertNotSame(aliceNode, modifiedNode);
+		assertEquals("modified", modifiedNode.getProperty(AbstractNode.name));
+		assertNotSame(bobNode, instantiate(bobContext, dbNode));
+	}
+
+	private AbstractNode instantiate(final SecurityContext context, final Node dbNode) {
+		return new NodeFactory<AbstractNode>(context).instantiateNode(dbNode);
+	}
+}
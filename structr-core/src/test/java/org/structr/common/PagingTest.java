@@ -44,9 +44,13 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.Services;
+import org.structr.core.entity.Person;
 import org.structr.core.entity.TestOne;
+import org.structr.core.graph.StructrTransaction;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
+import org.structr.core.graph.search.SearchNodeCommand;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -178,6 +182,227 @@ public class PagingTest extends StructrTest {
 
 	}
 
+	/**
+	 * Test pages counted from the end of the result
+	 */
+	public void test02NegativePaging() {
+
+		try {
+
+			boolean includeDeletedAndHidden = false;
+			boolean publicOnly              = false;
+			String type                     = TestOne.class.getSimpleName();
+			int number                      = 23;
+			List<AbstractNode> nodes        = this.createTestNodes(type, number);
+			int offset                      = 10;
+			int i                           = offset;
+
+			for (AbstractNode node : nodes) {
+
+				node.setName("TestOne-" + i);
+
+				i++;
+			}
+
+			List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+			searchAttributes.add(Search.andExactTypeAndSubtypes(type));
+
+			int pageSize = 5;
+
+			for (int p=1; p<=(number/pageSize)+1; p++) {
+
+				Result result = searchNodeCommand.execute(includeDeletedAndHidden, publicOnly, searchAttributes, AbstractNode.name, false, pageSize, -p);
+
+				int toIndex   = number - ((p - 1) * pageSize);
+				int fromIndex = Math.max(0, number - (p * pageSize));
+
+				assertEquals(number, result.getRawResultCount().intValue());
+				assertEquals(toIndex - fromIndex, result.size());
+
+				for (int j = 0; j < result.size(); j++) {
+
+					assertEquals("TestOne-" + (offset + fromIndex + j), result.get(j).getProperty(AbstractNode.name));
+				}
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test03LazyPaging() {
+
+		try {
+
+			boolean includeDeletedAndHidden = false;
+			boolean publicOnly              = false;
+			String type                     = TestOne.class.getSimpleName();
+			int number                      = 23;
+			List<AbstractNode> nodes        = this.createTestNodes(type, number);
+			int offset                      = 10;
+			int i                           = offset;
+
+			for (AbstractNode node : nodes) {
+
+				node.setName("TestOne-" + i);
+
+				i++;
+			}
+
+			List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+			searchAttributes.add(Search.andExactTypeAndSubtypes(type));
+
+			int pageSize = 5;
+
+			for (int p=1; p<=(number/pageSize)+1; p++) {
+
+				Result result = searchNodeCommand.execute(includeDeletedAndHidden, publicOnly, searchAttributes, AbstractNode.name, false, pageSize, p, null, true);
+				int j         = 0;
+
+				assertTrue(result.isLazy());
+
+				// count is not known before the result was consumed
+				for (Object obj : result.getIterable()) {
+
+					assertEquals("TestOne-" + (offset + ((p - 1) * pageSize) + j), ((GraphObject) obj).getProperty(AbstractNode.name));
+					j++;
+				}
+
+				assertEquals(Math.min(pageSize, number - ((p - 1) * pageSize)), j);
+				assertEquals(number, result.getRawResultCount().intValue());
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	/**
+	 * Test paging as a user who can only read some of the nodes, with
+	 * nodes that are readable by grant, by ownership and because they
+	 * are visible to authenticated users.
+	 */
+	public void test04NonSuperUserPaging() {
+
+		try {
+
+			String type                    = TestOne.class.getSimpleName();
+			int number                     = 30;
+			final List<AbstractNode> nodes = this.createTestNodes(type, number);
+			final Person user              = createTestNode(Person.class);
+			final List<String> readable    = new LinkedList<String>();
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					for (int i = 0; i < nodes.size(); i++) {
+
+						AbstractNode node = nodes.get(i);
+
+						node.setProperty(AbstractNode.name, "TestOne-" + (10 + i));
+
+						if (i % 5 == 1) {
+
+							node.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+						}
+
+						// hidden nodes are not readable even if they are granted
+						if (i == 9) {
+
+							node.setProperty(AbstractNode.hidden, true);
+						}
+					}
+
+					return null;
+				}
+			});
+
+			for (int i = 0; i < nodes.size(); i++) {
+
+				AbstractNode node = nodes.get(i);
+
+				if (i % 3 == 0) {
+
+					grant(user, node, Permission.read);
+				}
+
+				if (i == 2) {
+
+					createTestRelationship(user, node, RelType.OWNS);
+				}
+
+				if (i != 9 && (i % 3 == 0 || i % 5 == 1 || i == 2)) {
+
+					readable.add("TestOne-" + (10 + i));
+				}
+			}
+
+			SecurityContext userContext            = SecurityContext.getInstance(user, AccessMode.Backend);
+			SearchNodeCommand userSearch           = Services.command(userContext, SearchNodeCommand.class);
+			List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+			int pageSize                           = 4;
+			int count                              = readable.size();
+
+			searchAttributes.add(Search.andExactTypeAndSubtypes(type));
+
+			for (int p = 1; p <= (count / pageSize) + 1; p++) {
+
+				int fromIndex = Math.min(count, (p - 1) * pageSize);
+				int toIndex   = Math.min(count, p * pageSize);
+
+				Result result = userSearch.execute(false, false, searchAttributes, AbstractNode.name, false, pageSize, p);
+
+				assertEquals(count, result.getRawResultCount().intValue());
+				assertEquals(readable.subList(fromIndex, toIndex), getNames(result.getResults()));
+
+				Result lazy          = userSearch.execute(false, false, searchAttributes, AbstractNode.name, false, pageSize, p, null, true);
+				List<Object> objects = new LinkedList<Object>();
+
+				for (Object obj : lazy.getIterable()) {
+					objects.add(obj);
+				}
+
+				assertEquals(readable.subList(fromIndex, toIndex), getNames(objects));
+				assertEquals(count, lazy.getRawResultCount().intValue());
+
+				Result fromEnd = userSearch.execute(false, false, searchAttributes, AbstractNode.name, false, pageSize, -p);
+
+				assertEquals(count, fromEnd.getRawResultCount().intValue());
+				assertEquals(readable.subList(Math.max(0, count - p * pageSize), count - fromIndex), getNames(fromEnd.getResults()));
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	private List<String> getNames(final List<? extends Object> objects) {
+
+		List<String> names = new LinkedList<String>();
+
+		for (Object obj : objects) {
+			names.add(((GraphObject) obj).getProperty(AbstractNode.name));
+		}
+
+		return names;
+	}
+
 	protected void testPaging(final int pageSize, final int page, final int number, final int offset, final boolean includeDeletedAndHidden, final boolean publicOnly,
 				final List<SearchAttribute> searchAttributes, final PropertyKey sortKey, final boolean sortDesc)
 		throws FrameworkException {
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.Person;
+import org.structr.core.entity.SecurityRelationship;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.StructrTransaction;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Map;
+import java.util.Set;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test that permissions computed before an invalidation are not cached
+ * after it.
+ *
+ * @author Christian Morgner
+ */
+public class PermissionCacheTest extends StructrTest {
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01RevokeDuringLookup() throws Exception {
+
+		Person user                    = createTestNode(Person.class);
+		TestOne test                   = createTestNode(TestOne.class);
+		final SecurityRelationship rel = (SecurityRelationship) createTestRelationship(user, test, RelType.SECURITY);
+
+		setAllowed(rel, Permission.read.name());
+
+		PermissionCache.clear();
+
+		assertTrue(test.isGranted(Permission.read, user));
+
+		// a lookup computes the masks while the permission is still granted
+		PermissionCache.clear();
+
+		long generation          = PermissionCache.getGeneration();
+		Map<Long, Integer> masks = PermissionCache.loadPermissionMasks(test.getNode());
+
+		// .. then the permission is revoked and the cache invalidated ..
+		setAllowed(rel);
+
+		// .. before the lookup stores its result
+		PermissionCache.putPermissionMasks(test.getId(), masks, generation);
+
+		assertFalse(test.isGranted(Permission.read, user));
+	}
+
+	public void test02GroupChangeDuringLookup() throws Exception {
+
+		Person user  = createTestNode(Person.class);
+		Person group = createTestNode(Person.class);
+		TestOne test = createTestNode(TestOne.class);
+
+		grant(group, test, Permission.read);
+
+		PermissionCache.clear();
+
+		assertFalse(test.isGranted(Permission.read, user));
+
+		// a lookup computes the closure before the user joins the group ..
+		PermissionCache.clear();
+
+		long generation   = PermissionCache.getGeneration();
+		Set<Long> closure = PermissionCache.loadPrincipalClosure(user);
+
+		createTestRelationship(group, user, RelType.CHILDREN);
+
+		// .. and stores it afterwards
+		PermissionCache.putPrincipalClosure(user.getId(), closure, generation);
+
+		assertTrue(test.isGranted(Permission.read, user));
+	}
+
+	private void setAllowed(final SecurityRelationship rel, final String... allowed) throws FrameworkException {
+
+		transactionCommand.execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				rel.setAllowed(allowed);
+
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.structr.common;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.IndexLocks;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchAttribute;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.property.PropertyMap;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Multi-threaded search throughput benchmark, compares exclusive
+ * index access with concurrent reads.
+ *
+ * Note that this is just a very rough test as performance is heavily
+ * depending on hardware and setup (number of cores, cache parameters etc.),
+ * so it only asserts correctness and logs the throughput of both modes.
+ *
+ * All tests are executed in superuser context
+ *
+ * @author Christian Morgner
+ */
+public class SearchConcurrencyTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(SearchConcurrencyTest.class.getName());
+
+	private static final int NUMBER_OF_NODES   = 500;
+	private static final int NUMBER_OF_THREADS = 8;
+	private static final int QUERIES_PER_THREAD = 200;
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01SearchThroughput() {
+
+		try {
+
+			for (int i = 0; i < NUMBER_OF_NODES; i++) {
+
+				PropertyMap props = new PropertyMap();
+				props.put(AbstractNode.name, "node" + (i % 10));
+
+				createTestNode(TestOne.class.getSimpleName(), props);
+			}
+
+			// warm up
+			runSearches(true);
+
+			double exclusiveRate  = runSearches(false);
+			double concurrentRate = runSearches(true);
+
+			DecimalFormat decimalFormat = new DecimalFormat("0.00", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+
+			logger.log(Level.INFO, "Search throughput with {0} threads: exclusive {1} queries/s, concurrent {2} queries/s",
+				new Object[] { NUMBER_OF_THREADS, decimalFormat.format(exclusiveRate), decimalFormat.format(concurrentRate) });
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		} finally {
+
+			IndexLocks.setConcurrentReads(true);
+		}
+
+	}
+
+	private double runSearches(final boolean concurrentReads) throws InterruptedException {
+
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final CountDownLatch doneSignal  = new CountDownLatch(NUMBER_OF_THREADS);
+		final AtomicInteger errors       = new AtomicInteger(0);
+		final AtomicInteger queries      = new AtomicInteger(0);
+
+		IndexLocks.setConcurrentReads(concurrentReads);
+
+		for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+
+			final int threadNumber = i;
+
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+
+					SearchNodeCommand searchCommand = Services.command(securityContext, SearchNodeCommand.class);
+
+					try {
+
+						startSignal.await();
+
+						for (int j = 0; j < QUERIES_PER_THREAD; j++) {
+
+							List<SearchAttribute> attrs = new LinkedList<SearchAttribute>();
+							String name                 = "node" + ((threadNumber + j) % 10);
+
+							attrs.add(Search.andExactType(TestOne.class.getSimpleName()));
+
+							// alternate between keyword and fulltext queries
+							if (j % 2 == 0) {
+
+								attrs.add(Search.andExactName(name));
+
+							} else {
+
+								attrs.add(Search.andName(name));
+							}
+
+							Result result = searchCommand.execute(attrs);
+
+							if (result.size() != NUMBER_OF_NODES / 10) {
+								errors.incrementAndGet();
+							}
+
+							queries.incrementAndGet();
+						}
+
+					} catch (FrameworkException fex) {
+
+						errors.incrementAndGet();
+
+					} catch (InterruptedException iex) {
+
+						errors.incrementAndGet();
+
+					} finally {
+
+						doneSignal.countDown();
+					}
+				}
+
+			}).start();
+		}
+
+		long t0 = System.nanoTime();
+
+		startSignal.countDown();
+		doneSignal.await();
+
+		long t1 = System.nanoTime();
+
+		assertEquals(0, errors.get());
+		assertEquals(NUMBER_OF_THREADS * QUERIES_PER_THREAD, queries.get());
+
+		return queries.get() / ((t1 - t0) / 1000000000.0);
+	}
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.core.auth.AuthHelper;
+import org.structr.core.auth.SessionCache;
+import org.structr.core.entity.Person;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.property.PropertyMap;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test the caching of principal lookups by session id.
+ *
+ * All tests are executed in superuser context
+ *
+ * @author Christian Morgner
+ */
+public class SessionCacheTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(SessionCacheTest.class.getName());
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01CachedSessionLookup() {
+
+		try {
+
+			SessionCache.clear();
+
+			PropertyMap props = new PropertyMap();
+			props.put(Principal.sessionId, "session1");
+
+			Principal person = (Principal) createTestNode(Person.class.getSimpleName(), props);
+
+			long hits = getHits();
+
+			assertEquals(person, AuthHelper.getPrincipalForSessionId("session1"));
+			assertEquals(hits, getHits());
+
+			// second lookup must be answered from the cache
+			assertEquals(person, AuthHelper.getPrincipalForSessionId("session1"));
+			assertEquals(hits + 1, getHits());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	public void test02InvalidationOnModification() {
+
+		try {
+
+			SessionCache.clear();
+
+			PropertyMap props = new PropertyMap();
+			props.put(Principal.sessionId, "session1");
+
+			final Principal person = (Principal) createTestNode(Person.class.getSimpleName(), props);
+
+			assertEquals(person, AuthHelper.getPrincipalForSessionId("session1"));
+
+			// unknown session id
+			assertNull(AuthHelper.getPrincipalForSessionId("session2"));
+			assertNull(AuthHelper.getPrincipalForSessionId("session2"));
+
+			// log in with the new session id
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					person.setProperty(Principal.sessionId, "session2");
+					return null;
+				}
+			});
+
+			assertEquals(person, AuthHelper.getPrincipalForSessionId("session2"));
+			assertNull(AuthHelper.getPrincipalForSessionId("session1"));
+
+			// log out
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					person.setProperty(Principal.sessionId, null);
+					return null;
+				}
+			});
+
+			assertNull(AuthHelper.getPrincipalForSessionId("session2"));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	public void test03NoSharedOrStaleEntries() {
+
+		try {
+
+			SessionCache.clear();
+
+			PropertyMap props = new PropertyMap();
+			props.put(Principal.sessionId, "session1");
+
+			Principal person = (Principal) createTestNode(Person.class.getSimpleName(), props);
+
+			Principal first  = AuthHelper.getPrincipalForSessionId("session1");
+			Principal second = AuthHelper.getPrincipalForSessionId("session1");
+
+			// each lookup must get its own instance
+			assertEquals(person, first);
+			assertEquals(person, second);
+			assertNotSame(first, second);
+
+			// unknown session ids must not fill the cache
+			int size = getSize();
+
+			for (int i=0; i<100; i++) {
+				assertNull(AuthHelper.getPrincipalForSessionId("unknown" + i));
+			}
+
+			assertEquals(size, getSize());
+
+			// an entry that does not match the session id of the principal must not be used
+			SessionCache.put(SessionCache.SESSION_KEY_PREFIX.concat("session2"), person.getId(), SessionCache.getGeneration());
+
+			assertNull(AuthHelper.getPrincipalForSessionId("session2"));
+			assertEquals(size, getSize());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	private int getSize() {
+		return (Integer) SessionCache.getStatistics().get("size");
+	}
+
+	private long getHits() {
+		return (Long) SessionCache.getStatistics().get("hits");
+	}
+}
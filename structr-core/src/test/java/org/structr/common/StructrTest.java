@@ -32,6 +32,7 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.entity.SecurityRelationship;
 import org.structr.core.log.ReadLogCommand;
 import org.structr.core.log.WriteLogCommand;
 import org.structr.core.graph.CreateNodeCommand;
@@ -261,6 +262,25 @@ public class StructrTest extends TestCase {
 
 	}
 
+	protected void grant(final AbstractNode principal, final AbstractNode node, final Permission... permissions) throws FrameworkException {
+
+		final SecurityRelationship rel = (SecurityRelationship) createTestRelationship(principal, node, RelType.SECURITY);
+
+		transactionCommand.execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				rel.setAllowed(permissions);
+
+				return null;
+
+			}
+
+		});
+
+	}
+
 	protected void assertNodeExists(final String nodeId) throws FrameworkException {
 
 		AbstractNode node = null;
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.structr.common;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.ClearDatabase;
+import org.structr.core.graph.SyncCommand;
+import org.structr.core.graph.search.Search;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test export and chunked import of the database.
+ *
+ * All tests are executed in superuser context
+ *
+ * @author Christian Morgner
+ */
+public class SyncCommandTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(SyncCommandTest.class.getName());
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01ChunkedImport() {
+
+		try {
+
+			int number              = 50;
+			List<AbstractNode> list = createTestNodes(TestOne.class.getSimpleName(), number);
+			String fileName         = context.get(Services.BASE_PATH) + "/export.zip";
+
+			for (int i = 0; i < 10; i++) {
+				createTestRelationship(list.get(i), list.get(i + 1), RelType.IS_AT);
+			}
+
+			Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+			attributes.put("mode", "export");
+			attributes.put("file", fileName);
+
+			Services.command(securityContext, SyncCommand.class).execute(attributes);
+			Services.command(securityContext, ClearDatabase.class).execute();
+
+			assertEquals(0, searchNodeCommand.execute(Search.andExactType(TestOne.class.getSimpleName())).size());
+
+			attributes.put("mode", "import");
+			attributes.put("batchSize", 7);
+
+			Services.command(securityContext, SyncCommand.class).execute(attributes);
+
+			Result result = searchNodeCommand.execute(Search.andExactType(TestOne.class.getSimpleName()));
+
+			assertEquals(number, result.size());
+			assertEquals(10, countRelationships());
+			assertFalse(new File(fileName + ".import").exists());
+			assertEquals("done", Services.command(securityContext, SyncCommand.class).getStatus().get("phase"));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test02ResumeImport() {
+
+		try {
+
+			int number              = 50;
+			List<AbstractNode> list = createTestNodes(TestOne.class.getSimpleName(), number);
+			String fileName         = context.get(Services.BASE_PATH) + "/resume.zip";
+			File stateDir           = new File(fileName + ".import");
+
+			for (int i = 0; i < 10; i++) {
+				createTestRelationship(list.get(i), list.get(i + 1), RelType.IS_AT);
+			}
+
+			Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+			attributes.put("mode", "export");
+			attributes.put("file", fileName);
+
+			Services.command(securityContext, SyncCommand.class).execute(attributes);
+			Services.command(securityContext, ClearDatabase.class).execute();
+
+			File exportFile = new File(fileName);
+			byte[] export   = FileUtils.readFileToByteArray(exportFile);
+
+			// the first 50 records are nodes, break the import after 5 relationships
+			writeBrokenExport(exportFile, export, 55);
+
+			attributes.put("mode", "import");
+			attributes.put("batchSize", 7);
+
+			try {
+
+				Services.command(securityContext, SyncCommand.class).execute(attributes);
+				fail("Import of a broken file should fail");
+
+			} catch (FrameworkException fex) {
+
+				// expected
+			}
+
+			// seven batches of seven records were committed
+			assertEquals("failed", Services.command(securityContext, SyncCommand.class).getStatus().get("phase"));
+			assertEquals(49, searchNodeCommand.execute(Search.andExactType(TestOne.class.getSimpleName())).size());
+			assertEquals(0, countRelationships());
+			assertTrue(stateDir.exists());
+
+			// resume with the intact file
+			FileUtils.writeByteArrayToFile(exportFile, export);
+
+			attributes.put("resume", "true");
+
+			Services.command(securityContext, SyncCommand.class).execute(attributes);
+
+			Result result = searchNodeCommand.execute(Search.andExactType(TestOne.class.getSimpleName()));
+
+			assertEquals(number, result.size());
+			assertEquals(10, countRelationships());
+			assertFalse(stateDir.exists());
+			assertEquals("done", Services.command(securityContext, SyncCommand.class).getStatus().get("phase"));
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.SEVERE, ioex.toString());
+			fail("Unexpected exception");
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	/**
+	 * Writes a copy of the given export whose database entry contains only
+	 * the first records, followed by a malformed one.
+	 */
+	private void writeBrokenExport(final File file, final byte[] export, final int records) throws IOException {
+
+		ZipInputStream zis   = new ZipInputStream(new ByteArrayInputStream(export));
+		ZipOutputStream zos  = new ZipOutputStream(new FileOutputStream(file));
+
+		try {
+
+			ZipEntry entry = zis.getNextEntry();
+
+			while (entry != null) {
+
+				if ("db".equals(entry.getName())) {
+
+					byte[] data                = IOUtils.toByteArray(zis);
+					ByteArrayOutputStream head = new ByteArrayOutputStream();
+					int lines                  = 0;
+
+					for (int i = 0; i < data.length && lines < records; i++) {
+
+						head.write(data[i]);
+
+						if (data[i] == '\n') {
+							lines++;
+						}
+					}
+
+					head.write("Nzz?\n".getBytes("UTF-8"));
+
+					zos.putNextEntry(new ZipEntry("db"));
+					zos.write(head.toByteArray());
+					zos.closeEntry();
+				}
+
+				entry = zis.getNextEntry();
+			}
+
+		} finally {
+
+			zis.close();
+			zos.close();
+		}
+	}
+
+	private int countRelationships() {
+
+		int count = 0;
+
+		for (Relationship rel : GlobalGraphOperations.at(graphDbCommand.execute()).getAllRelationships()) {
+
+			if (rel.hasProperty(GraphObject.uuid.dbName())) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.common.error.RetryException;
+import org.structr.core.Services;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.MultiSemaphore;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.TransactionStatistics;
+import org.structr.core.graph.TransactionStatistics.KeyStatistics;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Test the deadlock backoff of {@link TransactionCommand} and the
+ * statistics collected in {@link TransactionStatistics}.
+ *
+ * @author Christian Morgner
+ */
+public class TransactionStatisticsTest extends StructrTest {
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+		super.test00DbAvailable();
+	}
+
+	public void test01Backoff() {
+
+		context.put(Services.TRANSACTION_BACKOFF, "10");
+		context.put(Services.TRANSACTION_BACKOFF_MAX, "80");
+
+		for (int i = 0; i < 100; i++) {
+
+			assertBetween(5, 10, TransactionCommand.getBackoffMillis(1));
+			assertBetween(10, 20, TransactionCommand.getBackoffMillis(2));
+			assertBetween(20, 40, TransactionCommand.getBackoffMillis(3));
+
+			// capped at transaction.backoff.max
+			assertBetween(40, 80, TransactionCommand.getBackoffMillis(10));
+			assertBetween(40, 80, TransactionCommand.getBackoffMillis(100));
+		}
+
+		context.put(Services.TRANSACTION_BACKOFF, "0");
+
+		assertEquals(0, TransactionCommand.getBackoffMillis(5));
+	}
+
+	public void test02SemaphoreContention() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore();
+		final CountDownLatch waiting   = new CountDownLatch(1);
+		final Set<String> keys         = new TreeSet<String>(Arrays.asList("A", "B"));
+
+		semaphore.acquire(keys);
+
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				try {
+
+					waiting.countDown();
+					semaphore.acquire(Collections.singleton("B"));
+					semaphore.release(Collections.singleton("B"));
+
+				} catch (InterruptedException iex) {}
+			}
+		});
+
+		thread.start();
+		waiting.await();
+
+		Thread.sleep(100);
+
+		semaphore.release(keys);
+		thread.join();
+
+		List<Entry<String, KeyStatistics>> hottest = TransactionStatistics.getHottestKeys(10);
+
+		assertEquals(1, hottest.size());
+		assertEquals("B", hottest.get(0).getKey());
+		assertEquals(2, hottest.get(0).getValue().getAcquisitions());
+		assertEquals(1, hottest.get(0).getValue().getContentions());
+		assertTrue(hottest.get(0).getValue().getTotalWaitNanos() >= 50000000L);
+	}
+
+	public void test03PhaseTimings() throws Exception {
+
+		createTestNodes(TestOne.class.getSimpleName(), 10);
+
+		Map<String, Object> stats  = TransactionStatistics.getStatistics();
+		Map<String, Object> phases = (Map<String, Object>) stats.get("phases");
+
+		assertTrue(((Long) stats.get("transactions")) >= 1);
+		assertEquals(0L, stats.get("failures"));
+
+		for (TransactionStatistics.Phase phase : TransactionStatistics.Phase.values()) {
+
+			Map<String, Object> phaseStats = (Map<String, Object>) phases.get(phase.name());
+
+			assertTrue(((Long) phaseStats.get("count")) >= 1);
+		}
+	}
+
+	public void test04RetryOutcome() throws Exception {
+
+		context.put(Services.TRANSACTION_BACKOFF, "1");
+		context.put(Services.TRANSACTION_BACKOFF_MAX, "1");
+		context.put(Services.TRANSACTION_RETRIES, "3");
+
+		final AtomicInteger attempts = new AtomicInteger(0);
+
+		// deadlocked twice, then successful
+		String result = transactionCommand.execute(new StructrTransaction<String>() {
+
+			@Override
+			public String execute() throws FrameworkException {
+
+				if (attempts.incrementAndGet() <= 2) {
+					throw new RetryException();
+				}
+
+				return "done";
+			}
+		});
+
+		Map<String, Object> stats = TransactionStatistics.getStatistics();
+
+		assertEquals("done", result);
+		assertEquals(1L, stats.get("transactions"));
+		assertEquals(0L, stats.get("failures"));
+		assertEquals(2L, stats.get("retries"));
+		assertEquals(1L, getPhaseCount(stats, TransactionStatistics.Phase.commit));
+
+		// deadlocked on every attempt
+		assertNull(transactionCommand.execute(new RetryTransaction()));
+
+		stats = TransactionStatistics.getStatistics();
+
+		assertEquals(2L, stats.get("transactions"));
+		assertEquals(1L, stats.get("failures"));
+		assertEquals(5L, stats.get("retries"));
+		assertEquals(1L, stats.get("exhausted"));
+		assertEquals(1L, getPhaseCount(stats, TransactionStatistics.Phase.commit));
+
+		// the total backoff budget ends the retries early
+		context.put(Services.TRANSACTION_BACKOFF_TOTAL, "0");
+
+		assertNull(transactionCommand.execute(new RetryTransaction()));
+
+		stats = TransactionStatistics.getStatistics();
+
+		assertEquals(3L, stats.get("transactions"));
+		assertEquals(2L, stats.get("failures"));
+		assertEquals(5L, stats.get("retries"));
+		assertEquals(2L, stats.get("exhausted"));
+	}
+
+	private long getPhaseCount(final Map<String, Object> stats, final TransactionStatistics.Phase phase) {
+
+		Map<String, Object> phases = (Map<String, Object>) stats.get("phases");
+
+		return (Long) ((Map<String, Object>) phases.get(phase.name())).get("count");
+	}
+
+	private void assertBetween(final long min, final long max, final long value) {
+		assertTrue(value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+	}
+
+	//~--- inner classes --------------------------------------------------
+
+	private static class RetryTransaction extends StructrTransaction<Object> {
+
+		@Override
+		public Object execute() throws FrameworkException {
+			throw new RetryException();
+		}
+	}
+
+	//~--- set methods ----------------------------------------------------
+
+	@Override
+	protected void setUp() throws Exception {
+
+		super.setUp();
+
+		TransactionStatistics.clear();
+	}
+}
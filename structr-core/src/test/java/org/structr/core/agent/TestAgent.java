@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.agent;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes {@link TestTask}s and records the order and concurrency of
+ * the processing. Blocking tasks wait until {@link #release} is counted
+ * down.
+ *
+ * @author Christian Morgner
+ */
+public class TestAgent extends Agent {
+
+	public static final List<Integer> processed              = Collections.synchronizedList(new LinkedList<Integer>());
+	public static final Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<Integer, AtomicInteger>();
+	public static final AtomicInteger running                = new AtomicInteger(0);
+	public static final AtomicInteger maxRunning             = new AtomicInteger(0);
+	public static CountDownLatch release                     = new CountDownLatch(1);
+
+	public static void reset() {
+
+		processed.clear();
+		attempts.clear();
+		running.set(0);
+		maxRunning.set(0);
+
+		release = new CountDownLatch(1);
+	}
+
+	@Override
+	public ReturnValue processTask(Task task) throws Throwable {
+
+		TestTask testTask = (TestTask) task;
+
+		if (getAttempts(testTask.getId()).incrementAndGet() <= testTask.getFailures()) {
+			return ReturnValue.Retry;
+		}
+
+		int current = running.incrementAndGet();
+
+		try {
+
+			synchronized (maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), current));
+			}
+
+			if (testTask.isBlocking()) {
+				release.await(10, TimeUnit.SECONDS);
+			}
+
+			processed.add(testTask.getId());
+
+		} finally {
+
+			running.decrementAndGet();
+		}
+
+		return ReturnValue.Success;
+	}
+
+	private static AtomicInteger getAttempts(final int id) {
+
+		AtomicInteger count = attempts.get(id);
+		if (count == null) {
+
+			count = new AtomicInteger(0);
+			attempts.put(id, count);
+		}
+
+		return count;
+	}
+
+	@Override
+	public Class getSupportedTaskType() {
+		return TestTask.class;
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.agent;
+
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Principal;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * A task for {@link TestAgent}. Tasks with the same id are equal. The
+ * agent asks for a retry of the task until it has failed the given number
+ * of times.
+ *
+ * @author Christian Morgner
+ */
+public class TestTask implements Task {
+
+	private boolean blocking = false;
+	private int priority     = 0;
+	private int id           = 0;
+	private int failures     = 0;
+
+	public TestTask(final int id, final int priority, final boolean blocking) {
+		this(id, priority, blocking, 0);
+	}
+
+	public TestTask(final int id, final int priority, final boolean blocking, final int failures) {
+
+		this.id       = id;
+		this.priority = priority;
+		this.blocking = blocking;
+		this.failures = failures;
+	}
+
+	@Override
+	public int priority() {
+		return priority;
+	}
+
+	@Override
+	public int compareTo(Delayed o) {
+
+		Long d1 = Long.valueOf(this.getDelay(TimeUnit.MILLISECONDS));
+		Long d2 = Long.valueOf(o.getDelay(TimeUnit.MILLISECONDS));
+
+		return (d1.compareTo(d2));
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof TestTask && ((TestTask) other).id == id;
+	}
+
+	@Override
+	public int hashCode() {
+		return id;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	@Override
+	public Set<AbstractNode> getNodes() {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public Date getScheduledTime() {
+		return null;
+	}
+
+	@Override
+	public Date getCreationTime() {
+		return null;
+	}
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+		return 0;
+	}
+
+	@Override
+	public Object getStatusProperty(String key) {
+		return null;
+	}
+
+	@Override
+	public Principal getUser() {
+		return null;
+	}
+
+	@Override
+	public String getType() {
+		return getClass().getSimpleName();
+	}
+}
@@ -84,13 +84,17 @@ public class StreamingJsonWriter {
 			writer.setIndent("   ");
 		}
 		
+		// lazy collections are serialized while they are being consumed,
+		// so the result count is not known before the result array ends
+		boolean lazy = src.isLazy() && src.isCollection() && !src.isPrimitiveArray();
+
 		// result fields in alphabetical order
-		List<? extends GraphObject> results = src.getResults();
+		List<? extends GraphObject> results = lazy ? null : src.getResults();
 		Integer page = src.getPage();
 		Integer pageCount = src.getPageCount();
 		Integer pageSize = src.getPageSize();
 		String queryTime = src.getQueryTime();
-		Integer resultCount = src.getRawResultCount();
+		Integer resultCount = lazy ? null : src.getRawResultCount();
 		String searchString = src.getSearchString();
 		String sortKey = src.getSortKey();
 		String sortOrder = src.getSortOrder();
@@ -149,42 +153,39 @@ public class StreamingJsonWriter {
 					throw new IllegalStateException(src.getClass().getSimpleName() + " is not a collection resource, but result set has size " + results.size());
 				}
 
-				// keep track of serialization time
-				long startTime            = System.currentTimeMillis();
 				String localPropertyView  = propertyView.get(null);
-				int flushCounter          = 0;
 
 				if(src.isCollection()) {
 
-					writer.name("result").beginArray();
+					serializeCollection(writer, results, localPropertyView, flushSize);
 
-					// serialize list of results
-					for(GraphObject graphObject : results) {
-						
-						root.serialize(writer, graphObject, localPropertyView, 0);
+				} else {
 
-						// flush every once in a while
-						if ((++flushCounter % flushSize) == 0) {
-							writer.flush();
-						}
-						
-						// check for timeout
-						if (System.currentTimeMillis() > startTime + MAX_SERIALIZATION_TIME) {
+					writer.name("result");
+					root.serialize(writer, results.get(0), localPropertyView, 0);
+				}
+			}
 
-							logger.log(Level.SEVERE, "JSON serialization took more than {0} ms, aborted. Please review output view size or adjust timeout.", MAX_SERIALIZATION_TIME);
-							writer.flush();
-							
-							// TODO: create some output indicating that streaming was interrupted
-							break;
-						}
-					}
+		} else if (lazy) {
 
-					writer.endArray();
+			try {
 
-				} else {
+				if (serializeCollection(writer, src.getIterable(), propertyView.get(null), flushSize)) {
 
-					writer.name("result");
-					root.serialize(writer, results.get(0), localPropertyView, 0);
+					resultCount = src.getRawResultCount();
+				}
+
+			} finally {
+
+				src.close();
+			}
+
+			if(resultCount != null) {
+
+				writer.name("result_count").value(resultCount);
+
+				if(pageCount == null && pageSize != null && pageSize > 0 && pageSize < Integer.MAX_VALUE) {
+					writer.name("page_count").value((resultCount + pageSize - 1) / pageSize);
 				}
 			}
 		}
@@ -208,6 +209,46 @@ public class StreamingJsonWriter {
 		writer.flush();
 	}
 
+	/**
+	 * Serializes the given objects into the result array, returns false if
+	 * serialization was aborted because it took too long.
+	 */
+	private boolean serializeCollection(JsonWriter writer, Iterable<? extends GraphObject> results, String localPropertyView, int flushSize) throws IOException {
+
+		// keep track of serialization time
+		long startTime   = System.currentTimeMillis();
+		int flushCounter = 0;
+		boolean complete = true;
+
+		writer.name("result").beginArray();
+
+		// serialize list of results
+		for(GraphObject graphObject : results) {
+
+			root.serialize(writer, graphObject, localPropertyView, 0);
+
+			// flush every once in a while
+			if ((++flushCounter % flushSize) == 0) {
+				writer.flush();
+			}
+
+			// check for timeout
+			if (System.currentTimeMillis() > startTime + MAX_SERIALIZATION_TIME) {
+
+				logger.log(Level.SEVERE, "JSON serialization took more than {0} ms, aborted. Please review output view size or adjust timeout.", MAX_SERIALIZATION_TIME);
+				writer.flush();
+
+				// TODO: create some output indicating that streaming was interrupted
+				complete = false;
+				break;
+			}
+		}
+
+		writer.endArray();
+
+		return complete;
+	}
+
 	private Serializer getSerializerForType(Class type) {
 
 		Class localType       = type;
@@ -24,13 +24,15 @@ import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.graph.CypherQueryCommand;
+import org.structr.core.graph.CypherResult;
+import org.structr.core.graph.NodeFactory;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalMethodException;
 import org.structr.rest.exception.NotFoundException;
+import org.structr.rest.servlet.JsonRestServlet;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -39,6 +41,9 @@ import org.structr.core.property.PropertyKey;
 //~--- classes ----------------------------------------------------------------
 
 /**
+ * Executes the Cypher query given in the POST body. The rows are converted
+ * while they are added to the result, the request parameters pageSize and
+ * page limit the result to a single page.
  *
  * @author Christian Morgner
  */
@@ -73,12 +78,31 @@ public class CypherQueryResource extends Resource {
 
 			if (queryObject != null) {
 
-				String query                 = queryObject.toString();
-				List<GraphObject> resultList = (List<GraphObject>) Services.command(securityContext, CypherQueryCommand.class).execute(query);
+				String query               = queryObject.toString();
+				CypherResult rows          = Services.command(securityContext, CypherQueryCommand.class).iterate(query, null, false, false);
+				HttpServletRequest request = securityContext.getRequest();
+				int pageSize               = NodeFactory.DEFAULT_PAGE_SIZE;
+				int page                   = NodeFactory.DEFAULT_PAGE;
 
-				for (GraphObject obj : resultList) {
+				if (request != null) {
 
-					result.addContent(obj);
+					pageSize = parseInt(request.getParameter(JsonRestServlet.REQUEST_PARAMETER_PAGE_SIZE), NodeFactory.DEFAULT_PAGE_SIZE);
+					page     = parseInt(request.getParameter(JsonRestServlet.REQUEST_PARAMETER_PAGE_NUMBER), NodeFactory.DEFAULT_PAGE);
+				}
+
+				if (pageSize < NodeFactory.DEFAULT_PAGE_SIZE) {
+
+					for (GraphObject obj : rows.getPage(pageSize, page)) {
+
+						result.addContent(obj);
+					}
+
+				} else {
+
+					for (GraphObject obj : rows) {
+
+						result.addContent(obj);
+					}
 				}
 
 			}
@@ -114,6 +138,21 @@ public class CypherQueryResource extends Resource {
 
 	}
 
+	private int parseInt(String value, int defaultValue) {
+
+		if (value == null) {
+
+			return defaultValue;
+
+		}
+
+		try {
+			return Integer.parseInt(value);
+		} catch (Throwable ignore) {}
+
+		return defaultValue;
+	}
+
 	//~--- get methods ----------------------------------------------------
 
 	@Override
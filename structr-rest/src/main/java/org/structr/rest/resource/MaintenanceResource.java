@@ -33,7 +33,10 @@ import org.structr.rest.exception.SystemException;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,7 +44,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.GraphObjectMap;
 import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.MaintenanceStatus;
+import org.structr.core.property.GenericProperty;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -71,6 +77,24 @@ public class MaintenanceResource extends Resource {
 
 	@Override
 	public Result doGet(PropertyKey sortKey, boolean sortDescending, int pageSize, int page, String offsetId) throws FrameworkException {
+
+		// commands can report their progress
+		if ((securityContext != null) && securityContext.isSuperUser() && this.taskOrCommand != null && MaintenanceStatus.class.isAssignableFrom(taskOrCommand)) {
+
+			MaintenanceStatus cmd = (MaintenanceStatus)Services.command(securityContext, taskOrCommand);
+			GraphObjectMap status = new GraphObjectMap();
+
+			for (Entry<String, Object> entry : cmd.getStatus().entrySet()) {
+
+				status.setProperty(new GenericProperty(entry.getKey()), entry.getValue());
+			}
+
+			List<GraphObjectMap> results = new LinkedList<GraphObjectMap>();
+			results.add(status);
+
+			return new Result(results, 1, false, false);
+		}
+
 		throw new NotAllowedException();
 	}
 
@@ -156,11 +156,16 @@ public class PagingHelper {
 
 		if (pageSize > 0 && pageSize < Integer.MAX_VALUE) {
 
-			int pageCount = getPageCount(result.getRawResultCount(), pageSize);
+			// the count of a lazy result is not known before it is
+			// consumed, the page count is added by the writer then
+			if (!result.isLazy()) {
 
-			if (pageCount > 0) {
+				int pageCount = getPageCount(result.getRawResultCount(), pageSize);
 
-				result.setPageCount(pageCount);
+				if (pageCount > 0) {
+
+					result.setPageCount(pageCount);
+				}
 			}
 
 			result.setPage(page);
@@ -146,7 +146,7 @@ public class TypeResource extends SortableResource {
 				}
 			}
 			
-			// do search
+			// do search, nodes are instantiated while the result is streamed
 			Result results = Services.command(securityContext, SearchNodeCommand.class).execute(
 				includeDeletedAndHidden,
 				publicOnly,
@@ -155,7 +155,8 @@ public class TypeResource extends SortableResource {
 				sortDescending,
 				pageSize,
 				page,
-				offsetId
+				offsetId,
+				true
 			);
 			
 			return results;
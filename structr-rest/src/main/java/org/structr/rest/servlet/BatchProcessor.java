@@ -0,0 +1,599 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.servlet;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import org.structr.common.Permission;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.JsonInput;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.ResourceAccess;
+import org.structr.core.graph.DeleteNodeCommand;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.PropertyMap;
+import org.structr.rest.exception.IllegalPathException;
+import org.structr.rest.exception.NotAllowedException;
+import org.structr.rest.exception.NotFoundException;
+import org.structr.rest.resource.TypeResource;
+
+/**
+ * Applies a stream of create, update and delete operations to the entities
+ * of a {@link TypeResource}.
+ *
+ * A batch request is a request with the content type
+ * <code>application/x-ndjson</code> (a stream of newline-delimited JSON
+ * objects), or a JSON array sent with the header <code>X-Batch: true</code>.
+ * Every element is an operation of the form
+ *
+ * <pre>
+ * { "op": "create", "data": { ... } }
+ * { "op": "update", "id": "...", "data": { ... } }
+ * { "op": "delete", "id": "..." }
+ * </pre>
+ *
+ * Elements without an "op" key are used as the data of the default operation
+ * of the HTTP method, i.e. create for POST and update for PUT (with the
+ * uuid in the "id" key).
+ *
+ * Every operation is authorized like a single request of its own HTTP
+ * method (POST for create, PUT for update and DELETE for delete) against
+ * the resource grant. Updates additionally need write permission on the
+ * node, deletes need delete permission.
+ *
+ * Operations are parsed one by one and applied in transactions of
+ * <code>rest.batch.size</code> operations (or the value of the request
+ * parameter <code>batchSize</code>). If a transaction fails, its operations
+ * are repeated in separate transactions so that every operation gets its
+ * own result. The results are written to the response after each
+ * transaction. If the input is not valid JSON, the operations read so far
+ * are applied, and the parse error is reported as the last result, since
+ * the rest of the input can not be read reliably.
+ *
+ * @author Christian Morgner
+ */
+public class BatchProcessor {
+
+	private static final Logger logger                = Logger.getLogger(BatchProcessor.class.getName());
+
+	public static final String NDJSON_CONTENT_TYPE    = "application/x-ndjson";
+	public static final String BATCH_HEADER           = "X-Batch";
+	public static final String REQUEST_PARAMETER_SIZE = "batchSize";
+
+	public static final String OP_CREATE              = "create";
+	public static final String OP_UPDATE              = "update";
+	public static final String OP_DELETE              = "delete";
+
+	private static final int DEFAULT_BATCH_SIZE       = 100;
+
+	private Map<String, FrameworkException> examinedMethods = new LinkedHashMap<String, FrameworkException>();
+	private SecurityContext securityContext                 = null;
+	private HttpServletRequest request                      = null;
+	private ResourceAccess grant                            = null;
+	private TypeResource resource                           = null;
+	private String resourceSignature                        = null;
+	private String propertyView                             = null;
+	private String defaultOperation                         = null;
+	private Gson gson                                       = null;
+	private int batchSize                                   = DEFAULT_BATCH_SIZE;
+	private int count                                       = 0;
+	private int errors                                      = 0;
+
+	public BatchProcessor(final SecurityContext securityContext, final HttpServletRequest request, final TypeResource resource, final ResourceAccess grant, final String propertyView, final String defaultOperation, final Gson gson, final int batchSize) {
+
+		this.securityContext   = securityContext;
+		this.request           = request;
+		this.resource          = resource;
+		this.resourceSignature = resource.getResourceSignature();
+		this.grant             = grant;
+		this.propertyView      = propertyView;
+		this.defaultOperation  = defaultOperation;
+		this.gson              = gson;
+		this.batchSize         = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Checks whether the given request is a batch request, i.e. has the
+	 * NDJSON content type or the batch header.
+	 *
+	 * @param request
+	 * @return whether the request is a batch request
+	 */
+	public static boolean isBatchRequest(final HttpServletRequest request) {
+
+		String contentType = request.getContentType();
+		if (contentType != null && contentType.contains(NDJSON_CONTENT_TYPE)) {
+
+			return true;
+		}
+
+		return "true".equalsIgnoreCase(request.getHeader(BATCH_HEADER));
+	}
+
+	public static int getBatchSize(final HttpServletRequest request) {
+
+		String value = request.getParameter(REQUEST_PARAMETER_SIZE);
+		if (value == null) {
+
+			value = Services.getConfigurationValue(Services.REST_BATCH_SIZE, Integer.toString(DEFAULT_BATCH_SIZE));
+		}
+
+		try {
+			return Integer.parseInt(value);
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid batch size {0}, using default", value);
+		}
+
+		return DEFAULT_BATCH_SIZE;
+	}
+
+	/**
+	 * Reads all operations from the given reader, applies them and writes
+	 * the results to the given writer.
+	 *
+	 * @param input
+	 * @param output
+	 * @throws IOException
+	 */
+	public void process(final Reader input, final Writer output) throws IOException {
+
+		JsonReader reader           = new JsonReader(input);
+		JsonWriter writer           = new JsonWriter(output);
+		JsonParser parser           = new JsonParser();
+		List<Operation> operations  = new LinkedList<Operation>();
+		JsonElement element         = null;
+
+		// NDJSON consists of multiple top-level values
+		reader.setLenient(true);
+
+		writer.beginObject();
+		writer.name("result");
+		writer.beginArray();
+
+		try {
+
+			boolean array = beginArray(reader);
+
+			// parse only one operation at a time
+			while ((element = next(reader, parser, array)) != null) {
+
+				operations.add(createOperation(count++, element));
+
+				if (operations.size() >= batchSize) {
+
+					applyAndWrite(operations, writer);
+					operations.clear();
+				}
+			}
+
+		} catch (FrameworkException fex) {
+
+			// malformed input ends the stream, the error is its last result
+			Operation operation = new Operation(count++);
+			operation.error     = fex;
+
+			operations.add(operation);
+		}
+
+		applyAndWrite(operations, writer);
+
+		writer.endArray();
+		writer.name("result_count").value(count);
+		writer.name("error_count").value(errors);
+		writer.endObject();
+		writer.flush();
+	}
+
+	// ----- private methods -----
+	/**
+	 * Consumes the opening bracket if the input is a JSON array.
+	 *
+	 * @param reader
+	 * @return whether the input is a JSON array
+	 * @throws FrameworkException if the input is malformed
+	 * @throws IOException
+	 */
+	private boolean beginArray(final JsonReader reader) throws FrameworkException, IOException {
+
+		try {
+
+			if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+
+				reader.beginArray();
+				return true;
+			}
+
+		} catch (MalformedJsonException mjex) {
+
+			throw malformed(mjex);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Parses the next element of the input.
+	 *
+	 * @param reader
+	 * @param parser
+	 * @param array whether the input is a JSON array
+	 * @return the next element, or null at the end of the input
+	 * @throws FrameworkException if the input is malformed
+	 * @throws IOException
+	 */
+	private JsonElement next(final JsonReader reader, final JsonParser parser, final boolean array) throws FrameworkException, IOException {
+
+		try {
+
+			if (array ? !reader.hasNext() : reader.peek() == JsonToken.END_DOCUMENT) {
+				return null;
+			}
+
+			return parser.parse(reader);
+
+		} catch (MalformedJsonException mjex) {
+
+			throw malformed(mjex);
+
+		} catch (JsonParseException jpex) {
+
+			throw malformed(jpex);
+		}
+	}
+
+	private FrameworkException malformed(final Exception ex) {
+
+		logger.log(Level.FINE, "Malformed batch input: {0}", ex.getMessage());
+
+		return new FrameworkException(HttpServletResponse.SC_BAD_REQUEST, "Malformed JSON input: " + ex.getMessage());
+	}
+
+	private void applyAndWrite(final List<Operation> operations, final JsonWriter writer) throws IOException {
+
+		if (operations.isEmpty()) {
+			return;
+		}
+
+		try {
+
+			// fast path: all operations in a single transaction
+			Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					for (Operation operation : operations) {
+						operation.apply();
+					}
+
+					return null;
+				}
+			});
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.FINE, "Batch transaction failed, applying operations separately: {0}", fex.getMessage());
+
+			// repeat operations in separate transactions to find the failing ones
+			for (final Operation operation : operations) {
+
+				try {
+
+					Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
+
+						@Override
+						public Object execute() throws FrameworkException {
+
+							operation.apply();
+							return null;
+						}
+					});
+
+				} catch (FrameworkException opex) {
+
+					operation.error = opex;
+				}
+			}
+		}
+
+		for (Operation operation : operations) {
+
+			operation.write(writer);
+
+			if (operation.error != null) {
+				errors++;
+			}
+		}
+
+		writer.flush();
+	}
+
+	private Operation createOperation(final int index, final JsonElement element) {
+
+		Operation operation = new Operation(index);
+
+		if (!element.isJsonObject()) {
+
+			operation.error = new FrameworkException(HttpServletResponse.SC_BAD_REQUEST, "Operation must be a JSON object");
+			return operation;
+		}
+
+		JsonObject obj = element.getAsJsonObject();
+
+		try {
+
+			if (obj.has("op")) {
+
+				operation.op   = obj.get("op").getAsString();
+				operation.id   = obj.has("id") ? obj.get("id").getAsString() : null;
+				operation.data = obj.has("data") ? toMap(obj.get("data")) : new LinkedHashMap<String, Object>();
+
+			} else {
+
+				operation.op   = defaultOperation;
+				operation.data = toMap(obj);
+
+				// the id of an update is part of the data
+				Object id = operation.data.remove("id");
+				if (id != null) {
+					operation.id = id.toString();
+				}
+			}
+
+		} catch (RuntimeException rex) {
+
+			// op, id or data of the wrong JSON type
+			operation.error = new FrameworkException(HttpServletResponse.SC_BAD_REQUEST, "Invalid operation: " + rex.getMessage());
+			return operation;
+		}
+
+		String method = getMethod(operation.op);
+		if (method == null) {
+
+			operation.error = new FrameworkException(HttpServletResponse.SC_BAD_REQUEST, "Unknown operation " + operation.op);
+
+		} else {
+
+			operation.error = examine(method);
+		}
+
+		return operation;
+	}
+
+	private String getMethod(final String op) {
+
+		if (OP_CREATE.equals(op)) {
+			return "POST";
+		}
+
+		if (OP_UPDATE.equals(op)) {
+			return "PUT";
+		}
+
+		if (OP_DELETE.equals(op)) {
+			return "DELETE";
+		}
+
+		return null;
+	}
+
+	/**
+	 * Lets the authenticator examine the request as if it had been sent
+	 * with the given HTTP method, once per method.
+	 *
+	 * @param method
+	 * @return the error, or null if the method is allowed
+	 */
+	private FrameworkException examine(final String method) {
+
+		if (examinedMethods.containsKey(method)) {
+			return examinedMethods.get(method);
+		}
+
+		FrameworkException error = null;
+
+		try {
+			securityContext.examineRequest(new MethodRequest(request, method), resourceSignature, grant, propertyView);
+
+		} catch (FrameworkException fex) {
+
+			error = fex;
+		}
+
+		examinedMethods.put(method, error);
+
+		return error;
+	}
+
+	private Map<String, Object> toMap(final JsonElement element) {
+
+		JsonInput input = gson.fromJson(element, JsonInput.class);
+		if (input != null) {
+
+			return input.getAttributes();
+		}
+
+		return new LinkedHashMap<String, Object>();
+	}
+
+	private AbstractNode getNode(final String id) throws FrameworkException {
+
+		if (id == null) {
+			throw new IllegalPathException();
+		}
+
+		Result result = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(Search.andExactUuid(id));
+		if (result.isEmpty()) {
+			throw new NotFoundException();
+		}
+
+		AbstractNode node = (AbstractNode) result.get(0);
+		Class type        = resource.getEntityClass();
+
+		// only entities of the resource type can be modified
+		if (type != null && !type.isInstance(node)) {
+			throw new NotFoundException();
+		}
+
+		if (!securityContext.isReadable(node, true, false)) {
+			throw new NotAllowedException();
+		}
+
+		node.setSecurityContext(securityContext);
+
+		return node;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The batch request with the HTTP method of a single operation.
+	 */
+	private static class MethodRequest extends HttpServletRequestWrapper {
+
+		private String method = null;
+
+		public MethodRequest(final HttpServletRequest request, final String method) {
+
+			super(request);
+
+			this.method = method;
+		}
+
+		@Override
+		public String getMethod() {
+			return method;
+		}
+	}
+
+	private class Operation {
+
+		private Map<String, Object> data = null;
+		private FrameworkException error = null;
+		private String op                = null;
+		private String id                = null;
+		private int status               = 0;
+		private int index                = 0;
+
+		public Operation(final int index) {
+			this.index = index;
+		}
+
+		public void apply() throws FrameworkException {
+
+			// parse errors are reported without touching the database
+			if (error != null && status == 0) {
+				return;
+			}
+
+			error = null;
+
+			if (OP_CREATE.equals(op)) {
+
+				AbstractNode node = resource.createNode(data);
+				if (node != null) {
+
+					id = node.getUuid();
+				}
+
+				status = HttpServletResponse.SC_CREATED;
+
+			} else if (OP_UPDATE.equals(op)) {
+
+				AbstractNode node = getNode(id);
+
+				if (!securityContext.isAllowed(node, Permission.write)) {
+					throw new NotAllowedException();
+				}
+
+				PropertyMap properties = PropertyMap.inputTypeToJavaType(securityContext, node.getClass(), data);
+
+				for (Entry<PropertyKey, Object> entry : properties.entrySet()) {
+					node.setProperty(entry.getKey(), entry.getValue());
+				}
+
+				status = HttpServletResponse.SC_OK;
+
+			} else if (OP_DELETE.equals(op)) {
+
+				AbstractNode node = getNode(id);
+
+				if (!securityContext.isAllowed(node, Permission.delete)) {
+					throw new NotAllowedException();
+				}
+
+				Services.command(securityContext, DeleteNodeCommand.class).execute(node, true);
+
+				status = HttpServletResponse.SC_OK;
+			}
+		}
+
+		public void write(final JsonWriter writer) throws IOException {
+
+			writer.beginObject();
+			writer.name("index").value(index);
+			writer.name("op").value(op);
+
+			if (error != null) {
+
+				writer.name("status").value(error.getStatus());
+				writer.name("error");
+				gson.toJson(gson.toJsonTree(error, FrameworkException.class), writer);
+
+			} else {
+
+				writer.name("status").value(status);
+
+				if (id != null) {
+					writer.name("id").value(id);
+				}
+			}
+
+			writer.endObject();
+		}
+	}
+}
@@ -58,7 +58,6 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
@@ -300,19 +299,45 @@ public class CsvServlet extends HttpServlet {
 	 */
 	private void writeCsv(final Result result, Writer out) throws IOException {
 
-		List<GraphObject> list = result.getResults();
-		boolean headerWritten  = false;
+		// lazy results are instantiated row by row while writing
+		Iterable<GraphObject> list = result.getIterable();
+		boolean headerWritten      = false;
 
-		for (GraphObject obj : list) {
+		try {
+
+			for (GraphObject obj : list) {
+
+				// Write column headers
+				if (!headerWritten) {
+
+					StringBuilder row = new StringBuilder();
+
+					for (PropertyKey key : obj.getPropertyKeys(defaultPropertyView)) {
 
-			// Write column headers
-			if (!headerWritten) {
+						row.append("\"").append(key.dbName()).append("\",");
+					}
+
+					// remove last ,
+					row.deleteCharAt(row.lastIndexOf(","));
+					out.append(row).append("\n");
+
+					// flush each line
+					out.flush();
+
+					headerWritten = true;
+
+				}
 
 				StringBuilder row = new StringBuilder();
 
 				for (PropertyKey key : obj.getPropertyKeys(defaultPropertyView)) {
 
-					row.append("\"").append(key.dbName()).append("\",");
+					Object value = obj.getProperty(key);
+
+					row.append("\"").append((value != null
+								 ? StringUtils.replace(value.toString(), "\"", "\\\"")    // escaping for CSV
+								 : "")).append("\",");
+
 				}
 
 				// remove last ,
@@ -321,29 +346,11 @@ public class CsvServlet extends HttpServlet {
 
 				// flush each line
 				out.flush();
-
-				headerWritten = true;
-
-			}
-
-			StringBuilder row = new StringBuilder();
-
-			for (PropertyKey key : obj.getPropertyKeys(defaultPropertyView)) {
-
-				Object value = obj.getProperty(key);
-
-				row.append("\"").append((value != null
-							 ? StringUtils.replace(value.toString(), "\"", "\\\"")    // escaping for CSV
-							 : "")).append("\",");
-
 			}
 
-			// remove last ,
-			row.deleteCharAt(row.lastIndexOf(","));
-			out.append(row).append("\n");
+		} finally {
 
-			// flush each line
-			out.flush();
+			result.close();
 		}
 
 	}
@@ -65,6 +65,7 @@ import org.structr.core.entity.ResourceAccess;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.property.Property;
 import org.structr.rest.StreamingJsonWriter;
+import org.structr.rest.exception.IllegalPathException;
 import org.structr.rest.adapter.FrameworkExceptionGSONAdapter;
 import org.structr.rest.adapter.ResultGSONAdapter;
 import org.structr.rest.resource.*;
@@ -531,6 +532,12 @@ public class JsonRestServlet extends HttpServlet {
 			response.setCharacterEncoding("UTF-8");
 			response.setContentType("application/json; charset=UTF-8");
 
+			if (BatchProcessor.isBatchRequest(request)) {
+
+				doBatch(securityContext, request, response, BatchProcessor.OP_CREATE);
+				return;
+			}
+
 			final JsonInput propertySet   = gson.get().fromJson(request.getReader(), JsonInput.class);
 
 			if (securityContext != null) {
@@ -637,6 +644,12 @@ public class JsonRestServlet extends HttpServlet {
 			response.setCharacterEncoding("UTF-8");
 			response.setContentType("application/json; charset=UTF-8");
 
+			if (BatchProcessor.isBatchRequest(request)) {
+
+				doBatch(securityContext, request, response, BatchProcessor.OP_UPDATE);
+				return;
+			}
+
 			final JsonInput propertySet = gson.get().fromJson(request.getReader(), JsonInput.class);
 
 			if (securityContext != null) {
@@ -779,6 +792,42 @@ public class JsonRestServlet extends HttpServlet {
 		return buf.toString();
 	}
 
+	private void doBatch(final SecurityContext securityContext, final HttpServletRequest request, final HttpServletResponse response, final String defaultOperation) throws FrameworkException, IOException {
+
+		if (securityContext != null) {
+
+			// let module-specific authenticator examine the request first
+			securityContext.initializeAndExamineRequest(request, response);
+
+			// evaluate constraint chain
+			List<Resource> chain     = ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView, defaultIdProperty);
+			Resource resource        = ResourceHelper.optimizeNestedResourceChain(chain, defaultIdProperty);
+			String resourceSignature = resource.getResourceSignature();
+			ResourceAccess grant     = ResourceAccess.findGrant(resourceSignature);
+			String view              = propertyView.get(securityContext);
+
+			// let authenticator examine request again, the processor examines
+			// each operation with the HTTP method it corresponds to
+			securityContext.examineRequest(request, resourceSignature, grant, view);
+
+			// batch operations address the entities of a single type
+			if (!(resource instanceof TypeResource)) {
+				throw new IllegalPathException();
+			}
+
+			BatchProcessor processor = new BatchProcessor(securityContext, request, (TypeResource) resource, grant, view, defaultOperation, gson.get(), BatchProcessor.getBatchSize(request));
+
+			response.setStatus(HttpServletResponse.SC_OK);
+			processor.process(request.getReader(), response.getWriter());
+
+		} else {
+
+			RestMethodResult result = new RestMethodResult(HttpServletResponse.SC_FORBIDDEN);
+
+			result.commitResponse(gson.get(), response);
+		}
+	}
+
 	private Map<String, Object> convertPropertySetToMap(JsonInput propertySet) {
 		
 		if (propertySet != null) {
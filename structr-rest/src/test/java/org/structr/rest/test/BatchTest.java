@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import static org.hamcrest.Matchers.*;
+import com.jayway.restassured.RestAssured;
+import org.structr.rest.common.StructrRestTest;
+
+/**
+ * Tests batch operations on collection resources.
+ *
+ * @author Christian Morgner
+ */
+public class BatchTest extends StructrRestTest {
+
+	/**
+	 * Test the creation of multiple entities in chunked transactions.
+	 */
+	public void test010BatchCreate() {
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.header("X-Batch", "true")
+				.body(" [ { \"name\" : \"one\" }, { \"name\" : \"two\" }, { \"name\" : \"three\" } ] ")
+			.expect()
+				.statusCode(200)
+				.body("result_count",       equalTo(3))
+				.body("error_count",        equalTo(0))
+				.body("result[0].status",   equalTo(201))
+				.body("result[2].index",    equalTo(2))
+			.when()
+				.post("/test_objects?batchSize=2");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count",       equalTo(3))
+			.when()
+				.get("/test_objects");
+
+	}
+
+	/**
+	 * Test mixed operations in an NDJSON stream, including an operation
+	 * that fails without affecting the others.
+	 */
+	public void test020BatchOperations() {
+
+		String id = RestAssured
+
+			.given()
+				.contentType("application/x-ndjson; charset=UTF-8")
+				.body("{ \"op\" : \"create\", \"data\" : { \"name\" : \"one\" } }\n{ \"op\" : \"create\", \"data\" : { \"name\" : \"two\" } }\n")
+			.expect()
+				.statusCode(200)
+				.body("result_count",       equalTo(2))
+				.body("error_count",        equalTo(0))
+			.when()
+				.post("/test_objects")
+				.jsonPath().get("result[0].id");
+
+		assertNotNull(id);
+
+		RestAssured
+
+			.given()
+				.contentType("application/x-ndjson; charset=UTF-8")
+				.body("{ \"op\" : \"update\", \"id\" : \"" + id + "\", \"data\" : { \"name\" : \"changed\" } }\n{ \"op\" : \"delete\", \"id\" : \"nonexisting\" }\n")
+			.expect()
+				.statusCode(200)
+				.body("result_count",       equalTo(2))
+				.body("error_count",        equalTo(1))
+				.body("result[0].status",   equalTo(200))
+				.body("result[1].status",   equalTo(404))
+			.when()
+				.put("/test_objects");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result.name",        hasItem("changed"))
+			.when()
+				.get("/test_objects");
+
+		RestAssured
+
+			.given()
+				.contentType("application/x-ndjson; charset=UTF-8")
+				.body("{ \"op\" : \"delete\", \"id\" : \"" + id + "\" }\n")
+			.expect()
+				.statusCode(200)
+				.body("error_count",        equalTo(0))
+			.when()
+				.put("/test_objects");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count",       equalTo(1))
+			.when()
+				.get("/test_objects");
+	}
+
+	/**
+	 * Test that a malformed line ends the stream with an error result
+	 * inside a complete JSON response.
+	 */
+	public void test030MalformedInput() {
+
+		RestAssured
+
+			.given()
+				.contentType("application/x-ndjson; charset=UTF-8")
+				.body("{ \"op\" : \"create\", \"data\" : { \"name\" : \"one\" } }\n{ \"op\" : \"create\", \"data\" : [ }\n{ \"op\" : \"create\", \"data\" : { \"name\" : \"three\" } }\n")
+			.expect()
+				.statusCode(200)
+				.body("result_count",       equalTo(2))
+				.body("error_count",        equalTo(1))
+				.body("result[0].status",   equalTo(201))
+				.body("result[1].status",   equalTo(400))
+			.when()
+				.post("/test_objects?batchSize=1");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count",       equalTo(1))
+			.when()
+				.get("/test_objects");
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.agent;
+
+import org.structr.common.SecurityContext;
+import org.structr.common.ThumbnailParameters;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.agent.Agent;
+import org.structr.core.agent.AgentService;
+import org.structr.core.agent.ProcessTaskCommand;
+import org.structr.core.agent.ReturnValue;
+import org.structr.core.agent.Task;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.GetNodeByIdCommand;
+import org.structr.web.entity.Image;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Creates thumbnails in the background so that reading a thumbnail
+ * property never has to scale an image. The number of concurrent agents
+ * is limited by the {@link AgentService}, and requests for a thumbnail
+ * that is already queued or being created are ignored.
+ *
+ * Thumbnails are created by the superuser, so they get the owner and the
+ * grants of their image, see {@link Image#getScaledImage}.
+ *
+ * @author Christian Morgner
+ */
+public class ThumbnailAgent extends Agent {
+
+	private static final Logger logger = Logger.getLogger(ThumbnailAgent.class.getName());
+
+	//~--- constructors ---------------------------------------------------
+
+	public ThumbnailAgent() {
+
+		setName("ThumbnailAgent");
+
+	}
+
+	//~--- methods --------------------------------------------------------
+
+	/**
+	 * Queues the creation of a thumbnail of the given image, unless the
+	 * same thumbnail is already queued.
+	 *
+	 * @param image
+	 * @param parameters
+	 * @return false if the agent service is not running, so the caller
+	 * has to create the thumbnail itself
+	 */
+	public static boolean createThumbnail(final Image image, final ThumbnailParameters parameters) {
+
+		AgentService agentService = Services.getService(AgentService.class);
+
+		if (agentService == null) {
+
+			return false;
+		}
+
+		ThumbnailTask task = new ThumbnailTask(image.getUuid(), parameters);
+
+		if (!agentService.isActive(task)) {
+
+			Services.command(SecurityContext.getSuperUserInstance(), ProcessTaskCommand.class).execute(task);
+		}
+
+		return true;
+
+	}
+
+	@Override
+	public ReturnValue processTask(Task task) throws FrameworkException {
+
+		if (task instanceof ThumbnailTask) {
+
+			ThumbnailTask thumbnailTask    = (ThumbnailTask) task;
+			ThumbnailParameters parameters = thumbnailTask.getParameters();
+
+			AbstractNode node = Services.command(SecurityContext.getSuperUserInstance(), GetNodeByIdCommand.class).execute(thumbnailTask.getImageId());
+
+			if (node instanceof Image) {
+
+				Image image = (Image) node;
+
+				// the thumbnail may have been created since the task was queued
+				if (!image.getProperty(Image.isThumbnail) && image.getExistingScaledImage(parameters.getMaxWidth(), parameters.getMaxHeight()) == null) {
+
+					if (image.getScaledImage(parameters.getMaxWidth(), parameters.getMaxHeight(), parameters.getCropToFit()) == null) {
+
+						logger.log(Level.WARNING, "Could not create thumbnail for {0}", thumbnailTask.getImageId());
+					}
+				}
+			}
+		}
+
+		return (ReturnValue.Success);
+
+	}
+
+	//~--- get methods ----------------------------------------------------
+
+	@Override
+	public Class getSupportedTaskType() {
+
+		return (ThumbnailTask.class);
+
+	}
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.agent;
+
+import org.structr.common.ThumbnailParameters;
+import org.structr.core.agent.Task;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Principal;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Creates a thumbnail of the image with the given uuid in the background,
+ * see {@link ThumbnailAgent}.
+ *
+ * @author Christian Morgner
+ */
+public class ThumbnailTask implements Task {
+
+	private ThumbnailParameters parameters = null;
+	private String imageId                 = null;
+
+	public ThumbnailTask(final String imageId, final ThumbnailParameters parameters) {
+
+		this.imageId    = imageId;
+		this.parameters = parameters;
+
+	}
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public int priority() {
+
+		return 0;
+
+	}
+
+	@Override
+	public int compareTo(Delayed o) {
+
+		Long d1 = Long.valueOf(this.getDelay(TimeUnit.MILLISECONDS));
+		Long d2 = Long.valueOf(o.getDelay(TimeUnit.MILLISECONDS));
+
+		return (d1.compareTo(d2));
+
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+
+		return other instanceof ThumbnailTask && getKey().equals(((ThumbnailTask) other).getKey());
+
+	}
+
+	@Override
+	public int hashCode() {
+
+		return getKey().hashCode();
+
+	}
+
+	//~--- get methods ----------------------------------------------------
+
+	/**
+	 * Returns a key that identifies the image and the thumbnail parameters
+	 * of this task, used to avoid creating the same thumbnail twice.
+	 *
+	 * @return the key
+	 */
+	public String getKey() {
+
+		return imageId + ":" + parameters.getMaxWidth() + "x" + parameters.getMaxHeight() + ":" + parameters.getCropToFit();
+
+	}
+
+	public String getImageId() {
+
+		return imageId;
+
+	}
+
+	public ThumbnailParameters getParameters() {
+
+		return parameters;
+
+	}
+
+	@Override
+	public Set<AbstractNode> getNodes() {
+
+		return Collections.emptySet();
+
+	}
+
+	@Override
+	public Date getScheduledTime() {
+
+		return null;
+
+	}
+
+	@Override
+	public Date getCreationTime() {
+
+		return null;
+
+	}
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+
+		return 0;
+
+	}
+
+	// ----- interface StatusInfo -----
+	@Override
+	public Object getStatusProperty(String key) {
+
+		return (null);
+	}
+
+	@Override
+	public Principal getUser() {
+
+		return null;
+
+	}
+
+	@Override
+	public String getType() {
+
+		return getClass().getSimpleName();
+
+	}
+
+}
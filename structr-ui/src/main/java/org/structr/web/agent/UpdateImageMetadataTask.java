@@ -63,6 +63,24 @@ public class UpdateImageMetadataTask implements Task {
 
 	}
 
+	/**
+	 * All instances are equal since the task always updates all images,
+	 * so the agent service queues it only once.
+	 */
+	@Override
+	public boolean equals(final Object other) {
+
+		return other instanceof UpdateImageMetadataTask;
+
+	}
+
+	@Override
+	public int hashCode() {
+
+		return UpdateImageMetadataTask.class.hashCode();
+
+	}
+
 	//~--- get methods ----------------------------------------------------
 
 	@Override
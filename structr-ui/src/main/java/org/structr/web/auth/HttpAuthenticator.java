@@ -27,6 +27,7 @@ import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.auth.AuthHelper;
 import org.structr.core.auth.Authenticator;
+import org.structr.core.auth.SessionCache;
 import org.structr.core.auth.exception.AuthenticationException;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.ResourceAccess;
@@ -133,6 +134,11 @@ public class HttpAuthenticator implements Authenticator {
 
 			try {
 
+				// no need for a write transaction if the user logs in again with the same session
+				if (sessionIdFromRequest != null && sessionIdFromRequest.equals(principal.getProperty(Principal.sessionId))) {
+					return user;
+				}
+
 				Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
 
 					@Override
@@ -177,6 +183,8 @@ public class HttpAuthenticator implements Authenticator {
 				});
 			}
 
+			SessionCache.invalidateSession(request.getRequestedSessionId());
+
 			request.getSession(false).invalidate();
 			request.logout();
 			securityContext.setUser(null);
@@ -188,8 +188,9 @@ public class UiAuthenticator extends HttpAuthenticator {
 
 			HttpSession session = request.getSession(false);
 			
-			// Websocket connects don't have a session
-			if (session != null) {
+			// Websocket connects don't have a session, and there is no need
+			// to store the session id again if it has not changed
+			if (session != null && !session.getId().equals(user.getProperty(Principal.sessionId))) {
 			
 				final String sessionIdFromRequest = session.getId();
 				final Principal principal         = user;
@@ -35,6 +35,7 @@ import java.io.File;
 import java.io.IOException;
 
 import java.util.UUID;
+import java.util.zip.CRC32;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.Path;
@@ -65,30 +66,64 @@ public class FileHelper {
 	 */
 	public static void writeToFile(final org.structr.web.entity.File fileNode, final byte[] data) throws FrameworkException, IOException {
 
-		String uuid = fileNode.getProperty(AbstractNode.uuid);
-		if (uuid == null) {
+		writeToFile(fileNode, data, null);
 
-			final String newUuid = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
-			uuid                 = newUuid;
-			
-			Services.command(fileNode.getSecurityContext(), TransactionCommand.class).execute(new StructrTransaction() {
+	}
+
+	/**
+	 * Write binary data to a file and reference the file on disk at the given file node.
+	 *
+	 * Checksum and size are computed from the data in memory and stored together
+	 * with the file path and the content type in a single transaction, so the
+	 * file doesn't have to be read again. If no content type is given and the
+	 * node doesn't have one yet, it is detected from the data.
+	 *
+	 * @param fileNode
+	 * @param data
+	 * @param contentType the content type, or null
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static void writeToFile(final org.structr.web.entity.File fileNode, final byte[] data, final String contentType) throws FrameworkException, IOException {
+
+		String existingUuid = fileNode.getProperty(AbstractNode.uuid);
+		final String uuid   = existingUuid != null ? existingUuid : UUID.randomUUID().toString().replaceAll("[\\-]+", "");
+		final String path   = org.structr.web.entity.File.getDirectoryPath(uuid) + "/" + uuid;
+
+		java.io.File fileOnDisk = new java.io.File(Services.getFilesPath() + "/" + path);
 
-				@Override
-				public Object execute() throws FrameworkException {
+		fileOnDisk.getParentFile().mkdirs();
+		FileUtils.writeByteArrayToFile(fileOnDisk, data);
+
+		final long modified  = fileOnDisk.lastModified();
+		final CRC32 checksum = new CRC32();
+		final String type    = contentType != null ? contentType : (fileNode.getContentType() != null ? null : getContentMimeType(data));
+
+		checksum.update(data);
+
+		Services.command(fileNode.getSecurityContext(), TransactionCommand.class).execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
 
-					fileNode.setProperty(AbstractNode.uuid, newUuid);
-					return null;
+				if (fileNode.getProperty(AbstractNode.uuid) == null) {
+
+					fileNode.setProperty(AbstractNode.uuid, uuid);
 				}
-			});
 
-		}
+				fileNode.setProperty(org.structr.web.entity.File.relativeFilePath, path);
+				fileNode.setProperty(org.structr.web.entity.File.size, (long) data.length);
+				fileNode.setProperty(org.structr.web.entity.File.checksum, checksum.getValue());
+				fileNode.setProperty(org.structr.web.entity.File.contentModified, modified);
 
-		fileNode.setRelativeFilePath(org.structr.web.entity.File.getDirectoryPath(uuid) + "/" + uuid);
+				if (type != null) {
 
-		java.io.File fileOnDisk = new java.io.File(Services.getFilesPath() + "/" + fileNode.getRelativeFilePath());
+					fileNode.setProperty(org.structr.web.entity.File.contentType, type);
+				}
 
-		fileOnDisk.getParentFile().mkdirs();
-		FileUtils.writeByteArrayToFile(fileOnDisk, data);
+				return null;
+			}
+		});
 
 	}
 
@@ -241,7 +276,33 @@ public class FileHelper {
 	}
 	
 	/**
-	 * Return size of file on disk, or -1 if not possible
+	 * Return modification time of file on disk, or -1 if not possible or
+	 * the file doesn't exist yet
+	 *
+	 * @param file
+	 * @return
+	 */
+	public static long getLastModified(final org.structr.web.entity.File file) {
+
+		String path = file.getRelativeFilePath();
+
+		if (path != null) {
+
+			java.io.File fileOnDisk = new java.io.File(Services.getFilePath(Path.Files, path));
+
+			if (fileOnDisk.exists()) {
+
+				return fileOnDisk.lastModified();
+			}
+		}
+
+		return -1;
+
+	}
+
+	/**
+	 * Return size of file on disk, or -1 if not possible or the file
+	 * doesn't exist yet
 	 * 
 	 * @param file
 	 * @return 
@@ -254,6 +315,12 @@ public class FileHelper {
 
 			String filePath         = Services.getFilePath(Path.Files, path);
 			java.io.File fileOnDisk = new java.io.File(filePath);
+
+			if (!fileOnDisk.exists()) {
+
+				return -1;
+			}
+
 			long fileSize           = fileOnDisk.length();
 
 			logger.log(Level.FINE, "File size of node {0} ({1}): {2}", new Object[] { file.getUuid(), filePath, fileSize });
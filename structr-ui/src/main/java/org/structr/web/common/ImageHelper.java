@@ -83,8 +83,12 @@ public abstract class ImageHelper {
 
 		Base64URIData uriData = new Base64URIData(rawData);
 
-		FileHelper.writeToFile(fileNode, uriData.getBinaryData());
-		fileNode.setContentType(uriData.getContentType());
+		FileHelper.writeToFile(fileNode, uriData.getBinaryData(), uriData.getContentType());
+
+		if (fileNode instanceof Image) {
+
+			((Image) fileNode).requestThumbnails();
+		}
 
 	}
 
@@ -129,9 +133,7 @@ public abstract class ImageHelper {
 
 		Image newImage = createNodeCommand.execute(props);
 
-		FileHelper.writeToFile(newImage, imageData);
-		newImage.setChecksum(FileHelper.getChecksum(newImage));
-		newImage.setSize(FileHelper.getSize(newImage));
+		FileHelper.writeToFile(newImage, imageData, contentType);
 
 		return newImage;
 
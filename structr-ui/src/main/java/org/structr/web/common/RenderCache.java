@@ -0,0 +1,358 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+
+/**
+ * Caches the rendered output of pages for anonymous requests.
+ *
+ * Every entry records the ids of the nodes and relationships and the types
+ * that were read while rendering it (see {@link RenderContext#addDependency}).
+ * The {@link Invalidator} is registered as a transaction event handler and
+ * removes all entries that depend on something that was modified by a
+ * successful transaction.
+ *
+ * Entries are stored together with the generation of the cache at the time
+ * rendering started, so that output rendered concurrently with a modification
+ * of one of its dependencies is discarded instead of being cached.
+ *
+ * The maximum number of cached pages can be configured with
+ * <code>html.cache.size</code> in structr.conf, a value of 0 disables the cache.
+ *
+ * @author Christian Morgner
+ */
+public class RenderCache {
+
+	public static final String HTML_CACHE_SIZE                = "html.cache.size";
+
+	private static final Map<String, Entry> entries           = new ConcurrentHashMap<String, Entry>(100, 0.9f, 8);
+	private static final Map<Long, Set<String>> nodeKeys      = new HashMap<Long, Set<String>>();
+	private static final Map<Long, Set<String>> relKeys       = new HashMap<Long, Set<String>>();
+	private static final Map<String, Set<String>> typeKeys    = new HashMap<String, Set<String>>();
+	private static final Set<String> wildcardKeys             = new HashSet<String>();
+	private static final Object lock                          = new Object();
+	private static final AtomicLong generation                = new AtomicLong(0);
+	private static final AtomicLong hits                      = new AtomicLong(0);
+	private static final AtomicLong misses                    = new AtomicLong(0);
+	private static Integer maxSize                            = null;
+
+	public static boolean isEnabled() {
+		return getMaxSize() > 0;
+	}
+
+	public static long getGeneration() {
+		return generation.get();
+	}
+
+	public static Entry get(final String key) {
+
+		Entry entry = entries.get(key);
+		if (entry != null) {
+
+			hits.incrementAndGet();
+
+		} else {
+
+			misses.incrementAndGet();
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Stores the rendered content of the given render context, unless
+	 * the context was marked as not cacheable or something was modified
+	 * since the given generation.
+	 *
+	 * @param key
+	 * @param renderContext
+	 * @param contentType
+	 * @param startGeneration the generation at the time rendering started
+	 */
+	public static void put(final String key, final RenderContext renderContext, final String contentType, final long startGeneration) {
+
+		if (!renderContext.isCacheable()) {
+			return;
+		}
+
+		Entry entry = new Entry(renderContext.getContent(), contentType);
+
+		synchronized (lock) {
+
+			if (generation.get() != startGeneration) {
+				return;
+			}
+
+			if (entries.size() >= getMaxSize()) {
+				clear();
+			}
+
+			remove(key);
+
+			entries.put(key, entry);
+
+			if (renderContext.dependsOnAnyChange()) {
+
+				wildcardKeys.add(key);
+
+			} else {
+
+				for (Long id : renderContext.getNodeDependencies()) {
+					addKey(nodeKeys, id, key);
+				}
+
+				for (Long id : renderContext.getRelationshipDependencies()) {
+					addKey(relKeys, id, key);
+				}
+
+				for (String type : renderContext.getTypeDependencies()) {
+					addKey(typeKeys, type, key);
+				}
+			}
+		}
+	}
+
+	public static void invalidate(final Set<Long> nodeIds, final Set<Long> relIds, final Set<String> types) {
+
+		synchronized (lock) {
+
+			generation.incrementAndGet();
+
+			Set<String> keys = new HashSet<String>(wildcardKeys);
+
+			collectKeys(nodeKeys, nodeIds, keys);
+			collectKeys(relKeys, relIds, keys);
+			collectKeys(typeKeys, types, keys);
+
+			for (String key : keys) {
+				remove(key);
+			}
+		}
+	}
+
+	public static void clear() {
+
+		synchronized (lock) {
+
+			generation.incrementAndGet();
+
+			entries.clear();
+			nodeKeys.clear();
+			relKeys.clear();
+			typeKeys.clear();
+			wildcardKeys.clear();
+		}
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+		stats.put("pages", entries.size());
+		stats.put("maxSize", getMaxSize());
+		stats.put("hits", hits.get());
+		stats.put("misses", misses.get());
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private static int getMaxSize() {
+
+		if (maxSize == null) {
+
+			try {
+				maxSize = Integer.parseInt(Services.getConfigurationValue(HTML_CACHE_SIZE, "1000"));
+
+			} catch (NumberFormatException nfex) {
+
+				maxSize = 1000;
+			}
+		}
+
+		return maxSize;
+	}
+
+	private static void remove(final String key) {
+
+		// index entries of removed keys are cleaned up lazily in collectKeys
+		entries.remove(key);
+		wildcardKeys.remove(key);
+	}
+
+	private static <K> void addKey(final Map<K, Set<String>> index, final K dependency, final String key) {
+
+		Set<String> keys = index.get(dependency);
+		if (keys == null) {
+
+			keys = new HashSet<String>();
+			index.put(dependency, keys);
+		}
+
+		keys.add(key);
+	}
+
+	private static <K> void collectKeys(final Map<K, Set<String>> index, final Set<K> dependencies, final Set<String> keys) {
+
+		for (K dependency : dependencies) {
+
+			Set<String> dependentKeys = index.remove(dependency);
+			if (dependentKeys != null) {
+
+				keys.addAll(dependentKeys);
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	public static class Entry {
+
+		private String content     = null;
+		private String contentType = null;
+
+		public Entry(final String content, final String contentType) {
+
+			this.content     = content;
+			this.contentType = contentType;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+	}
+
+	/**
+	 * Collects the modified nodes, relationships and types of a transaction
+	 * before it is committed, and invalidates the dependent cache entries
+	 * after the commit was successful.
+	 */
+	public static class Invalidator implements TransactionEventHandler<Invalidation> {
+
+		@Override
+		public Invalidation beforeCommit(final TransactionData data) throws Exception {
+
+			Invalidation invalidation = new Invalidation();
+
+			for (Node node : data.createdNodes()) {
+				invalidation.addNode(data, node);
+			}
+
+			for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+				invalidation.addNode(data, entry.entity());
+			}
+
+			for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+
+				invalidation.nodeIds.add(entry.entity().getId());
+
+				// the type of deleted nodes is only available from the removed properties
+				if (AbstractNode.type.dbName().equals(entry.key()) && entry.previouslyCommitedValue() != null) {
+					invalidation.types.add(entry.previouslyCommitedValue().toString());
+				}
+			}
+
+			for (Node node : data.deletedNodes()) {
+				invalidation.nodeIds.add(node.getId());
+			}
+
+			for (Relationship rel : data.createdRelationships()) {
+				invalidation.addRelationship(rel);
+			}
+
+			for (Relationship rel : data.deletedRelationships()) {
+				invalidation.addRelationship(rel);
+			}
+
+			for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+				invalidation.relIds.add(entry.entity().getId());
+			}
+
+			for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties()) {
+				invalidation.relIds.add(entry.entity().getId());
+			}
+
+			return invalidation;
+		}
+
+		@Override
+		public void afterCommit(final TransactionData data, final Invalidation invalidation) {
+
+			if (invalidation != null && !invalidation.isEmpty()) {
+
+				invalidate(invalidation.nodeIds, invalidation.relIds, invalidation.types);
+			}
+		}
+
+		@Override
+		public void afterRollback(final TransactionData data, final Invalidation invalidation) {
+		}
+	}
+
+	public static class Invalidation {
+
+		private final Set<Long> nodeIds  = new HashSet<Long>();
+		private final Set<Long> relIds   = new HashSet<Long>();
+		private final Set<String> types  = new HashSet<String>();
+
+		private void addNode(final TransactionData data, final Node node) {
+
+			nodeIds.add(node.getId());
+
+			if (!data.isDeleted(node)) {
+
+				Object type = node.getProperty(AbstractNode.type.dbName(), null);
+				if (type != null) {
+
+					types.add(type.toString());
+				}
+			}
+		}
+
+		private void addRelationship(final Relationship rel) {
+
+			relIds.add(rel.getId());
+
+			// the rendered relationship collections of both ends change
+			nodeIds.add(rel.getStartNode().getId());
+			nodeIds.add(rel.getEndNode().getId());
+		}
+
+		private boolean isEmpty() {
+			return nodeIds.isEmpty() && relIds.isEmpty() && types.isEmpty();
+		}
+	}
+}
@@ -19,14 +19,23 @@
 
 package org.structr.web.common;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.rest.ResourceProvider;
 import org.structr.web.entity.Component;
@@ -44,6 +53,8 @@ import org.structr.web.entity.dom.Page;
 public class RenderContext {
 	
 	private static final Logger logger                   = Logger.getLogger(RenderContext.class.getName());
+	private static final int FLUSH_THRESHOLD             = 8192;
+	private static final int MAX_CAPTURE_LENGTH          = 1024 * 1024;
 	
 	private Map<String, GraphObject> dataObjects = new LinkedHashMap<String, GraphObject>();
 	private final StringBuilder buffer           = new StringBuilder(8192);
@@ -62,6 +73,13 @@ public class RenderContext {
 	private HttpServletRequest request           = null;
 	private HttpServletResponse response         = null;
 	private ResourceProvider resourceProvider    = null;
+	private Set<Long> nodeDependencies           = new HashSet<Long>();
+	private Set<Long> relDependencies            = new HashSet<Long>();
+	private Set<String> typeDependencies         = new HashSet<String>();
+	private boolean dependsOnAnyChange           = false;
+	private boolean cacheable                    = true;
+	private Writer writer                        = null;
+	private StringBuilder capture                = null;
 	
 	public RenderContext() {
 	}
@@ -84,6 +102,7 @@ public class RenderContext {
 	
 	public void setDetailsDataObject(GraphObject detailsDataObject) {
 		this.detailsDataObject = detailsDataObject;
+		addDataDependency(detailsDataObject);
 	}
 	
 	public GraphObject getDetailsDataObject() {
@@ -92,6 +111,7 @@ public class RenderContext {
 	
 	public void setDataObject(GraphObject currentDataObject) {
 		this.currentDataObject = currentDataObject;
+		addDataDependency(currentDataObject);
 	}
 	
 	public GraphObject getDataObject() {
@@ -99,7 +119,13 @@ public class RenderContext {
 	}
 	
 	public void setListSource(Iterable<GraphObject> listSource) {
+
 		this.listSource = listSource;
+
+		// an empty result does not tell us which types it depends on
+		if (listSource instanceof Collection && ((Collection) listSource).isEmpty()) {
+			setDependsOnAnyChange();
+		}
 	}
 	
 	public Iterable<GraphObject> getListSource() {
@@ -161,6 +187,98 @@ public class RenderContext {
 	public StringBuilder getBuffer() {
 		return buffer;
 	}
+
+	/**
+	 * Switches this render context to streaming mode: the buffer is
+	 * written to the given writer whenever it exceeds a fixed size, so
+	 * only a small part of the page is held in memory.
+	 *
+	 * @param writer the target writer
+	 * @param capture whether to keep a copy of the output for {@link #getContent()}
+	 */
+	public void streamTo(final Writer writer, final boolean capture) {
+
+		this.writer  = writer;
+		this.capture = capture ? new StringBuilder(FLUSH_THRESHOLD) : null;
+	}
+
+	/**
+	 * Writes the buffer to the target writer if it is full. Must only be
+	 * called at element boundaries, i.e. when no element is going to
+	 * modify the already rendered part of the buffer.
+	 *
+	 * @throws FrameworkException
+	 */
+	public void flushIfFull() throws FrameworkException {
+
+		if (writer != null && buffer.length() >= FLUSH_THRESHOLD) {
+			flush(false);
+		}
+	}
+
+	/**
+	 * Writes the buffer to the target writer.
+	 *
+	 * @param toClient whether to flush the writer as well
+	 * @throws FrameworkException
+	 */
+	public void flush(final boolean toClient) throws FrameworkException {
+
+		if (writer == null) {
+			return;
+		}
+
+		try {
+
+			writer.append(buffer);
+
+			if (toClient) {
+				writer.flush();
+			}
+
+			// PrintWriter swallows exceptions
+			if (writer instanceof PrintWriter && ((PrintWriter) writer).checkError()) {
+				throw new IOException("Error writing to client");
+			}
+
+		} catch (IOException ioex) {
+
+			// client has gone away, abort rendering
+			throw new FrameworkException(500, ioex.getMessage());
+		}
+
+		if (capture != null) {
+
+			if (capture.length() + buffer.length() > MAX_CAPTURE_LENGTH) {
+
+				// don't keep a copy of very large pages
+				capture   = null;
+				cacheable = false;
+
+			} else {
+
+				capture.append(buffer);
+			}
+		}
+
+		buffer.setLength(0);
+	}
+
+	/**
+	 * Returns the complete rendered content, including the parts that have
+	 * already been written in streaming mode.
+	 *
+	 * @return the content
+	 */
+	public String getContent() {
+
+		if (capture != null) {
+
+			return capture.toString().concat(buffer.toString());
+		}
+
+		return buffer.toString();
+	}
 	
 	public void setInBody(final boolean inBody) {
 		this.inBody = inBody;
@@ -212,4 +330,75 @@ public class RenderContext {
 	public String getComponentId() {
 		return (component != null ? component.getUuid() : null);
 	}
+
+	// ----- render dependencies -----
+	/**
+	 * Records that the rendered output depends on the given object.
+	 *
+	 * @param graphObject
+	 */
+	public void addDependency(final GraphObject graphObject) {
+
+		if (graphObject instanceof AbstractNode) {
+
+			nodeDependencies.add(graphObject.getId());
+
+		} else if (graphObject instanceof AbstractRelationship) {
+
+			relDependencies.add(graphObject.getId());
+		}
+	}
+
+	/**
+	 * Records that the rendered output depends on the given data object
+	 * and on the set of objects of its type, because it was most likely
+	 * part of a collection.
+	 *
+	 * @param graphObject
+	 */
+	public void addDataDependency(final GraphObject graphObject) {
+
+		addDependency(graphObject);
+
+		if (graphObject instanceof AbstractNode) {
+
+			typeDependencies.add(graphObject.getType());
+		}
+	}
+
+	/**
+	 * Marks the rendered output as dependent on all modifications, used
+	 * for queries whose result can not be attributed to single types.
+	 */
+	public void setDependsOnAnyChange() {
+		this.dependsOnAnyChange = true;
+	}
+
+	public boolean dependsOnAnyChange() {
+		return dependsOnAnyChange;
+	}
+
+	/**
+	 * Marks the rendered output as not cacheable at all, f.e. because it
+	 * contains the current time.
+	 */
+	public void setCacheable(final boolean cacheable) {
+		this.cacheable = cacheable;
+	}
+
+	public boolean isCacheable() {
+		return cacheable;
+	}
+
+	public Set<Long> getNodeDependencies() {
+		return nodeDependencies;
+	}
+
+	public Set<Long> getRelationshipDependencies() {
+		return relDependencies;
+	}
+
+	public Set<String> getTypeDependencies() {
+		return typeDependencies;
+	}
 }
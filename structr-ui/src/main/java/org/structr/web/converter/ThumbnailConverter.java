@@ -21,6 +21,7 @@
 package org.structr.web.converter;
 
 import org.structr.common.ThumbnailParameters;
+import org.structr.web.agent.ThumbnailAgent;
 import org.structr.web.entity.Image;
 
 //~--- JDK imports ------------------------------------------------------------
@@ -28,17 +29,14 @@ import org.structr.web.entity.Image;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.SecurityContext;
-import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
-import org.structr.core.Services;
 import org.structr.core.converter.PropertyConverter;
-import org.structr.core.graph.StructrTransaction;
-import org.structr.core.graph.TransactionCommand;
 
 //~--- classes ----------------------------------------------------------------
 
 /**
- * Creates a thumbnail for an {@link Image}.
+ * Returns the thumbnail of an {@link Image}. Missing or outdated
+ * thumbnails are created in the background by the {@link ThumbnailAgent}.
  *
  * @author Axel Morgner
  */
@@ -66,31 +64,25 @@ public class ThumbnailConverter extends PropertyConverter {
 	@Override
 	public Object revert(Object source) {
 
-		if (((Image) this.currentObject).getProperty(Image.isThumbnail)) {
-			return null;
-		}
-		
-		final Image thumbnail = ((Image) currentObject).getScaledImage(parameters.getMaxWidth(), parameters.getMaxHeight(), parameters.getCropToFit());
+		Image image = (Image) this.currentObject;
 
-		if (thumbnail == null) {
-			logger.log(Level.WARNING, "Could not create thumbnail for {0}", source);
+		if (image.getProperty(Image.isThumbnail)) {
 			return null;
 		}
-		try {
-			Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
-
-				@Override
-				public Object execute() throws FrameworkException {
-					
-					thumbnail.setProperty(Image.isThumbnail, true);
-					return null;
-				}
-			});
-			
-		} catch (FrameworkException ex) {
-			logger.log(Level.WARNING, "Could not set isThumbnail property on {0}", thumbnail);
+
+		Image thumbnail = image.getExistingScaledImage(parameters.getMaxWidth(), parameters.getMaxHeight());
+
+		if (thumbnail == null && !ThumbnailAgent.createThumbnail(image, parameters)) {
+
+			// no agent service running, so the thumbnail has to be created right away
+			thumbnail = image.getScaledImage(parameters.getMaxWidth(), parameters.getMaxHeight(), parameters.getCropToFit());
+
+			if (thumbnail == null) {
+				logger.log(Level.WARNING, "Could not create thumbnail for {0}", source);
+			}
 		}
-		
-		return thumbnail;//.getUuid();
+
+		// null until the thumbnail was created in the background
+		return thumbnail;
 	}
 }
@@ -64,6 +64,7 @@ public class File extends AbstractFile implements Linkable {
 	public static final Property<Long>         size             = new LongProperty("size");
 	public static final Property<String>       url              = new StringProperty("url");
 	public static final Property<Long>         checksum         = new LongProperty("checksum").unvalidated();
+	public static final Property<Long>         contentModified  = new LongProperty("contentModified").unvalidated();
 	public static final Property<Integer>      cacheForSeconds  = new IntProperty("cacheForSeconds");
 
 	public static final View publicView = new View(File.class, PropertyView.Public, type, name, contentType, size, url, owner);
@@ -103,30 +104,47 @@ public class File extends AbstractFile implements Linkable {
 	@Override
 	public void afterCreation(SecurityContext securityContext) {
 
-		try {
+		updateChecksumAndSize(securityContext);
 
-			Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
+	}
 
-				@Override
-				public Object execute() throws FrameworkException {
+	@Override
+	public void afterModification(SecurityContext securityContext) {
 
-					setProperty(checksum,	FileHelper.getChecksum(File.this));
-					setProperty(size,	FileHelper.getSize(File.this));
-					
-					return null;
-				}
-			});
+		updateChecksumAndSize(securityContext);
 
-		} catch (FrameworkException ex) {
+	}
 
-			logger.log(Level.SEVERE, "Could not set checksum and size", ex);
+	/**
+	 * Recalculates checksum and size if the content on disk was changed
+	 * since the checksum was computed, i.e. if its size or modification
+	 * time don't match the stored values. Code that writes file content
+	 * stores the checksum it computed while writing together with the
+	 * modification time, so metadata changes don't re-read the file.
+	 *
+	 * @param securityContext
+	 */
+	private void updateChecksumAndSize(final SecurityContext securityContext) {
 
+		final long sizeOnDisk = FileHelper.getSize(this);
+
+		// no content yet
+		if (sizeOnDisk < 0) {
+
+			return;
 		}
 
-	}
+		// read before hashing, so that a concurrent write is detected next time
+		final long modifiedOnDisk = FileHelper.getLastModified(this);
 
-	@Override
-	public void afterModification(SecurityContext securityContext) {
+		Long storedChecksum = getProperty(checksum);
+		Long storedSize     = getProperty(size);
+		Long storedModified = getProperty(contentModified);
+
+		if (storedChecksum != null && storedSize != null && storedModified != null && storedSize.longValue() == sizeOnDisk && storedModified.longValue() == modifiedOnDisk) {
+
+			return;
+		}
 
 		try {
 
@@ -135,8 +153,9 @@ public class File extends AbstractFile implements Linkable {
 				@Override
 				public Object execute() throws FrameworkException {
 
-					setProperty(checksum,	FileHelper.getChecksum(File.this));
-					setProperty(size,	FileHelper.getSize(File.this));
+					setProperty(checksum,		FileHelper.getChecksum(File.this));
+					setProperty(size,		sizeOnDisk);
+					setProperty(contentModified,	modifiedOnDisk);
 					
 					return null;
 				}
@@ -47,10 +47,13 @@ import org.structr.common.ThumbnailParameters;
 import org.structr.core.EntityContext;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.SecurityRelationship;
 import org.structr.core.entity.Relation;
 import org.structr.core.graph.NodeService.NodeIndex;
 import org.structr.core.property.BooleanProperty;
 import org.structr.core.property.PropertyKey;
+import org.structr.web.agent.ThumbnailAgent;
 import org.structr.web.property.ThumbnailProperty;
 
 //~--- classes ----------------------------------------------------------------
@@ -147,6 +150,73 @@ public class Image extends File {
 
 	}
 
+	/**
+	 * Get an existing (down-)scaled image of this image
+	 *
+	 * Returns null if no scaled image of the requested size exists or the image is newer than the scaled image.
+	 * Unlike getScaledImage, this method never creates a scaled image and never reads the image file.
+	 *
+	 * @maxWidth
+	 * @maxHeight
+	 *
+	 * @return
+	 */
+	public Image getExistingScaledImage(final int maxWidth, final int maxHeight) {
+
+		Integer origWidth    = getWidth();
+		Integer origHeight   = getHeight();
+		Long currentChecksum = getProperty(Image.checksum);
+
+		if (currentChecksum == null || currentChecksum == 0) {
+
+			return null;
+		}
+
+		for (final AbstractRelationship r : getThumbnailRelationships()) {
+
+			Integer w = (Integer) r.getProperty(Image.width);
+			Integer h = (Integer) r.getProperty(Image.height);
+
+			if ((w != null) && (h != null)) {
+
+				if (((w == maxWidth) && (h <= maxHeight)) || ((w <= maxWidth) && (h == maxHeight))
+				|| ((origWidth != null) && (origHeight != null) && (origWidth <= w) && (origHeight <= h)))    // orginal image is equal or smaller than requested size
+				{
+
+					if (currentChecksum.equals(r.getProperty(Image.checksum))) {
+
+						return (Image) r.getEndNode();
+					}
+				}
+			}
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Queue the creation of all thumbnails of this image, see {@link ThumbnailAgent}
+	 *
+	 * Called when new content was uploaded.
+	 */
+	public void requestThumbnails() {
+
+		if (isThumbnail()) {
+
+			return;
+		}
+
+		for (PropertyKey key : EntityContext.getPropertySet(getClass(), PropertyView.All)) {
+
+			if (key instanceof ThumbnailProperty) {
+
+				ThumbnailAgent.createThumbnail(this, ((ThumbnailProperty) key).getParameters());
+			}
+		}
+
+	}
+
 	/**
 	 * Get (down-)scaled image of this image
 	 *
@@ -305,6 +375,8 @@ public class Image extends File {
 							thumbnail.setProperty(Image.hidden,				originalImage.getProperty(Image.hidden));
 							thumbnail.setProperty(Image.visibleToAuthenticatedUsers,		originalImage.getProperty(Image.visibleToAuthenticatedUsers));
 							thumbnail.setProperty(Image.visibleToPublicUsers,		originalImage.getProperty(Image.visibleToPublicUsers));
+
+							copyOwnerAndGrants(originalImage, thumbnail, createRel);
 							
 							thumbnailRelationship.setProperty(Image.width, tnWidth);
 							thumbnailRelationship.setProperty(Image.height, tnHeight);
@@ -343,6 +415,31 @@ public class Image extends File {
 
 	}
 
+	/**
+	 * Gives the thumbnail the owner and the grants of the original image.
+	 * Thumbnails are usually created in the background by the superuser,
+	 * so they would otherwise have no owner and no grants at all.
+	 */
+	private void copyOwnerAndGrants(final Image originalImage, final Image thumbnail, final CreateRelationshipCommand createRel) throws FrameworkException {
+
+		Principal imageOwner = originalImage.getOwnerNode();
+
+		if (imageOwner instanceof AbstractNode && !imageOwner.equals(thumbnail.getOwnerNode())) {
+
+			thumbnail.setOwner((AbstractNode) imageOwner);
+		}
+
+		for (AbstractRelationship rel : originalImage.getIncomingRelationships(org.structr.common.RelType.SECURITY)) {
+
+			if (rel instanceof SecurityRelationship) {
+
+				SecurityRelationship grant = (SecurityRelationship) createRel.execute(rel.getStartNode(), thumbnail, org.structr.common.RelType.SECURITY);
+
+				grant.setAllowed(((SecurityRelationship) rel).getPermissions());
+			}
+		}
+	}
+
 	public boolean isNotThumbnail() {
 
 		return !isThumbnail();
@@ -75,6 +75,8 @@ public class SearchResultView extends View {
 		double startSearchResultView = System.nanoTime();
 		String searchString          = (String) request.getParameter("search");
 
+		renderContext.setDependsOnAnyChange();
+
 		if (StringUtils.isNotBlank(searchString)) {
 
 			for (Page resultPage : getResultPages(securityContext, page)) {
@@ -149,6 +149,9 @@ public class View extends DOMElement {
 	public void render(SecurityContext securityContext, RenderContext renderContext, int depth) throws FrameworkException {
 
 		double startView = System.nanoTime();
+
+		// query results can not be attributed to single types
+		renderContext.setDependsOnAnyChange();
 		
 		HttpServletRequest request = renderContext.getRequest();
 
@@ -187,6 +187,8 @@ public class Content extends DOMNode implements Text {
 		boolean inBody       = renderContext.inBody();
 		StringBuilder buffer = renderContext.getBuffer();
 
+		renderContext.addDependency(this);
+
 		// fetch content with variable replacement
 		String _content = getPropertyWithVariableReplacement(securityContext, renderContext, Content.content);
 
@@ -240,6 +242,8 @@ public class Content extends DOMNode implements Text {
 			//buffer.append(indent(depth, true)).append(_content);
 			buffer.append(_content);
 		}
+
+		renderContext.flushIfFull();
 		
 //		if (edit && inBody && !("text/javascript".equals(getProperty(contentType)))) {
 //
@@ -72,6 +72,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.entity.RelationshipMapping;
 import org.structr.core.graph.CypherQueryCommand;
+import org.structr.core.graph.CypherResult;
 import org.structr.core.graph.GetNodeByIdCommand;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.StructrTransaction;
@@ -94,6 +95,7 @@ import static org.structr.rest.servlet.JsonRestServlet.REQUEST_PARAMETER_SORT_KE
 import static org.structr.rest.servlet.JsonRestServlet.REQUEST_PARAMETER_SORT_ORDER;
 import org.structr.rest.servlet.ResourceHelper;
 import org.structr.web.entity.html.Body;
+import org.structr.web.entity.html.Head;
 import org.structr.web.common.GraphDataSource;
 import org.structr.web.common.UiResourceProvider;
 import org.w3c.dom.NamedNodeMap;
@@ -262,6 +264,9 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 	@Override
 	public void render(SecurityContext securityContext, RenderContext renderContext, int depth) throws FrameworkException {
 
+		// the output must be renewed when this element becomes visible
+		renderContext.addDependency(this);
+
 		if (isDeleted() || isHidden()) {
 			return;
 		}
@@ -300,18 +305,25 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 			}
 
 			// FIXME: this will not include arbitrary data-* attributes
-			for (PropertyKey attribute : EntityContext.getPropertySet(getClass(), PropertyView.Html)) {
+			for (PropertyKey attribute : EntityContext.getPropertyArray(getClass(), PropertyView.Html)) {
 
 				try {
 
-					String value = getPropertyWithVariableReplacement(securityContext, renderContext, attribute);
+					String key = attribute.jsonName().substring(PropertyView.Html.length());
+					int start  = buffer.length();
+
+					buffer.append(" ").append(key).append("=\"");
 
-					if ((value != null) && StringUtils.isNotBlank(value)) {
+					int valueStart = buffer.length();
 
-						String key = attribute.jsonName().substring(PropertyView.Html.length());
+					// render the value directly into the buffer and roll back if it is empty
+					if (appendPropertyWithVariableReplacement(securityContext, renderContext, attribute, buffer) && !isBlank(buffer, valueStart)) {
 
-						buffer.append(" ").append(key).append("=\"").append(value).append("\"");
+						buffer.append("\"");
+
+					} else {
 
+						buffer.setLength(start);
 					}
 
 				} catch (Throwable t) {
@@ -324,6 +336,8 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 			
 			buffer.append(">");
 
+			renderContext.flushIfFull();
+
 			// in body?
 			if (Body.class.getSimpleName().toLowerCase().equals(this.getTagName())) {
 				renderContext.setInBody(true);
@@ -346,6 +360,10 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 			for (AbstractRelationship rel : rels) {
 
 				DOMNode subNode = (DOMNode) rel.getEndNode();
+
+				// invisible children are dependencies as well, they may become visible
+				renderContext.addDependency(rel);
+				renderContext.addDependency(subNode);
 				
 				if (!securityContext.isVisible(subNode)) {
 					continue;
@@ -456,6 +474,16 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 
 				buffer.append("</").append(tag).append(">");
 			}
+
+			// send the head section early so that the client can start loading resources
+			if (Head.class.getSimpleName().toLowerCase().equals(tag)) {
+
+				renderContext.flush(true);
+
+			} else {
+
+				renderContext.flushIfFull();
+			}
 			
 		}
 	
@@ -588,6 +616,18 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 	}
 	
 	// ----- private methods -----
+	private boolean isBlank(final StringBuilder buffer, final int start) {
+
+		for (int i = start; i < buffer.length(); i++) {
+
+			if (!Character.isWhitespace(buffer.charAt(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	private List<GraphObject> checkListSources(SecurityContext securityContext, RenderContext renderContext) {
 		
 		// try registered data sources first
@@ -1125,6 +1165,11 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 	}
 	
 	
+	/**
+	 * Uses the result of the Cypher query of an element. If the page was
+	 * requested with a pageSize parameter, only the rows of the requested
+	 * page are read and converted.
+	 */
 	private static class CypherGraphDataSource implements GraphDataSource<List<GraphObject>> {
 
 		@Override
@@ -1133,7 +1178,18 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 			String cypherQuery = ((DOMElement) referenceNode).getPropertyWithVariableReplacement(securityContext, renderContext, DOMElement.cypherQuery);
 			if (cypherQuery != null && !cypherQuery.isEmpty()) {
 				
-				return Services.command(securityContext, CypherQueryCommand.class).execute(cypherQuery);
+				CypherResult result        = Services.command(securityContext, CypherQueryCommand.class).iterate(cypherQuery, null, false, false);
+				HttpServletRequest request = renderContext.getRequest();
+
+				if (request != null && request.getParameter(REQUEST_PARAMETER_PAGE_SIZE) != null) {
+
+					int pageSize = parseInt(request.getParameter(REQUEST_PARAMETER_PAGE_SIZE), NodeFactory.DEFAULT_PAGE_SIZE);
+					int page     = parseInt(request.getParameter(REQUEST_PARAMETER_PAGE_NUMBER), NodeFactory.DEFAULT_PAGE);
+
+					return result.getPage(pageSize, page);
+				}
+
+				return result.toList();
 			}
 			
 			return null;
@@ -32,7 +32,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections.IteratorUtils;
@@ -67,7 +66,6 @@ import org.structr.core.property.CollectionIdProperty;
 import org.structr.core.property.EntityIdProperty;
 import org.structr.core.property.PropertyMap;
 import org.structr.web.common.RenderContext;
-import org.structr.web.common.ThreadLocalMatcher;
 import org.structr.web.entity.Renderable;
 import org.structr.web.entity.User;
 import org.w3c.dom.DOMException;
@@ -87,8 +85,6 @@ import org.w3c.dom.UserDataHandler;
 public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable, DOMAdoptable, DOMImportable {
 
 	private static final Logger logger                                      = Logger.getLogger(DOMNode.class.getName());
-	private static final ThreadLocalMatcher threadLocalTemplateMatcher      = new ThreadLocalMatcher("\\$\\{[^}]*\\}");
-	private static final ThreadLocalMatcher threadLocalFunctionMatcher      = new ThreadLocalMatcher("([a-zA-Z0-9_]+)\\((.+)\\)");
 	
 	// ----- error messages for DOMExceptions -----
 	protected static final String NO_MODIFICATION_ALLOWED_MESSAGE           = "Permission denied.";
@@ -492,6 +488,21 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 		
 	}
 	
+	@Override
+	public void afterModification(SecurityContext securityContext) {
+
+		// compiled templates of this node may be outdated
+		Template.invalidate(getId());
+
+	}
+
+	@Override
+	public void afterDeletion(SecurityContext securityContext) {
+
+		Template.invalidate(getId());
+
+	}
+
 	@Override
 	public boolean onModification(SecurityContext securityContext, ErrorBuffer errorBuffer) throws FrameworkException {
 
@@ -644,9 +655,15 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 	protected java.lang.Object getReferencedProperty(SecurityContext securityContext, RenderContext renderContext, String refKey)
 		throws FrameworkException {
 
+		return getReferencedProperty(securityContext, renderContext, refKey.split("[\\.]+"));
+
+	}
+
+	protected java.lang.Object getReferencedProperty(SecurityContext securityContext, RenderContext renderContext, String[] parts)
+		throws FrameworkException {
+
 		final String DEFAULT_VALUE_SEP   = "!";
 		String pageId                    = renderContext.getPageId();
-		String[] parts                   = refKey.split("[\\.]+");
 		String referenceKey              = parts[parts.length - 1];
 		String defaultValue              = null;
 		
@@ -746,6 +763,8 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 			// special keyword "now":
 			if ("now".equals(part.toLowerCase())) {
 
+				renderContext.setCacheable(false);
+
 				// Return current date converted in format
 				// Note: We use "createdDate" here only as an arbitrary property key to get the database converter
 				return AbstractNode.createdDate.inputConverter(securityContext).revert(new Date());
@@ -821,6 +840,8 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 				// special keyword "search_result_size"
 				if ("search_result_size".equals(part.toLowerCase())) {
 
+					renderContext.setDependsOnAnyChange();
+
 					Set<Page> pages = getResultPages(securityContext, (Page) _page);
 
 					if (!pages.isEmpty()) {
@@ -858,6 +879,8 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 		}
 
 		if (_data != null) {
+
+			renderContext.addDependency(_data);
 			
 			PropertyKey referenceKeyProperty = EntityContext.getPropertyKeyForJSONName(_data.getClass(), referenceKey);
 			return getEditModeValue(securityContext, renderContext, _data, referenceKeyProperty, defaultValue);
@@ -878,7 +901,40 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 	
 	protected String getPropertyWithVariableReplacement(SecurityContext securityContext, RenderContext renderContext, PropertyKey<String> key) throws FrameworkException {
 
-		return replaceVariables(securityContext, renderContext, super.getProperty(key));
+		String rawValue = super.getProperty(key);
+
+		if (rawValue != null) {
+
+			return Template.get(this, key, rawValue).render(this, securityContext, renderContext);
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Evaluates the given property with variable replacement directly into
+	 * the given buffer.
+	 *
+	 * @param securityContext
+	 * @param renderContext
+	 * @param key
+	 * @param buffer
+	 * @return false if the property has no value
+	 * @throws FrameworkException
+	 */
+	protected boolean appendPropertyWithVariableReplacement(SecurityContext securityContext, RenderContext renderContext, PropertyKey<String> key, StringBuilder buffer) throws FrameworkException {
+
+		String rawValue = super.getProperty(key);
+
+		if (rawValue != null) {
+
+			Template.get(this, key, rawValue).render(this, securityContext, renderContext, buffer);
+
+			return true;
+		}
+
+		return false;
 
 	}
 
@@ -900,115 +956,27 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 			securityContext.setRequest(request);
 		}
 
-		return replaceVariables(securityContext, renderContext, super.getProperty(key));
+		return getPropertyWithVariableReplacement(securityContext, renderContext, key);
 
 	}
 
 	protected String replaceVariables(SecurityContext securityContext, RenderContext renderContext, String rawValue)
 		throws FrameworkException {
 
-		String value = null;
-
-		if ((rawValue != null) && (rawValue instanceof String)) {
-
-			value = (String) rawValue;
-
-			// re-use matcher from previous calls
-			Matcher matcher = threadLocalTemplateMatcher.get();
-
-			matcher.reset(value);
-
-			while (matcher.find()) {
-
-				String group  = matcher.group();
-				String source = group.substring(2, group.length() - 1);
-
-				// fetch referenced property
-				String partValue = extractFunctions(securityContext, renderContext, source);
-
-				if (partValue != null) {
-
-					value = value.replace(group, partValue);
-				} else {
-					value = value.replace(group, "");
-				}
-
-			}
+		if (rawValue != null) {
 
+			return Template.compile(this, rawValue).render(this, securityContext, renderContext);
 		}
 
-//		if (value != null && renderContext.getEdit() && renderContext.inBody()) {
-//			
-//			GraphObject data = renderContext.getDataObject();
-//			if (data != null) {
-//				return "<span data-structr-raw-value=\"" + rawValue + "\" data-structr-data-id=\"" + data.getUuid() + "\">" + value + "</span>";
-//			}
-//			
-//		}
-		
-		return value;
+		return null;
 
 	}
 
 	protected String extractFunctions(SecurityContext securityContext, RenderContext renderContext, String source)
 		throws FrameworkException {
 
-		String pageId     = renderContext.getPageId();
-		
-		// re-use matcher from previous calls
-		Matcher functionMatcher = threadLocalFunctionMatcher.get();
-
-		functionMatcher.reset(source);
-
-		if (functionMatcher.matches()) {
-
-			String functionGroup              = functionMatcher.group(1);
-			String parameter                  = functionMatcher.group(2);
-			String functionName               = functionGroup.substring(0, functionGroup.length());
-			Function<String, String> function = functions.get(functionName);
-
-			if (function != null) {
-
-				if (parameter.contains(",")) {
+		return Template.compileExpression(this, source).evaluate(this, securityContext, renderContext);
 
-					String[] parameters = split(parameter);
-					String[] results    = new String[parameters.length];
-
-					// collect results from comma-separated function parameter
-					for (int i = 0; i < parameters.length; i++) {
-
-						results[i] = extractFunctions(securityContext, renderContext, StringUtils.strip(parameters[i]));
-					}
-
-					return function.apply(results);
-
-				} else {
-
-					String result = extractFunctions(securityContext, renderContext, StringUtils.strip(parameter));
-
-					return function.apply(new String[] { result });
-
-				}
-			}
-
-		}
-
-		// if any of the following conditions match, the literal source value is returned
-		if (StringUtils.isNotBlank(source) && StringUtils.isNumeric(source)) {
-
-			// return numeric value
-			return source;
-		} else if (source.startsWith("\"") && source.endsWith("\"")) {
-
-			return source.substring(1, source.length() - 1);
-		} else if (source.startsWith("'") && source.endsWith("'")) {
-
-			return source.substring(1, source.length() - 1);
-		} else {
-
-			// return property key
-			return convertValueForHtml(getReferencedProperty(securityContext, renderContext, source));
-		}
 	}
 
 	/**
@@ -72,6 +72,8 @@ public class DocumentFragment extends DOMNode implements org.w3c.dom.DocumentFra
 	// ----- interface Renderable -----
 	@Override
 	public void render(SecurityContext securityContext, RenderContext renderContext, int depth) throws FrameworkException {
+
+		renderContext.addDependency(this);
 		
 		NodeList _children = getChildNodes();
 		int len            = _children.getLength();
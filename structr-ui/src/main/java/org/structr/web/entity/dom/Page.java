@@ -641,6 +641,7 @@ public class Page extends DOMNode implements Linkable, Document, DOMImplementati
 	public void render(SecurityContext securityContext, RenderContext renderContext, int depth) throws FrameworkException {
 
 		renderContext.setPage(this);
+		renderContext.addDependency(this);
 		
 		renderContext.getBuffer().append("<!DOCTYPE html>");
 		
@@ -648,6 +649,9 @@ public class Page extends DOMNode implements Linkable, Document, DOMImplementati
 		DOMNode subNode = (DOMNode) this.getFirstChild().getNextSibling();
 		
 		while (subNode != null) {
+
+			// invisible children are dependencies as well, they may become visible
+			renderContext.addDependency(subNode);
 			
 			if (subNode.isNotDeleted() && securityContext.isVisible(subNode)) {
 
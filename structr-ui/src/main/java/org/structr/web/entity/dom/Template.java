@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.entity.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.property.PropertyKey;
+import org.structr.web.common.Function;
+import org.structr.web.common.RenderContext;
+
+/**
+ * A template string with <code>${...}</code> expressions, compiled into a
+ * list of literal text and expression trees (function calls, constants and
+ * property paths), so that rendering does not need to parse the template
+ * again.
+ *
+ * Compiled templates are cached per node and property, the cache entries
+ * of a node are removed when it is modified or deleted.
+ *
+ * @author Christian Morgner
+ */
+public class Template {
+
+	private static final Pattern templatePattern                     = Pattern.compile("\\$\\{[^}]*\\}");
+	private static final Pattern functionPattern                     = Pattern.compile("([a-zA-Z0-9_]+)\\((.+)\\)");
+	private static final int MAX_CACHED_NODES                        = 10000;
+	private static final Map<Long, Map<String, Template>> templates  = new ConcurrentHashMap<Long, Map<String, Template>>(1000, 0.9f, 8);
+
+	private List<Object> parts = new ArrayList<Object>();
+	private boolean constant   = true;
+	private String source      = null;
+
+	private Template(final String source) {
+		this.source = source;
+	}
+
+	/**
+	 * Returns the compiled template for the given property value of the
+	 * given node, compiling it only if the value has changed.
+	 *
+	 * @param node
+	 * @param key
+	 * @param source
+	 * @return the compiled template
+	 */
+	public static Template get(final DOMNode node, final PropertyKey key, final String source) {
+
+		Map<String, Template> nodeTemplates = templates.get(node.getId());
+		if (nodeTemplates == null) {
+
+			if (templates.size() > MAX_CACHED_NODES) {
+				templates.clear();
+			}
+
+			nodeTemplates = new ConcurrentHashMap<String, Template>(4, 0.9f, 2);
+			templates.put(node.getId(), nodeTemplates);
+		}
+
+		Template template = nodeTemplates.get(key.dbName());
+		if (template == null || !template.source.equals(source)) {
+
+			template = compile(node, source);
+			nodeTemplates.put(key.dbName(), template);
+		}
+
+		return template;
+	}
+
+	public static void invalidate(final long nodeId) {
+		templates.remove(nodeId);
+	}
+
+	public static Template compile(final DOMNode node, final String source) {
+
+		Template template = new Template(source);
+		Matcher matcher   = templatePattern.matcher(source);
+		int position      = 0;
+
+		while (matcher.find()) {
+
+			if (matcher.start() > position) {
+				template.parts.add(source.substring(position, matcher.start()));
+			}
+
+			String group = matcher.group();
+
+			template.parts.add(compileExpression(node, group.substring(2, group.length() - 1)));
+			template.constant = false;
+
+			position = matcher.end();
+		}
+
+		if (position < source.length()) {
+			template.parts.add(source.substring(position));
+		}
+
+		return template;
+	}
+
+	/**
+	 * Compiles a single expression, the contents of <code>${...}</code>.
+	 *
+	 * @param node
+	 * @param source
+	 * @return the expression
+	 */
+	public static Expression compileExpression(final DOMNode node, final String source) {
+
+		Matcher functionMatcher = functionPattern.matcher(source);
+
+		if (functionMatcher.matches()) {
+
+			String functionName               = functionMatcher.group(1);
+			String parameter                  = functionMatcher.group(2);
+			Function<String, String> function = DOMNode.functions.get(functionName);
+
+			if (function != null) {
+
+				if (parameter.contains(",")) {
+
+					String[] parameters     = node.split(parameter);
+					Expression[] arguments  = new Expression[parameters.length];
+
+					for (int i = 0; i < parameters.length; i++) {
+
+						arguments[i] = compileExpression(node, StringUtils.strip(parameters[i]));
+					}
+
+					return new FunctionCall(function, arguments);
+
+				} else {
+
+					return new FunctionCall(function, new Expression[] { compileExpression(node, StringUtils.strip(parameter)) });
+				}
+			}
+		}
+
+		// if any of the following conditions match, the literal source value is returned
+		if (StringUtils.isNotBlank(source) && StringUtils.isNumeric(source)) {
+
+			return new Constant(source);
+
+		} else if (source.startsWith("\"") && source.endsWith("\"")) {
+
+			return new Constant(source.substring(1, source.length() - 1));
+
+		} else if (source.startsWith("'") && source.endsWith("'")) {
+
+			return new Constant(source.substring(1, source.length() - 1));
+
+		} else {
+
+			return new Reference(source);
+		}
+	}
+
+	/**
+	 * Evaluates this template in the context of the given node and appends
+	 * the result to the given buffer.
+	 *
+	 * @param node
+	 * @param securityContext
+	 * @param renderContext
+	 * @param buffer
+	 * @throws FrameworkException
+	 */
+	public void render(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext, final StringBuilder buffer) throws FrameworkException {
+
+		for (Object part : parts) {
+
+			if (part instanceof Expression) {
+
+				String value = ((Expression) part).evaluate(node, securityContext, renderContext);
+				if (value != null) {
+
+					buffer.append(value);
+				}
+
+			} else {
+
+				buffer.append((String) part);
+			}
+		}
+	}
+
+	public String render(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
+
+		if (constant) {
+			return source;
+		}
+
+		StringBuilder buffer = new StringBuilder(source.length() + 32);
+
+		render(node, securityContext, renderContext, buffer);
+
+		return buffer.toString();
+	}
+
+	// ----- nested classes -----
+	public static abstract class Expression {
+
+		public abstract String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException;
+	}
+
+	private static class Constant extends Expression {
+
+		private String value = null;
+
+		public Constant(final String value) {
+			this.value = value;
+		}
+
+		@Override
+		public String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) {
+			return value;
+		}
+	}
+
+	private static class FunctionCall extends Expression {
+
+		private Function<String, String> function = null;
+		private Expression[] arguments            = null;
+
+		public FunctionCall(final Function<String, String> function, final Expression[] arguments) {
+
+			this.function  = function;
+			this.arguments = arguments;
+		}
+
+		@Override
+		public String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
+
+			String[] results = new String[arguments.length];
+
+			for (int i = 0; i < arguments.length; i++) {
+
+				results[i] = arguments[i].evaluate(node, securityContext, renderContext);
+			}
+
+			return function.apply(results);
+		}
+	}
+
+	private static class Reference extends Expression {
+
+		private String[] parts = null;
+
+		public Reference(final String path) {
+			this.parts = path.split("[\\.]+");
+		}
+
+		@Override
+		public String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
+			return node.convertValueForHtml(node.getReferencedProperty(securityContext, renderContext, parts));
+		}
+	}
+}
@@ -69,6 +69,10 @@ public class ThumbnailProperty extends AbstractReadOnlyProperty<Image> {
 		return null;
 	}
 	
+	public ThumbnailParameters getParameters() {
+		return tnParams;
+	}
+
 	@Override
 	public Class relatedType() {
 		return Image.class;
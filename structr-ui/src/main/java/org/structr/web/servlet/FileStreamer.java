@@ -0,0 +1,416 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jetty.io.nio.DirectNIOBuffer;
+import org.eclipse.jetty.server.AbstractHttpConnection;
+
+import org.structr.common.Path;
+import org.structr.core.Services;
+import org.structr.web.entity.File;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Streams the content of a {@link File} node to the client. Supports single
+ * and multiple byte ranges and uses the stored checksum of a file as its
+ * ETag. When running in Jetty, full responses and single ranges are
+ * memory-mapped and handed to the connection with
+ * {@link AbstractHttpConnection.Output#sendContent}, the way Jetty's own
+ * DefaultServlet serves static files, so the content is written to the
+ * socket without being copied through the heap. In other containers, and
+ * for multipart responses, the ranges are copied with
+ * {@link FileChannel#transferTo} through the servlet output stream, so the
+ * file is never loaded into memory as a whole.
+ *
+ * @author Christian Morgner
+ */
+public class FileStreamer {
+
+	private static final String MULTIPART_TYPE         = "multipart/byteranges";
+	private static final String DEFAULT_TYPE           = "application/octet-stream";
+	private static final int MAX_RANGES                = 16;
+	private static final double MAX_MULTIPART_COVERAGE = 0.8;
+
+	/**
+	 * Returns the strong ETag of the given file, built from its checksum
+	 * and size, or null if the file has no checksum.
+	 *
+	 * @param file
+	 * @return the ETag or null
+	 */
+	public static String getETag(final File file) {
+
+		Long checksum = file.getProperty(File.checksum);
+		Long size     = file.getProperty(File.size);
+
+		if (checksum == null || checksum == 0) {
+
+			return null;
+		}
+
+		return "\"" + Long.toHexString(checksum) + "-" + Long.toHexString(size != null ? size : 0) + "\"";
+	}
+
+	/**
+	 * Returns true if the given If-None-Match header contains the given
+	 * ETag or the wildcard.
+	 *
+	 * @param ifNoneMatch
+	 * @param etag
+	 * @return
+	 */
+	public static boolean matchesETag(final String ifNoneMatch, final String etag) {
+
+		if (ifNoneMatch == null || etag == null) {
+
+			return false;
+		}
+
+		for (String candidate : ifNoneMatch.split(",")) {
+
+			candidate = candidate.trim();
+
+			if ("*".equals(candidate) || etag.equals(candidate) || etag.equals(StringUtils.removeStart(candidate, "W/"))) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Parses the given Range header. The ranges are sorted, and overlapping
+	 * or adjacent ranges are merged, so that no byte is sent twice. A header
+	 * with more than 16 ranges is ignored, as is a header
+	 * whose merged ranges are not contiguous but cover most of the content,
+	 * so that a single request can not make the server send a file many
+	 * times.
+	 *
+	 * @param rangeHeader
+	 * @param length the length of the content
+	 * @return the list of inclusive [start, end] ranges, an empty list if
+	 * no range can be satisfied, or null if the header is missing, invalid
+	 * or too expensive and should be ignored
+	 */
+	public static List<long[]> parseRanges(final String rangeHeader, final long length) {
+
+		if (rangeHeader == null || !rangeHeader.startsWith("bytes=")) {
+
+			return null;
+		}
+
+		List<long[]> ranges = new LinkedList<long[]>();
+		String[] parts      = rangeHeader.substring(6).split(",");
+
+		if (parts.length > MAX_RANGES) {
+
+			return null;
+		}
+
+		for (String part : parts) {
+
+			part = part.trim();
+
+			int dash = part.indexOf('-');
+			if (dash < 0) {
+
+				return null;
+			}
+
+			String first = part.substring(0, dash).trim();
+			String last  = part.substring(dash + 1).trim();
+			long start   = 0;
+			long end     = 0;
+
+			try {
+
+				if (first.isEmpty()) {
+
+					// suffix range, the last n bytes
+					if (last.isEmpty()) {
+
+						return null;
+					}
+
+					start = Math.max(0, length - Long.parseLong(last));
+					end   = length - 1;
+
+				} else {
+
+					start = Long.parseLong(first);
+					end   = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+
+					if (end < start && !last.isEmpty() && Long.parseLong(last) < start) {
+
+						return null;
+					}
+				}
+
+			} catch (NumberFormatException nfex) {
+
+				return null;
+			}
+
+			// unsatisfiable ranges are skipped
+			if (start < length && start <= end) {
+
+				ranges.add(new long[] { start, end });
+			}
+		}
+
+		List<long[]> merged = merge(ranges);
+
+		if (merged.size() > 1) {
+
+			long covered = 0;
+
+			for (long[] range : merged) {
+				covered += range[1] - range[0] + 1;
+			}
+
+			// a multipart response for most of the file, send it as a whole
+			if (covered > length * MAX_MULTIPART_COVERAGE) {
+
+				return null;
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Writes the content of the given file to the response, honoring the
+	 * Range and If-Range headers of the request.
+	 *
+	 * @param file
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	public static void stream(final File file, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+
+		String relativeFilePath = file.getRelativeFilePath();
+		if (relativeFilePath == null) {
+
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		java.io.File fileOnDisk = new java.io.File(Services.getFilePath(Path.Files, relativeFilePath));
+		if (!fileOnDisk.isFile()) {
+
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		String contentType = file.getContentType();
+		String etag        = getETag(file);
+		long length        = fileOnDisk.length();
+		List<long[]> ranges = null;
+
+		if (contentType == null) {
+
+			contentType = DEFAULT_TYPE;
+		}
+
+		response.setHeader("Accept-Ranges", "bytes");
+
+		// ranges are only served if the client's copy is still current
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null || (etag != null && etag.equals(ifRange.trim()))) {
+
+			ranges = parseRanges(request.getHeader("Range"), length);
+		}
+
+		if (ranges != null && ranges.isEmpty()) {
+
+			response.setHeader("Content-Range", "bytes */" + length);
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+
+			return;
+		}
+
+		FileInputStream in = new FileInputStream(fileOnDisk);
+
+		try {
+
+			FileChannel channel      = in.getChannel();
+			OutputStream out         = response.getOutputStream();
+			WritableByteChannel sink = Channels.newChannel(out);
+
+			if (ranges == null) {
+
+				response.setStatus(HttpServletResponse.SC_OK);
+				response.setContentType(contentType);
+				setContentLength(response, length);
+
+				send(channel, 0, length, out, sink);
+
+			} else if (ranges.size() == 1) {
+
+				long[] range = ranges.get(0);
+
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setContentType(contentType);
+				response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+				setContentLength(response, range[1] - range[0] + 1);
+
+				send(channel, range[0], range[1] - range[0] + 1, out, sink);
+
+			} else {
+
+				String boundary = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
+
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setContentType(MULTIPART_TYPE + "; boundary=" + boundary);
+
+				for (long[] range : ranges) {
+
+					StringBuilder header = new StringBuilder();
+
+					header.append("\r\n--").append(boundary).append("\r\n");
+					header.append("Content-Type: ").append(contentType).append("\r\n");
+					header.append("Content-Range: bytes ").append(range[0]).append("-").append(range[1]).append("/").append(length).append("\r\n\r\n");
+
+					out.write(header.toString().getBytes("US-ASCII"));
+
+					transfer(channel, range[0], range[1] - range[0] + 1, sink);
+				}
+
+				out.write(("\r\n--" + boundary + "--\r\n").getBytes("US-ASCII"));
+			}
+
+			out.flush();
+
+		} finally {
+
+			in.close();
+		}
+	}
+
+	// ----- private methods -----
+	/**
+	 * Sorts the given ranges by their start and merges overlapping and
+	 * adjacent ranges.
+	 */
+	private static List<long[]> merge(final List<long[]> ranges) {
+
+		List<long[]> merged = new LinkedList<long[]>();
+
+		Collections.sort(ranges, new Comparator<long[]>() {
+
+			@Override
+			public int compare(final long[] o1, final long[] o2) {
+				return o1[0] < o2[0] ? -1 : o1[0] > o2[0] ? 1 : 0;
+			}
+		});
+
+		for (long[] range : ranges) {
+
+			long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+
+			if (last != null && range[0] <= last[1] + 1) {
+
+				last[1] = Math.max(last[1], range[1]);
+
+			} else {
+
+				merged.add(range);
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Sends the given range of the channel as the complete response body.
+	 * If the output stream is Jetty's connection output, the range is
+	 * memory-mapped and passed to the connection, which writes it to the
+	 * socket directly. Otherwise the range is copied to the sink.
+	 */
+	private static void send(final FileChannel channel, final long start, final long count, final OutputStream out, final WritableByteChannel sink) throws IOException {
+
+		if (out instanceof AbstractHttpConnection.Output && count > 0 && count <= Integer.MAX_VALUE) {
+
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, count);
+
+			((AbstractHttpConnection.Output) out).sendContent(new DirectNIOBuffer(mapped, true));
+
+		} else {
+
+			transfer(channel, start, count, sink);
+		}
+	}
+
+	/**
+	 * Copies the given range of the channel to the sink. The sink wraps the
+	 * servlet output stream, so transferTo falls back to a buffered copy.
+	 */
+	private static void transfer(final FileChannel channel, final long start, final long count, final WritableByteChannel sink) throws IOException {
+
+		long position = start;
+		long end      = start + count;
+
+		while (position < end) {
+
+			long transferred = channel.transferTo(position, end - position, sink);
+			if (transferred <= 0) {
+
+				break;
+			}
+
+			position += transferred;
+		}
+	}
+
+	private static void setContentLength(final HttpServletResponse response, final long length) {
+
+		if (length <= Integer.MAX_VALUE) {
+
+			response.setContentLength((int) length);
+
+		} else {
+
+			response.setHeader("Content-Length", Long.toString(length));
+		}
+	}
+}
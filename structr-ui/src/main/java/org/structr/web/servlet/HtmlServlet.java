@@ -21,12 +21,10 @@
 package org.structr.web.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 
 
-import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.lang.StringUtils;
 
 
@@ -62,9 +60,11 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.time.DateUtils;
 import org.structr.core.entity.Principal;
 import org.structr.core.graph.GetNodeByIdCommand;
+import org.structr.core.graph.NodeService;
 import org.structr.core.graph.StructrTransaction;
 import org.structr.core.graph.TransactionCommand;
 import org.structr.rest.ResourceProvider;
+import org.structr.web.common.RenderCache;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.ThreadLocalMatcher;
 import org.structr.web.entity.User;
@@ -93,6 +93,7 @@ public class HtmlServlet extends HttpServlet {
 	public static final String TARGET_PAGE_KEY = "target";
 	
 	private ResourceProvider resourceProvider                   = null;
+	private RenderCache.Invalidator renderCacheInvalidator      = new RenderCache.Invalidator();
 
 	private static final ThreadLocalMatcher threadLocalUUIDMatcher              = new ThreadLocalMatcher("[a-zA-Z0-9]{32}");
 	
@@ -118,10 +119,21 @@ public class HtmlServlet extends HttpServlet {
 	public void init() {
 		
 		 searchNodesAsSuperuser = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class);
+
+		 if (RenderCache.isEnabled()) {
+			 Services.getService(NodeService.class).getGraphDb().registerTransactionEventHandler(renderCacheInvalidator);
+		 }
 	}
 
 	@Override
-	public void destroy() {}
+	public void destroy() {
+
+		if (RenderCache.isEnabled()) {
+
+			Services.getService(NodeService.class).getGraphDb().unregisterTransactionEventHandler(renderCacheInvalidator);
+			RenderCache.clear();
+		}
+	}
 
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) {
@@ -305,28 +317,54 @@ public class HtmlServlet extends HttpServlet {
 					out.close();
 
 				} else {
-					
-					rootElement.render(securityContext, renderContext, 0);
 
-					String content = renderContext.getBuffer().toString();
-					double end     = System.nanoTime();
-					logger.log(Level.FINE, "Content for path {0} in {1} seconds", new Object[] { path, decimalFormat.format((end - setup) / 1000000000.0)});
+					// pages are cached for anonymous visitors only
+					boolean useCache              = !edit && !dontCache && RenderCache.isEnabled();
+					String cacheKey               = useCache ? getCacheKey(rootElement, request) : null;
+					RenderCache.Entry cachedEntry = useCache ? RenderCache.get(cacheKey) : null;
+
+					if (cachedEntry != null) {
+
+						logger.log(Level.FINE, "Cached content for path {0}", path);
+
+						response.setContentType(cachedEntry.getContentType());
+						HttpAuthenticator.writeContent(cachedEntry.getContent(), response);
+
+						return;
+					}
 
-					String contentType = rootElement.getProperty(Page.contentType);
+					long cacheGeneration = RenderCache.getGeneration();
+					String contentType   = rootElement.getProperty(Page.contentType);
 
 					if (contentType != null && contentType.equals("text/html")) {
 
 						contentType = contentType.concat(";charset=UTF-8");
-						response.setContentType(contentType);
 
 					} else {
 
 						// Default
-						response.setContentType("text/html;charset=UTF-8");
+						contentType = "text/html;charset=UTF-8";
 					}
 
-					// 3: output content
-					HttpAuthenticator.writeContent(content, response);
+					// headers must be set before the first part of the page is written
+					response.setStatus(HttpServletResponse.SC_OK);
+					response.setContentType(contentType);
+
+					// stream the page to the client, keep a copy only if it is going to be cached
+					renderContext.streamTo(out, useCache);
+
+					rootElement.render(securityContext, renderContext, 0);
+
+					renderContext.flush(true);
+					out.close();
+
+					double end     = System.nanoTime();
+					logger.log(Level.FINE, "Content for path {0} in {1} seconds", new Object[] { path, decimalFormat.format((end - setup) / 1000000000.0)});
+
+					if (useCache) {
+
+						RenderCache.put(cacheKey, renderContext, contentType, cacheGeneration);
+					}
 
 				}
 
@@ -345,6 +383,29 @@ public class HtmlServlet extends HttpServlet {
 	}
 	
 
+	/**
+	 * Returns the render cache key for the given page and request. The
+	 * rendered output depends on the request path (details objects) and
+	 * the request parameters.
+	 *
+	 * @param rootElement
+	 * @param request
+	 * @return
+	 */
+	private String getCacheKey(final DOMNode rootElement, final HttpServletRequest request) {
+
+		StringBuilder key = new StringBuilder();
+		String query      = request.getQueryString();
+
+		key.append(rootElement.getUuid()).append(":").append(request.getRequestURI());
+
+		if (query != null) {
+			key.append("?").append(query);
+		}
+
+		return key.toString();
+	}
+
 	/**
 	 * Find first node whose name matches the given path
 	 * 
@@ -743,53 +804,43 @@ public class HtmlServlet extends HttpServlet {
 			
 		}
 
-		OutputStream out = response.getOutputStream();
+		if (!edit) {
 
-		if (!edit && notModifiedSince(request, response, file)) {
-
-			out.flush();
-			out.close();
-
-		} else {
+			String etag        = FileStreamer.getETag(file);
+			String ifNoneMatch = request.getHeader("If-None-Match");
+			boolean notModified = notModifiedSince(request, response, file);
 
-			// 2b: stream file to response
-			InputStream in     = file.getInputStream();
-			String contentType = file.getContentType();
+			if (etag != null) {
 
-			if (contentType != null) {
+				response.setHeader("ETag", etag);
 
-				response.setContentType(contentType);
+				// If-None-Match takes precedence over If-Modified-Since
+				if (ifNoneMatch != null) {
 
-			} else {
-
-				// Default
-				response.setContentType("application/octet-stream");
+					notModified = FileStreamer.matchesETag(ifNoneMatch, etag);
+					response.setStatus(notModified ? HttpServletResponse.SC_NOT_MODIFIED : HttpServletResponse.SC_OK);
+				}
 			}
 
-			try {
+			if (notModified) {
 
-				IOUtils.copy(in, out);
+				OutputStream out = response.getOutputStream();
 
-			} catch (Throwable t) {
+				out.flush();
+				out.close();
 
-			} finally {
-
-				if (out != null) {
+				return;
+			}
+		}
 
-					try {
-						// 3: output content
-						out.flush();
-						out.close();
+		try {
 
-					} catch(Throwable t) {}
-				}
+			FileStreamer.stream(file, request, response);
 
-				if (in != null) {
-					in.close();
-				}
+		} catch (IOException ioex) {
 
-				response.setStatus(HttpServletResponse.SC_OK);
-			}
+			// client closed the connection
+			logger.log(Level.FINE, "Unable to stream file", ioex);
 		}
 	}
 }
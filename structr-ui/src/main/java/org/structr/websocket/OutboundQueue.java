@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import org.eclipse.jetty.websocket.WebSocket.Connection;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Bounded queue of outgoing messages for a single websocket connection.
+ * Messages are sent in order by a shared executor, so a thread that
+ * queues a message never waits for the client. A client that falls
+ * more than the configured number of messages behind is disconnected.
+ *
+ * A client that stops reading blocks the sender thread that is writing
+ * to it. Such a client is disconnected when a single message takes longer
+ * than the send timeout, see {@link #checkTimeout}, so that it can't hold
+ * up the sender threads shared by all clients for long.
+ *
+ * @author Christian Morgner
+ */
+public class OutboundQueue implements Runnable {
+
+	private static final Logger logger          = Logger.getLogger(OutboundQueue.class.getName());
+
+	/** Close code sent to clients that can't keep up, see RFC 6455 */
+	private static final int POLICY_VIOLATION   = 1008;
+
+	/** Number of messages sent before the executor thread is handed to the next client */
+	private static final int MAX_BATCH          = 50;
+
+	private final Queue<String> messages        = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger size            = new AtomicInteger(0);
+	private final AtomicBoolean scheduled       = new AtomicBoolean(false);
+	private final AtomicBoolean closed          = new AtomicBoolean(false);
+	private volatile boolean sending            = false;
+	private volatile long sendStarted           = 0L;
+	private Connection connection               = null;
+	private Executor executor                   = null;
+	private long sendTimeout                    = 0L;
+	private int maxSize                         = 0;
+
+	/**
+	 * @param connection
+	 * @param executor the executor that sends the messages
+	 * @param maxSize the maximum number of pending messages
+	 * @param sendTimeoutMillis the maximum time to send a single message, 0 for no limit
+	 */
+	public OutboundQueue(final Connection connection, final Executor executor, final int maxSize, final long sendTimeoutMillis) {
+
+		this.connection  = connection;
+		this.executor    = executor;
+		this.maxSize     = maxSize;
+		this.sendTimeout = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+	}
+
+	/**
+	 * Queues the given message for sending.
+	 *
+	 * @param message
+	 * @return false if the client was disconnected because its queue is full
+	 */
+	public boolean add(final String message) {
+
+		if (closed.get() || checkTimeout(System.nanoTime())) {
+
+			return false;
+		}
+
+		if (size.incrementAndGet() > maxSize) {
+
+			logger.log(Level.WARNING, "Client too slow, more than {0} messages pending, closing connection", maxSize);
+
+			disconnect();
+
+			return false;
+		}
+
+		messages.add(message);
+		schedule();
+
+		return true;
+	}
+
+	/**
+	 * Discards all pending messages, called when the connection is closed.
+	 */
+	public void close() {
+
+		closed.set(true);
+		messages.clear();
+	}
+
+	/**
+	 * Disconnects the client if the message that is being sent to it has
+	 * been blocked for longer than the send timeout.
+	 *
+	 * @param now the current value of {@link System#nanoTime}
+	 * @return true if the client was disconnected
+	 */
+	public boolean checkTimeout(final long now) {
+
+		if (sendTimeout > 0 && sending && now - sendStarted > sendTimeout && !closed.get()) {
+
+			logger.log(Level.WARNING, "Client too slow, sending a message took more than {0} ms, closing connection", TimeUnit.NANOSECONDS.toMillis(sendTimeout));
+
+			disconnect();
+
+			return true;
+		}
+
+		return false;
+	}
+
+	public boolean isClosed() {
+		return closed.get();
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public void run() {
+
+		try {
+
+			int count = 0;
+
+			while (count++ < MAX_BATCH && !closed.get()) {
+
+				String message = messages.poll();
+				if (message == null) {
+
+					break;
+				}
+
+				size.decrementAndGet();
+
+				try {
+
+					sendStarted = System.nanoTime();
+					sending     = true;
+
+					connection.sendMessage(message);
+
+				} catch (org.eclipse.jetty.io.EofException eof) {
+
+					logger.log(Level.FINE, "EofException irgnored, may occour on SSL connections.", eof);
+
+				} catch (Throwable t) {
+
+					logger.log(Level.WARNING, "Error sending message to client.", t);
+
+				} finally {
+
+					sending = false;
+				}
+			}
+
+		} finally {
+
+			scheduled.set(false);
+		}
+
+		// messages may have been added after the last poll
+		if (!messages.isEmpty() && !closed.get()) {
+
+			schedule();
+		}
+	}
+
+	// ----- private methods -----
+	private void disconnect() {
+
+		// only the first caller closes the connection
+		if (closed.compareAndSet(false, true)) {
+
+			messages.clear();
+			connection.close(POLICY_VIOLATION, "Client too slow");
+		}
+	}
+
+	private void schedule() {
+
+		if (scheduled.compareAndSet(false, true)) {
+
+			try {
+
+				executor.execute(this);
+
+			} catch (RejectedExecutionException rex) {
+
+				scheduled.set(false);
+			}
+		}
+	}
+}
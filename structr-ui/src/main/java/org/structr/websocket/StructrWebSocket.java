@@ -47,6 +47,9 @@ import org.eclipse.jetty.websocket.WebSocket;
 
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -61,11 +64,15 @@ import javax.servlet.http.HttpServletRequest;
  *
  * @author Christian Morgner
  */
-public class StructrWebSocket implements WebSocket.OnTextMessage {
+public class StructrWebSocket implements WebSocket.OnTextMessage, WebSocket.OnBinaryMessage {
 
 	private static final Logger logger                 = Logger.getLogger(StructrWebSocket.class.getName());
 	private static final Map<String, Class> commandSet = new LinkedHashMap<String, Class>();
 
+	/** Binary upload frames start with the 32 character uuid of the file and an 8 byte offset */
+	private static final int UUID_LENGTH               = 32;
+	private static final int BINARY_HEADER_LENGTH      = UUID_LENGTH + 8;
+
 
 	//~--- fields ---------------------------------------------------------
 
@@ -79,6 +86,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 	private SynchronizationController syncController = null;
 	private String token                             = null;
 	private Map<String, FileUploadHandler> uploads   = null;
+	private OutboundQueue outboundQueue              = null;
 	private String pagePath                           = null;
 
 	//~--- constructors ---------------------------------------------------
@@ -101,8 +109,9 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 		logger.log(Level.INFO, "New connection with protocol {0}", connection.getProtocol());
 
-		this.connection = connection;
-		this.token      = null;
+		this.connection    = connection;
+		this.token         = null;
+		this.outboundQueue = syncController.createOutboundQueue(connection);
 
 		syncController.registerClient(this);
 		
@@ -123,6 +132,11 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 		syncController.unregisterClient(this);
 
+		if (outboundQueue != null) {
+
+			outboundQueue.close();
+		}
+
 		// flush and close open uploads
 		for (FileUploadHandler upload : uploads.values()) {
 
@@ -210,6 +224,59 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 	}
 
+	/**
+	 * Receives a chunk of a binary file upload that was announced by an
+	 * UPLOAD command. The frame consists of the uuid of the file node,
+	 * the offset of the chunk as a big-endian long and the chunk data.
+	 */
+	@Override
+	public void onMessage(final byte[] data, final int offset, final int length) {
+
+		if (!isAuthenticated()) {
+
+			// send 401 Authentication Required
+			send(MessageBuilder.status().code(401).message("").build(), true);
+
+			return;
+		}
+
+		if (length < BINARY_HEADER_LENGTH) {
+
+			send(MessageBuilder.status().code(400).message("Invalid upload frame").build(), true);
+
+			return;
+		}
+
+		String uuid              = new String(data, offset, UUID_LENGTH, Charset.forName("US-ASCII"));
+		long position            = ByteBuffer.wrap(data, offset + UUID_LENGTH, 8).getLong();
+		FileUploadHandler upload = uploads.get(uuid);
+
+		if (upload == null) {
+
+			send(MessageBuilder.status().code(404).message("No upload in progress for " + uuid).build(), true);
+
+			return;
+		}
+
+		try {
+
+			if (upload.handleBinaryChunk(position, data, offset + BINARY_HEADER_LENGTH, length - BINARY_HEADER_LENGTH)) {
+
+				finishUpload(uuid);
+			}
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to write upload chunk", ioex);
+
+			uploads.remove(uuid);
+			upload.finish();
+
+			send(MessageBuilder.status().code(500).message(ioex.getMessage()).build(), true);
+		}
+
+	}
+
 	public void send(final WebSocketMessage message, final boolean clearToken) {
 
 		// return session status to client
@@ -234,7 +301,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 				logger.log(Level.FINE, "############################################################ SENDING \n{0}", msg);
 
 				// }
-				connection.sendMessage(msg);
+				queueMessage(msg);
 
 			} else {
 
@@ -249,6 +316,24 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 		}
 	}
 
+	/**
+	 * Queues the given serialized message for asynchronous sending. All
+	 * messages to this client go through the same queue, so they arrive
+	 * in the order they were queued.
+	 *
+	 * @param message
+	 */
+	public void queueMessage(final String message) {
+
+		OutboundQueue queue = outboundQueue;
+
+		if (queue != null) {
+
+			queue.add(message);
+		}
+
+	}
+
 	// ----- file handling -----
 	public void createFileUploadHandler(File file) {
 
@@ -258,6 +343,54 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 	}
 
+	/**
+	 * Registers a handler for a binary upload of the given size, see
+	 * {@link #onMessage(byte[], int, int)}.
+	 *
+	 * @param file
+	 * @param size
+	 * @param contentType
+	 */
+	public void createFileUploadHandler(final File file, final long size, final String contentType) {
+
+		String uuid = file.getProperty(AbstractNode.uuid);
+
+		FileUploadHandler previous = uploads.put(uuid, new FileUploadHandler(file, size, contentType));
+		if (previous != null) {
+
+			previous.finish();
+		}
+
+		// nothing to wait for
+		if (size == 0) {
+
+			finishUpload(uuid);
+		}
+
+	}
+
+	private void finishUpload(final String uuid) {
+
+		FileUploadHandler upload = uploads.remove(uuid);
+
+		if (upload != null) {
+
+			try {
+
+				upload.complete(getSecurityContext());
+
+				send(MessageBuilder.status().code(200).message("Upload of " + uuid + " finished").build(), true);
+
+			} catch (FrameworkException fex) {
+
+				logger.log(Level.WARNING, "Unable to finish upload", fex);
+
+				send(MessageBuilder.status().code(fex.getStatus()).message(fex.getMessage()).build(), true);
+			}
+		}
+
+	}
+
 	private FileUploadHandler handleExistingFile(final String uuid) {
 
 		GetNodeByIdCommand getNode = Services.command(getSecurityContext(), GetNodeByIdCommand.class);
@@ -286,7 +419,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 	}
 
-	public void handleFileChunk(String uuid, int sequenceNumber, int chunkSize, byte[] data) throws IOException {
+	public FileUploadHandler handleFileChunk(String uuid, int sequenceNumber, int chunkSize, byte[] data) throws IOException {
 
 		FileUploadHandler upload = uploads.get(uuid);
 
@@ -301,6 +434,8 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 			
 		}
 
+		return upload;
+
 	}
 
 	// ----- public static methods -----
@@ -32,6 +32,11 @@ import org.structr.websocket.message.WebSocketMessage;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -52,6 +57,7 @@ import org.structr.core.EntityContext;
 import static org.structr.core.EntityContext.getPropertyKeyForDatabaseName;
 import org.structr.core.Result;
 import org.structr.core.Services;
+import org.structr.core.entity.Principal;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeService;
 import org.structr.core.graph.RelationshipFactory;
@@ -80,17 +86,66 @@ public class SynchronizationController implements StructrTransactionListener, Tr
 
 	private static final Logger logger                              = Logger.getLogger(SynchronizationController.class.getName());
 
+	/** Maximum number of messages queued for a client before it is disconnected */
+	public static final String WEBSOCKET_QUEUE_SIZE                 = "websocket.queue.size";
+	private static final int DEFAULT_QUEUE_SIZE                     = 1000;
+
+	/** Maximum time in milliseconds to send a single message before the client is disconnected */
+	public static final String WEBSOCKET_SEND_TIMEOUT               = "websocket.send.timeout";
+	private static final long DEFAULT_SEND_TIMEOUT                  = 10000;
+
 	private final Map<Long, List<WebSocketMessage>> messageStackMap = new ConcurrentHashMap<Long, List<WebSocketMessage>>();
 	private final Map<Long, Set<DOMNode>> markupElementsMap         = new ConcurrentHashMap<Long, Set<DOMNode>>();
 	private final Map<Long, Set<Class>> typesMap                    = new ConcurrentHashMap<Long, Set<Class>>();
 	private final Set<StructrWebSocket> clients                     = new LinkedHashSet<StructrWebSocket>();
 	private final AtomicLong transactionCounter                     = new AtomicLong(0);
+	private final Set<OutboundQueue> outboundQueues                 = Collections.newSetFromMap(new ConcurrentHashMap<OutboundQueue, Boolean>());
 	private ResourceProvider resourceProvider                       = null;
 	private Gson gson                                               = null;
+	private ExecutorService sendExecutor                            = null;
+	private ScheduledExecutorService sendWatchdog                   = null;
 
 	public SynchronizationController(Gson gson) {
 
-		this.gson = gson;
+		this.gson         = gson;
+		this.sendExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+			private final AtomicLong threadCounter = new AtomicLong(0);
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+
+				Thread thread = new Thread(runnable, "WebSocketSender-" + threadCounter.incrementAndGet());
+
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		// disconnects clients that block a sender thread for too long
+		this.sendWatchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+
+				Thread thread = new Thread(runnable, "WebSocketSendWatchdog");
+
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		this.sendWatchdog.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+
+				checkSendTimeouts();
+			}
+
+		}, 1, 1, TimeUnit.SECONDS);
 
 	}
 
@@ -116,83 +171,149 @@ public class SynchronizationController implements StructrTransactionListener, Tr
 		this.resourceProvider = resourceProvider;
 	}
 
+	/**
+	 * Creates the outbound message queue for a new client connection.
+	 *
+	 * @param connection
+	 * @return the queue
+	 */
+	public OutboundQueue createOutboundQueue(final Connection connection) {
+
+		int maxSize      = DEFAULT_QUEUE_SIZE;
+		long sendTimeout = DEFAULT_SEND_TIMEOUT;
+
+		try {
+
+			maxSize = Integer.parseInt(Services.getConfigurationValue(WEBSOCKET_QUEUE_SIZE, Integer.toString(DEFAULT_QUEUE_SIZE)));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", WEBSOCKET_QUEUE_SIZE);
+		}
+
+		try {
+
+			sendTimeout = Long.parseLong(Services.getConfigurationValue(WEBSOCKET_SEND_TIMEOUT, Long.toString(DEFAULT_SEND_TIMEOUT)));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", WEBSOCKET_SEND_TIMEOUT);
+		}
+
+		OutboundQueue queue = new OutboundQueue(connection, sendExecutor, maxSize, sendTimeout);
+
+		outboundQueues.add(queue);
+
+		return queue;
+	}
+
+	/**
+	 * Stops the threads that send queued messages.
+	 */
+	public void shutdown() {
+
+		sendWatchdog.shutdownNow();
+		sendExecutor.shutdownNow();
+	}
+
+	/**
+	 * Disconnects the clients whose current message has been blocked for
+	 * longer than the send timeout, and forgets the closed queues.
+	 */
+	void checkSendTimeouts() {
+
+		long now = System.nanoTime();
+
+		for (Iterator<OutboundQueue> it = outboundQueues.iterator(); it.hasNext();) {
+
+			OutboundQueue queue = it.next();
+
+			if (queue.isClosed() || queue.checkTimeout(now)) {
+
+				it.remove();
+			}
+		}
+	}
+
 	// ----- private methods -----
 	private void broadcast(final WebSocketMessage webSocketData) {
 
-		logger.log(Level.FINE, "Broadcasting message to {0} clients..", clients.size());
+		List<StructrWebSocket> currentClients = getClients();
+
+		logger.log(Level.FINE, "Broadcasting message to {0} clients..", currentClients.size());
 
 		// session must be valid to be received by the client
 		webSocketData.setSessionValid(true);
 
-		String message;
-		String pagePath = (String) webSocketData.getNodeData().get("pagePath");
+		// the callback differs per client, so it is added to the serialized message later
+		webSocketData.setCallback(null);
 
-		//synchronized (clients) {
+		List<? extends GraphObject> result = webSocketData.getResult();
+		String pagePath                    = (String) webSocketData.getNodeData().get("pagePath");
+		boolean filterResult               = (result != null) && (result.size() > 0)
+			&& (webSocketData.getCommand().equals("UPDATE") || webSocketData.getCommand().equals("ADD") || webSocketData.getCommand().equals("CREATE"));
 
-			// create message
-			for (StructrWebSocket socket : clients) {
-				
-				String clientPagePath = socket.getPagePath();
-				if (clientPagePath != null && !clientPagePath.equals(URIUtil.encodePath(pagePath))) {
-					continue;
-				}
-				
-				Connection socketConnection = socket.getConnection();
+		// each distinct message is serialized only once, clients with the
+		// same permissions and clients that see the same result share it
+		Map<String, String> messagesByPrincipal = new HashMap<String, String>();
+		Map<String, String> messagesByResult    = new HashMap<String, String>();
+		String unfilteredMessage                = null;
 
-				webSocketData.setCallback(socket.getCallback());
+		for (StructrWebSocket socket : currentClients) {
 
-				if ((socketConnection != null)) { //&& socket.isAuthenticated()) {
+			String clientPagePath = socket.getPagePath();
+			if (clientPagePath != null && !clientPagePath.equals(URIUtil.encodePath(pagePath))) {
+				continue;
+			}
 
-					List<? extends GraphObject> result = webSocketData.getResult();
+			if (socket.getConnection() == null) {
+				continue;
+			}
 
-					if ((result != null) && (result.size() > 0)
-						&& (webSocketData.getCommand().equals("UPDATE") || webSocketData.getCommand().equals("ADD") || webSocketData.getCommand().equals("CREATE"))) {
+			String message = null;
 
-						WebSocketMessage clientData     = webSocketData.copy();
-						SecurityContext securityContext = socket.getSecurityContext();
-						
-						// For non-authenticated clients, construct a security context without user
-						if (securityContext == null) {
-							
-							try {
-								
-								securityContext = SecurityContext.getInstance(null, AccessMode.Frontend);
-								
-							} catch (FrameworkException ex) {
-								
-								continue;
-							}
-						}
-
-						clientData.setResult(filter(securityContext, result));
+			if (filterResult) {
 
-						message = gson.toJson(clientData, WebSocketMessage.class);
-
-					} else {
+				SecurityContext securityContext = getSecurityContext(socket);
+				if (securityContext == null) {
+					continue;
+				}
 
-						message = gson.toJson(webSocketData, WebSocketMessage.class);
-					}
+				String principalKey = getPrincipalKey(securityContext);
 
-					logger.log(Level.FINE, "############################################################ SENDING \n{0}", message);
+				message = messagesByPrincipal.get(principalKey);
+				if (message == null) {
 
-					try {
+					List<? extends GraphObject> filteredResult = filter(securityContext, result);
+					String resultKey                           = getResultKey(filteredResult);
 
-						socketConnection.sendMessage(message);
+					message = messagesByResult.get(resultKey);
+					if (message == null) {
 
-					} catch (org.eclipse.jetty.io.EofException eof) {
+						WebSocketMessage clientData = webSocketData.copy();
 
-						logger.log(Level.FINE, "EofException irgnored, may occour on SSL connections.", eof);
+						clientData.setResult(filteredResult);
 
-					} catch (Throwable t) {
+						message = gson.toJson(clientData, WebSocketMessage.class);
+						messagesByResult.put(resultKey, message);
+					}
 
-						logger.log(Level.WARNING, "Error sending message to client.", t);
+					messagesByPrincipal.put(principalKey, message);
+				}
 
-					}
+			} else {
 
+				if (unfilteredMessage == null) {
+					unfilteredMessage = gson.toJson(webSocketData, WebSocketMessage.class);
 				}
 
+				message = unfilteredMessage;
 			}
-		//}
+
+			logger.log(Level.FINE, "############################################################ SENDING \n{0}", message);
+
+			socket.queueMessage(withCallback(message, socket.getCallback()));
+		}
 
 	}
 
@@ -243,71 +364,144 @@ public class SynchronizationController implements StructrTransactionListener, Tr
 		
 		}
 
-		// create message
-		for (StructrWebSocket socket : clients) {
+		// partial messages are rendered and serialized once per permission set
+		Map<String, List<String[]>> messagesByPrincipal = new HashMap<String, List<String[]>>();
 
-			SecurityContext securityContext = socket.getSecurityContext();
-			
-			// For non-authenticated clients, construct a security context without user
-			if (securityContext == null) {
+		for (StructrWebSocket socket : getClients()) {
 
-				try {
+			SecurityContext securityContext = getSecurityContext(socket);
+			if (securityContext == null) {
+				continue;
+			}
 
-					securityContext = SecurityContext.getInstance(null, AccessMode.Frontend);
+			String principalKey     = getPrincipalKey(securityContext);
+			List<String[]> messages = messagesByPrincipal.get(principalKey);
 
-				} catch (FrameworkException ex) {
+			if (messages == null) {
 
-					continue;
-				}
+				messages = createSerializedPartialMessages(securityContext, new LinkedList(dynamicElements));
+				messagesByPrincipal.put(principalKey, messages);
 			}
-			
-			broadcastDynamicElements(securityContext, socket, new LinkedList(dynamicElements));
-			
+
+			broadcastDynamicElements(socket, messages);
 		}
 	}
 
-	private void broadcastDynamicElements(SecurityContext securityContext, StructrWebSocket socket, final List<DOMNode> dynamicElements) {
+	/**
+	 * Renders the partial messages for the given security context and
+	 * returns pairs of page path and serialized message.
+	 */
+	private List<String[]> createSerializedPartialMessages(final SecurityContext securityContext, final List<DOMNode> dynamicElements) {
 
 		// filter elements
-		List<DOMNode> filteredElements = filter(securityContext, dynamicElements);
+		List<DOMNode> filteredElements         = filter(securityContext, dynamicElements);
 		List<WebSocketMessage> partialMessages = createPartialMessages(securityContext, filteredElements);
+		List<String[]> messages                = new LinkedList<String[]>();
 
 		for (WebSocketMessage webSocketData : partialMessages) {
 
 			webSocketData.setSessionValid(true);
 
-			String pagePath = (String) webSocketData.getNodeData().get("pagePath");
-			String clientPagePath = socket.getPagePath();
+			// the page path is checked per client, see broadcastDynamicElements
+			messages.add(new String[] { (String) webSocketData.getNodeData().get("pagePath"), gson.toJson(webSocketData, WebSocketMessage.class) });
+		}
+
+		return messages;
+	}
+
+	private void broadcastDynamicElements(final StructrWebSocket socket, final List<String[]> messages) {
+
+		String clientPagePath = socket.getPagePath();
+
+		if (socket.getConnection() == null) {
+			return;
+		}
+
+		for (String[] pathAndMessage : messages) {
+
+			String pagePath = pathAndMessage[0];
+			String message  = pathAndMessage[1];
 
 			if (clientPagePath != null && !clientPagePath.equals(URIUtil.encodePath(pagePath))) {
 				continue;
 			}
 
-			Connection socketConnection = socket.getConnection();
+			socket.queueMessage(withCallback(message, socket.getCallback()));
+		}
+	}
 
-			webSocketData.setCallback(socket.getCallback());
+	private List<StructrWebSocket> getClients() {
 
-			if ((socketConnection != null)) {
+		synchronized (clients) {
 
-				String message = gson.toJson(webSocketData, WebSocketMessage.class);
+			return new ArrayList<StructrWebSocket>(clients);
+		}
+	}
 
-				try {
+	private SecurityContext getSecurityContext(final StructrWebSocket socket) {
 
-					socketConnection.sendMessage(message);
+		SecurityContext securityContext = socket.getSecurityContext();
 
-				} catch (org.eclipse.jetty.io.EofException eof) {
+		// For non-authenticated clients, construct a security context without user
+		if (securityContext == null) {
 
-					logger.log(Level.FINE, "EofException irgnored, may occour on SSL connections.", eof);
+			try {
 
-				} catch (Throwable t) {
+				securityContext = SecurityContext.getInstance(null, AccessMode.Frontend);
 
-					logger.log(Level.WARNING, "Error sending message to client.", t);
+			} catch (FrameworkException ex) {
 
-				}
+				return null;
 			}
 		}
+
+		return securityContext;
 	}
-	
+
+	/**
+	 * Returns a key that is equal for security contexts with the same
+	 * visibility rules, i.e. the same user and access mode.
+	 */
+	private String getPrincipalKey(final SecurityContext securityContext) {
+
+		if (securityContext.isSuperUser()) {
+
+			return "superuser";
+		}
+
+		Principal user = securityContext.getUser(false);
+
+		return (user != null ? Long.toString(user.getId()) : "anonymous") + ":" + securityContext.getAccessMode();
+	}
+
+	private String getResultKey(final List<? extends GraphObject> result) {
+
+		StringBuilder key = new StringBuilder();
+
+		for (GraphObject obj : result) {
+
+			key.append(obj.getId()).append(",");
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Adds the given callback to a serialized message, so the message
+	 * itself can be shared between clients.
+	 */
+	private String withCallback(final String message, final String callback) {
+
+		if (callback == null) {
+
+			return message;
+		}
+
+		String rest = message.substring(1).trim();
+
+		return "{\"callback\":" + gson.toJson(callback) + ("}".equals(rest) ? "" : ",") + rest;
+	}
+
 	private List<WebSocketMessage> createPartialMessages(SecurityContext securityContext, List<DOMNode> elements) {
 		
 		HttpServletRequest request             = mock(HttpServletRequest.class);
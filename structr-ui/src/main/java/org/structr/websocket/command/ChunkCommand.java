@@ -35,7 +35,9 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.Services;
 import org.structr.core.graph.StructrTransaction;
 import org.structr.core.graph.TransactionCommand;
+import org.structr.web.common.FileHelper;
 import org.structr.web.entity.File;
+import org.structr.web.entity.Image;
 import org.structr.websocket.StructrWebSocket;
 
 //~--- classes ----------------------------------------------------------------
@@ -94,27 +96,34 @@ public class ChunkCommand extends AbstractCommand {
 				
 			}
 			
-			final long size = (long)(sequenceNumber * chunkSize) + data.length;
+			final long size                = (long) sequenceNumber * chunkSize + data.length;
+			final FileUploadHandler upload = getWebSocket().handleFileChunk(uuid, sequenceNumber, chunkSize, data);
 
-			// Set proper size
+			// The checksum of the bytes written so far is known if the chunks arrived
+			// in order, otherwise it is left empty so that the file is hashed on commit.
+			final Long checksum            = upload != null ? upload.getChecksum() : null;
+			final Long modified            = checksum != null ? FileHelper.getLastModified(file) : null;
+
+			// Set proper size and checksum
 			Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
 
 				@Override
 				public Object execute() throws FrameworkException {
 					
 					file.setProperty(File.size, size);
-					
-					// FIXME: moved this from marker [1] to here!
-					file.setChecksum(0L);
+					file.setProperty(File.checksum, checksum);
+					file.setProperty(File.contentModified, modified);
 					
 					return null;
 				}
 				
 			});
-			
-			getWebSocket().handleFileChunk(uuid, sequenceNumber, chunkSize, data);
-			
-			// marker [1]
+
+			// create thumbnails once the upload is complete
+			if (file instanceof Image && upload != null && upload.getReceived() >= upload.getSize()) {
+
+				((Image) file).requestThumbnails();
+			}
 			
 			// This should trigger setting of lastModifiedDate in any case
 			getWebSocket().send(MessageBuilder.status().code(200).message(size + " bytes of " + file.getName() + " successfully saved.").build(), true);
@@ -21,9 +21,14 @@
 package org.structr.websocket.command;
 
 import org.structr.common.Path;
+import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Services;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.web.common.FileHelper;
 import org.structr.web.entity.File;
+import org.structr.web.entity.Image;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -33,8 +38,11 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
+import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -46,12 +54,26 @@ public class FileUploadHandler {
 
 	private static final Logger logger = Logger.getLogger(FileUploadHandler.class.getName());
 
+	/** Number of bytes at the start of the file that are kept for content type detection */
+	private static final int MIME_DETECTION_LENGTH = 8192;
+
 	//~--- fields ---------------------------------------------------------
 
 	private File file                      = null;
 	private FileChannel privateFileChannel = null;
 	private Long size                      = 0L;
 
+	// upload progress, the checksum is computed while the chunks are written
+	private CRC32 checksum                 = new CRC32();
+	private byte[] head                    = null;
+	private String contentType             = null;
+	private long received                  = 0L;
+	private long sequentialPosition        = 0L;
+
+	// byte ranges of the file that were written, start => end (exclusive)
+	private TreeMap<Long, Long> covered    = new TreeMap<Long, Long>();
+	private boolean sequential             = true;
+
 	//~--- constructors ---------------------------------------------------
 
 	public FileUploadHandler(File file) {
@@ -77,17 +99,132 @@ public class FileUploadHandler {
 
 	}
 
+	/**
+	 * Creates a handler for a binary upload of the given number of bytes.
+	 * Size, checksum and content type are kept in memory and stored in
+	 * a single transaction when the upload is complete.
+	 *
+	 * @param file
+	 * @param size the total size of the upload
+	 * @param contentType the content type, or null to detect it from the content
+	 */
+	public FileUploadHandler(final File file, final long size, final String contentType) {
+
+		this.file        = file;
+		this.size        = size;
+		this.contentType = contentType;
+	}
+
 	//~--- methods --------------------------------------------------------
 
+	/**
+	 * Writes the given data at the given position of the file. Chunks may
+	 * arrive in any order, and repeated or overlapping chunks are counted
+	 * only once.
+	 *
+	 * @param position
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return true if all bytes of the upload were received
+	 * @throws IOException if the chunk lies outside of the announced size
+	 */
+	public boolean handleBinaryChunk(final long position, final byte[] data, final int offset, final int length) throws IOException {
+
+		validateChunk(position, data, offset, length);
+
+		FileChannel channel = getChannel();
+
+		if (channel != null) {
+
+			ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, position + buffer.position() - offset);
+			}
+
+			updateProgress(position, data, offset, length);
+		}
+
+		return received >= size;
+	}
+
+	/**
+	 * Closes the file and stores size, checksum and content type.
+	 *
+	 * @param securityContext
+	 * @throws FrameworkException
+	 */
+	public void complete(final SecurityContext securityContext) throws FrameworkException {
+
+		finish();
+
+		final long finalModified  = FileHelper.getLastModified(file);
+		final Long finalChecksum  = sequential ? getChecksum() : FileHelper.getChecksum(file);
+		final String finalType    = contentType != null ? contentType : getContentType();
+		final long finalSize      = size;
+
+		Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				file.setProperty(File.size, finalSize);
+				file.setProperty(File.checksum, finalChecksum);
+				file.setProperty(File.contentModified, finalModified);
+
+				if (finalType != null) {
+
+					file.setProperty(File.contentType, finalType);
+				}
+
+				return null;
+			}
+		});
+
+		if (file instanceof Image) {
+
+			((Image) file).requestThumbnails();
+		}
+	}
+
+	/**
+	 * Returns the checksum of the bytes written so far, or null if the
+	 * chunks did not arrive in order and the file has to be hashed.
+	 *
+	 * @return the CRC32 checksum or null
+	 */
+	public Long getChecksum() {
+
+		if (sequential) {
+
+			return checksum.getValue();
+		}
+
+		return null;
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
 	public void handleChunk(int sequenceNumber, int chunkSize, byte[] data) throws IOException {
 
 		FileChannel channel = getChannel();
 
 		if (channel != null) {
 
-			channel.position(sequenceNumber * chunkSize);
+			long position = (long) sequenceNumber * chunkSize;
+
+			channel.position(position);
 			channel.write(ByteBuffer.wrap(data));
 
+			updateProgress(position, data, 0, data.length);
+
 			// file size reached? upload finished
 			if (channel.position() == this.size) {
 
@@ -125,6 +262,97 @@ public class FileUploadHandler {
 	//~--- get methods ----------------------------------------------------
 
 	// ----- private methods -----
+	private void updateProgress(final long position, final byte[] data, final int offset, final int length) {
+
+		if (position == 0 && head == null) {
+
+			head = new byte[Math.min(length, MIME_DETECTION_LENGTH)];
+			System.arraycopy(data, offset, head, 0, head.length);
+		}
+
+		// the checksum can only be computed on the fly if chunks arrive in order
+		if (sequential && position == sequentialPosition) {
+
+			checksum.update(data, offset, length);
+			sequentialPosition += length;
+
+		} else {
+
+			sequential = false;
+		}
+
+		cover(position, position + length);
+	}
+
+	private void validateChunk(final long position, final byte[] data, final int offset, final int length) throws IOException {
+
+		if (offset < 0 || length < 0 || offset + length > data.length) {
+
+			throw new IOException("Invalid chunk: offset " + offset + ", length " + length);
+		}
+
+		if (position < 0 || position + length > size) {
+
+			throw new IOException("Invalid chunk: position " + position + " and length " + length + " exceed upload size " + size);
+		}
+	}
+
+	/**
+	 * Adds the given range to the covered ranges, merging it with the
+	 * ranges it overlaps or touches, and updates the number of received
+	 * bytes.
+	 */
+	private void cover(final long start, final long end) {
+
+		if (start >= end) {
+			return;
+		}
+
+		long newStart = start;
+		long newEnd   = end;
+
+		Entry<Long, Long> previous = covered.floorEntry(start);
+		if (previous != null && previous.getValue() >= start) {
+
+			newStart = previous.getKey();
+			newEnd   = Math.max(newEnd, previous.getValue());
+
+			received -= previous.getValue() - previous.getKey();
+			covered.remove(previous.getKey());
+		}
+
+		Entry<Long, Long> next = covered.ceilingEntry(newStart);
+		while (next != null && next.getKey() <= newEnd) {
+
+			newEnd = Math.max(newEnd, next.getValue());
+
+			received -= next.getValue() - next.getKey();
+			covered.remove(next.getKey());
+
+			next = covered.ceilingEntry(newStart);
+		}
+
+		covered.put(newStart, newEnd);
+
+		received += newEnd - newStart;
+	}
+
+	private String getContentType() {
+
+		if (head != null) {
+
+			return FileHelper.getContentMimeType(head);
+		}
+
+		String relativeFilePath = file.getRelativeFilePath();
+		if (relativeFilePath != null) {
+
+			return FileHelper.getContentMimeType(new java.io.File(Services.getFilePath(Path.Files, relativeFilePath)));
+		}
+
+		return null;
+	}
+
 	private FileChannel getChannel() throws IOException {
 
 		if (this.privateFileChannel == null) {
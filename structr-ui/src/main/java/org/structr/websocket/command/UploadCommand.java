@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket.command;
+
+import org.structr.common.Permission;
+import org.structr.web.entity.File;
+import org.structr.websocket.StructrWebSocket;
+import org.structr.websocket.message.MessageBuilder;
+import org.structr.websocket.message.WebSocketMessage;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Starts a binary upload into an existing file node. The file content
+ * is then sent in binary frames, see {@link StructrWebSocket#onMessage(byte[], int, int)},
+ * and size, checksum and content type are stored in a single transaction
+ * once all bytes have been received.
+ *
+ * @author Christian Morgner
+ */
+public class UploadCommand extends AbstractCommand {
+
+	private static final Logger logger = Logger.getLogger(UploadCommand.class.getName());
+
+	static {
+
+		StructrWebSocket.addCommand(UploadCommand.class);
+
+	}
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void processMessage(WebSocketMessage webSocketData) {
+
+		try {
+
+			final File file = (File) getNode(webSocketData.getId());
+
+			if (file == null) {
+
+				getWebSocket().send(MessageBuilder.status().code(404).message("File not found").build(), true);
+
+				return;
+			}
+
+			if (!getWebSocket().getSecurityContext().isAllowed(file, Permission.write)) {
+
+				logger.log(Level.WARNING, "No write permission for {0} on {1}", new Object[] {getWebSocket().getCurrentUser().toString(), file.toString()});
+				getWebSocket().send(MessageBuilder.status().message("No write permission").code(400).build(), true);
+
+				return;
+			}
+
+			Object rawSize     = webSocketData.getNodeData().get("size");
+			String contentType = (String) webSocketData.getNodeData().get("contentType");
+			long size          = 0L;
+
+			if (rawSize instanceof Number) {
+
+				size = ((Number) rawSize).longValue();
+
+			} else if (rawSize != null) {
+
+				size = Long.parseLong(rawSize.toString());
+			}
+
+			if (size < 0) {
+
+				getWebSocket().send(MessageBuilder.status().code(400).message("Invalid size").build(), true);
+
+				return;
+			}
+
+			if (contentType != null && contentType.isEmpty()) {
+
+				contentType = null;
+			}
+
+			getWebSocket().createFileUploadHandler(file, size, contentType);
+
+		} catch (Throwable t) {
+
+			String msg = t.toString();
+
+			// return error message
+			getWebSocket().send(MessageBuilder.status().code(400).message("Could not start upload: ".concat((msg != null)
+				? msg
+				: "")).build(), true);
+		}
+	}
+
+	//~--- get methods ----------------------------------------------------
+
+	@Override
+	public String getCommand() {
+		return "UPLOAD";
+	}
+}
+
+
+
+/**
+ * { "command" : "UPLOAD", "id" : <uuid>, "data" : { "size" : 1234, "contentType" : "image/png" } }
+ */
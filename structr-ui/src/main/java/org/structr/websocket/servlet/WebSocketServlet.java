@@ -129,6 +129,8 @@ public class WebSocketServlet extends HttpServlet {
 		
 		GraphDatabaseService graphDb = Services.getService(NodeService.class).getGraphDb();
 		graphDb.unregisterTransactionEventHandler(syncController);
+
+		syncController.shutdown();
 	}
 
 	@Override
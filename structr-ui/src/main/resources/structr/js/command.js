@@ -580,6 +580,25 @@ var Command = {
         log('chunk()', obj);
         return sendObj(obj);
     },
+    /**
+     * Send an UPLOAD command to the server.
+     * 
+     * This announces a binary upload of the given number of bytes into the
+     * file node with the given id. The content is then sent in binary frames
+     * via sendBinary(), and the server stores size, checksum and content type
+     * once all bytes were received.
+     */
+    upload: function(id, size, contentType) {
+        var obj = {};
+        obj.command = 'UPLOAD';
+        obj.id = id;
+        var data = {};
+        data.size = size;
+        data.contentType = contentType;
+        obj.data = data;
+        log('upload()', obj);
+        return sendObj(obj);
+    },
     /**
      * Send a CREATE command to the server.
      * 
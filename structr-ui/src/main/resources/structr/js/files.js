@@ -20,6 +20,7 @@
 var images, files, folders, drop;
 var fileList;
 var chunkSize = 1024*64;
+var binaryChunkSize = 1024*512;
 var sizeLimit = 1024*1024*42;
 var win = $(window);
 
@@ -416,6 +417,11 @@ var _Files = {
      
                 log('Uploading chunks for file ' + file.id);
                 
+                if (window.ArrayBuffer && window.DataView) {
+                    _Files.uploadBinary(file, fileObj);
+                    return;
+                }
+                
                 var reader = new FileReader();
                 reader.readAsBinaryString(fileObj);
                 //reader.readAsText(fileObj);
@@ -471,6 +477,32 @@ var _Files = {
 
     },
 
+    uploadBinary : function(file, fileObj) {
+
+        var reader = new FileReader();
+
+        reader.onload = function(f) {
+
+            var content = f.target.result;
+            var size = content.byteLength;
+
+            // the server processes messages in order, so the chunks can be sent right away
+            Command.upload(file.id, size, fileObj.type);
+
+            for (var offset=0; offset<size; offset+=binaryChunkSize) {
+                sendBinary(file.id, offset, content.slice(offset, Math.min(offset + binaryChunkSize, size)));
+            }
+
+            var typeIcon = Structr.node(file.id).find('.typeIcon');
+            var iconSrc = typeIcon.prop('src');
+            typeIcon.prop('src', iconSrc + '?' + new Date().getTime());
+
+        }
+
+        reader.readAsArrayBuffer(fileObj);
+
+    },
+
     updateTextFile : function(file, text) {
         var chunks = Math.ceil(text.length / chunkSize);
         //console.log(text, text.length, chunks);
@@ -354,6 +354,36 @@ function sendObj(obj, callback) {
     return true;
 }
 
+/**
+ * Send a chunk of a binary upload (see Command.upload) as a binary frame.
+ * 
+ * The frame starts with the 32 character id of the file node, followed by
+ * the offset of the chunk as a 64 bit big-endian integer and the chunk data.
+ */
+function sendBinary(id, offset, chunk) {
+
+    var header = 32 + 8;
+    var buffer = new ArrayBuffer(header + chunk.byteLength);
+    var bytes = new Uint8Array(buffer);
+    var view = new DataView(buffer);
+
+    for (var i=0; i<32; i++) {
+        bytes[i] = id.charCodeAt(i);
+    }
+
+    view.setUint32(32, Math.floor(offset / 4294967296));
+    view.setUint32(36, offset % 4294967296);
+    bytes.set(new Uint8Array(chunk), header);
+
+    try {
+        ws.send(buffer);
+    } catch (exception) {
+        log('Error in sendBinary(): ' + exception);
+        return false;
+    }
+    return true;
+}
+
 function send(text) {
 
     log(ws.readyState);
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import org.apache.commons.io.FileUtils;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.web.entity.File;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.IOException;
+
+import java.util.zip.CRC32;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests that checksum, size and content type are stored when file content
+ * is written, that metadata changes don't re-read an unchanged file, and
+ * that changed content is hashed again.
+ *
+ * @author Christian Morgner
+ */
+public class FileHelperTest extends StructrUiTest {
+
+	public void testChecksumOnWrite() {
+
+		try {
+
+			final File file = createTestNodes(File.class, 1).get(0);
+			byte[] data     = "The quick brown fox jumps over the lazy dog".getBytes("UTF-8");
+
+			FileHelper.writeToFile(file, data, "text/plain");
+
+			assertEquals(checksum(data), file.getChecksum());
+			assertEquals(data.length, file.getSize());
+			assertEquals("text/plain", file.getContentType());
+
+			java.io.File fileOnDisk = new java.io.File(Services.getFilesPath() + "/" + file.getRelativeFilePath());
+			long modified           = fileOnDisk.lastModified();
+			byte[] sameSize         = "THE QUICK BROWN FOX JUMPS OVER THE LAZY DOG".getBytes("UTF-8");
+
+			// change the content behind structr's back, but keep size and modification time
+			FileUtils.writeByteArrayToFile(fileOnDisk, sameSize);
+			fileOnDisk.setLastModified(modified);
+			setName(file, "renamed");
+
+			// a metadata change must not rehash a file that looks unchanged
+			assertEquals(checksum(data), file.getChecksum());
+
+			// a newer modification time means the content was changed and must be hashed,
+			// even if the size is the same (set explicitly for coarse timestamp resolutions)
+			fileOnDisk.setLastModified(modified + 2000);
+			setName(file, "renamed again");
+
+			assertEquals(checksum(sameSize), file.getChecksum());
+
+			// a size mismatch means the content was changed and must be hashed
+			byte[] otherSize = "Some other content".getBytes("UTF-8");
+
+			FileUtils.writeByteArrayToFile(fileOnDisk, otherSize);
+			setName(file, "renamed once more");
+
+			assertEquals(checksum(otherSize), file.getChecksum());
+			assertEquals(otherSize.length, file.getSize());
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+
+			fail("Unexpected exception");
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception");
+		}
+
+	}
+
+	private void setName(final File file, final String name) throws FrameworkException {
+
+		transactionCommand.execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				file.setProperty(AbstractNode.name, name);
+				return null;
+			}
+		});
+	}
+
+	private Long checksum(final byte[] data) {
+
+		CRC32 crc = new CRC32();
+
+		crc.update(data);
+
+		return crc.getValue();
+	}
+}
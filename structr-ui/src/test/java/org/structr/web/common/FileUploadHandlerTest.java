@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import org.apache.commons.io.FileUtils;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.web.entity.File;
+import org.structr.websocket.command.FileUploadHandler;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests binary uploads with chunks that arrive in order, out of order or
+ * more than once.
+ *
+ * @author Christian Morgner
+ */
+public class FileUploadHandlerTest extends StructrUiTest {
+
+	private static final byte[] data = "The quick brown fox jumps over the lazy dog".getBytes();
+
+	public void test01ChunkedUpload() {
+
+		try {
+
+			File file                 = createUploadFile();
+			FileUploadHandler handler = new FileUploadHandler(file, data.length, "text/plain");
+
+			assertFalse(handler.handleBinaryChunk(0, data, 0, 10));
+			assertFalse(handler.handleBinaryChunk(10, data, 10, 10));
+			assertTrue(handler.handleBinaryChunk(20, data, 20, data.length - 20));
+
+			handler.complete(securityContext);
+
+			assertContent(file);
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+
+			fail("Unexpected exception");
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02OutOfOrderUpload() {
+
+		try {
+
+			File file                 = createUploadFile();
+			FileUploadHandler handler = new FileUploadHandler(file, data.length, "text/plain");
+
+			assertFalse(handler.handleBinaryChunk(20, data, 20, data.length - 20));
+			assertFalse(handler.handleBinaryChunk(0, data, 0, 10));
+			assertTrue(handler.handleBinaryChunk(10, data, 10, 10));
+
+			// the checksum can't be computed on the fly
+			assertNull(handler.getChecksum());
+
+			handler.complete(securityContext);
+
+			assertContent(file);
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+
+			fail("Unexpected exception");
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03DuplicateFrames() {
+
+		try {
+
+			File file                 = createUploadFile();
+			FileUploadHandler handler = new FileUploadHandler(file, data.length, "text/plain");
+
+			assertFalse(handler.handleBinaryChunk(0, data, 0, 10));
+			assertFalse(handler.handleBinaryChunk(0, data, 0, 10));
+			assertEquals(10, handler.getReceived());
+
+			// overlaps the first chunk
+			assertFalse(handler.handleBinaryChunk(5, data, 5, 10));
+			assertEquals(15, handler.getReceived());
+
+			// the same chunk again must not complete the upload
+			assertFalse(handler.handleBinaryChunk(5, data, 5, 10));
+			assertFalse(handler.handleBinaryChunk(30, data, 30, data.length - 30));
+			assertEquals(15 + data.length - 30, handler.getReceived());
+
+			assertTrue(handler.handleBinaryChunk(15, data, 15, 15));
+			assertEquals(data.length, handler.getReceived());
+
+			handler.complete(securityContext);
+
+			assertContent(file);
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+
+			fail("Unexpected exception");
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test04InvalidFrames() {
+
+		try {
+
+			File file                 = createUploadFile();
+			FileUploadHandler handler = new FileUploadHandler(file, data.length, "text/plain");
+
+			try {
+
+				handler.handleBinaryChunk(-1, data, 0, 10);
+				fail("Negative position should be rejected");
+
+			} catch (IOException expected) {}
+
+			try {
+
+				handler.handleBinaryChunk(data.length - 5, data, 0, 10);
+				fail("Chunk beyond the announced size should be rejected");
+
+			} catch (IOException expected) {}
+
+			assertEquals(0, handler.getReceived());
+
+			handler.finish();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception");
+		}
+	}
+
+	private File createUploadFile() throws FrameworkException {
+
+		File file = createTestNodes(File.class, 1).get(0);
+
+		try {
+
+			// creates the file on disk and sets its path
+			FileHelper.writeToFile(file, new byte[0]);
+
+		} catch (IOException ioex) {
+
+			throw new FrameworkException(500, ioex.getMessage());
+		}
+
+		return file;
+	}
+
+	private void assertContent(final File file) throws IOException {
+
+		java.io.File fileOnDisk = new java.io.File(Services.getFilesPath() + "/" + file.getRelativeFilePath());
+		CRC32 crc               = new CRC32();
+
+		crc.update(data);
+
+		assertTrue(Arrays.equals(data, FileUtils.readFileToByteArray(fileOnDisk)));
+		assertEquals(Long.valueOf(crc.getValue()), file.getChecksum());
+		assertEquals(data.length, file.getSize());
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.List;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.web.entity.dom.Content;
+import org.structr.web.entity.dom.DOMElement;
+import org.structr.web.entity.dom.Page;
+import org.w3c.dom.DOMException;
+
+/**
+ * Tests dependency tracking and invalidation of the {@link RenderCache}.
+ *
+ * @author Christian Morgner
+ */
+public class RenderCacheTest extends StructrUiTest {
+
+	public void testInvalidation() {
+
+		try {
+
+			List<Content> contents = createTestNodes(Content.class, 2);
+			final Content content  = contents.get(0);
+			final Content other    = contents.get(1);
+
+			RenderContext renderContext = new RenderContext();
+
+			renderContext.getBuffer().append("cached");
+			renderContext.addDependency(content);
+
+			RenderCache.put("test", renderContext, "text/html", RenderCache.getGeneration());
+
+			assertNotNull(RenderCache.get("test"));
+			assertEquals("cached", RenderCache.get("test").getContent());
+
+			// modifying an unrelated node must not invalidate the entry
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					other.setProperty(Content.content, "other");
+					return null;
+				}
+			});
+
+			assertNotNull(RenderCache.get("test"));
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					content.setProperty(Content.content, "modified");
+					return null;
+				}
+			});
+
+			assertNull(RenderCache.get("test"));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testUnhideChild() {
+
+		GraphDatabaseService graphDb        = (GraphDatabaseService) graphDbCommand.execute();
+		RenderCache.Invalidator invalidator = new RenderCache.Invalidator();
+
+		graphDb.registerTransactionEventHandler(invalidator);
+
+		try {
+
+			Page page             = Page.createNewPage(securityContext, "unhide");
+			DOMElement html       = (DOMElement) page.createElement("html");
+			DOMElement body       = (DOMElement) page.createElement("body");
+			final DOMElement h1   = (DOMElement) page.createElement("h1");
+
+			try {
+
+				page.appendChild(html);
+				html.appendChild(body);
+				body.appendChild(h1);
+				h1.appendChild(page.createTextNode("Hidden Title"));
+
+			} catch (DOMException dex) {
+
+				throw new FrameworkException(422, dex.getMessage());
+			}
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					h1.setProperty(AbstractNode.hidden, true);
+					return null;
+				}
+			});
+
+			RenderCache.clear();
+
+			long generation             = RenderCache.getGeneration();
+			RenderContext renderContext = new RenderContext();
+
+			page.render(securityContext, renderContext, 0);
+			RenderCache.put("unhide", renderContext, "text/html", generation);
+
+			assertNotNull(RenderCache.get("unhide"));
+			assertFalse(RenderCache.get("unhide").getContent().contains("Hidden Title"));
+
+			// the hidden element was not rendered, but the page depends on it
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					h1.setProperty(AbstractNode.hidden, false);
+					return null;
+				}
+			});
+
+			assertNull(RenderCache.get("unhide"));
+
+			renderContext = new RenderContext();
+			page.render(securityContext, renderContext, 0);
+
+			assertTrue(renderContext.getBuffer().toString().contains("Hidden Title"));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception");
+
+		} finally {
+
+			graphDb.unregisterTransactionEventHandler(invalidator);
+		}
+	}
+
+	public void testConcurrentModification() {
+
+		long generation             = RenderCache.getGeneration();
+		RenderContext renderContext = new RenderContext();
+
+		renderContext.getBuffer().append("stale");
+
+		// something was modified while the page was rendered
+		RenderCache.clear();
+		RenderCache.put("stale", renderContext, "text/html", generation);
+
+		assertNull(RenderCache.get("stale"));
+	}
+
+	public void testNotCacheable() {
+
+		RenderContext renderContext = new RenderContext();
+
+		renderContext.setCacheable(false);
+		RenderCache.put("now", renderContext, "text/html", RenderCache.getGeneration());
+
+		assertNull(RenderCache.get("now"));
+	}
+}
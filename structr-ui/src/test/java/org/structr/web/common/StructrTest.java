@@ -325,7 +325,7 @@ public class StructrTest extends TestCase {
 		Date now       = new Date();
 		long timestamp = now.getTime();
 
-		context.put(Services.CONFIGURED_SERVICES, "ModuleService NodeService LogService");
+		context.put(Services.CONFIGURED_SERVICES, "ModuleService NodeService LogService AgentService");
 		context.put(Services.APPLICATION_TITLE, "structr unit test app" + timestamp);
 		context.put(Services.TMP_PATH, "/tmp/");
 		context.put(Services.BASE_PATH, "/tmp/structr-test-" + timestamp);
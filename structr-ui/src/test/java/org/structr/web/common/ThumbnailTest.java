@@ -34,6 +34,10 @@ import java.util.logging.Logger;
 import org.structr.web.common.ImageHelper.Thumbnail;
 import org.structr.web.entity.Image;
 import org.structr.web.entity.TestImage;
+import org.structr.web.entity.User;
+import org.structr.common.Permission;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.SecurityRelationship;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -91,8 +95,16 @@ public class ThumbnailTest extends StructrTest {
 			assertNotNull(img);
 			assertTrue(img instanceof TestImage);
 
+			// thumbnails are created in the background, readers get null until then
 			Image tn = img.getProperty(TestImage.thumbnail);
 
+			for (int i = 0; tn == null && i < 100; i++) {
+
+				Thread.sleep(100);
+
+				tn = img.getProperty(TestImage.thumbnail);
+			}
+
 			assertNotNull(tn);
 			assertEquals(new Integer(200), tn.getWidth());
 			assertEquals(new Integer(48), tn.getHeight());  // cropToFit = false
@@ -103,6 +115,81 @@ public class ThumbnailTest extends StructrTest {
 			logger.log(Level.SEVERE, ex.toString());
 			fail("Unexpected exception");
 
+		} catch (InterruptedException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test02ThumbnailOwnerAndGrants() {
+
+		try {
+
+			final User owner  = createTestNode(User.class);
+			final User reader = createTestNode(User.class);
+
+			final TestImage img = transactionCommand.execute(new StructrTransaction<TestImage>() {
+
+				@Override
+				public TestImage execute() throws FrameworkException {
+
+					try {
+
+						TestImage image = (TestImage) ImageHelper.createImageBase64(securityContext, base64Image, TestImage.class);
+
+						image.setOwner(owner);
+
+						SecurityRelationship grant = (SecurityRelationship) createRelationshipCommand.execute(reader, image, org.structr.common.RelType.SECURITY);
+						grant.setAllowed(new Permission[] { Permission.read });
+
+						return image;
+
+					} catch (IOException ex) {
+
+						logger.log(Level.SEVERE, null, ex);
+
+					}
+
+					return null;
+
+				}
+
+			});
+
+			assertNotNull(img);
+
+			// the thumbnail is created by the superuser in the background
+			Image tn = img.getProperty(TestImage.thumbnail);
+
+			for (int i = 0; tn == null && i < 100; i++) {
+
+				Thread.sleep(100);
+
+				tn = img.getProperty(TestImage.thumbnail);
+			}
+
+			assertNotNull(tn);
+			assertEquals(Long.valueOf(owner.getId()), tn.getOwnerId());
+
+			SecurityRelationship grant = tn.getSecurityRelationship((Principal) reader);
+
+			assertNotNull(grant);
+			assertTrue(grant.isAllowed(Permission.read));
+			assertFalse(grant.isAllowed(Permission.write));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} catch (InterruptedException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
 		}
 
 	}
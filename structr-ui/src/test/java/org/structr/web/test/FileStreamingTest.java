@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Response;
+
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.web.common.FileHelper;
+import org.structr.web.common.StructrUiTest;
+import org.structr.web.entity.File;
+import org.structr.web.servlet.FileStreamer;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.IOException;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests range requests and ETags of files served by the HtmlServlet,
+ * see {@link FileStreamer}.
+ *
+ * @author Christian Morgner
+ */
+public class FileStreamingTest extends StructrUiTest {
+
+	private static final Logger logger = Logger.getLogger(FileStreamingTest.class.getName());
+	private static final String content = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	public void test01RangeRequests() {
+
+		try {
+
+			createFile("range.txt");
+
+			RestAssured.basePath = htmlUrl;
+
+			// full content
+			RestAssured.given().expect().statusCode(200).header("Accept-Ranges", "bytes").when().get("/range.txt");
+			assertEquals(content, RestAssured.given().get("/range.txt").asString());
+
+			// single range
+			Response single = RestAssured.given().header("Range", "bytes=10-15").expect().statusCode(206).header("Content-Range", "bytes 10-15/36").when().get("/range.txt");
+			assertEquals("abcdef", single.asString());
+
+			// suffix range
+			assertEquals("xyz", RestAssured.given().header("Range", "bytes=-3").expect().statusCode(206).when().get("/range.txt").asString());
+
+			// open range
+			assertEquals("wxyz", RestAssured.given().header("Range", "bytes=32-").expect().statusCode(206).when().get("/range.txt").asString());
+
+			// multiple ranges
+			Response multi = RestAssured.given().header("Range", "bytes=0-1,34-35").expect().statusCode(206).when().get("/range.txt");
+
+			assertTrue(multi.getContentType().startsWith("multipart/byteranges"));
+			assertTrue(multi.asString().contains("Content-Range: bytes 0-1/36"));
+			assertTrue(multi.asString().contains("Content-Range: bytes 34-35/36"));
+
+			// unsatisfiable range
+			RestAssured.given().header("Range", "bytes=100-200").expect().statusCode(416).header("Content-Range", "bytes */36").when().get("/range.txt");
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} catch (IOException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} finally {
+
+			RestAssured.basePath = restUrl;
+		}
+
+	}
+
+	public void test02ETag() {
+
+		try {
+
+			File file   = createFile("etag.txt");
+			String etag = FileStreamer.getETag(file);
+
+			assertNotNull(etag);
+
+			RestAssured.basePath = htmlUrl;
+
+			RestAssured.given().expect().statusCode(200).header("ETag", etag).when().get("/etag.txt");
+			RestAssured.given().header("If-None-Match", etag).expect().statusCode(304).when().get("/etag.txt");
+			RestAssured.given().header("If-None-Match", "\"other\"").expect().statusCode(200).when().get("/etag.txt");
+
+			// a range with an outdated If-Range returns the full content
+			RestAssured.given().header("Range", "bytes=0-1").header("If-Range", "\"other\"").expect().statusCode(200).when().get("/etag.txt");
+			RestAssured.given().header("Range", "bytes=0-1").header("If-Range", etag).expect().statusCode(206).when().get("/etag.txt");
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} catch (IOException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} finally {
+
+			RestAssured.basePath = restUrl;
+		}
+
+	}
+
+	public void test03ParseRanges() {
+
+		assertNull(FileStreamer.parseRanges(null, 100));
+		assertNull(FileStreamer.parseRanges("items=0-1", 100));
+		assertNull(FileStreamer.parseRanges("bytes=abc", 100));
+		assertNull(FileStreamer.parseRanges("bytes=20-10", 100));
+
+		assertEquals(1, FileStreamer.parseRanges("bytes=0-", 100).size());
+		assertEquals(99, FileStreamer.parseRanges("bytes=0-", 100).get(0)[1]);
+		assertEquals(90, FileStreamer.parseRanges("bytes=-10", 100).get(0)[0]);
+		assertEquals(99, FileStreamer.parseRanges("bytes=50-500", 100).get(0)[1]);
+		assertEquals(2, FileStreamer.parseRanges("bytes=0-0, -1", 100).size());
+		assertTrue(FileStreamer.parseRanges("bytes=100-", 100).isEmpty());
+
+		// overlapping and adjacent ranges are sorted and merged
+		List<long[]> merged = FileStreamer.parseRanges("bytes=50-59,0-9,5-14,15-19", 100);
+
+		assertEquals(2, merged.size());
+		assertEquals(0, merged.get(0)[0]);
+		assertEquals(19, merged.get(0)[1]);
+		assertEquals(50, merged.get(1)[0]);
+		assertEquals(59, merged.get(1)[1]);
+
+		// repeated full ranges collapse into a single range
+		assertEquals(1, FileStreamer.parseRanges("bytes=0-,0-,0-,0-", 100).size());
+
+		// too many ranges, or separate ranges covering most of the file, are ignored
+		assertNull(FileStreamer.parseRanges("bytes=0-0,2-2,4-4,6-6,8-8,10-10,12-12,14-14,16-16,18-18,20-20,22-22,24-24,26-26,28-28,30-30,32-32", 100));
+		assertNull(FileStreamer.parseRanges("bytes=0-49,51-99", 100));
+
+	}
+
+	public void test04RangeAmplification() {
+
+		try {
+
+			createFile("amplify.txt");
+
+			RestAssured.basePath = htmlUrl;
+
+			// repeated ranges are merged and served once
+			RestAssured.given().header("Range", "bytes=0-,0-,0-,0-").expect().statusCode(206).header("Content-Length", "36").when().get("/amplify.txt");
+
+			// separate ranges covering most of the file are answered with the full content
+			RestAssured.given().header("Range", "bytes=0-10,12-34,0-10,12-34").expect().statusCode(200).header("Content-Length", "36").when().get("/amplify.txt");
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} catch (IOException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} finally {
+
+			RestAssured.basePath = restUrl;
+		}
+
+	}
+
+	private File createFile(final String name) throws FrameworkException, IOException {
+
+		final File file = createTestNodes(File.class, 1).get(0);
+
+		FileHelper.writeToFile(file, content.getBytes("UTF-8"), "text/plain");
+
+		transactionCommand.execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				file.setProperty(AbstractNode.name, name);
+				file.setProperty(AbstractNode.visibleToPublicUsers, true);
+
+				return null;
+			}
+		});
+
+		return file;
+	}
+}
@@ -21,6 +21,7 @@
 package org.structr.web.test;
 
 
+import static org.hamcrest.Matchers.*;
 import com.jayway.restassured.RestAssured;
 import org.structr.common.error.FrameworkException;
 import org.structr.web.common.StructrUiTest;
@@ -252,6 +253,67 @@ public class ResourceAccessTest extends StructrUiTest {
 
 	}
 
+	public void test05ResourceAccessBatch() {
+
+		try {
+
+			final Folder testFolder = createTestNodes(Folder.class, 1).get(0);
+			assertNotNull(testFolder);
+
+			// make the folder readable, but not writeable, for public users
+			Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					testFolder.setProperty(AbstractNode.visibleToPublicUsers, true);
+
+					return null;
+				}
+			});
+
+			final String batch = "[ { \"name\" : \"new\" }, "
+				+ "{ \"op\" : \"update\", \"id\" : \"" + testFolder.getUuid() + "\", \"data\" : { \"name\" : \"changed\" } }, "
+				+ "{ \"op\" : \"delete\", \"id\" : \"" + testFolder.getUuid() + "\" } ]";
+
+			ResourceAccess folderGrant = createResourceAccess("Folder", UiAuthenticator.NON_AUTH_USER_POST);
+
+			// only POST is allowed => update and delete are rejected by the grant
+			RestAssured.given()
+				.header("X-Batch", "true")
+				.contentType("application/json; charset=UTF-8").body(batch)
+				.expect().statusCode(200)
+					.body("error_count",      equalTo(2))
+					.body("result[0].status", equalTo(201))
+					.body("result[1].status", equalTo(401))
+					.body("result[2].status", equalTo(401))
+				.when().post("/folders");
+
+			// allow PUT and DELETE => rejected because of missing rights for the test object
+			folderGrant.setFlag(UiAuthenticator.NON_AUTH_USER_PUT);
+			folderGrant.setFlag(UiAuthenticator.NON_AUTH_USER_DELETE);
+
+			RestAssured.given()
+				.header("X-Batch", "true")
+				.contentType("application/json; charset=UTF-8").body(batch)
+				.expect().statusCode(200)
+					.body("error_count",      equalTo(2))
+					.body("result[0].status", equalTo(201))
+					.body("result[1].status", equalTo(403))
+					.body("result[2].status", equalTo(403))
+				.when().post("/folders");
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 	/**
 	 * Creates a new ResourceAccess entity with the given signature and flags in the database.
 	 * 
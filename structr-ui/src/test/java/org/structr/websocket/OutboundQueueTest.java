@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jetty.websocket.WebSocket.Connection;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Mockito.*;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests that a client which doesn't read its messages is disconnected,
+ * and that it doesn't keep other clients from receiving theirs.
+ *
+ * @author Christian Morgner
+ */
+public class OutboundQueueTest extends TestCase {
+
+	private ExecutorService executor = null;
+
+	@Override
+	protected void setUp() throws Exception {
+
+		// a single sender thread, so a blocked client blocks everybody
+		executor = Executors.newFixedThreadPool(1);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+
+		executor.shutdownNow();
+	}
+
+	public void test01QueueLimit() throws Exception {
+
+		CountDownLatch released = new CountDownLatch(1);
+		CountDownLatch sending  = new CountDownLatch(1);
+		Connection slow         = createBlockingConnection(released, sending);
+		OutboundQueue queue     = new OutboundQueue(slow, executor, 2, 0);
+
+		// the first message blocks the sender, two more fill the queue
+		assertTrue(queue.add("1"));
+		assertTrue(sending.await(5, TimeUnit.SECONDS));
+		assertTrue(queue.add("2"));
+		assertTrue(queue.add("3"));
+
+		assertFalse(queue.add("4"));
+		assertTrue(queue.isClosed());
+
+		verify(slow).close(eq(1008), anyString());
+
+		released.countDown();
+	}
+
+	public void test02SendTimeout() throws Exception {
+
+		CountDownLatch released = new CountDownLatch(1);
+		CountDownLatch sending  = new CountDownLatch(1);
+		Connection slow         = createBlockingConnection(released, sending);
+		OutboundQueue queue     = new OutboundQueue(slow, executor, 1000, 200);
+
+		assertTrue(queue.add("1"));
+		assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+		// not blocked long enough yet
+		assertFalse(queue.checkTimeout(System.nanoTime()));
+
+		Thread.sleep(300);
+
+		assertTrue(queue.checkTimeout(System.nanoTime()));
+		assertTrue(queue.isClosed());
+		assertFalse(queue.add("2"));
+
+		verify(slow, times(1)).close(eq(1008), anyString());
+
+		released.countDown();
+	}
+
+	public void test03SlowClientDoesNotBlockOthers() throws Exception {
+
+		final CountDownLatch released = new CountDownLatch(1);
+		CountDownLatch sending  = new CountDownLatch(1);
+		Connection slow         = createBlockingConnection(released, sending);
+		Connection fast         = mock(Connection.class);
+		OutboundQueue slowQueue = new OutboundQueue(slow, executor, 1000, 200);
+		OutboundQueue fastQueue = new OutboundQueue(fast, executor, 1000, 200);
+
+		// closing the connection aborts the blocked write, like a closed socket
+		doAnswer(new Answer() {
+
+			@Override
+			public Object answer(final InvocationOnMock invocation) throws Throwable {
+
+				released.countDown();
+
+				return null;
+			}
+
+		}).when(slow).close(anyInt(), anyString());
+
+		slowQueue.add("slow");
+		assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+		fastQueue.add("fast");
+
+		// the only sender thread is blocked by the slow client
+		Thread.sleep(300);
+		verify(fast, never()).sendMessage(anyString());
+
+		// the watchdog disconnects the slow client, which frees the sender
+		assertTrue(slowQueue.checkTimeout(System.nanoTime()));
+
+		verify(fast, timeout(5000)).sendMessage("fast");
+	}
+
+	private Connection createBlockingConnection(final CountDownLatch released, final CountDownLatch sending) throws Exception {
+
+		Connection connection = mock(Connection.class);
+
+		doAnswer(new Answer() {
+
+			@Override
+			public Object answer(final InvocationOnMock invocation) throws Throwable {
+
+				sending.countDown();
+				released.await(10, TimeUnit.SECONDS);
+
+				return null;
+			}
+
+		}).when(connection).sendMessage(anyString());
+
+		return connection;
+	}
+}